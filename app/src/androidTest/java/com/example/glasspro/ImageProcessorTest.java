@@ -1,6 +1,8 @@
 package com.example.glasspro;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import android.content.ContentResolver;
 import android.content.ContentValues;
@@ -19,7 +21,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.opencv.android.OpenCVLoader;
 import org.opencv.android.Utils;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -64,6 +68,49 @@ public class ImageProcessorTest {
         NativeProcessor.enhanceByMSRCR(input.getNativeObjAddr());
         saveMatAsImage(input, "msrcr_output.png");
     }
+    // 稳像、增强、运动检测共用一个帧上下文时，每种产物每帧最多计算一次
+    @Test
+    public void testFrameContextComputesOnce() {
+        Mat first = loadTestImage();
+        assertNotNull(first);
+        System.loadLibrary("framectx");
+        System.loadLibrary("enhance");
+        System.loadLibrary("stab");
+        System.loadLibrary("motion");
+
+        // 第二帧：平移几个像素，模拟手抖
+        Mat shift = new Mat(2, 3, CvType.CV_64F);
+        shift.put(0, 0, 1, 0, 6, 0, 1, -4);
+        Mat second = new Mat();
+        Imgproc.warpAffine(first, second, shift, first.size());
+
+        FrameContext ctx = new FrameContext();
+        long ptr = ctx.getNativePtr();
+        Mat boxes = new Mat();
+        try {
+            ctx.begin(first);
+            NativeProcessor.videoStabWithContext(ptr, 0, first.getNativeObjAddr());
+            NativeProcessor.enhanceWithContext(ptr, first.getNativeObjAddr(), 10.0);
+            NativeProcessor.detectMotionWithContext(ptr, boxes.getNativeObjAddr());
+
+            ctx.begin(second);
+            Mat stabilized = second.clone();
+            Mat enhanced = second.clone();
+            NativeProcessor.videoStabWithContext(ptr, first.getNativeObjAddr(), stabilized.getNativeObjAddr());
+            assertTrue(NativeProcessor.enhanceWithContext(ptr, enhanced.getNativeObjAddr(), 10.0));
+            NativeProcessor.detectMotionWithContext(ptr, boxes.getNativeObjAddr());
+
+            for (int p = 0; p < NativeProcessor.CTX_PRODUCT_COUNT; p++) {
+                assertTrue("product " + p, ctx.computeCount(p) <= 1);
+            }
+            // 上一帧的金字塔直接复用，本帧只建自己的一份
+            assertEquals(1, ctx.computeCount(NativeProcessor.CTX_PYRAMID));
+            assertEquals(1, ctx.computeCount(NativeProcessor.CTX_FLOW));
+            saveMatAsImage(enhanced, "context_enhance_output.png");
+        } finally {
+            ctx.release();
+        }
+    }
     private boolean initializeOpenCV() {
         return OpenCVLoader.initDebug();
     }
@@ -0,0 +1,211 @@
+#include "clahe_temporal.h"
+#include <algorithm>
+#include <cmath>
+#include <opencv2/imgproc/imgproc.hpp>
+
+using namespace cv;
+
+// 分块数与原来 setClaheParams 里的 setTilesGridSize(4, 4) 一致
+static const int TILES_X = 4;
+static const int TILES_Y = 4;
+static const int TILE_COUNT = TILES_X * TILES_Y;
+static const int BINS = 256;
+
+// 直方图采样：短边约取这么多个采样点
+static const int SAMPLE_SHORT_SIDE = 240;
+
+// 分块直方图与建表时的平均全变差距离：超过 DRIFT 重建目标表，超过 SCENE_CUT 视为场景切换，直接跳到目标表
+static const float DRIFT = 0.04f;
+static const float SCENE_CUT = 0.35f;
+
+// 当前表每帧向目标表靠拢的比例 (约 10 帧收敛)
+static const float BLEND = 0.2f;
+// 所有表项与目标的差都小于它时视为已收敛，停止逐帧混合
+static const float CONVERGED_EPS = 0.5f;
+
+void TemporalClahe::reset() {
+    initialized = false;
+}
+
+// 在采样点上统计每个分块 V = max(R, G, B) 的直方图，顺带累计亮度用于计算 clip limit
+void TemporalClahe::collectHistograms(const Mat &src) {
+    int cn = src.channels();
+    int step = std::max(1, std::min(src.rows, src.cols) / SAMPLE_SHORT_SIDE);
+    std::fill(hist.begin(), hist.end(), 0);
+    std::fill(tileSamples.begin(), tileSamples.end(), 0);
+    lumaSum = 0;
+    lumaCount = 0;
+
+    for (int y = step / 2; y < src.rows; y += step) {
+        const uchar *row = src.ptr<uchar>(y);
+        int tileRow = std::min(y / tileHeight, TILES_Y - 1) * TILES_X;
+        long long rowLuma = 0;
+        int rowCount = 0;
+        for (int x = step / 2; x < src.cols; x += step) {
+            const uchar *p = row + x * cn;
+            int v = std::max(p[0], std::max(p[1], p[2]));
+            int tile = tileRow + std::min(x / tileWidth, TILES_X - 1);
+            hist[tile * BINS + v]++;
+            tileSamples[tile]++;
+            // RGB 亮度 (定点 0.299 / 0.587 / 0.114)
+            rowLuma += (77 * p[0] + 150 * p[1] + 29 * p[2]) >> 8;
+            rowCount++;
+        }
+        lumaSum += (double) rowLuma;
+        lumaCount += rowCount;
+    }
+}
+
+// 与 OpenCV CLAHE 相同的裁剪 + 重新分配 + 累积分布，clip limit 沿用 setClaheParams 的亮度自适应公式
+void TemporalClahe::buildTarget() {
+    double mean = lumaCount > 0 ? lumaSum / (double) lumaCount : 128;
+    mean = 0.5 - mean / 128;
+    double clipLimit = 20 / (1 + std::exp(-mean * 20));
+
+    int clipped[BINS];
+    for (int t = 0; t < TILE_COUNT; t++) {
+        const int *h = &hist[t * BINS];
+        float *ref = &reference[t * BINS];
+        float *dst = &target[t * BINS];
+        int total = tileSamples[t];
+        if (total == 0) {
+            for (int i = 0; i < BINS; i++) {
+                ref[i] = 0;
+                dst[i] = (float) i;
+            }
+            continue;
+        }
+
+        int limit = std::max(1, (int) (clipLimit * total / BINS));
+        int excess = 0;
+        for (int i = 0; i < BINS; i++) {
+            int c = h[i];
+            if (c > limit) {
+                excess += c - limit;
+                c = limit;
+            }
+            clipped[i] = c;
+            ref[i] = (float) h[i] / (float) total;
+        }
+        int batch = excess / BINS;
+        int residual = excess - batch * BINS;
+        for (int i = 0; i < BINS; i++) clipped[i] += batch;
+        if (residual > 0) {
+            int residualStep = std::max(BINS / residual, 1);
+            for (int i = 0; i < BINS && residual > 0; i += residualStep, residual--) clipped[i]++;
+        }
+
+        float scale = 255.0f / (float) total;
+        int sum = 0;
+        for (int i = 0; i < BINS; i++) {
+            sum += clipped[i];
+            dst[i] = std::min(255.0f, sum * scale);
+        }
+    }
+}
+
+void TemporalClahe::blendTowardsTarget() {
+    float maxDiff = 0;
+    for (size_t i = 0; i < current.size(); i++) {
+        float d = target[i] - current[i];
+        current[i] += BLEND * d;
+        maxDiff = std::max(maxDiff, std::abs(d));
+    }
+    if (maxDiff * (1 - BLEND) < CONVERGED_EPS) {
+        current = target;
+        converged = true;
+    }
+    for (size_t i = 0; i < current.size(); i++) lut[i] = saturate_cast<uchar>(current[i]);
+}
+
+void TemporalClahe::apply(const Mat &src, Mat &dst) {
+    CV_Assert(src.depth() == CV_8U && (src.channels() == 3 || src.channels() == 4));
+    if (src.size() != frameSize) {
+        frameSize = src.size();
+        tileWidth = (frameSize.width + TILES_X - 1) / TILES_X;
+        tileHeight = (frameSize.height + TILES_Y - 1) / TILES_Y;
+        initialized = false;
+    }
+    if (hist.empty()) {
+        hist.resize(TILE_COUNT * BINS);
+        tileSamples.resize(TILE_COUNT);
+        reference.resize(TILE_COUNT * BINS);
+        target.resize(TILE_COUNT * BINS);
+        current.resize(TILE_COUNT * BINS);
+        lut.resize(TILE_COUNT * BINS);
+    }
+
+    // 1. 采样直方图，与建表时的直方图比较，决定是否重建目标表
+    collectHistograms(src);
+    float drift = 1;
+    if (initialized) {
+        drift = 0;
+        for (int t = 0; t < TILE_COUNT; t++) {
+            const int *h = &hist[t * BINS];
+            const float *ref = &reference[t * BINS];
+            float inv = tileSamples[t] > 0 ? 1.0f / (float) tileSamples[t] : 0;
+            float d = 0;
+            for (int i = 0; i < BINS; i++) d += std::abs(h[i] * inv - ref[i]);
+            drift += 0.5f * d;
+        }
+        drift /= TILE_COUNT;
+    }
+    rebuilt = drift > DRIFT;
+    if (rebuilt) {
+        buildTarget();
+        converged = false;
+        if (!initialized || drift > SCENE_CUT) {
+            // 首帧或场景切换：不做过渡
+            current = target;
+            for (size_t i = 0; i < current.size(); i++) lut[i] = saturate_cast<uchar>(current[i]);
+            converged = true;
+            initialized = true;
+        }
+    }
+    if (!converged) blendTowardsTarget();
+
+    // 2. 逐像素：四个相邻分块查找表双线性插值得到 V'，RGB 按 V'/V 等比缩放
+    int cn = src.channels();
+    int cols = src.cols;
+    std::vector<int> tx1(cols), tx2(cols);
+    std::vector<float> xa(cols);
+    float invTw = 1.0f / (float) tileWidth;
+    for (int x = 0; x < cols; x++) {
+        float txf = x * invTw - 0.5f;
+        int t1 = cvFloor(txf);
+        xa[x] = txf - (float) t1;
+        tx1[x] = std::max(t1, 0) * BINS;
+        tx2[x] = std::min(t1 + 1, TILES_X - 1) * BINS;
+    }
+    float invV[BINS];
+    invV[0] = 0;
+    for (int i = 1; i < BINS; i++) invV[i] = 1.0f / (float) i;
+
+    dst.create(src.size(), src.type());
+    float invTh = 1.0f / (float) tileHeight;
+    parallel_for_(Range(0, src.rows), [&](const Range &range) {
+        for (int y = range.start; y < range.end; y++) {
+            float tyf = y * invTh - 0.5f;
+            int ty1 = cvFloor(tyf);
+            float ya = tyf - (float) ty1;
+            const uchar *lutTop = &lut[std::max(ty1, 0) * TILES_X * BINS];
+            const uchar *lutBottom = &lut[std::min(ty1 + 1, TILES_Y - 1) * TILES_X * BINS];
+
+            const uchar *in = src.ptr<uchar>(y);
+            uchar *out = dst.ptr<uchar>(y);
+            for (int x = 0; x < cols; x++) {
+                const uchar *p = in + x * cn;
+                uchar *q = out + x * cn;
+                int v = std::max(p[0], std::max(p[1], p[2]));
+                float a = xa[x];
+                float top = lutTop[tx1[x] + v] * (1 - a) + lutTop[tx2[x] + v] * a;
+                float bottom = lutBottom[tx1[x] + v] * (1 - a) + lutBottom[tx2[x] + v] * a;
+                float gain = (top * (1 - ya) + bottom * ya) * invV[v];
+                q[0] = saturate_cast<uchar>(p[0] * gain);
+                q[1] = saturate_cast<uchar>(p[1] * gain);
+                q[2] = saturate_cast<uchar>(p[2] * gain);
+                if (cn == 4) q[3] = p[3];
+            }
+        }
+    });
+}
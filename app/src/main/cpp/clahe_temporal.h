@@ -0,0 +1,46 @@
+#ifndef GLASSPRO_CLAHE_TEMPORAL_H
+#define GLASSPRO_CLAHE_TEMPORAL_H
+
+#include <vector>
+#include <opencv2/core/core.hpp>
+
+// 跨帧保持状态的 CLAHE，每路视频流一个实例 (只在一个线程上使用)。
+// 与每帧 createCLAHE + hsv_clahe 的区别：
+//  1. 分块直方图在隔行隔列采样的像素上统计 (短边约 240 个采样点)，不做整帧 HSV 转换；
+//  2. 分块查找表跨帧保留。直方图与上次建表时相比变化不大时不重建，变化超过阈值时重建目标表，
+//     当前表每帧向目标表按比例靠拢，消除逐帧独立均衡带来的闪烁；场景切换 (变化很大) 时直接跳到目标表；
+//  3. 只调整 V = max(R, G, B)：H、S 不变时 HSV -> RGB 的结果正好是原 RGB 按 V'/V 等比缩放，
+//     所以按像素乘一个增益就等价于原来的 RGB -> HSV -> CLAHE(V) -> RGB 往返，可以原地进行。
+class TemporalClahe {
+public:
+    // src: CV_8UC3 (RGB) 或 CV_8UC4 (RGBA)，dst 与 src 同类型，可以是同一个 Mat (原地处理，alpha 不变)
+    void apply(const cv::Mat &src, cv::Mat &dst);
+
+    // 丢弃跨帧状态，下一帧重新建表
+    void reset();
+
+    // 最近一帧是否重建了目标查找表 (调试用)
+    bool rebuiltLastFrame() const { return rebuilt; }
+
+private:
+    void collectHistograms(const cv::Mat &src);
+    void buildTarget();
+    void blendTowardsTarget();
+
+    cv::Size frameSize;
+    int tileWidth = 0, tileHeight = 0;
+    bool initialized = false;
+    bool converged = false;
+    bool rebuilt = false;
+
+    std::vector<int> hist;          // 本帧各分块的采样直方图 [tile][256]
+    std::vector<int> tileSamples;   // 本帧各分块的采样数
+    std::vector<float> reference;   // 建目标表时的归一化直方图 [tile][256]
+    std::vector<float> target;      // 目标查找表 [tile][256]
+    std::vector<float> current;     // 当前查找表 (逐帧靠拢目标表)
+    std::vector<uchar> lut;         // current 取整后的查找表，应用时使用
+    double lumaSum = 0;
+    long long lumaCount = 0;
+};
+
+#endif //GLASSPRO_CLAHE_TEMPORAL_H
@@ -1,27 +1,43 @@
 #include "dehaze.h"
-#include "threshold.h"
+#include "stage_timer.h"
+#include "dehaze_fast.h"
+#include <atomic>
+#include <functional>
 
 
-int width;
-int height;
+static const Size THUMB_SIZE(32, 18);
+static const double SCENE_CHANGE_THRESHOLD = 12.0;  // 缩略图平均灰度差 (0~255)
+static const double AIRLIGHT_BLEND = 0.3;            // 定期刷新时新估计的权重
 
-extern "C"
-JNIEXPORT void JNICALL
-Java_com_example_glasspro_NativeProcessor_dehaze(JNIEnv *env, jclass clazz, jlong matAddr) {
+// 不带句柄的 JNI 接口共用的实例
+Dehazer &defaultDehazer() {
+    static Dehazer dehazer;
+    return dehazer;
+}
+
+void dehazeRgbFrame(Mat &rgb, Mat &out, int tier) {
+    defaultDehazer().process(rgb, out, tier);
+}
+
+size_t dehazeWorkingBytes() {
+    return defaultDehazer().workingBytes();
+}
+
+static void dehazeRgbaInPlace(Dehazer &dehazer, jlong matAddr) {
     // get Mat from raw address
     Mat &dehazedMat = *(Mat *) matAddr;
     Mat mat = *(Mat *) matAddr;
     // The image data which transmitted by Camera is RGBA, so we need to convert it to RGB
     cvtColor(mat, mat, COLOR_RGBA2RGB);
 
-    width = dehazedMat.cols;
-    height = dehazedMat.rows;
-    __android_log_print(ANDROID_LOG_INFO, "OpenCV", "Start dehazing. Mat rows: %d, cols: %d", dehazedMat.rows, dehazedMat.cols);
-
-    dehazeProcess(mat, dehazedMat);
+    dehazer.times.reset();
+    dehazer.process(mat, dehazedMat, dehazer.tier());
+}
 
-    dehazedMat.convertTo(dehazedMat, CV_8UC3);
-    __android_log_print(ANDROID_LOG_INFO, "OpenCV", "Converting image to CV_8UC3");
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_dehaze(JNIEnv *env, jclass clazz, jlong matAddr) {
+    dehazeRgbaInPlace(defaultDehazer(), matAddr);
 //    __android_log_print(ANDROID_LOG_INFO, "OpenCV", "dehazedMat rows: %d, cols: %d", dehazedMat.rows, dehazedMat.cols);
 
 
@@ -29,14 +45,223 @@ Java_com_example_glasspro_NativeProcessor_dehaze(JNIEnv *env, jclass clazz, jlon
 
 }
 
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_com_example_glasspro_NativeProcessor_getDehazeStageNanos(JNIEnv *env, jclass clazz, jint stage) {
+    return (jlong) defaultDehazer().times.get(stage);
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_setDehazeParams(JNIEnv *env, jclass clazz, jdouble rate,
+                                                          jint small, jint large) {
+    defaultDehazer().setParams(rate, small, large);
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_setDehazeTier(JNIEnv *env, jclass clazz, jint tier) {
+    defaultDehazer().setTier(tier);
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_setDehazeStreaming(JNIEnv *env, jclass clazz,
+                                                             jboolean enabled, jint interval) {
+    defaultDehazer().setStreaming(enabled, interval);
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_resetDehazeCache(JNIEnv *env, jclass clazz) {
+    // 可能在 UI 线程调用，只置标志，由处理线程在下一帧清空
+    defaultDehazer().requestCacheReset();
+}
+
+// ---------- 句柄接口：每路视频流各自持有一个去雾器 ----------
+static Dehazer *dehazerFrom(jlong ptr) {
+    return reinterpret_cast<Dehazer *>(ptr);
+}
+
+extern "C" {
+JNIEXPORT jlong JNICALL
+Java_com_example_glasspro_NativeProcessor_createDehazer(JNIEnv *env, jclass clazz) {
+    return reinterpret_cast<jlong>(new Dehazer());
+}
+
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_releaseDehazer(JNIEnv *env, jclass clazz, jlong dehazerPtr) {
+    delete dehazerFrom(dehazerPtr);
+}
+
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_runDehazer(JNIEnv *env, jclass clazz, jlong dehazerPtr, jlong matAddr) {
+    if (dehazerPtr == 0) return;
+    dehazeRgbaInPlace(*dehazerFrom(dehazerPtr), matAddr);
+}
+
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_setDehazerParams(JNIEnv *env, jclass clazz, jlong dehazerPtr,
+                                                           jdouble rate, jint small, jint large) {
+    if (dehazerPtr != 0) dehazerFrom(dehazerPtr)->setParams(rate, small, large);
+}
+
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_setDehazerTier(JNIEnv *env, jclass clazz, jlong dehazerPtr, jint tier) {
+    if (dehazerPtr != 0) dehazerFrom(dehazerPtr)->setTier(tier);
+}
+
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_setDehazerStreaming(JNIEnv *env, jclass clazz, jlong dehazerPtr,
+                                                              jboolean enabled, jint interval) {
+    if (dehazerPtr != 0) dehazerFrom(dehazerPtr)->setStreaming(enabled, interval);
+}
+
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_resetDehazerCache(JNIEnv *env, jclass clazz, jlong dehazerPtr) {
+    if (dehazerPtr != 0) dehazerFrom(dehazerPtr)->requestCacheReset();
+}
+
+JNIEXPORT jlong JNICALL
+Java_com_example_glasspro_NativeProcessor_getDehazerStageNanos(JNIEnv *env, jclass clazz, jlong dehazerPtr,
+                                                               jint stage) {
+    if (dehazerPtr == 0) return 0;
+    return (jlong) dehazerFrom(dehazerPtr)->times.get(stage);
+}
+}
+
+void Dehazer::setParams(double rate, int small, int large) {
+    dehazeRate = rate < 1.0 ? 1.0 : rate;
+    patchSmall = small;
+    patchLarge = large;
+}
+
+void Dehazer::setTier(int tier) {
+    dehazeTier = tier < 0 || tier >= DEHAZE_TIER_COUNT ? DEHAZE_TIER_FULL : tier;
+}
+
+void Dehazer::setStreaming(bool enabled, int interval) {
+    // 从关到开时缓存可能早已过期，丢弃重来
+    if (enabled && !streamingEnabled) cacheResetRequested.store(true);
+    streamingEnabled = enabled;
+    refreshInterval = interval < 1 ? 1 : interval;
+}
+
+// 缩小到 32x18 的灰度图，两帧之间的平均绝对差作为廉价的场景切换指标
+static Mat sceneThumbnail(const Mat &rgb) {
+    Mat small, gray;
+    resize(rgb, small, THUMB_SIZE, 0, 0, INTER_AREA);
+    cvtColor(small, gray, COLOR_RGB2GRAY);
+    return gray;
+}
+
+static void blendAirlight(FastDehazer::Airlight &cached, const FastDehazer::Airlight &fresh, bool blend) {
+    for (int c = 0; c < 3; c++) {
+        if (blend) {
+            addWeighted(fresh.maps[c], AIRLIGHT_BLEND, cached.maps[c], 1 - AIRLIGHT_BLEND, 0, cached.maps[c]);
+        } else {
+            cached.maps[c] = fresh.maps[c];
+        }
+    }
+}
+
+// 流式模式下决定本帧是否重新估计大气光，需要时更新缓存
+void Dehazer::updateAirlightCache(const Mat &rgb, bool fastEngine, bool needLarge, const AirlightEstimator &estimate) {
+    if (cacheResetRequested.exchange(false)) airCache.valid = false;
+
+    Mat thumb = sceneThumbnail(rgb);
+    bool reuse = airCache.valid
+                 && airCache.fastEngine == fastEngine
+                 && (airCache.hasLarge || !needLarge)
+                 && airCache.frameSize == rgb.size()
+                 && airCache.patchSmall == patchSmall
+                 && airCache.patchLarge == patchLarge;
+    bool sceneChanged = false;
+    if (reuse) {
+        Mat diff;
+        absdiff(thumb, airCache.thumb, diff);
+        sceneChanged = mean(diff)[0] > SCENE_CHANGE_THRESHOLD;
+    }
+    if (reuse && !sceneChanged && ++airCache.framesSinceRefresh < refreshInterval) return;
+
+    // 定期刷新时做时间滤波；首次、尺寸/参数变化或场景切换时整体替换
+    bool blend = reuse && !sceneChanged;
+    FastDehazer::Airlight fresh;
+    estimate(patchSmall, fresh);
+    blendAirlight(airCache.small, fresh, blend);
+    if (needLarge) {
+        FastDehazer::Airlight freshLarge;
+        estimate(patchLarge, freshLarge);
+        blendAirlight(airCache.large, freshLarge, blend);
+    }
+
+    airCache.thumb = thumb;
+    airCache.frameSize = rgb.size();
+    airCache.fastEngine = fastEngine;
+    airCache.hasLarge = needLarge;
+    airCache.patchSmall = patchSmall;
+    airCache.patchLarge = patchLarge;
+    airCache.framesSinceRefresh = 0;
+    airCache.valid = true;
+}
+
+// float32 引擎：流程与 processReference 相同，缓冲跨帧复用。
+// FULL 与参考实现逐步对应；COARSE 在半分辨率上估计透射率；SINGLE 只算小 patch 一个尺度
+void Dehazer::processFast(Mat &rgb, Mat &out, int tier) {
+    bool twoScales = tier != DEHAZE_TIER_SINGLE;
+    bool coarse = tier != DEHAZE_TIER_FULL;
+    Size outSize = rgb.size();
+
+    resize(rgb, smallFrame, Size(rgb.cols / dehazeRate, rgb.rows / dehazeRate));
+    fastDehazer.load(smallFrame);
+
+    int64_t t0 = stageNowNanos();
+    const FastDehazer::Airlight *airSmall = &fastAirSmall;
+    const FastDehazer::Airlight *airLarge = &fastAirLarge;
+    if (streamingEnabled) {
+        updateAirlightCache(smallFrame, true, twoScales, [this](int patchSize, FastDehazer::Airlight &a) {
+            fastDehazer.estimateAirlight(patchSize, a);
+        });
+        airSmall = &airCache.small;
+        airLarge = &airCache.large;
+    } else {
+        fastDehazer.estimateAirlight(patchSmall, fastAirSmall);
+        if (twoScales) fastDehazer.estimateAirlight(patchLarge, fastAirLarge);
+    }
+    int64_t t1 = stageNowNanos();
+
+    // 两个尺度等权融合 (见 FastDehazer 的说明)，直接累加
+    int64_t transNanos = fastDehazer.accumulate(*airSmall, coarse, twoScales ? 0.5f : 1.0f, true);
+    if (twoScales) transNanos += fastDehazer.accumulate(*airLarge, coarse, 0.5f, false);
+    int64_t t2 = stageNowNanos();
+    times.add(DEHAZE_AIRLIGHT, t1 - t0);
+    times.add(DEHAZE_TRANSMISSION, transNanos);
+    times.add(DEHAZE_RECOVER, t2 - t1 - transNanos);
+
+    ScopedStage<DEHAZE_STAGE_COUNT> timer(times, DEHAZE_FUSION);
+    fastDehazer.finish(out, outSize);
+}
+
+void Dehazer::process(Mat &rgb, Mat &out, int tier) {
+    if (tier == DEHAZE_TIER_REFERENCE) {
+        // 切回参考实现时释放 float32 引擎的缓冲
+        if (fastDehazer.bufferBytes() > 0) fastDehazer.release();
+        processReference(rgb, out);
+        out.convertTo(out, CV_8UC3);
+    } else {
+        processFast(rgb, out, tier);
+    }
+}
+
 // True method for processing
-void dehazeProcess(Mat& image, Mat& dehazedImage) {
-    frameCnt++;
+void Dehazer::processReference(Mat& image, Mat& dehazedImage) {
     int s = 16;
-    double rate = 1.2;
+    double rate = dehazeRate;
     double eeps = 0.002, omega = 0.9;
+    Size outSize = image.size();
 
     resize(image, image, Size(image.cols / rate, image.rows / rate));
+    Mat rgb = image;
     image.convertTo(image, CV_64FC3);
 
     vector<Mat> channels(3);
@@ -46,20 +271,37 @@ void dehazeProcess(Mat& image, Mat& dehazedImage) {
     Mat A_R20, A_G20, A_B20, t20, dehazed_20;
     Mat A_R80, A_G80, A_B80, t80, dehazed_80;
 
-    // patchSize = 20
-    est_air_patchwise(R, G, B, 20, A_R20, A_G20, A_B20);
+    int64_t t0 = stageNowNanos();
+    if (streamingEnabled) {
+        // 流式模式：大气光来自跨帧缓存 (多数帧不重新估计)
+        updateAirlightCache(rgb, false, true, [&](int patchSize, FastDehazer::Airlight &out) {
+            est_air_patchwise(R, G, B, patchSize, out.maps[2], out.maps[1], out.maps[0]);
+        });
+        A_R20 = airCache.small.maps[2]; A_G20 = airCache.small.maps[1]; A_B20 = airCache.small.maps[0];
+        A_R80 = airCache.large.maps[2]; A_G80 = airCache.large.maps[1]; A_B80 = airCache.large.maps[0];
+    } else {
+        // patchSize = 20 (小尺度，低档位时随分辨率一起缩小)
+        est_air_patchwise(R, G, B, patchSmall, A_R20, A_G20, A_B20);
+        // patchSize = 80 (大尺度)
+        est_air_patchwise(R, G, B, patchLarge, A_R80, A_G80, A_B80);
+    }
+    int64_t t1 = stageNowNanos();
     t20 = est_trans_fast(R, G, B, s, eeps, omega, A_R20, A_G20, A_B20);
-    dehazed_20 = rmv_haze(R, G, B, t20, A_R20, A_G20, A_B20);
-
-    // patchSize = 80
-    est_air_patchwise(R, G, B, 80, A_R80, A_G80, A_B80);
     t80 = est_trans_fast(R, G, B, s, eeps, omega, A_R80, A_G80, A_B80);
+    int64_t t2 = stageNowNanos();
+    dehazed_20 = rmv_haze(R, G, B, t20, A_R20, A_G20, A_B20);
     dehazed_80 = rmv_haze(R, G, B, t80, A_R80, A_G80, A_B80);
+    int64_t t3 = stageNowNanos();
+    times.add(DEHAZE_AIRLIGHT, t1 - t0);
+    times.add(DEHAZE_TRANSMISSION, t2 - t1);
+    times.add(DEHAZE_RECOVER, t3 - t2);
 
     // 多尺度融合
-    dehazedImage = laplacian_pyramid_fusion(dehazed_20, dehazed_80);
-
-    resize(dehazedImage, dehazedImage, Size(width, height));
+    {
+        ScopedStage<DEHAZE_STAGE_COUNT> timer(times, DEHAZE_FUSION);
+        dehazedImage = laplacian_pyramid_fusion(dehazed_20, dehazed_80);
+        resize(dehazedImage, dehazedImage, outSize);
+    }
     image.release();
 }
 
@@ -347,8 +589,7 @@ float estimateAtmosphericLightMagnitude(const Mat& image, const Vec3f& direction
 }
 
 // Estimate Atmospheric Light
-void airlight_automatic_estimate(Mat& hazyImage) {
-    __android_log_print(ANDROID_LOG_INFO, "OpenCV", "Atmospheric Light est start");
+void airlight_automatic_estimate(Mat& hazyImage, bool firstFrame, double& air_r, double& air_g, double& air_b) {
     if (hazyImage.empty()) {
         return;
     }
@@ -363,17 +604,15 @@ void airlight_automatic_estimate(Mat& hazyImage) {
 
     // 估计大气光方向
     Vec3f atmosphericLightDirection = estimateAtmosphericLightDirection(lines);
-    __android_log_print(ANDROID_LOG_INFO, "OpenCV", "Atmospheric Light Direction over");
 //    cout << "Atmospheric Light Direction: " << atmosphericLightDirection << endl;
 
     // 估计大气光大小
     float atmosphericLightMagnitude = estimateAtmosphericLightMagnitude(transHazyImage, atmosphericLightDirection);
-    __android_log_print(ANDROID_LOG_INFO, "OpenCV", "Atmospheric Light Magnitude: %f", atmosphericLightMagnitude);
 
 //    cout << "Atmospheric Light Magnitude: " << atmosphericLightMagnitude << endl;
 
     float rateOfNewAtm;
-    if (frameCnt > 1) {
+    if (!firstFrame) {
         rateOfNewAtm = 0.2;
     }
     else {
@@ -391,6 +630,8 @@ Mat extract_blocks(const Mat& input_img, const Mat& guide_img, int patchSize) {
     int countOfBrightBlock = 0;
     float minPercentageOfBrightBlock = 0.1;
 
+    int width = input_img.cols;
+    int height = input_img.rows;
     int numSegRow = height / patchSize;
     int numSegCol = width / patchSize;
     int totalCountOfBlock = numSegCol * numSegRow;
@@ -20,10 +20,6 @@ using namespace cv;
 //---------------------- Guided Filter -------------------//
 
 //---------------------- Dehaze Functions -------------------//
-double air_r, air_g, air_b;
-Mat t;
-int frameCnt;
-
 // 在extract_blocks中将块加入堆时使用的Compare结构体
 struct BlockCompare {
     bool operator()(const tuple<int, int, double>& a, const tuple<int, int, double>& b) {
@@ -42,12 +38,12 @@ Mat est_trans_fast(Mat& R, Mat& G, Mat& B, int s, double eeps, double k, Mat& A_
 Mat rmv_haze(Mat& R, Mat& G, Mat& B, Mat& t, Mat& A_r, Mat& A_g, Mat& A_b);
 //Mat rmv_haze(Mat& R, Mat& G, Mat& B, Mat& t, double A_r, double A_g, double A_b);
 //void post_process(vector<Mat>& channels, double thresholdPercentage);
-void dehazeProcess(Mat& image, Mat& dehazedImage);
 Vec3f computePatchLine(const Mat& patch);
 vector<Vec3f> selectPatches(const Mat& image, int patchSize);
 Vec3f estimateAtmosphericLightDirection(const vector<Vec3f>& lines);
 float estimateAtmosphericLightMagnitude(const Mat& image, const Vec3f& direction);
-void airlight_automatic_estimate(Mat& hazyImage);
+// 大气光 (air_r, air_g, air_b) 由调用方持有，firstFrame 时直接替换，否则与新估计做时间滤波
+void airlight_automatic_estimate(Mat& hazyImage, bool firstFrame, double& air_r, double& air_g, double& air_b);
 Mat extract_blocks(const Mat& input_img, const Mat& guide_img, int patchSize);
 
 extern "C" {
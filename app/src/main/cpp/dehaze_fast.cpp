@@ -0,0 +1,285 @@
+#include "dehaze_fast.h"
+#include "stage_timer.h"
+#include <algorithm>
+#include <vector>
+#include <opencv2/imgproc/imgproc.hpp>
+
+using namespace cv;
+
+// 与参考实现 (dehaze.cpp) 相同的常量
+static const int TRANS_WINDOW = 16;          // staticMin 的窗口 s
+static const int TRANS_SAMPLING = 4;         // GF_smooth 的降采样倍率
+static const double TRANS_EPS = 0.002;
+static const double TRANS_ALPHA = 2.0;
+static const double TRANS_OMEGA = 0.9;
+static const double TRANS_MIN = 0.001;
+
+// 大气光图的保存分辨率 (1/4)。大气光本身是 patch 尺度上的平滑量，在 1/4 分辨率上做
+// 同样 sigma 的高斯平滑再双线性放大，与全分辨率结果的差别远小于 8 位量化误差
+static const int AIR_SCALE = 4;
+
+// 粗透射率的导向滤波上采样参数 (半分辨率上的半径，引导图为 0~1 左右的暗通道)
+static const int GUIDE_RADIUS = 4;
+static const float GUIDE_EPS = 1e-3f;
+
+// 条带边界对齐到透射率的降采样倍率 (COARSE 先减半再 2 倍降采样，同样是 4)，
+// 条带内的降采样网格与整帧的重合
+static const int STRIPE_ALIGN = TRANS_SAMPLING;
+
+static int alignUp(int v, int a) {
+    return (v + a - 1) / a * a;
+}
+
+// staticMin(s, rate) 的累计半径 (行)：GF_smooth 在 1/rate 分辨率上做两次 s/rate 窗口均值，
+// 降采样和放大各多用一个低分辨率行，共 rate * (s/rate + 2)；之后两次 s 窗口均值再加 s
+static int staticMinHalo(int s, int rate) {
+    return s + rate * (s / rate + 2);
+}
+
+// FULL：全分辨率 staticMin
+static const int FULL_HALO = alignUp(staticMinHalo(TRANS_WINDOW, TRANS_SAMPLING), STRIPE_ALIGN);
+// COARSE：半分辨率上的 staticMin，加导向滤波的两次 (2r+1) 窗口均值和放大用的一行，换算回全分辨率
+static const int COARSE_HALO = alignUp(
+        2 * (staticMinHalo(TRANS_WINDOW / 2, TRANS_SAMPLING / 2) + 2 * GUIDE_RADIUS + 1), STRIPE_ALIGN);
+
+static size_t matBytes(const Mat &m) {
+    return m.empty() ? 0 : m.total() * m.elemSize();
+}
+
+void FastDehazer::load(const Mat &rgb8) {
+    size = rgb8.size();
+    split(rgb8, in8);
+    for (int c = 0; c < 3; c++) in8[c].convertTo(in[c], CV_32F);
+}
+
+void FastDehazer::estimateAirlight(int patchSize, Airlight &out) {
+    int gridCols = (size.width + patchSize - 1) / patchSize;
+    int gridRows = (size.height + patchSize - 1) / patchSize;
+    Size loSize((size.width + AIR_SCALE - 1) / AIR_SCALE, (size.height + AIR_SCALE - 1) / AIR_SCALE);
+
+    // 低分辨率像素 -> patch 下标
+    std::vector<int> colBlock(loSize.width);
+    for (int x = 0; x < loSize.width; x++) colBlock[x] = std::min(x * AIR_SCALE / patchSize, gridCols - 1);
+
+    // 参考实现的核大小是 2*patch+1，sigma 按 OpenCV 的默认公式由核大小推出；这里按比例缩小
+    double sigma = 0.3 * (patchSize - 1) + 0.8;
+    int kernel = 2 * std::max(1, patchSize / AIR_SCALE) + 1;
+
+    for (int c = 0; c < 3; c++) {
+        // 每个 patch 的最大值 (在 8 位通道上取，结果与 float 相同但快得多)
+        grid.create(gridRows, gridCols, CV_32F);
+        for (int gy = 0; gy < gridRows; gy++) {
+            float *g = grid.ptr<float>(gy);
+            for (int gx = 0; gx < gridCols; gx++) {
+                int x = gx * patchSize, y = gy * patchSize;
+                Rect roi(x, y, std::min(patchSize, size.width - x), std::min(patchSize, size.height - y));
+                double maxVal;
+                minMaxLoc(in8[c](roi), nullptr, &maxVal);
+                g[gx] = (float) maxVal;
+            }
+        }
+
+        // 展开成分块常数图后平滑，缓解块效应
+        Mat &map = out.maps[c];
+        map.create(loSize, CV_32F);
+        for (int y = 0; y < loSize.height; y++) {
+            const float *g = grid.ptr<float>(std::min(y * AIR_SCALE / patchSize, gridRows - 1));
+            float *m = map.ptr<float>(y);
+            for (int x = 0; x < loSize.width; x++) m[x] = g[colBlock[x]];
+        }
+        GaussianBlur(map, map, Size(kernel, kernel), sigma / AIR_SCALE);
+    }
+}
+
+void FastDehazer::upsampleAirlight(const Airlight &air) {
+    double sum = 0;
+    for (int c = 0; c < 3; c++) {
+        resize(air.maps[c], aUp[c], size, 0, 0, INTER_LINEAR);
+        sum += mean(air.maps[c])[0];
+    }
+    double scale = 3 * 255 / sum;
+    eeps = (float) (scale * scale * TRANS_EPS);
+}
+
+// 处理高度能被条带对齐整除时才分条带，条带至少 halo 行高 (多算的行不超过条带本身的两倍)
+int FastDehazer::planStripes(int halo) const {
+    if (size.height % STRIPE_ALIGN != 0) return 1;
+    return std::max(1, std::min(getNumThreads(), size.height / halo));
+}
+
+// 归一化暗通道 im = min(R/A_r, G/A_g, B/A_b)，只算 rows 这些行
+void FastDehazer::darkChannel(const Range &rows, Scratch &s) {
+    divide(in[0].rowRange(rows), aUp[0].rowRange(rows), s.im);
+    divide(in[1].rowRange(rows), aUp[1].rowRange(rows), s.work1);
+    cv::min(s.im, s.work1, s.im);
+    divide(in[2].rowRange(rows), aUp[2].rowRange(rows), s.work1);
+    cv::min(s.im, s.work1, s.im);
+}
+
+// 参考实现的 GF_smooth：在 1/samplingRate 分辨率上做自引导滤波，系数放大回原尺寸
+void FastDehazer::guideSmooth(const Mat &src, int s, int samplingRate, Mat &dst, Mat &scratch, Scratch &w) {
+    Size loSize(src.cols / samplingRate, src.rows / samplingRate);
+    Size win(s / samplingRate, s / samplingRate);
+
+    resize(src, w.lo1, loSize);
+    blur(w.lo1, w.lo2, win);                // mean_I
+    multiply(w.lo1, w.lo1, w.lo3);
+    blur(w.lo3, w.lo3, win);
+    multiply(w.lo2, w.lo2, w.lo4);
+    subtract(w.lo3, w.lo4, w.lo3);          // var_I
+    add(w.lo3, Scalar::all(eeps), w.lo4);
+    divide(w.lo3, w.lo4, w.loA);            // a = var / (var + eps)
+    multiply(w.loA, w.lo2, w.lo4);
+    subtract(w.lo2, w.lo4, w.loB);          // b = mean - a * mean
+    blur(w.loA, w.loA, win);
+    blur(w.loB, w.loB, win);
+
+    resize(w.loA, dst, src.size());
+    multiply(dst, src, dst);
+    resize(w.loB, scratch, src.size());
+    add(dst, scratch, dst);
+}
+
+// 参考实现的 staticMin + 透射率公式：t = clamp(1 - omega * (mean - alpha * std), 0.001, 1)
+void FastDehazer::staticMin(const Mat &src, int s, int samplingRate, Mat &t, Mat &scratch1, Mat &scratch2,
+                            Scratch &w) {
+    guideSmooth(src, s, samplingRate, scratch1, scratch2, w);
+    subtract(src, scratch1, scratch2);
+    multiply(scratch2, scratch2, scratch2);
+    blur(scratch2, scratch2, Size(s, s));
+    blur(scratch2, scratch2, Size(s, s));
+    sqrt(scratch2, scratch2);
+    scaleAdd(scratch2, -TRANS_ALPHA, scratch1, scratch1);
+    scratch1.convertTo(t, CV_32F, -TRANS_OMEGA, 1.0);
+    cv::max(t, TRANS_MIN, t);
+    cv::min(t, 1.0, t);
+}
+
+void FastDehazer::transmissionFull(Scratch &s) {
+    staticMin(s.im, TRANS_WINDOW, TRANS_SAMPLING, s.t, s.work1, s.work2, s);
+}
+
+// 在半分辨率上估计透射率 (窗口和降采样倍率减半，GF 仍落在同一个 1/4 网格上)，
+// 再以全分辨率暗通道为引导做快速导向滤波上采样，边缘对齐到原图
+void FastDehazer::transmissionCoarse(Scratch &s) {
+    Size full = s.im.size();
+    Size half(full.width / 2, full.height / 2);
+    resize(s.im, s.halfIm, half, 0, 0, INTER_AREA);
+    staticMin(s.halfIm, TRANS_WINDOW / 2, TRANS_SAMPLING / 2, s.halfT, s.halfW1, s.halfW2, s);
+
+    Size win(2 * GUIDE_RADIUS + 1, 2 * GUIDE_RADIUS + 1);
+    blur(s.halfIm, s.gMeanI, win);
+    blur(s.halfT, s.gMeanP, win);
+    multiply(s.halfIm, s.halfT, s.gCov);
+    blur(s.gCov, s.gCov, win);
+    multiply(s.gMeanI, s.gMeanP, s.halfW1);
+    subtract(s.gCov, s.halfW1, s.gCov);     // cov(I, p)
+    multiply(s.halfIm, s.halfIm, s.gVar);
+    blur(s.gVar, s.gVar, win);
+    multiply(s.gMeanI, s.gMeanI, s.halfW1);
+    subtract(s.gVar, s.halfW1, s.gVar);     // var(I)
+
+    add(s.gVar, Scalar::all(GUIDE_EPS), s.gVar);
+    divide(s.gCov, s.gVar, s.halfW1);       // a
+    multiply(s.halfW1, s.gMeanI, s.halfW2);
+    subtract(s.gMeanP, s.halfW2, s.halfW2); // b
+    blur(s.halfW1, s.halfW1, win);
+    blur(s.halfW2, s.halfW2, win);
+
+    resize(s.halfW1, s.work1, full);
+    resize(s.halfW2, s.work2, full);
+    multiply(s.work1, s.im, s.t);
+    add(s.t, s.work2, s.t);
+    cv::max(s.t, TRANS_MIN, s.t);
+    cv::min(s.t, 1.0, s.t);
+}
+
+// 在 ext 行上估计透射率，只恢复并写出 core 行 (整帧串行时两者相同)，返回透射率部分的耗时
+int64_t FastDehazer::processStripe(const Range &core, const Range &ext, Scratch &s, bool coarse, float weight,
+                                   bool first) {
+    int64_t start = stageNowNanos();
+    darkChannel(ext, s);
+    if (coarse) {
+        transmissionCoarse(s);
+    } else {
+        transmissionFull(s);
+    }
+    int64_t transNanos = stageNowNanos() - start;
+
+    // J = (I - A) / t + A
+    Range local(core.start - ext.start, core.end - ext.start);
+    Mat t = s.t.rowRange(local);
+    Mat work = s.work1.rowRange(local);
+    for (int c = 0; c < 3; c++) {
+        Mat a = aUp[c].rowRange(core);
+        Mat dst = out[c].rowRange(core);
+        subtract(in[c].rowRange(core), a, work);
+        divide(work, t, work);
+        add(work, a, work);
+        if (first) {
+            work.convertTo(dst, CV_32F, weight);
+        } else {
+            scaleAdd(work, weight, dst, dst);
+        }
+    }
+    return transNanos;
+}
+
+int64_t FastDehazer::accumulate(const Airlight &air, bool coarseTransmission, float weight, bool first) {
+    int64_t start = stageNowNanos();
+    upsampleAirlight(air);
+    int64_t upsampleNanos = stageNowNanos() - start;
+    for (int c = 0; c < 3; c++) out[c].create(size, CV_32F);
+
+    int halo = coarseTransmission ? COARSE_HALO : FULL_HALO;
+    int stripes = planStripes(halo);
+    if (scratch.size() < (size_t) stripes) scratch.resize(stripes);
+    lastStripes = stripes;
+    if (stripes == 1) {
+        Range all(0, size.height);
+        return upsampleNanos + processStripe(all, all, scratch[0], coarseTransmission, weight, first);
+    }
+
+    int step = alignUp((size.height + stripes - 1) / stripes, STRIPE_ALIGN);
+    stripeNanos.assign(stripes, 0);
+    parallel_for_(Range(0, stripes), [&](const Range &range) {
+        for (int i = range.start; i < range.end; i++) {
+            Range core(std::min(size.height, i * step), std::min(size.height, (i + 1) * step));
+            if (core.empty()) continue;
+            Range ext(std::max(0, core.start - halo), std::min(size.height, core.end + halo));
+            stripeNanos[i] = processStripe(core, ext, scratch[i], coarseTransmission, weight, first);
+        }
+    }, stripes);
+    // 条带同时进行，透射率部分按最慢的条带计
+    return upsampleNanos + *std::max_element(stripeNanos.begin(), stripeNanos.end());
+}
+
+void FastDehazer::finish(Mat &out8Image, const Size &outSize) {
+    for (int c = 0; c < 3; c++) out[c].convertTo(out8[c], CV_8U);
+    merge(out8, 3, merged);
+    if (outSize == size) {
+        merged.copyTo(out8Image);
+    } else {
+        resize(merged, out8Image, outSize);
+    }
+}
+
+size_t FastDehazer::Scratch::bytes() const {
+    return matBytes(im) + matBytes(t) + matBytes(work1) + matBytes(work2)
+           + matBytes(lo1) + matBytes(lo2) + matBytes(lo3) + matBytes(lo4) + matBytes(loA) + matBytes(loB)
+           + matBytes(halfIm) + matBytes(halfT) + matBytes(halfW1) + matBytes(halfW2)
+           + matBytes(gMeanI) + matBytes(gMeanP) + matBytes(gCov) + matBytes(gVar);
+}
+
+size_t FastDehazer::bufferBytes() const {
+    size_t bytes = matBytes(merged) + matBytes(grid);
+    for (int c = 0; c < 3; c++) {
+        bytes += matBytes(in8[c]) + matBytes(in[c]) + matBytes(aUp[c]) + matBytes(out[c]) + matBytes(out8[c]);
+    }
+    for (const Scratch &s : scratch) bytes += s.bytes();
+    return bytes;
+}
+
+void FastDehazer::release() {
+    *this = FastDehazer();
+}
@@ -0,0 +1,172 @@
+#ifndef GLASSPRO_DEHAZE_FAST_H
+#define GLASSPRO_DEHAZE_FAST_H
+
+#include <atomic>
+#include <cstddef>
+#include <cstdint>
+#include <functional>
+#include <vector>
+#include <opencv2/core/core.hpp>
+#include "stage_timer.h"
+
+// 去雾质量档位，数值与 NativeProcessor.DEHAZE_TIER_* 对应
+enum DehazeTier {
+    DEHAZE_TIER_REFERENCE = 0,  // 原始 CV_64F 实现，作为精度基准
+    DEHAZE_TIER_FULL = 1,       // float32：双尺度大气光 + 全分辨率透射率 + 融合
+    DEHAZE_TIER_COARSE = 2,     // float32：双尺度，透射率在半分辨率估计后用导向滤波上采样
+    DEHAZE_TIER_SINGLE = 3,     // float32：只用小 patch 一个尺度，透射率同 COARSE，无融合
+    DEHAZE_TIER_COUNT
+};
+
+// 单精度去雾引擎。
+// 与参考实现的算法相同，区别在于：
+//  1. 全部用 CV_32F，内存和带宽减半，NEON 一次处理的像素数翻倍；
+//  2. 所有全分辨率工作缓冲都是成员变量，尺寸不变时跨帧复用，不再每帧分配几十 MB；
+//  3. 大气光图在 1/4 分辨率上平滑和保存，用到时再双线性放大；
+//  4. 两个尺度的拉普拉斯金字塔融合权重都是 0.5，而金字塔分解和重建都是线性的，
+//     重建结果恰好等于两幅图的平均，所以直接逐像素累加，省掉整个金字塔；
+//  5. 暗通道、透射率和恢复按水平条带并行 (cv::parallel_for_)。每个条带向上下各多算 halo 行，
+//     halo 不小于整条透射率计算链 (两次 s 窗口均值 + 降采样上的导向滤波) 的累计半径，
+//     条带边界处的边界填充影响不到本条带输出的行，结果与整帧串行计算相同。
+//     条带边界对齐到降采样倍率，处理高度不是其倍数或只有一个线程时整帧串行。
+class FastDehazer {
+public:
+    // 一个 patch 尺度的大气光，每个通道一张 1/4 分辨率的图，通道顺序与输入相同
+    struct Airlight {
+        cv::Mat maps[3];
+    };
+
+    // rgb8: 已缩小到处理分辨率的 CV_8UC3，拆成 float 通道保存
+    void load(const cv::Mat &rgb8);
+
+    // 基于当前 load 的帧估计大气光
+    void estimateAirlight(int patchSize, Airlight &out);
+
+    // 把一个尺度的去雾结果按 weight 累加到输出；first 为 true 时覆盖之前的结果。
+    // 透射率估计和去雾恢复分开计时，返回值为透射率部分的耗时 (纳秒，并行时取最慢的条带)
+    int64_t accumulate(const Airlight &air, bool coarseTransmission, float weight, bool first);
+
+    // 输出 CV_8UC3，尺寸为 outSize
+    void finish(cv::Mat &out8, const cv::Size &outSize);
+
+    // 所有工作缓冲占用的字节数
+    size_t bufferBytes() const;
+
+    // 最近一次 accumulate 使用的条带数
+    int stripeCount() const { return lastStripes; }
+
+    void release();
+
+private:
+    // 一个条带的透射率工作缓冲 (尺寸为条带加上下 halo)，每个条带各一份
+    struct Scratch {
+        cv::Mat im, t;              // 归一化暗通道、透射率
+        cv::Mat work1, work2;       // 条带分辨率临时缓冲
+        cv::Mat lo1, lo2, lo3, lo4, loA, loB;
+        cv::Mat halfIm, halfT, halfW1, halfW2;
+        cv::Mat gMeanI, gMeanP, gCov, gVar;
+        size_t bytes() const;
+    };
+
+    void upsampleAirlight(const Airlight &air);
+    int planStripes(int halo) const;
+    int64_t processStripe(const cv::Range &core, const cv::Range &ext, Scratch &s, bool coarse, float weight,
+                          bool first);
+    void darkChannel(const cv::Range &rows, Scratch &s);
+    void transmissionFull(Scratch &s);
+    void transmissionCoarse(Scratch &s);
+    void guideSmooth(const cv::Mat &src, int s, int samplingRate, cv::Mat &dst, cv::Mat &scratch, Scratch &w);
+    void staticMin(const cv::Mat &src, int s, int samplingRate, cv::Mat &t, cv::Mat &scratch1, cv::Mat &scratch2,
+                   Scratch &w);
+
+    cv::Size size;
+    cv::Mat in8[3], in[3];      // 输入通道 (0~255)
+    cv::Mat aUp[3];             // 当前尺度放大后的大气光
+    cv::Mat out[3], out8[3];    // 累加结果
+    cv::Mat merged;
+    float eeps = 0;
+    std::vector<Scratch> scratch;       // scratch[0] 兼作整帧串行的工作缓冲
+    std::vector<int64_t> stripeNanos;
+    int lastStripes = 1;
+    cv::Mat grid;
+};
+
+// 子阶段计时，下标与 LatencyProfiler.DEHAZE_STAGES 对应
+enum DehazeStage { DEHAZE_AIRLIGHT, DEHAZE_TRANSMISSION, DEHAZE_RECOVER, DEHAZE_FUSION, DEHAZE_STAGE_COUNT };
+
+// ---------- 流式去雾：跨帧复用大气光 ----------
+// 视频里大气光几乎不随帧变化，而 est_air_patchwise 的大核高斯平滑是最贵的一步。
+// 流式模式下只在每 refreshInterval 帧或检测到场景切换时重新估计，
+// 定期刷新的结果与缓存按 AIRLIGHT_BLEND 做时间滤波，场景切换时直接替换。
+// 两种引擎的大气光图类型和分辨率不同，缓存记录是由哪个引擎估计的，换引擎时整体重来。
+struct AirlightCache {
+    FastDehazer::Airlight small;   // 小 patch 的大气光图，通道顺序与输入相同
+    FastDehazer::Airlight large;   // 大 patch 的大气光图 (SINGLE 档位不需要)
+    cv::Mat thumb;       // 上次刷新时的缩略灰度图，用于场景切换检测
+    cv::Size frameSize;
+    int patchSmall = 0;
+    int patchLarge = 0;
+    int framesSinceRefresh = 0;
+    bool fastEngine = false;
+    bool hasLarge = false;
+    bool valid = false;
+};
+
+// 一路视频流的去雾器：质量参数、float32 引擎的工作缓冲、大气光缓存和子阶段计时都是成员，
+// 不同实例可以在不同线程上同时处理。同一个实例只在一个处理线程上调用，
+// 只有 requestCacheReset 可以从其他线程调用。
+class Dehazer {
+public:
+    // rgb 为 CV_8UC3 (处理过程中会被改写)，out 为同尺寸的 CV_8UC3
+    void process(cv::Mat &rgb, cv::Mat &out, int tier);
+
+    void setParams(double rate, int small, int large);
+    void setTier(int tier);
+    int tier() const { return dehazeTier; }
+    void setStreaming(bool enabled, int interval);
+    // 只置标志，由处理线程在下一帧清空
+    void requestCacheReset() { cacheResetRequested.store(true); }
+
+    // float32 引擎当前持有的工作缓冲字节数 (不含大气光缓存)
+    size_t workingBytes() const { return fastDehazer.bufferBytes(); }
+    // float32 引擎最近一帧分成的条带数 (1 为整帧串行)
+    int stripeCount() const { return fastDehazer.stripeCount(); }
+
+    StageTimes<DEHAZE_STAGE_COUNT> times;
+
+private:
+    typedef std::function<void(int patchSize, FastDehazer::Airlight &out)> AirlightEstimator;
+
+    void processFast(cv::Mat &rgb, cv::Mat &out, int tier);
+    void processReference(cv::Mat &image, cv::Mat &dehazedImage);
+    void updateAirlightCache(const cv::Mat &rgb, bool fastEngine, bool needLarge, const AirlightEstimator &estimate);
+
+    // 质量档位参数，由 FrameBudgetGovernor 通过 setDehazeParams 下发
+    double dehazeRate = 1.2;
+    int patchSmall = 20;
+    int patchLarge = 80;
+    // 去雾档位，默认走 float32 的完整档位；REFERENCE 保留原始 CV_64F 实现
+    int dehazeTier = DEHAZE_TIER_FULL;
+
+    FastDehazer fastDehazer;
+    FastDehazer::Airlight fastAirSmall, fastAirLarge;
+    cv::Mat smallFrame;
+
+    AirlightCache airCache;
+    bool streamingEnabled = false;
+    int refreshInterval = 10;
+    std::atomic<bool> cacheResetRequested{false};
+};
+
+// ---------- dehaze 库的 C++ 入口 (实现在 dehaze.cpp) ----------
+// JNI 的静态接口和主机端的档位对比工具共用的默认实例。
+// 档位参数 (缩放、patch、流式) 沿用 JNI 设置的当前值。
+Dehazer &defaultDehazer();
+
+// 用默认实例处理一帧，等价于 defaultDehazer().process(rgb, out, tier)
+void dehazeRgbFrame(cv::Mat &rgb, cv::Mat &out, int tier);
+
+// 默认实例的 float32 引擎当前持有的工作缓冲字节数 (不含大气光缓存)
+size_t dehazeWorkingBytes();
+
+#endif //GLASSPRO_DEHAZE_FAST_H
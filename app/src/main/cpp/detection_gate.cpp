@@ -0,0 +1,116 @@
+#include "detection_gate.h"
+#include <algorithm>
+#include <opencv2/imgproc/imgproc.hpp>
+
+using namespace cv;
+
+// 缩略图宽度 (高度按原图比例)
+static const int THUMB_WIDTH = 80;
+// 格子灰度差超过它算变化
+static const int CELL_THRESHOLD = 24;
+// 变化格子占比低于 SKIP_FRACTION 跳过推理，高于 FULL_FRACTION 整帧推理
+static const double SKIP_FRACTION = 0.004;
+static const double FULL_FRACTION = 0.3;
+// 最多连续门控这么多次就整帧推理一次，防止漏掉阈值以下的慢变化和新出现的静止目标
+static const int MAX_GATED_CALLS = 10;
+// 裁剪区域：变化区域外扩 1.5 倍的正方形，边长不小于短边的 35% (太小的裁剪放大到网络输入后误检增多)
+static const int MAX_ROIS = 2;
+static const double ROI_PAD = 1.5;
+static const double MIN_ROI_FRACTION = 0.35;
+// 裁剪总面积超过整帧的这个比例时，不如直接整帧推理
+static const double MAX_ROI_AREA_FRACTION = 0.6;
+
+void DetectionGate::reset() {
+    reference.release();
+    gatedCalls = 0;
+}
+
+Rect DetectionGate::toThumb(const Rect &r) const {
+    Rect t(cvFloor(r.x / scale), cvFloor(r.y / scale),
+           cvCeil(r.width / scale) + 1, cvCeil(r.height / scale) + 1);
+    return t & Rect(0, 0, thumb.cols, thumb.rows);
+}
+
+// 以 box 中心为中心、外扩后的正方形，平移到图内并裁到图像范围
+static Rect squareAround(const Rect &box, const Size &size) {
+    int shortSide = std::min(size.width, size.height);
+    int side = (int) (std::max(box.width, box.height) * ROI_PAD);
+    side = std::min(std::max(side, (int) (shortSide * MIN_ROI_FRACTION)), shortSide);
+    int cx = box.x + box.width / 2;
+    int cy = box.y + box.height / 2;
+    int x = std::min(std::max(cx - side / 2, 0), size.width - side);
+    int y = std::min(std::max(cy - side / 2, 0), size.height - side);
+    return Rect(x, y, side, side);
+}
+
+GateDecision DetectionGate::evaluate(const Mat &frame, std::vector<Rect> &rois) {
+    rois.clear();
+    if (frame.size() != frameSize) {
+        frameSize = frame.size();
+        scale = (double) frameSize.width / THUMB_WIDTH;
+        reset();
+    }
+
+    // 1. 缩略图：先缩小再转灰度
+    Size thumbSize(THUMB_WIDTH, std::max(1, cvRound(frameSize.height / scale)));
+    resize(frame, thumbColor, thumbSize, 0, 0, INTER_AREA);
+    cvtColor(thumbColor, thumb, frame.channels() == 4 ? COLOR_RGBA2GRAY : COLOR_BGR2GRAY);
+    if (reference.empty() || gatedCalls >= MAX_GATED_CALLS) return GATE_FULL;
+
+    // 2. 与参考缩略图比较
+    absdiff(thumb, reference, diff);
+    threshold(diff, mask, CELL_THRESHOLD, 255, THRESH_BINARY);
+    double changed = (double) countNonZero(mask) / (double) mask.total();
+    if (changed < SKIP_FRACTION) return GATE_SKIP;
+    if (changed > FULL_FRACTION) return GATE_FULL;
+
+    // 3. 变化区域 -> 原图坐标的裁剪。连通域多于 MAX_ROIS 个时合并成一个外接框
+    dilate(mask, mask, Mat());
+    int n = connectedComponentsWithStats(mask, labels, stats, centroids, 8, CV_32S);
+    std::vector<Rect> boxes;
+    for (int i = 1; i < n; i++) {
+        boxes.emplace_back(stats.at<int>(i, CC_STAT_LEFT), stats.at<int>(i, CC_STAT_TOP),
+                           stats.at<int>(i, CC_STAT_WIDTH), stats.at<int>(i, CC_STAT_HEIGHT));
+    }
+    if ((int) boxes.size() > MAX_ROIS) {
+        Rect all = boxes[0];
+        for (const Rect &b : boxes) all |= b;
+        boxes.assign(1, all);
+    }
+    for (const Rect &b : boxes) {
+        Rect full(cvFloor(b.x * scale), cvFloor(b.y * scale), cvCeil(b.width * scale), cvCeil(b.height * scale));
+        rois.push_back(squareAround(full, frameSize));
+    }
+    // 两个裁剪重叠时合并，避免同一个目标被推理两次
+    if (rois.size() == 2 && (rois[0] & rois[1]).area() > 0) {
+        Rect merged = rois[0] | rois[1];
+        rois.assign(1, merged);
+    }
+
+    double area = 0;
+    for (const Rect &r : rois) area += r.area();
+    if (area > MAX_ROI_AREA_FRACTION * frameSize.area()) {
+        rois.clear();
+        return GATE_FULL;
+    }
+    return GATE_ROI;
+}
+
+void DetectionGate::commit(GateDecision decision, const std::vector<Rect> &rois) {
+    switch (decision) {
+        case GATE_FULL:
+            thumb.copyTo(reference);
+            gatedCalls = 0;
+            break;
+        case GATE_ROI:
+            for (const Rect &r : rois) {
+                Rect t = toThumb(r);
+                thumb(t).copyTo(reference(t));
+            }
+            gatedCalls++;
+            break;
+        case GATE_SKIP:
+            gatedCalls++;
+            break;
+    }
+}
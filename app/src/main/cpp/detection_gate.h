@@ -0,0 +1,37 @@
+#ifndef GLASSPRO_DETECTION_GATE_H
+#define GLASSPRO_DETECTION_GATE_H
+
+#include <vector>
+#include <opencv2/core/core.hpp>
+
+// 门控结果，数值与 NativeProcessor.GATE_* 对应
+enum GateDecision { GATE_FULL = 0, GATE_ROI = 1, GATE_SKIP = 2 };
+
+// 推理前的变化门控，每个检测器一个实例 (只在推理线程上使用)。
+// 把每帧缩成约 80 像素宽的灰度缩略图，与上次推理时的参考缩略图逐格比较：
+//  1. 变化的格子极少：场景没变，跳过前向传播，沿用上次的检测结果；
+//  2. 变化集中在局部：只在变化区域外扩出的正方形裁剪上推理，其余区域沿用上次结果；
+//  3. 大面积变化 (转头、曝光变化) 或已连续门控太多次：整帧推理。
+// 参考缩略图只在真正推理过的区域上更新，缓慢的变化会累积到阈值而不会被逐帧吸收。
+class DetectionGate {
+public:
+    // frame: BGR 或 RGBA。ROI 模式时 rois 为原图坐标的裁剪区域
+    GateDecision evaluate(const cv::Mat &frame, std::vector<cv::Rect> &rois);
+
+    // 推理完成后调用，把推理过的区域写入参考缩略图
+    void commit(GateDecision decision, const std::vector<cv::Rect> &rois);
+
+    // 丢弃参考缩略图，下一帧整帧推理
+    void reset();
+
+private:
+    cv::Rect toThumb(const cv::Rect &r) const;
+
+    cv::Size frameSize;
+    double scale = 1;             // 原图 / 缩略图
+    int gatedCalls = 0;           // 上次整帧推理后经过的门控次数
+    cv::Mat thumbColor, thumb, reference;
+    cv::Mat diff, mask, labels, stats, centroids;
+};
+
+#endif //GLASSPRO_DETECTION_GATE_H
@@ -1,12 +1,11 @@
 #include "enhance.h"
 #include <opencv2/opencv.hpp>
-// Parameters for pyraimids
-int levels = 3;
-int height;
-int width;
-// Parameters for Lucas Kanade Optical Flow
-TermCriteria termcrit(TermCriteria::COUNT | TermCriteria::EPS, 10, 0.03);
-Size winsize = Size(16, 16);
+
+// 不带句柄的 JNI 接口共用的实例
+Enhancer& defaultEnhancer() {
+    static Enhancer enhancer;
+    return enhancer;
+}
 
 // Parameters for CLAHE
 void setClaheParams(Ptr<CLAHE> clahePtr, const Mat& inputImage) {
@@ -60,7 +59,7 @@ Mat interpolation(const Mat& p_c, const Mat& dis, double noise_level, double c_n
 Mat laplacianPyramidFusion(const vector<Mat>& pyramid1, const vector<Mat>& pyramid2) {
     vector<Mat> fusedPyramid;
     Mat p1, p2, dis, fused;
-    for (size_t i = 0; i < levels; ++i) {
+    for (size_t i = 0; i < pyramid1.size(); ++i) {
         p1 = pyramid1[i];
         p2 = pyramid2[i];
         absdiff(p1, p2, dis);
@@ -97,82 +96,97 @@ Mat hsv_clahe(Mat& frame, const cv::Ptr<cv::CLAHE>& clahe) {
     return result;
 }
 
-Mat processFrame(Mat& frame1, Mat& frame2, double noise_level, int levels) {
-
-    double rate = 1;
-    resize(frame1, frame1, Size(frame1.cols / rate, frame1.rows / rate));
-    resize(frame2, frame2, Size(frame2.cols / rate, frame2.rows / rate));
-
-    cvtColor(frame1, frame1, COLOR_RGBA2RGB);
-    cvtColor(frame2, frame2, COLOR_RGBA2RGB);
+// 把原分辨率上的单应矩阵换算到金字塔第 level 层 (每层边长减半)：H_i = D * H * D^-1，D = diag(s, s, 1)
+static Mat levelHomography(const Mat& H, int level) {
+    double s = 1.0 / (1 << level);
+    Mat D = (Mat_<double>(3, 3) << s, 0, 0, 0, s, 0, 0, 0, 1);
+    Mat DInv = (Mat_<double>(3, 3) << 1 / s, 0, 0, 0, 1 / s, 0, 0, 0, 1);
+    return D * H * DInv;
+}
 
-    Ptr<CLAHE> clahe = createCLAHE();
-    setClaheParams(clahe, frame2);
-    frame2 = hsv_clahe(frame2, clahe);
+Mat Enhancer::processFrame(FrameContext& ctx, const Size& outSize) {
+    int64_t alignStart = stageNowNanos();
+    // 对齐阶段有多个提前返回的出口，统一在这里记时
+    auto endAlign = [&]() { times.add(ENHANCE_ALIGN, stageNowNanos() - alignStart); };
+
+    const Mat& frame1 = ctx.prevRgb();
+    // ctx 里的 RGB 下一帧还要当上一帧用，CLAHE 输出到单独的缓冲
+    fusionClahe.apply(ctx.rgb(), claheFrame);
+    Mat frame2 = claheFrame;
+
+    // 帧间单应矩阵由上下文在原分辨率上只估计一次 (稳像同一帧已算过的角点和光流直接复用)，
+    // 再按比例换算到每一层，不再逐层重复 goodFeaturesToTrack + LK + findHomography
+    const Mat& H = frame1.empty() ? frame1 : ctx.homography();
+    if (H.empty()) {
+        __android_log_print(ANDROID_LOG_ERROR, "OpenCV", "findHomography failed, H is empty");
+        resize(frame2, frame2, outSize);
+        endAlign();
+        return frame2;
+    }
 
     vector<Mat> pyramidPrev = buildGaussianPyramid(frame1, levels);
-    vector<Mat> lapPrev = buildLaplacianPyramid(pyramidPrev);
+    vector<Mat> lapPrev = buildLaplacianPyramid(pyramidPrev, levels);
 
     vector<Mat> pyramidCurrent = buildGaussianPyramid(frame2, levels);
-    vector<Mat> lapCurrent = buildLaplacianPyramid(pyramidCurrent);
+    vector<Mat> lapCurrent = buildLaplacianPyramid(pyramidCurrent, levels);
 
-    __android_log_print(ANDROID_LOG_INFO, "OpenCV", "Start enhancing1");
-    // 在每一层上应用光流
+    // 在每一层上应用变换
     for (int i = levels - 1; i >= 0; --i) {
-        cv::Mat src, target;
-        cvtColor(pyramidPrev[i], src, COLOR_BGR2GRAY);
-        cvtColor(pyramidCurrent[i], target, COLOR_BGR2GRAY);
-        std::vector<cv::Point2f> src_points, target_points;
-        cv::goodFeaturesToTrack(src, src_points, 100, 0.3, 7, cv::Mat());
-
-        std::vector<uchar> status;
-        std::vector<float> err;
-
-        if (src_points.empty()) {
-            // 安全退出或返回原图，防止崩溃
-            resize(frame2, frame2, Size(width, height));
-            return frame2;
-        }
-
-        calcOpticalFlowPyrLK(src, target, src_points, target_points, status, err, winsize, 3, termcrit, 0);
-
-        // 过滤掉未成功追踪的点
-        std::vector<cv::Point2f> good_src_points, good_target_points;
-        for (size_t i = 0; i < src_points.size(); i++) {
-            if (status[i]) {
-                good_src_points.push_back(src_points[i]);
-                good_target_points.push_back(target_points[i]);
-            }
-        }
-        if (good_target_points.size()<4){
-            resize(frame2, frame2, Size(width, height));
-            return frame2;
-        }
-
-        // 计算变换矩阵
-        cv::Mat H = cv::findHomography(good_src_points, good_target_points, cv::RANSAC);
         Mat aligned;
-
-        if (H.empty()) {
-            __android_log_print(ANDROID_LOG_ERROR, "OpenCV", "findHomography failed, H is empty at level %d", i);
-            resize(frame2, frame2, Size(width, height));
-            return frame2;
-        }
-
-        // 应用变换矩阵
-        cv::warpPerspective(lapPrev[i], aligned, H, lapPrev[i].size());
+        cv::warpPerspective(lapPrev[i], aligned, levelHomography(H, i), lapPrev[i].size());
         lapPrev[i] = aligned;
     }
 
+    endAlign();
+
+    ScopedStage<ENHANCE_STAGE_COUNT> timer(times, ENHANCE_FUSION);
     Mat resFrame = laplacianPyramidFusion(lapCurrent, lapPrev);
 
-    resize(resFrame, resFrame, Size(width, height));
-    frame1.release();
-    frame2.release();
-    __android_log_print(ANDROID_LOG_INFO, "OpenCV", "Ending");
+    resize(resFrame, resFrame, outSize);
     return resFrame;
 }
 
+void Enhancer::enhance(Mat& frame1, Mat& frame2, Mat& image, double noise_level) {
+    // 两帧接口：先后绑定到同一个上下文，上一帧预先算好 RGB 和灰度
+    pairContext.begin(frame1);
+    pairContext.rgb();
+    pairContext.gray();
+    pairContext.begin(frame2);
+    times.reset();
+    image = processFrame(pairContext, image.size());
+    denoise(image, noise_level);
+}
+
+bool Enhancer::enhance(FrameContext& ctx, Mat& image, double noise_level) {
+    if (ctx.prevRgb().empty()) {
+        ctx.rgb();
+        ctx.pyramid();
+        return false;
+    }
+    times.reset();
+    image = processFrame(ctx, image.size());
+    denoise(image, noise_level);
+    return true;
+}
+
+void Enhancer::setParams(int pyramidLevels, double scale) {
+    levels = pyramidLevels < 1 ? 1 : pyramidLevels;
+    msrcrScale = scale <= 0 ? 1.0 : scale;
+}
+
+// 空域去噪（双边滤波）
+void Enhancer::denoise(Mat& image, double noise_level) {
+    ScopedStage<ENHANCE_STAGE_COUNT> timer(times, ENHANCE_DENOISE);
+    cv::Mat temp;
+    cv::bilateralFilter(image, temp,
+                        9,
+                        noise_level * 50,
+                        noise_level * 50);
+
+    // 将结果拷贝回原始图像
+    temp.copyTo(image);
+}
+
 
 // JNI 函数
 extern "C" {
@@ -184,29 +198,29 @@ Mat frame1 = *(Mat *) matAddr1;
 Mat frame2 = *(Mat *) matAddr2;
 
 Mat &image = *(Mat *) matAddr2;
-width = image.cols;
-height = image.rows;
 
 // 调用 processFrame 算法
-image = processFrame(frame1, frame2, noise_level);
-// 空域去噪（双边滤波）
-cv::Mat temp;
-cv::bilateralFilter(image, temp,
-                        9,
-                        noise_level * 50,
-                        noise_level * 50);
+defaultEnhancer().enhance(frame1, frame2, image, noise_level);
+}
+}
 
-// 将结果拷贝回原始图像
-temp.copyTo(image);
+extern "C" {
+// 当前帧已经 begin 到 ctx，上一帧取自 ctx 缓存的 RGB；上一帧不可用时只为下一帧准备数据，返回 false
+JNIEXPORT jboolean JNICALL
+Java_com_example_glasspro_NativeProcessor_enhanceWithContext(JNIEnv *env, jclass clazz, jlong ctx_ptr,
+                                                             jlong matAddr, jdouble noise_level) {
+	if (ctx_ptr == 0) return JNI_FALSE;
+	FrameContext &ctx = *reinterpret_cast<FrameContext *>(ctx_ptr);
+	Mat &image = *(Mat *) matAddr;
+	return defaultEnhancer().enhance(ctx, image, noise_level) ? JNI_TRUE : JNI_FALSE;
 }
 }
-void clahe(Mat& image) {
+
+void Enhancer::clahe(Mat& image) {
 	if (image.empty()) return;
 
-	cvtColor(image, image, COLOR_RGBA2RGB);
-	Ptr<CLAHE> clahe = createCLAHE();
-	setClaheParams(clahe, image);
-	image = hsv_clahe(image, clahe);
+	// 只调整 V 通道的等效增益，RGBA 帧原地处理，不再做 RGBA->RGB->HSV->RGB 往返
+	claheEngine.apply(image, image);
 }
 
 //void clahe(Mat& image) {
@@ -229,7 +243,7 @@ Java_com_example_glasspro_NativeProcessor_enhanceByCLAHE
 		(JNIEnv *env, jclass clazz, jlong matAddr) {
 
 	Mat &image = *(Mat *) matAddr;
-	clahe(image);
+	defaultEnhancer().clahe(image);
 }
 }
 
@@ -346,14 +360,29 @@ void MSRCR(Mat& inputImage, double dynamic = 4.0, double alpha = 20.0, double be
 	cvtColor(rgbImage, inputImage, COLOR_RGB2BGR);  // 转回 BGR
 }
 
+// 预览用的 MSRCR 参数 (引擎的缓冲和高斯核在 Enhancer 里跨帧复用)
+static const vector<double> MSRCR_SCALES = {10, 20};
+static const double MSRCR_DYNAMIC = 1.2;
+
+void Enhancer::msrcr(Mat& image) {
+	// 用快速引擎处理，直接修改传入的 image (参考实现 MSRCR() 保留用于对比)
+	if (msrcrScale < 1.0) {
+		// 低档位：在缩小的图像上做多尺度高斯，再放大回原尺寸
+		resize(image, msrcrSmall, Size(), msrcrScale, msrcrScale, INTER_AREA);
+		msrcrEngine.process(msrcrSmall, MSRCR_SCALES, MSRCR_DYNAMIC);
+		resize(msrcrSmall, image, image.size(), 0, 0, INTER_LINEAR);
+	} else {
+		msrcrEngine.process(image, MSRCR_SCALES, MSRCR_DYNAMIC);
+	}
+}
+
 extern "C" {
 void JNICALL
 Java_com_example_glasspro_NativeProcessor_enhanceByMSRCR(JNIEnv *env, jclass clazz, jlong matAddr) {
 
 	// 获取传入的Mat图像
 	Mat &image = *(Mat *)matAddr;  // 通过类型转换获取图像引用
-	// 调用 MSRCR 函数，直接修改传入的 image
-	MSRCR(image,1.2,146,200);
+	defaultEnhancer().msrcr(image);
 
 	//	Ptr<CLAHE> clahe = createCLAHE();
 	//	setClaheParams(clahe, image);
@@ -361,3 +390,65 @@ Java_com_example_glasspro_NativeProcessor_enhanceByMSRCR(JNIEnv *env, jclass cla
 }
 }
 
+extern "C" {
+void JNICALL
+Java_com_example_glasspro_NativeProcessor_setEnhanceParams(JNIEnv *env, jclass clazz, jint pyramidLevels, jdouble scale) {
+	defaultEnhancer().setParams(pyramidLevels, scale);
+}
+}
+
+extern "C" {
+jlong JNICALL
+Java_com_example_glasspro_NativeProcessor_getEnhanceStageNanos(JNIEnv *env, jclass clazz, jint stage) {
+	return (jlong) defaultEnhancer().times.get(stage);
+}
+}
+
+// ---------- 句柄接口：每路视频流各自持有一个增强器 ----------
+static Enhancer *enhancerFrom(jlong ptr) {
+	return reinterpret_cast<Enhancer *>(ptr);
+}
+
+extern "C" {
+JNIEXPORT jlong JNICALL
+Java_com_example_glasspro_NativeProcessor_createEnhancer(JNIEnv *env, jclass clazz) {
+	return reinterpret_cast<jlong>(new Enhancer());
+}
+
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_releaseEnhancer(JNIEnv *env, jclass clazz, jlong enhancerPtr) {
+	delete enhancerFrom(enhancerPtr);
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_example_glasspro_NativeProcessor_runEnhancer(JNIEnv *env, jclass clazz, jlong enhancerPtr, jlong ctxPtr,
+                                                      jlong matAddr, jdouble noiseLevel) {
+	if (enhancerPtr == 0 || ctxPtr == 0) return JNI_FALSE;
+	FrameContext &ctx = *reinterpret_cast<FrameContext *>(ctxPtr);
+	Mat &image = *(Mat *) matAddr;
+	return enhancerFrom(enhancerPtr)->enhance(ctx, image, noiseLevel) ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_runClahe(JNIEnv *env, jclass clazz, jlong enhancerPtr, jlong matAddr) {
+	if (enhancerPtr != 0) enhancerFrom(enhancerPtr)->clahe(*(Mat *) matAddr);
+}
+
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_runMsrcr(JNIEnv *env, jclass clazz, jlong enhancerPtr, jlong matAddr) {
+	if (enhancerPtr != 0) enhancerFrom(enhancerPtr)->msrcr(*(Mat *) matAddr);
+}
+
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_setEnhancerParams(JNIEnv *env, jclass clazz, jlong enhancerPtr,
+                                                            jint pyramidLevels, jdouble scale) {
+	if (enhancerPtr != 0) enhancerFrom(enhancerPtr)->setParams(pyramidLevels, scale);
+}
+
+JNIEXPORT jlong JNICALL
+Java_com_example_glasspro_NativeProcessor_getEnhancerStageNanos(JNIEnv *env, jclass clazz, jlong enhancerPtr,
+                                                                jint stage) {
+	if (enhancerPtr == 0) return 0;
+	return (jlong) enhancerFrom(enhancerPtr)->times.get(stage);
+}
+}
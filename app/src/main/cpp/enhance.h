@@ -10,16 +10,14 @@
 #include <opencv2/imgproc/imgproc.hpp>
 #include <opencv2/highgui/highgui.hpp>
 #include <opencv2/opencv.hpp>
+#include "frame_context.h"
+#include "stage_timer.h"
+#include "msrcr_fast.h"
+#include "clahe_temporal.h"
 
 using namespace std;
 using namespace cv;
 
-// 定义参数
-
-extern int levels;
-extern TermCriteria termcrit;
-extern Size winsize;
-
 // 设置CLAHE参数
 void setClaheParams(Ptr<CLAHE> clahePtr, const Mat& inputImage);
 
@@ -38,10 +36,45 @@ Mat laplacianPyramidFusion(const vector<Mat>& pyramid1, const vector<Mat>& pyram
 // 对HSV颜色空间中的V通道应用CLAHE
 Mat hsv_clahe(Mat& frame, const cv::Ptr<cv::CLAHE>& clahe);
 
-// 处理帧
-Mat processFrame(Mat& frame1, Mat& frame2, double noise_level, int levels = 3);
+// 子阶段计时，下标与 LatencyProfiler.ENHANCE_STAGES 对应
+enum EnhanceStage { ENHANCE_ALIGN, ENHANCE_FUSION, ENHANCE_DENOISE, ENHANCE_STAGE_COUNT };
+
+// 一路视频流的增强器：多帧增强、CLAHE、MSRCR 三种模式跨帧保留的状态 (查找表、工作缓冲)、
+// 质量参数和子阶段计时都是成员，不同实例可以在不同线程上同时处理；同一个实例只在一个线程上使用。
+// 不带句柄的 JNI 接口共用一个默认实例。
+class Enhancer {
+public:
+    // 多帧增强：当前帧已经 begin 到 ctx，结果写回 image。上一帧不可用时只为下一帧准备数据，返回 false
+    bool enhance(FrameContext& ctx, Mat& image, double noise_level);
+
+    // 两帧接口 (frame1 为上一帧，两帧均为 RGBA)，结果写回 image
+    void enhance(Mat& frame1, Mat& frame2, Mat& image, double noise_level);
+
+    // RGBA 帧原地处理
+    void clahe(Mat& image);
+    void msrcr(Mat& image);
+
+    void setParams(int pyramidLevels, double scale);
+
+    StageTimes<ENHANCE_STAGE_COUNT> times;
+
+private:
+    // 处理 ctx 当前绑定的帧，上一帧的 RGB 和帧间单应矩阵从 ctx 中取
+    Mat processFrame(FrameContext& ctx, const Size& outSize);
+    void denoise(Mat& image, double noise_level);
+
+    int levels = 3;              // 金字塔层数
+    double msrcrScale = 1.0;     // MSRCR 的处理分辨率比例，<1 时先缩小处理再放大回原尺寸
+
+    TemporalClahe fusionClahe;   // 多帧增强模式的 CLAHE (查找表跨帧平滑)
+    Mat claheFrame;
+    FrameContext pairContext;    // 两帧接口用的上下文：先后绑定上一帧和当前帧
+    TemporalClahe claheEngine;   // CLAHE 模式
+    FastMsrcr msrcrEngine;       // MSRCR 模式 (缓冲和高斯核跨帧复用)
+    Mat msrcrSmall;
+};
 
-void clahe(Mat& image);
+Enhancer& defaultEnhancer();
 
 //// JNI 函数
 //extern "C" {
@@ -0,0 +1,233 @@
+#include "frame_context.h"
+#include <utility>
+#include <jni.h>
+#include <opencv2/calib3d.hpp>
+#include <opencv2/imgproc/imgproc.hpp>
+#include <opencv2/video/tracking.hpp>
+
+using namespace cv;
+
+// 角点与光流参数 (沿用稳像模块原来的取值，增强模块以前用的 100 点 / 0.3 质量对 RANSAC 来说偏少)
+static const int MAX_FEATURES = 200;
+static const double FEATURE_QUALITY = 0.01;
+static const double FEATURE_MIN_DISTANCE = 30;        // 原图像素，跟踪分辨率下按比例缩小
+static const Size LK_WINDOW(21, 21);
+static const int LK_MAX_LEVEL = 3;
+
+// 运动估计的处理宽度：720p 缩小一半、1080p 缩小到 1/3，更窄的帧不缩小
+static const int TRACK_WIDTH = 640;
+// 追踪下来的点少于这个数时在空白区域补检角点
+static const size_t MIN_TRACKED_FEATURES = MAX_FEATURES / 2;
+
+// 帧差运动检测的平滑核
+static const Size MOTION_BLUR(21, 21);
+
+// 估计变换至少需要的点对数 (单应矩阵需要 4 对)
+static const size_t MIN_MOTION_POINTS = 4;
+
+static const Mat EMPTY;
+
+void FrameContext::begin(const Mat &rgba) {
+    std::swap(cur, prev);
+    cur.ready = 0;
+    current = rgba;
+    hasPrev = bound;
+    bound = true;
+
+    flow.prevPoints.clear();
+    flow.currPoints.clear();
+    flow.valid = false;
+    derived = 0;
+    for (int &c : counts) c = 0;
+}
+
+void FrameContext::reset() {
+    hasPrev = false;
+    prev.ready = 0;
+}
+
+void FrameContext::markReady(Products &p, FrameProduct product) {
+    p.ready |= 1u << product;
+    counts[product]++;
+}
+
+const Mat &FrameContext::rgb() {
+    if (!cur.has(CTX_RGB)) {
+        cvtColor(current, cur.rgb, COLOR_RGBA2RGB);
+        markReady(cur, CTX_RGB);
+    }
+    return cur.rgb;
+}
+
+const Mat &FrameContext::gray() {
+    if (!cur.has(CTX_GRAY)) {
+        cvtColor(current, cur.gray, COLOR_RGBA2GRAY);
+        markReady(cur, CTX_GRAY);
+    }
+    return cur.gray;
+}
+
+const Mat &FrameContext::blurredGray() {
+    if (!cur.has(CTX_BLURRED_GRAY)) {
+        GaussianBlur(gray(), cur.blurred, MOTION_BLUR, 0);
+        markReady(cur, CTX_BLURRED_GRAY);
+    }
+    return cur.blurred;
+}
+
+const std::vector<Mat> &FrameContext::pyramid() {
+    gray();
+    ensurePyramid(cur);
+    return cur.pyramid;
+}
+
+const Mat &FrameContext::prevRgb() const {
+    return hasPrev && prev.has(CTX_RGB) ? prev.rgb : EMPTY;
+}
+
+const Mat &FrameContext::prevBlurredGray() const {
+    return hasPrev && prev.has(CTX_BLURRED_GRAY) ? prev.blurred : EMPTY;
+}
+
+// 上一帧至少要有灰度图 (金字塔和角点可以由它补算)，且尺寸与当前帧一致
+bool FrameContext::prevUsable() const {
+    return hasPrev && prev.has(CTX_GRAY) && prev.gray.size() == current.size();
+}
+
+void FrameContext::ensurePyramid(Products &p) {
+    if (p.has(CTX_PYRAMID)) return;
+    p.scale = p.gray.cols > TRACK_WIDTH ? (double) TRACK_WIDTH / p.gray.cols : 1.0;
+    if (p.scale < 1.0) {
+        resize(p.gray, p.small, Size(), p.scale, p.scale, INTER_AREA);
+    } else {
+        p.small = p.gray;
+    }
+    // 保留梯度图：这一帧作为"上一帧"时 LK 直接用，不用再算一遍
+    buildOpticalFlowPyramid(p.small, p.pyramid, LK_WINDOW, LK_MAX_LEVEL, true);
+    markReady(p, CTX_PYRAMID);
+}
+
+void FrameContext::ensureFeatures(Products &p) {
+    if (p.has(CTX_FEATURES)) return;
+    goodFeaturesToTrack(p.small, p.features, MAX_FEATURES, FEATURE_QUALITY, FEATURE_MIN_DISTANCE * p.scale);
+    markReady(p, CTX_FEATURES);
+}
+
+// 追踪成功且仍在画面内的点成为当前帧的角点；太少时在离已有点足够远的地方补检
+void FrameContext::continueFeatures(const std::vector<Point2f> &points) {
+    const Rect bounds(0, 0, cur.small.cols, cur.small.rows);
+    cur.features.clear();
+    for (const Point2f &pt : points) {
+        if (bounds.contains(pt)) cur.features.push_back(pt);
+    }
+    if (cur.features.size() >= MIN_TRACKED_FEATURES) {
+        cur.ready |= 1u << CTX_FEATURES;  // 沿用，不计入计算次数
+        return;
+    }
+
+    double minDistance = FEATURE_MIN_DISTANCE * cur.scale;
+    featureMask.create(cur.small.size(), CV_8U);
+    featureMask.setTo(Scalar(255));
+    for (const Point2f &pt : cur.features) circle(featureMask, pt, (int) minDistance, Scalar(0), -1);
+    goodFeaturesToTrack(cur.small, topUp, MAX_FEATURES - (int) cur.features.size(), FEATURE_QUALITY,
+                        minDistance, featureMask);
+    cur.features.insert(cur.features.end(), topUp.begin(), topUp.end());
+    markReady(cur, CTX_FEATURES);
+}
+
+const FrameMotion &FrameContext::motion() {
+    if (derived & (1u << CTX_FLOW)) return flow;
+    derived |= 1u << CTX_FLOW;
+    counts[CTX_FLOW]++;
+
+    // 当前帧的金字塔无论如何都要建好，下一帧要拿它当上一帧
+    const std::vector<Mat> &currPyramid = pyramid();
+    if (!prevUsable()) return flow;
+
+    ensurePyramid(prev);
+    ensureFeatures(prev);
+    if (prev.features.empty()) return flow;
+
+    calcOpticalFlowPyrLK(prev.pyramid, currPyramid, prev.features, tracked, status, err,
+                         LK_WINDOW, LK_MAX_LEVEL);
+
+    // 过滤掉未成功追踪的点，坐标换算回原图
+    float toFull = (float) (1.0 / cur.scale);
+    size_t kept = 0;
+    for (size_t i = 0; i < status.size(); i++) {
+        if (status[i]) {
+            flow.prevPoints.push_back(prev.features[i] * toFull);
+            flow.currPoints.push_back(tracked[i] * toFull);
+            tracked[kept++] = tracked[i];
+        }
+    }
+    tracked.resize(kept);
+    flow.valid = true;
+    continueFeatures(tracked);
+    return flow;
+}
+
+const Mat &FrameContext::affine() {
+    if (derived & (1u << CTX_AFFINE)) return affineMat;
+    derived |= 1u << CTX_AFFINE;
+
+    const FrameMotion &m = motion();
+    if (!m.valid || m.prevPoints.size() < MIN_MOTION_POINTS) {
+        affineMat.release();
+        return affineMat;
+    }
+    affineMat = estimateAffinePartial2D(m.prevPoints, m.currPoints);
+    counts[CTX_AFFINE]++;
+    return affineMat;
+}
+
+const Mat &FrameContext::homography() {
+    if (derived & (1u << CTX_HOMOGRAPHY)) return homographyMat;
+    derived |= 1u << CTX_HOMOGRAPHY;
+
+    const FrameMotion &m = motion();
+    if (!m.valid || m.prevPoints.size() < MIN_MOTION_POINTS) {
+        homographyMat.release();
+        return homographyMat;
+    }
+    homographyMat = findHomography(m.prevPoints, m.currPoints, RANSAC);
+    counts[CTX_HOMOGRAPHY]++;
+    return homographyMat;
+}
+
+int FrameContext::computeCount(int product) const {
+    return product >= 0 && product < CTX_PRODUCT_COUNT ? counts[product] : 0;
+}
+
+// ---------- JNI：上下文的生命周期由 Java 的 FrameContext 管理 ----------
+extern "C" {
+JNIEXPORT jlong JNICALL
+Java_com_example_glasspro_NativeProcessor_createFrameContext(JNIEnv *env, jclass clazz) {
+    return reinterpret_cast<jlong>(new FrameContext());
+}
+
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_releaseFrameContext(JNIEnv *env, jclass clazz, jlong ctx_ptr) {
+    delete reinterpret_cast<FrameContext *>(ctx_ptr);
+}
+
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_beginFrameContext(JNIEnv *env, jclass clazz, jlong ctx_ptr,
+                                                            jlong mat_addr) {
+    if (ctx_ptr == 0) return;
+    reinterpret_cast<FrameContext *>(ctx_ptr)->begin(*(Mat *) mat_addr);
+}
+
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_resetFrameContext(JNIEnv *env, jclass clazz, jlong ctx_ptr) {
+    if (ctx_ptr == 0) return;
+    reinterpret_cast<FrameContext *>(ctx_ptr)->reset();
+}
+
+JNIEXPORT jint JNICALL
+Java_com_example_glasspro_NativeProcessor_getFrameContextComputeCount(JNIEnv *env, jclass clazz,
+                                                                      jlong ctx_ptr, jint product) {
+    if (ctx_ptr == 0) return 0;
+    return reinterpret_cast<FrameContext *>(ctx_ptr)->computeCount(product);
+}
+}
@@ -0,0 +1,99 @@
+#ifndef GLASSPRO_FRAME_CONTEXT_H
+#define GLASSPRO_FRAME_CONTEXT_H
+
+#include <vector>
+#include <opencv2/core/core.hpp>
+
+// 帧上下文里可缓存的产物，数值与 NativeProcessor.CTX_* 对应 (用于读取计算次数)
+enum FrameProduct {
+    CTX_RGB = 0,          // RGBA -> RGB
+    CTX_GRAY = 1,         // RGBA -> 灰度
+    CTX_BLURRED_GRAY = 2, // 21x21 高斯平滑后的灰度 (帧差运动检测)
+    CTX_PYRAMID = 3,      // LK 光流金字塔 (含梯度，建在缩小到跟踪宽度的灰度图上)
+    CTX_FEATURES = 4,     // goodFeaturesToTrack 角点 (多数帧沿用上一帧追踪下来的点，只在存活太少时补检)
+    CTX_FLOW = 5,         // 上一帧角点到当前帧的光流
+    CTX_AFFINE = 6,       // 帧间相似变换 (2x3)
+    CTX_HOMOGRAPHY = 7,   // 帧间单应矩阵 (3x3)
+    CTX_PRODUCT_COUNT
+};
+
+// 上一帧 -> 当前帧的光流结果，只保留追踪成功的点对 (原图坐标)
+struct FrameMotion {
+    std::vector<cv::Point2f> prevPoints;
+    std::vector<cv::Point2f> currPoints;
+    bool valid = false;
+};
+
+// 每帧的共享分析上下文。
+// 稳像、多帧增强、运动检测都需要灰度图、光流金字塔、角点和帧间变换，以前每个模块各算一遍；
+// 现在由 Java 每帧 begin() 一次，各模块按需向上下文要，第一次要的时候才计算，同一帧内再要直接返回缓存。
+// begin() 时当前帧的产物整体移到"上一帧"槽位 (按引用交换，尺寸不变时不重新分配)，
+// 所以当前帧的金字塔和角点下一帧还能作为上一帧直接复用，每帧每种产物最多计算一次。
+//
+// 运动估计在缩小到 TRACK_WIDTH 宽的灰度图上进行，光流结果换算回原图坐标，帧间变换的使用方不受影响。
+// 追踪成功的点直接作为当前帧的角点带到下一帧，只有存活的点太少时才在空白区域补检，
+// 不再每帧对上一帧重新 goodFeaturesToTrack。
+//
+// 产物是从 begin() 时的帧数据惰性算出来的，帧被原地修改 (画框等) 之后就不能再要新的产物了。
+// 只在相机线程上使用，不做同步。
+class FrameContext {
+public:
+    // 绑定新的一帧 (CV_8UC4，只引用不拷贝)
+    void begin(const cv::Mat &rgba);
+
+    // 丢弃上一帧 (切换模式、分辨率变化时)；缓冲保留以便复用
+    void reset();
+
+    bool hasPrevious() const { return hasPrev; }
+    const cv::Mat &frame() const { return current; }
+
+    const cv::Mat &rgb();
+    const cv::Mat &gray();
+    const cv::Mat &blurredGray();
+    const std::vector<cv::Mat> &pyramid();
+
+    // 上一帧的产物，上一帧没有算过时返回空 Mat (不会回头补算，原始帧已经不在了)
+    const cv::Mat &prevRgb() const;
+    const cv::Mat &prevBlurredGray() const;
+
+    const FrameMotion &motion();
+    const cv::Mat &affine();      // 失败时为空
+    const cv::Mat &homography();  // 失败时为空
+
+    // 本帧内各产物实际计算的次数 (上一帧的角点在本帧补算时也计入本帧，沿用追踪下来的角点不计)
+    int computeCount(int product) const;
+
+private:
+    struct Products {
+        cv::Mat rgb, gray, blurred;
+        cv::Mat small;                      // 跟踪分辨率的灰度 (不缩小时与 gray 共用数据)
+        double scale = 1.0;                 // small 相对原图的比例
+        std::vector<cv::Mat> pyramid;
+        std::vector<cv::Point2f> features;  // 跟踪分辨率下的坐标
+        unsigned ready = 0;  // 1 << FrameProduct
+
+        bool has(FrameProduct p) const { return (ready & (1u << p)) != 0; }
+    };
+
+    void markReady(Products &p, FrameProduct product);
+    bool prevUsable() const;
+    void ensurePyramid(Products &p);
+    void ensureFeatures(Products &p);
+    void continueFeatures(const std::vector<cv::Point2f> &tracked);
+
+    cv::Mat current;
+    Products cur, prev;
+    bool bound = false;
+    bool hasPrev = false;
+
+    FrameMotion flow;
+    cv::Mat affineMat, homographyMat;
+    unsigned derived = 0;  // CTX_FLOW / CTX_AFFINE / CTX_HOMOGRAPHY 是否已算过
+    int counts[CTX_PRODUCT_COUNT] = {};
+    std::vector<uchar> status;
+    std::vector<float> err;
+    std::vector<cv::Point2f> tracked, topUp;
+    cv::Mat featureMask;
+};
+
+#endif //GLASSPRO_FRAME_CONTEXT_H
@@ -0,0 +1,42 @@
+#include <jni.h>
+#include <cstring>
+#include <opencv2/core/core.hpp>
+
+// FrameJournal 的像素拷贝：Mat <-> direct ByteBuffer (通常是 MappedByteBuffer)。
+// Java 层拿不到 Mat 的数据指针，经 byte[] 中转会多一次拷贝和一次大数组分配，这里直接 memcpy。
+
+// 把 Mat 的像素紧凑地拷到 buffer 的 offset 处，返回拷贝的字节数；空间不够或 buffer 不是 direct 时返回 -1
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_example_glasspro_NativeProcessor_copyMatToBuffer(JNIEnv *env, jclass clazz, jlong matAddr,
+                                                          jobject buffer, jlong offset) {
+    const cv::Mat &mat = *reinterpret_cast<cv::Mat *>(matAddr);
+    uchar *base = static_cast<uchar *>(env->GetDirectBufferAddress(buffer));
+    jlong capacity = env->GetDirectBufferCapacity(buffer);
+    size_t rowBytes = mat.cols * mat.elemSize();
+    jlong total = (jlong) (rowBytes * mat.rows);
+    if (base == nullptr || offset < 0 || offset + total > capacity) return -1;
+
+    uchar *dst = base + offset;
+    if (mat.isContinuous()) {
+        std::memcpy(dst, mat.data, (size_t) total);
+    } else {
+        for (int y = 0; y < mat.rows; y++) std::memcpy(dst + y * rowBytes, mat.ptr(y), rowBytes);
+    }
+    return total;
+}
+
+// 从 buffer 的 offset 处读出 rows x cols 的 type 型图像到 Mat (尺寸类型不变时不重新分配)，返回是否成功
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_example_glasspro_NativeProcessor_copyBufferToMat(JNIEnv *env, jclass clazz, jobject buffer,
+                                                          jlong offset, jint rows, jint cols, jint type,
+                                                          jlong matAddr) {
+    cv::Mat &mat = *reinterpret_cast<cv::Mat *>(matAddr);
+    const uchar *base = static_cast<const uchar *>(env->GetDirectBufferAddress(buffer));
+    jlong capacity = env->GetDirectBufferCapacity(buffer);
+    mat.create(rows, cols, type);
+    jlong total = (jlong) (mat.total() * mat.elemSize());
+    if (base == nullptr || offset < 0 || offset + total > capacity) return JNI_FALSE;
+
+    std::memcpy(mat.data, base + offset, (size_t) total);
+    return JNI_TRUE;
+}
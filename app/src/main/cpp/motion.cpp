@@ -1,31 +1,13 @@
 #include "motion.h"
 #include "videoStab.h"
+#include "vision_processor.h"
+#include <atomic>
 #include <jni.h>
 
-/**
- * @brief 检测运动物体，并将轮廓的边界框存入 out_boxes。
- * (这现在是纯 C++ 逻辑，不含 JNI)
- */
-void detectMotion(const cv::Mat& prev_frame_rgba,
-                  const cv::Mat& current_frame_rgba,
-                  std::vector<cv::Rect>& out_boxes) { // <-- [!! 签名大修改 !!]
-
-    // --- 1. 稳像处理 ---
-    // (保持不变) Java层已经处理了稳像
-
-    // --- 2. 准备 "当前帧" 灰度图 ---
-    cv::Mat bgr_frame, current_gray;
-    cv::cvtColor(current_frame_rgba, bgr_frame, cv::COLOR_RGBA2BGR);
-    cv::cvtColor(bgr_frame, current_gray, cv::COLOR_BGR2GRAY);
-
-    // --- [!! 调优 1：解决“手机抖动”!!] ---
-    cv::GaussianBlur(current_gray, current_gray, cv::Size(21, 21), 0);
-
-    // --- 3. 准备 "上一帧" 灰度图 ---
-    cv::Mat prev_bgr_frame, prev_gray;
-    cv::cvtColor(prev_frame_rgba, prev_bgr_frame, cv::COLOR_RGBA2BGR);
-    cv::cvtColor(prev_bgr_frame, prev_gray, cv::COLOR_BGR2GRAY);
-    cv::GaussianBlur(prev_gray, prev_gray, cv::Size(21, 21), 0);
+// 帧差 + 阈值 + 膨胀 + 轮廓，两幅输入都是平滑后的灰度图
+static void findMotionBoxes(const cv::Mat& prev_gray,
+                            const cv::Mat& current_gray,
+                            std::vector<cv::Rect>& out_boxes) {
 
     // --- 4. 核心算法：帧差法 ---
     cv::Mat frame_delta;
@@ -54,13 +36,128 @@ void detectMotion(const cv::Mat& prev_frame_rgba,
             continue;
         }
 
-        cv::Rect bounding_box = cv::boundingRect(contour);
+        // 我们把方框 "返回" 给调用者，不在 C++ 中绘制
+        out_boxes.push_back(cv::boundingRect(contour));
+    }
+}
 
-        // [!! 删除 !!] 我们不再在C++中绘制
-        // cv::rectangle(current_frame_rgba, bounding_box, cv::Scalar(0, 255, 0, 255), 3);
+/**
+ * @brief 检测运动物体，并将轮廓的边界框存入 out_boxes。
+ * (这现在是纯 C++ 逻辑，不含 JNI)
+ */
+void detectMotion(const cv::Mat& prev_frame_rgba,
+                  const cv::Mat& current_frame_rgba,
+                  std::vector<cv::Rect>& out_boxes) { // <-- [!! 签名大修改 !!]
+
+    // --- 1. 稳像处理 ---
+    // (保持不变) Java层已经处理了稳像
+
+    // 上下文是局部的：这个接口不持有跨调用的状态，多个线程可以同时调用
+    FrameContext pairContext;
+    detectMotion(pairContext, prev_frame_rgba, current_frame_rgba, out_boxes);
+}
+
+void detectMotion(FrameContext& pairContext,
+                  const cv::Mat& prev_frame_rgba,
+                  const cv::Mat& current_frame_rgba,
+                  std::vector<cv::Rect>& out_boxes) {
+    // --- 2~3. 两帧依次绑定到同一个上下文，各自只做一次灰度转换和高斯平滑 ---
+    // [!! 调优 1：解决“手机抖动”!!] 平滑核 21x21 定义在 frame_context.cpp
+    pairContext.begin(prev_frame_rgba);
+    pairContext.blurredGray();
+    pairContext.begin(current_frame_rgba);
+
+    findMotionBoxes(pairContext.prevBlurredGray(), pairContext.blurredGray(), out_boxes);
+}
+
+void detectMotion(FrameContext& ctx, std::vector<cv::Rect>& out_boxes) {
+    const cv::Mat& current_gray = ctx.blurredGray();
+    const cv::Mat& prev_gray = ctx.prevBlurredGray();
+    if (prev_gray.empty() || prev_gray.size() != current_gray.size()) {
+        out_boxes.clear();
+        return;
+    }
+    findMotionBoxes(prev_gray, current_gray, out_boxes);
+}
+
+// 流式检测的处理宽度与参数 (按缩小倍数从原来的全分辨率参数换算)
+static const int MOTION_WIDTH = 320;
+static const cv::Size MOTION_BLUR(5, 5);          // 原图上 21x21 约合 1/4 分辨率上的 5x5
+static const double MOTION_THRESHOLD = 50;        // 与帧差法相同
+static const int MOTION_DILATE_ITERATIONS = 3;    // 原图上 10 次约合 1/4 分辨率上的 3 次
+static const double MOTION_MIN_AREA = 3000;       // 原图坐标下的最小面积
+static const double BACKGROUND_ALPHA = 0.05;      // 非前景像素的背景更新速率
+static const double ABSORB_ALPHA = 0.005;         // 整体更新速率 (停下的物体约 10 秒并入背景)
+
+void MotionDetector::reset() {
+    background.release();
+}
+
+void MotionDetector::process(FrameContext& ctx, std::vector<cv::Rect>& out_boxes, std::vector<float>& coverage) {
+    out_boxes.clear();
+    coverage.clear();
+
+    // 1. 灰度由上下文提供 (稳像已经算过)，缩小后平滑
+    const cv::Mat& gray = ctx.gray();
+    double scale = std::min(1.0, (double) MOTION_WIDTH / gray.cols);
+    cv::Size size(cvRound(gray.cols * scale), cvRound(gray.rows * scale));
+    cv::resize(gray, small, size, 0, 0, cv::INTER_AREA);
+    cv::GaussianBlur(small, small, MOTION_BLUR, 0);
+
+    if (background.empty() || background.size() != size) {
+        small.convertTo(background, CV_32F);
+        return;
+    }
+
+    // 2. 背景按帧间变换对齐到当前帧 (平移量按缩小倍数换算)
+    const cv::Mat& affine = ctx.hasPrevious() ? ctx.affine() : cv::Mat();
+    if (!affine.empty()) {
+        affine.copyTo(scaledAffine);
+        scaledAffine.at<double>(0, 2) *= scale;
+        scaledAffine.at<double>(1, 2) *= scale;
+        cv::warpAffine(background, background, scaledAffine, size, cv::INTER_LINEAR, cv::BORDER_REPLICATE);
+    }
+
+    // 3. 与背景的差 -> 前景掩码
+    background.convertTo(background8, CV_8U);
+    cv::absdiff(small, background8, mask);
+    cv::threshold(mask, mask, MOTION_THRESHOLD, 255, cv::THRESH_BINARY);
+    cv::dilate(mask, mask, cv::Mat(), cv::Point(-1, -1), MOTION_DILATE_ITERATIONS);
+
+    // 4. 增量更新背景：前景以外快速跟随，整体缓慢吸收
+    cv::bitwise_not(mask, notMask);
+    cv::accumulateWeighted(small, background, BACKGROUND_ALPHA, notMask);
+    cv::accumulateWeighted(small, background, ABSORB_ALPHA);
+
+    // 5. 轮廓 -> 原图坐标的框
+    cv::findContours(mask, contours, cv::RETR_EXTERNAL, cv::CHAIN_APPROX_SIMPLE);
+    double minArea = MOTION_MIN_AREA * scale * scale;
+    double inv = 1.0 / scale;
+    for (const auto& contour : contours) {
+        double area = cv::contourArea(contour);
+        if (area < minArea) continue;
+        cv::Rect r = cv::boundingRect(contour);
+        out_boxes.emplace_back(cvRound(r.x * inv), cvRound(r.y * inv), cvRound(r.width * inv), cvRound(r.height * inv));
+        coverage.push_back((float) (area / std::max(1, r.area())));
+    }
+}
 
-        // [!! 新增 !!] 我们把方框 "返回" 给调用者
-        out_boxes.push_back(bounding_box);
+// 将 C++ vector 转换为 Java 的 MatOfRect (OpenCV 标准做法)
+static void writeBoxes(const std::vector<cv::Rect>& detected_boxes, cv::Mat& out_boxes_mat) {
+    // 检查 detected_boxes 是否有内容
+    if (detected_boxes.empty()) {
+        out_boxes_mat.release();
+        return;
+    }
+    // (注意：OpenCV for Android 的 MatOfRect 在 C++ 层就是一个 Mat)
+    out_boxes_mat.create(detected_boxes.size(), 1, CV_32SC4); // 4个 int (x, y, w, h)
+    for (size_t i = 0; i < detected_boxes.size(); ++i) {
+        out_boxes_mat.at<cv::Vec4i>(i, 0) = cv::Vec4i(
+                detected_boxes[i].x,
+                detected_boxes[i].y,
+                detected_boxes[i].width,
+                detected_boxes[i].height
+        );
     }
 }
 
@@ -90,21 +187,114 @@ Java_com_example_glasspro_NativeProcessor_detectMotion(
     // 2. 调用我们的 C++ 核心函数
     detectMotion(prev_frame, current_frame, detected_boxes);
 
-    // 3. 将 C++ vector 转换为 Java 的 MatOfRect (OpenCV 标准做法)
-    // 检查 detected_boxes 是否有内容
-    if (detected_boxes.empty()) {
-        out_boxes_mat.release();
-    } else {
-        // 使用 fromList 将 C++ vector 转换为 OpenCV Mat
-        // (注意：OpenCV for Android 的 MatOfRect 在 C++ 层就是一个 Mat)
-        out_boxes_mat.create(detected_boxes.size(), 1, CV_32SC4); // 4个 int (x, y, w, h)
-        for (size_t i = 0; i < detected_boxes.size(); ++i) {
-            out_boxes_mat.at<cv::Vec4i>(i, 0) = cv::Vec4i(
-                    detected_boxes[i].x,
-                    detected_boxes[i].y,
-                    detected_boxes[i].width,
-                    detected_boxes[i].height
-            );
-        }
+    // 3. 写回 Java 的 MatOfRect
+    writeBoxes(detected_boxes, out_boxes_mat);
+}
+
+// 当前帧已经 begin 到 ctx，上一帧的平滑灰度图取自 ctx 缓存
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_detectMotionWithContext(
+        JNIEnv *env,
+        jclass clazz,
+        jlong ctxPtr,
+        jlong matAddrOutBoxes
+) {
+    if (ctxPtr == 0) return;
+    FrameContext &ctx = *reinterpret_cast<FrameContext *>(ctxPtr);
+    cv::Mat &out_boxes_mat = *(cv::Mat *) matAddrOutBoxes;
+
+    std::vector<cv::Rect> detected_boxes;
+    detectMotion(ctx, detected_boxes);
+    writeBoxes(detected_boxes, out_boxes_mat);
+}
+
+// --- 流式运动检测 (预览的运动模式) ---
+// 每路视频流一份：背景模型、两帧接口的上下文、复用的输出缓冲和跨线程的重置标志
+struct StreamingMotion {
+    MotionDetector detector;
+    FrameContext pairContext;
+    std::atomic<bool> resetRequested{false};
+    std::vector<cv::Rect> boxes;
+    std::vector<float> coverage;
+};
+
+// 不带句柄的 JNI 接口共用的实例
+static StreamingMotion &defaultMotion() {
+    static StreamingMotion motion;
+    return motion;
+}
+
+// 当前帧已经 begin 到 ctx；结果按 DetectionRecord 格式写入调用方持有的 direct ByteBuffer
+// (classId 固定为 -1，score 为框内前景比例)，返回写入的条数，出错返回 -1
+static jint detectStreaming(JNIEnv *env, StreamingMotion &motion, jlong ctxPtr, jobject outBuffer, jint maxBoxes) {
+    if (ctxPtr == 0) return -1;
+    DetectionRecord *out = static_cast<DetectionRecord *>(env->GetDirectBufferAddress(outBuffer));
+    jlong capacity = env->GetDirectBufferCapacity(outBuffer);
+    if (out == nullptr || capacity < (jlong) maxBoxes * (jlong) sizeof(DetectionRecord)) return -1;
+
+    if (motion.resetRequested.exchange(false)) motion.detector.reset();
+    FrameContext &ctx = *reinterpret_cast<FrameContext *>(ctxPtr);
+    motion.detector.process(ctx, motion.boxes, motion.coverage);
+
+    int count = std::min((int) motion.boxes.size(), (int) maxBoxes);
+    for (int i = 0; i < count; i++) {
+        const cv::Rect &r = motion.boxes[i];
+        out[i] = {r.x, r.y, r.width, r.height, -1, motion.coverage[i]};
     }
-}
\ No newline at end of file
+    return count;
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_example_glasspro_NativeProcessor_detectMotionStreaming(
+        JNIEnv *env,
+        jclass clazz,
+        jlong ctxPtr,
+        jobject outBuffer,
+        jint maxBoxes
+) {
+    return detectStreaming(env, defaultMotion(), ctxPtr, outBuffer, maxBoxes);
+}
+
+// 丢弃背景模型 (任意线程可调用，处理线程在下一帧生效)
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_resetMotionModel(JNIEnv *env, jclass clazz) {
+    defaultMotion().resetRequested.store(true);
+}
+
+// ---------- 句柄接口：每路视频流各自持有一个背景模型 ----------
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_example_glasspro_NativeProcessor_createMotionDetector(JNIEnv *env, jclass clazz) {
+    return reinterpret_cast<jlong>(new StreamingMotion());
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_releaseMotionDetector(JNIEnv *env, jclass clazz, jlong motionPtr) {
+    delete reinterpret_cast<StreamingMotion *>(motionPtr);
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_example_glasspro_NativeProcessor_runMotionDetector(JNIEnv *env, jclass clazz, jlong motionPtr,
+                                                            jlong ctxPtr, jobject outBuffer, jint maxBoxes) {
+    if (motionPtr == 0) return -1;
+    return detectStreaming(env, *reinterpret_cast<StreamingMotion *>(motionPtr), ctxPtr, outBuffer, maxBoxes);
+}
+
+// 两帧帧差检测，灰度和平滑的缓冲由句柄持有 (不带句柄的 detectMotion 每次调用重新分配)
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_runMotionDetectorPair(JNIEnv *env, jclass clazz, jlong motionPtr,
+                                                                jlong matAddrPrev, jlong matAddrCurrent,
+                                                                jlong matAddrOutBoxes) {
+    if (motionPtr == 0) return;
+    cv::Mat &prev_frame = *(cv::Mat *) matAddrPrev;
+    cv::Mat &current_frame = *(cv::Mat *) matAddrCurrent;
+    if (prev_frame.empty() || current_frame.empty()) return;
+
+    StreamingMotion &motion = *reinterpret_cast<StreamingMotion *>(motionPtr);
+    detectMotion(motion.pairContext, prev_frame, current_frame, motion.boxes);
+    writeBoxes(motion.boxes, *(cv::Mat *) matAddrOutBoxes);
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_resetMotionDetector(JNIEnv *env, jclass clazz, jlong motionPtr) {
+    if (motionPtr != 0) reinterpret_cast<StreamingMotion *>(motionPtr)->resetRequested.store(true);
+}
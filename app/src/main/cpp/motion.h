@@ -3,6 +3,7 @@
 
 #include <opencv2/opencv.hpp>
 #include <vector> // 包含 vector
+#include "frame_context.h"
 
 /**
  * @brief 检测运动物体，并将轮廓的边界框存入 out_boxes。
@@ -14,6 +15,41 @@ void detectMotion(const cv::Mat& prev_frame_rgba,
                   const cv::Mat& current_frame_rgba,
                   std::vector<cv::Rect>& out_boxes); // <-- [!! 签名大修改 !!]
 
+/**
+ * @brief 同上，两帧先后绑定到调用方持有的 pairContext，灰度和平滑的缓冲跨调用复用。
+ * 同一个 pairContext 不能被两个线程同时使用。
+ */
+void detectMotion(FrameContext& pairContext,
+                  const cv::Mat& prev_frame_rgba,
+                  const cv::Mat& current_frame_rgba,
+                  std::vector<cv::Rect>& out_boxes);
+
+/**
+ * @brief 同上，当前帧与上一帧的平滑灰度图从 ctx 中取 (上一帧没有时输出为空)。
+ */
+void detectMotion(FrameContext& ctx, std::vector<cv::Rect>& out_boxes);
+
+/**
+ * @brief 流式运动检测：在缩小的灰度图上维护滑动平均背景，每帧只处理一次当前帧。
+ *
+ * 背景按帧间相似变换 (稳像已经算好，从 ctx 取) 对齐到当前帧以抵消头部转动，
+ * 只在非前景像素上快速更新，另以很小的速率整体更新，让停下来的物体逐渐并入背景。
+ * 框为原图坐标，coverage 为框内前景像素的比例。
+ */
+class MotionDetector {
+public:
+    void process(FrameContext& ctx, std::vector<cv::Rect>& out_boxes, std::vector<float>& coverage);
+    void reset();
+
+private:
+    cv::Mat small;        // 缩小并平滑后的当前帧灰度
+    cv::Mat background;   // CV_32F 背景
+    cv::Mat background8;
+    cv::Mat mask, notMask;
+    cv::Mat scaledAffine;
+    std::vector<std::vector<cv::Point>> contours;
+};
+
 #endif //GLASSPRO_MOTION_H
 /*
 建议：有意义无意义的运动（无意义指随机的抖动之类的）使用相关方法区分出来，在有意义的运动中，相机不动的话比较简单，相机如果也运动，那么可以调用相机中的模块（？）来去掉这一部分
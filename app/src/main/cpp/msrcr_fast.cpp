@@ -0,0 +1,153 @@
+#include "msrcr_fast.h"
+#include <algorithm>
+#include <cmath>
+#include <mutex>
+#include <opencv2/imgproc/imgproc.hpp>
+
+using namespace cv;
+
+// 缩小后希望保留的最小 sigma：再小的话小图上的核只剩几个抽头，升采样的插值误差开始显现
+static const double MIN_SMALL_SIGMA = 2.0;
+
+// log(max(v, 1))，v 为 8 位像素值
+static const float *logTable() {
+    static float table[256];
+    static std::once_flag once;
+    std::call_once(once, []() {
+        for (int i = 0; i < 256; i++) table[i] = std::log((float) std::max(i, 1));
+    });
+    return table;
+}
+
+static size_t matBytes(const Mat &m) {
+    return m.empty() ? 0 : m.total() * m.elemSize();
+}
+
+void FastMsrcr::prepareScales(const std::vector<double> &scales) {
+    bool same = levels.size() == scales.size();
+    for (size_t i = 0; same && i < scales.size(); i++) same = levels[i].sigma == scales[i];
+    if (same) return;
+
+    levels.assign(scales.size(), Scale());
+    for (size_t i = 0; i < scales.size(); i++) {
+        Scale &s = levels[i];
+        s.sigma = scales[i];
+        while (s.sigma / (s.factor * 2) >= MIN_SMALL_SIGMA) s.factor *= 2;
+        // INTER_AREA 缩小 (宽 f 的盒子) 和双线性放大 (宽 2f 的三角) 本身也有模糊，
+        // 方差约为 (f^2-1)/12 + (f^2-1)/6，从目标方差里扣掉再换算到小图
+        double f = s.factor;
+        double variance = std::max(s.sigma * s.sigma - (f * f - 1) / 4, 0.25);
+        double smallSigma = std::sqrt(variance) / f;
+        int ksize = 2 * (int) std::ceil(3 * smallSigma) + 1;
+        s.kernel = getGaussianKernel(ksize, smallSigma, CV_32F);
+    }
+}
+
+void FastMsrcr::process(Mat &image, const std::vector<double> &scales, double dynamic) {
+    if (image.empty() || scales.empty()) return;
+    prepareScales(scales);
+
+    if (image.channels() == 4) {
+        cvtColor(image, rgb8, COLOR_RGBA2RGB);
+    } else {
+        image.copyTo(rgb8);
+    }
+    cv::max(rgb8, Scalar::all(1), rgb8);
+    Size size = rgb8.size();
+
+    // 1. 各尺度在小图上模糊并取 log，按相等权重合并到最细的那一层
+    float weight = 1.0f / (float) levels.size();
+    const Scale *finest = &levels[0];
+    for (const Scale &s : levels) {
+        if (s.factor < finest->factor) finest = &s;
+    }
+    Size baseSize((size.width + finest->factor - 1) / finest->factor,
+                  (size.height + finest->factor - 1) / finest->factor);
+
+    bool first = true;
+    for (Scale &s : levels) {
+        Size smallSize((size.width + s.factor - 1) / s.factor, (size.height + s.factor - 1) / s.factor);
+        const Mat *src = &rgb8;
+        if (s.factor > 1) {
+            resize(rgb8, s.small8, smallSize, 0, 0, INTER_AREA);
+            src = &s.small8;
+        }
+        src->convertTo(s.small, CV_32F);
+        sepFilter2D(s.small, s.small, -1, s.kernel, s.kernel, Point(-1, -1), 0, BORDER_REFLECT);
+        cv::log(s.small, s.small);
+
+        const Mat *level = &s.small;
+        if (smallSize != baseSize) {
+            resize(s.small, resized, baseSize, 0, 0, INTER_LINEAR);
+            level = &resized;
+        }
+        if (first) {
+            level->convertTo(logBlur, CV_32F, weight);
+            first = false;
+        } else {
+            scaleAdd(*level, weight, logBlur, logBlur);
+        }
+    }
+    if (baseSize != size) resize(logBlur, logBlurFull, size, 0, 0, INTER_LINEAR);
+    Mat &logR = baseSize != size ? logBlurFull : logBlur;
+
+    // 2. 一次遍历：logR = log(I) - log(blur)，同时累计每个通道的和与平方和
+    const float *table = logTable();
+    double sum[3] = {0, 0, 0}, sumSq[3] = {0, 0, 0};
+    std::mutex sumLock;
+    parallel_for_(Range(0, size.height), [&](const Range &range) {
+        double localSum[3] = {0, 0, 0}, localSq[3] = {0, 0, 0};
+        for (int y = range.start; y < range.end; y++) {
+            const uchar *in = rgb8.ptr<uchar>(y);
+            float *r = logR.ptr<float>(y);
+            for (int x = 0; x < size.width * 3; x += 3) {
+                for (int c = 0; c < 3; c++) {
+                    float v = table[in[x + c]] - r[x + c];
+                    r[x + c] = v;
+                    localSum[c] += v;
+                    localSq[c] += (double) v * v;
+                }
+            }
+        }
+        std::lock_guard<std::mutex> guard(sumLock);
+        for (int c = 0; c < 3; c++) {
+            sum[c] += localSum[c];
+            sumSq[c] += localSq[c];
+        }
+    });
+
+    // 3. 按 mean ± dynamic * std 拉伸到 0~255，直接写入 8 位输出
+    double n = (double) size.area();
+    float lo[3], gain[3];
+    for (int c = 0; c < 3; c++) {
+        double mean = sum[c] / n;
+        double stddev = std::sqrt(std::max(sumSq[c] / n - mean * mean, 0.0));
+        double minVal = mean - dynamic * stddev;
+        double range = std::max(2 * dynamic * stddev, 1e-6);
+        lo[c] = (float) minVal;
+        gain[c] = (float) (255.0 / range);
+    }
+
+    image.create(size, CV_8UC3);
+    parallel_for_(Range(0, size.height), [&](const Range &range) {
+        for (int y = range.start; y < range.end; y++) {
+            const float *r = logR.ptr<float>(y);
+            uchar *out = image.ptr<uchar>(y);
+            for (int x = 0; x < size.width * 3; x += 3) {
+                for (int c = 0; c < 3; c++) {
+                    out[x + c] = saturate_cast<uchar>((r[x + c] - lo[c]) * gain[c]);
+                }
+            }
+        }
+    });
+}
+
+size_t FastMsrcr::bufferBytes() const {
+    size_t bytes = matBytes(rgb8) + matBytes(logBlur) + matBytes(logBlurFull) + matBytes(resized);
+    for (const Scale &s : levels) bytes += matBytes(s.small8) + matBytes(s.small) + matBytes(s.kernel);
+    return bytes;
+}
+
+void FastMsrcr::release() {
+    *this = FastMsrcr();
+}
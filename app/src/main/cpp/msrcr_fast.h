@@ -0,0 +1,43 @@
+#ifndef GLASSPRO_MSRCR_FAST_H
+#define GLASSPRO_MSRCR_FAST_H
+
+#include <cstddef>
+#include <vector>
+#include <opencv2/core/core.hpp>
+
+// 快速 MSRCR 引擎，与 enhance.cpp 里的 MSRCR() (参考实现) 输出格式相同。
+// 与参考实现的区别：
+//  1. 大 sigma 高斯模糊改为"降采样 - 小核模糊 - 升采样"：每个尺度先 INTER_AREA 缩小 f 倍 (f 取 2 的幂，
+//     使缩小后的 sigma 约为 2~4)，在小图上用缓存的一维核做分离卷积，每像素开销与 sigma 无关；
+//  2. 模糊图是 sigma 尺度上的平滑量，log 在小图上取，各尺度的 log 在最细的小图上加权合并后只放大一次；
+//  3. 原图的 log 查 256 项表，log(I) - log(blur) 与均值/方差统计合并成一次遍历，
+//     归一化直接写回 8 位输出，全部缓冲跨帧复用；
+//  4. 参考实现把 0 替换成通道内最小非零值，这里统一下限为 1 (8 位图像最小的非零值)，只影响纯黑像素。
+class FastMsrcr {
+public:
+    // image: CV_8UC4 (RGBA) 或 CV_8UC3 (RGB)，原地输出 CV_8UC3 (RGB)
+    void process(cv::Mat &image, const std::vector<double> &scales, double dynamic);
+
+    // 所有工作缓冲占用的字节数
+    size_t bufferBytes() const;
+
+    void release();
+
+private:
+    struct Scale {
+        double sigma = 0;
+        int factor = 1;             // 相对原图的缩小倍数
+        cv::Mat kernel;             // 小图上的一维高斯核 (CV_32F)，sigma 不变时复用
+        cv::Mat small8, small;      // 缩小后的 8 位 / float 图，small 模糊后原地取 log
+    };
+
+    void prepareScales(const std::vector<double> &scales);
+
+    std::vector<Scale> levels;
+    cv::Mat rgb8;                   // 下限为 1 的输入
+    cv::Mat logBlur;                // 最细小图上合并后的 log(blur)，放大后原地变为 log(I) - log(blur)
+    cv::Mat logBlurFull;
+    cv::Mat resized;
+};
+
+#endif //GLASSPRO_MSRCR_FAST_H
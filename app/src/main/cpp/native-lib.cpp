@@ -3,9 +3,10 @@
 #include <opencv2/core/core.hpp>
 #include <opencv2/imgproc/imgproc.hpp>
 #include <opencv2/opencv.hpp>
-#include "enhance.h"
-#include "videoStab.h"
-#include "dehaze.h"
+#include <algorithm>
+#include <cmath>
+#include <ctime>
+#include <vector>
 
 #define TAG "NativeLib"
 
@@ -32,60 +33,73 @@ Java_com_example_nativeopencvandroidtemplate_MainActivity_adaptiveThresholdFromJ
 }
 }
 
+// 场景统计的采样网格 (与原来缩放到的 320x240 相同)
+static const int SCENE_GRID_W = 320;
+static const int SCENE_GRID_H = 240;
+// 输出下标，与 SceneClassifier.STAT_* 对应
+enum SceneStat { STAT_BRIGHTNESS, STAT_CONTRAST, STAT_SATURATION, STAT_SHARPNESS, STAT_COUNT };
+
+/**
+ * 自动模式的场景统计：V 均值 (亮度)、V 标准差 (对比度)、S 均值 (饱和度)、灰度 Laplacian 方差 (清晰度)。
+ * 直接在原图上按 320x240 网格取样，一次遍历同时得到 V/S 和灰度，Laplacian 用滚动的三行灰度在同一遍里算出，
+ * 不做 resize / cvtColor / split，也不分配整幅的中间图。
+ * img: RGBA 或 RGB；stats 长度至少为 STAT_COUNT
+ */
 extern "C"
 JNIEXPORT void JNICALL
-Java_com_example_glasspro_NativeProcessor_autoProcess(JNIEnv *env, jclass, jlong matAddr) {
+Java_com_example_glasspro_NativeProcessor_analyzeScene(JNIEnv *env, jclass, jlong matAddr, jdoubleArray stats) {
 	Mat &img = *(Mat *) matAddr;
-	if (img.empty()) return;
-
-	// 缩小图像，假设原图很大，缩放到320x240，降低计算量
-	Mat resized;
-	resize(img, resized, Size(320, 240));
-
-	// 转HSV，避免多次转色
-	Mat hsv;
-	cvtColor(resized, hsv, COLOR_RGBA2RGB);  // 先转RGB
-	cvtColor(hsv, hsv, COLOR_RGB2HSV);
-
-	// 分离HSV通道
-	std::vector<Mat> channels;
-	split(hsv, channels);
-	Mat& H = channels[0];
-	Mat& S = channels[1];
-	Mat& V = channels[2];  // V通道代替亮度
-
-	// 计算亮度均值和标准差（用V通道）
-	Scalar meanVal, stddevVal;
-	meanStdDev(V, meanVal, stddevVal);
-	double brightness = meanVal[0];
-	double contrast = stddevVal[0];
-
-	// 饱和度均值
-	Scalar satMean = mean(S);
-
-	Mat gray;
-	cvtColor(resized, gray, COLOR_RGBA2GRAY);
-	Mat lap;
-	Laplacian(gray, lap, CV_64F);
-	Scalar lapMean, lapStddev;
-	meanStdDev(lap, lapMean, lapStddev);
-	double blurMeasure = lapStddev[0] * lapStddev[0];
-	if (blurMeasure<100) {
-		// 调用稳像函数
-
-	}
-
-	if (brightness < 50) {
-		// 低亮度，调用MSRCR增强函数
-		// MSRCR(img);
-	}else if (brightness > 200) {
-		// 高亮度，调用CLAHE函数
-		// CLAHE(img);
+	if (img.empty() || env->GetArrayLength(stats) < STAT_COUNT) return;
+
+	int cn = img.channels();
+	int gw = std::min(SCENE_GRID_W, img.cols);
+	int gh = std::min(SCENE_GRID_H, img.rows);
+	std::vector<int> xs(gw);
+	for (int i = 0; i < gw; i++) xs[i] = (int) ((i + 0.5) * img.cols / gw) * cn;
+
+	// 三行灰度的环形缓冲：处理第 r 行时对第 r-1 行算 Laplacian (只算内部点)
+	std::vector<int> rows(3 * gw);
+	double sumV = 0, sumV2 = 0, sumS = 0;
+	double sumLap = 0, sumLap2 = 0;
+	long long lapCount = 0;
+	for (int r = 0; r < gh; r++) {
+		const uchar *row = img.ptr<uchar>((int) ((r + 0.5) * img.rows / gh));
+		int *g = &rows[(r % 3) * gw];
+		long long rowV = 0, rowV2 = 0, rowS = 0;
+		for (int i = 0; i < gw; i++) {
+			const uchar *p = row + xs[i];
+			int mx = std::max(p[0], std::max(p[1], p[2]));
+			int mn = std::min(p[0], std::min(p[1], p[2]));
+			rowV += mx;
+			rowV2 += mx * mx;
+			// 与 OpenCV RGB2HSV 一致：S = 255 * (max - min) / max
+			if (mx > 0) rowS += (255 * (mx - mn) + mx / 2) / mx;
+			// RGB 亮度 (定点 0.299 / 0.587 / 0.114)
+			g[i] = (77 * p[0] + 150 * p[1] + 29 * p[2]) >> 8;
+		}
+		sumV += (double) rowV;
+		sumV2 += (double) rowV2;
+		sumS += (double) rowS;
+
+		if (r >= 2) {
+			const int *up = &rows[((r - 2) % 3) * gw];
+			const int *mid = &rows[((r - 1) % 3) * gw];
+			for (int i = 1; i < gw - 1; i++) {
+				double lap = up[i] + g[i] + mid[i - 1] + mid[i + 1] - 4 * mid[i];
+				sumLap += lap;
+				sumLap2 += lap * lap;
+			}
+			lapCount += gw - 2;
+		}
 	}
 
-	if (contrast < 30 && satMean[0] < 50) {
-		// 低对比度且饱和度低，可能是雾霾，调用去雾函数
-		// Dehaze(img);
-	}
+	double n = (double) gw * gh;
+	double meanV = sumV / n;
+	double out[STAT_COUNT];
+	out[STAT_BRIGHTNESS] = meanV;
+	out[STAT_CONTRAST] = std::sqrt(std::max(sumV2 / n - meanV * meanV, 0.0));
+	out[STAT_SATURATION] = sumS / n;
+	double meanLap = lapCount > 0 ? sumLap / lapCount : 0;
+	out[STAT_SHARPNESS] = lapCount > 0 ? std::max(sumLap2 / lapCount - meanLap * meanLap, 0.0) : 0;
+	env->SetDoubleArrayRegion(stats, 0, STAT_COUNT, out);
 }
-
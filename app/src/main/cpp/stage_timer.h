@@ -0,0 +1,57 @@
+#ifndef GLASSPRO_STAGE_TIMER_H
+#define GLASSPRO_STAGE_TIMER_H
+
+#include <atomic>
+#include <chrono>
+#include <cstdint>
+
+/**
+ * native 子阶段计时。
+ * 每个库各持有一组槽位，记录最近一次调用里各子阶段的累计耗时 (纳秒)；
+ * 入口处 reset，Java 层在同一线程上调用完 native 方法后逐个读出，写入 LatencyHistogram。
+ * 只有 relaxed 原子读写，不加锁，也不再往 logcat 打日志。
+ */
+inline int64_t stageNowNanos() {
+    return std::chrono::duration_cast<std::chrono::nanoseconds>(
+            std::chrono::steady_clock::now().time_since_epoch()).count();
+}
+
+template<int N>
+struct StageTimes {
+    std::atomic<int64_t> nanos[N];
+
+    StageTimes() { reset(); }
+
+    void reset() {
+        for (auto &n : nanos) n.store(0, std::memory_order_relaxed);
+    }
+
+    void add(int stage, int64_t ns) {
+        nanos[stage].fetch_add(ns, std::memory_order_relaxed);
+    }
+
+    int64_t get(int stage) const {
+        if (stage < 0 || stage >= N) return 0;
+        return nanos[stage].load(std::memory_order_relaxed);
+    }
+};
+
+/** 作用域计时：析构时把耗时累加到对应槽位 */
+template<int N>
+class ScopedStage {
+public:
+    ScopedStage(StageTimes<N> &times, int stage)
+            : times(times), stage(stage), start(stageNowNanos()) {}
+
+    ~ScopedStage() { times.add(stage, stageNowNanos() - start); }
+
+    ScopedStage(const ScopedStage &) = delete;
+    ScopedStage &operator=(const ScopedStage &) = delete;
+
+private:
+    StageTimes<N> &times;
+    int stage;
+    int64_t start;
+};
+
+#endif // GLASSPRO_STAGE_TIMER_H
@@ -1,73 +0,0 @@
-#include "threshold.h"
-
-Mat threshold_image_output(const Mat &input_img, int patchSize) {
-
-    int height = input_img.rows;
-    int width = input_img.cols;//ͼĳ
-
-    int img_type[10] = {};//ͼƬ
-    int cnt_1[10] = {};//ͼȼӦ
-
-    Mat gray_img;
-    cvtColor(input_img, gray_img, COLOR_RGB2GRAY);//ԭͼĻҶͼ
-    Mat gray_ave_img;
-    gray_ave_img.create(width / patchSize, height / patchSize, CV_8UC1);//ԱȵƽҶ¿հͼ,ΪĸصѹͼƬ
-
-    int num_segrow = height / patchSize;
-    int num_segcol = width / patchSize;//ͼΪ4*4С,
-
-    /*if (patchSize * num_segrow != height) {
-        num_segrow++;
-    }
-
-    if (patchSize * num_segcol != width) {
-        num_segcol++;
-    }*/
-
-    //printf("%d %d\n", height, width);
-
-    for (int i = 0; i < num_segcol; i++) {
-        if (i * patchSize >= width) break;
-        int rect_height = 0;
-        int rect_width = 0;//С򳤿趨
-
-        rect_width = (width - i * patchSize < patchSize) ? (width - i * patchSize)
-                                                         : patchSize;//ʣ෽
-
-        int num = 1;
-
-        for (int j = 0; j < num_segrow; j++) {
-
-            if (j * patchSize >= height) break;
-            rect_height = (height - j * patchSize < patchSize) ? (height - j * patchSize)
-                                                               : patchSize;
-            Rect roi(patchSize * i, patchSize * j, rect_width, rect_height);//С4*4
-
-            Mat roi_img = gray_img(roi);
-
-            double total_gray = 0.0;
-            int pixel_count = rect_height * rect_width;
-
-            for (int y = 0; y < rect_width; y++) {
-                for (int x = 0; x < rect_height; x++) {
-                    total_gray += roi_img.at<uchar>(y, x);//СܻҶ
-                }
-            }
-
-            double ave_gray = total_gray / pixel_count;//СƽҶ
-
-            for (num = 1; num <= 10; num++) {
-                if (ave_gray >= 0 * num && ave_gray <= 25.5 * num) {
-                    cnt_1[num - 1]++;
-                    gray_ave_img.at<uchar>(i, j) = 25.5 * num;
-                    break;//ҶȵȼϢҶͼϢ  //עi, j ǶӦԭͼ/4ֵ
-                } else {
-                    num++;
-                }
-            }
-        }
-        num = 1;
-    }
-    return gray_ave_img;
-//	imwrite("gray_ave_img.jpg", output_threshold_img);
-}
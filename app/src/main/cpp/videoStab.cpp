@@ -2,6 +2,7 @@
 #include <cmath>
 #include <opencv2/opencv.hpp>
 #include <jni.h>
+#include "stage_timer.h"
 
 using namespace cv;
 using namespace std;
@@ -19,12 +20,10 @@ using namespace std;
 // 30 是一个合理的默认值。
 #define HORIZONTAL_BORDER_CROP 30
 
-int height;
-int width;
-
 VideoStab::VideoStab()
 {
     smoothedMat.create(2, 3, CV_64F);
+    warpMat.create(2, 3, CV_64F);
 
     k = 1;
 
@@ -101,45 +100,45 @@ bool VideoStab::shouldStabilize(double accel_x, double accel_y, double accel_z)
     return true;
 }
 
-Mat VideoStab::stabilize(Mat frame_1, Mat frame_2, double accel_x, double accel_y, double accel_z)
+void VideoStab::stabilize(const Mat &frame_1, const Mat &frame_2, Mat &out, double accel_x, double accel_y, double accel_z)
 {
     // 首先检查加速度条件
 //    if (!shouldStabilize(accel_x, accel_y, accel_z)) {
 //        return frame_1.clone();
 //    }
 
-    cvtColor(frame_1, frame1, COLOR_BGR2GRAY);
-    cvtColor(frame_2, frame2, COLOR_BGR2GRAY);
+    // 上一帧只需要金字塔 (灰度随之算出)，角点在当前帧求光流时补算
+    pairContext.begin(frame_1);
+    pairContext.pyramid();
+    pairContext.begin(frame_2);
+    stabilize(frame_1, pairContext, out);
+}
 
+void VideoStab::stabilize(const Mat &frame_1, FrameContext &ctx, Mat &out)
+{
+    const Size size = ctx.frame().size();
+    int64_t featuresStart = stageNowNanos();
     int vert_border = HORIZONTAL_BORDER_CROP * frame_1.rows / frame_1.cols;
 
-    vector<Point2f> features1, features2;
-    vector<Point2f> goodFeatures1, goodFeatures2;
-    vector<uchar> status;
-    vector<float> err;
+    // 灰度、角点、光流由上下文计算并缓存，同一帧的其他模块直接复用
+    const FrameMotion &motion = ctx.motion();
 
-    goodFeaturesToTrack(frame1, features1, 200, 0.01, 30);
-    calcOpticalFlowPyrLK(frame1, frame2, features1, features2, status, err);
-
-    for (size_t i = 0; i < status.size(); i++)
-    {
-        if (status[i])
-        {
-            goodFeatures1.push_back(features1[i]);
-            goodFeatures2.push_back(features2[i]);
-        }
-    }
+    times.add(STAB_FEATURES, stageNowNanos() - featuresStart);
 
-    if (goodFeatures1.size() < 10 || goodFeatures2.size() < 10) {
-        // 特征点太少，返回原图
-        return frame_1.clone();
+    if (motion.currPoints.size() < 10) {
+        // 特征点太少，输出上一帧原图
+        frame_1.copyTo(out);
+        return;
     }
 
-    affine = estimateAffinePartial2D(goodFeatures1, goodFeatures2);
+    int64_t estimateStart = stageNowNanos();
+    affine = ctx.affine();
 
     if (affine.empty())
     {
-        return frame_1.clone();
+        times.add(STAB_ESTIMATE, stageNowNanos() - estimateStart);
+        frame_1.copyTo(out);
+        return;
     }
 
     dx = affine.at<double>(0, 2);
@@ -186,17 +185,29 @@ Mat VideoStab::stabilize(Mat frame_1, Mat frame_2, double accel_x, double accel_
     smoothedMat.at<double>(0, 2) = dx;
     smoothedMat.at<double>(1, 2) = dy;
 
-    warpAffine(frame_1, smoothedFrame, smoothedMat, frame_2.size());
-
-    // [!! 修复 4：修复拼写错误 !!]
-    // 将 (小写) horizontal_border_crop 修正为 (大写) HORIZONTAL_BORDER_CROP
-    smoothedFrame = smoothedFrame(Range(vert_border, smoothedFrame.rows - vert_border),
-                                  Range(HORIZONTAL_BORDER_CROP, smoothedFrame.cols - HORIZONTAL_BORDER_CROP));
-
-    resize(smoothedFrame, smoothedFrame, frame_2.size());
-
-    // test关闭，不做imshow
-    return smoothedFrame;
+    // 原来是 warpAffine -> 裁掉黑边 -> resize 回原尺寸，整帧插值两次并分配两张中间图。
+    // 裁边放大也是仿射变换，与平滑变换合成后用一次逆映射直接写进 out：
+    //   输出 (u, v) -> 平滑后 (bx + u * sx, by + v * sy) -> 上一帧 smoothedMat^-1 * (...)
+    int64_t warpStart = stageNowNanos();
+    times.add(STAB_ESTIMATE, warpStart - estimateStart);
+    Mat inv;
+    invertAffineTransform(smoothedMat, inv);
+    double cropX = (double) (size.width - 2 * HORIZONTAL_BORDER_CROP) / size.width;
+    double cropY = (double) (size.height - 2 * vert_border) / size.height;
+    for (int r = 0; r < 2; r++) {
+        double a = inv.at<double>(r, 0), b = inv.at<double>(r, 1);
+        warpMat.at<double>(r, 0) = a * cropX;
+        warpMat.at<double>(r, 1) = b * cropY;
+        warpMat.at<double>(r, 2) = a * HORIZONTAL_BORDER_CROP + b * vert_border + inv.at<double>(r, 2);
+    }
+    if (frame_1.data == out.data) {
+        // warpAffine 不能原地处理
+        Mat src = frame_1.clone();
+        warpAffine(src, out, warpMat, size, INTER_LINEAR | WARP_INVERSE_MAP);
+    } else {
+        warpAffine(frame_1, out, warpMat, size, INTER_LINEAR | WARP_INVERSE_MAP);
+    }
+    times.add(STAB_WARP, stageNowNanos() - warpStart);
 }
 
 void VideoStab::Kalman_Filter(double* scaleX, double* scaleY, double* thetha, double* transX, double* transY)
@@ -233,6 +244,31 @@ void VideoStab::Kalman_Filter(double* scaleX, double* scaleY, double* thetha, do
 }
 
 // JNI 函数 (来自回答 #14，保持不变，它已经是正确的)
+// [!! 修复 1：致命Bug !!]
+// 稳像对象必须跨帧存活 (卡尔曼滤波的状态跨帧累积)。
+// 不带句柄的静态接口共用这一个默认实例，多路视频流各自 createStabilizer
+static VideoStab &stabilizer() {
+    static VideoStab stab;
+    return stab;
+}
+
+// 当前帧已经 begin 到 ctx；prev_addr 为 0 (没有上一帧) 时只为下一帧准备金字塔
+static void stabilizeWithContext(VideoStab &stab, jlong ctx_ptr, jlong prev_addr, jlong mat_addr) {
+    if (ctx_ptr == 0) return;
+    FrameContext &ctx = *reinterpret_cast<FrameContext *>(ctx_ptr);
+    if (prev_addr == 0) {
+        ctx.pyramid();
+        return;
+    }
+
+    const Mat &frame1 = *(Mat *) prev_addr;
+    Mat &image = *(Mat *) mat_addr;
+
+    stab.times.reset();
+    // 直接写回当前帧的缓冲，Java 侧的 Mat 不会换一块内存
+    stab.stabilize(frame1, ctx, image);
+}
+
 extern "C" {
 void JNICALL
 Java_com_example_glasspro_NativeProcessor_videoStab(JNIEnv *env, jclass clazz, jlong mat_addr1,
@@ -242,15 +278,53 @@ Java_com_example_glasspro_NativeProcessor_videoStab(JNIEnv *env, jclass clazz, j
     Mat frame2 = *(Mat *) mat_addr2;
 
     Mat &image = *(Mat *) mat_addr2;
-    width = image.cols;
-    height = image.rows;
 
-    // [!! 修复 1：致命Bug !!]
-    // 将 stab 对象声明为 static。
-    static VideoStab stab;
+    stabilizer().times.reset();
 
     // [!! 修复 2：编译错误 !!]
     // 传入 0.0 作为虚拟的加速度值
-    image = stab.stabilize(frame1, frame2, 0.0, 0.0, 0.0);
+    stabilizer().stabilize(frame1, frame2, image, 0.0, 0.0, 0.0);
+}
+}
+
+extern "C" {
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_videoStabWithContext(JNIEnv *env, jclass clazz, jlong ctx_ptr,
+                                                               jlong prev_addr, jlong mat_addr) {
+    stabilizeWithContext(stabilizer(), ctx_ptr, prev_addr, mat_addr);
+}
+}
+
+extern "C" {
+jlong JNICALL
+Java_com_example_glasspro_NativeProcessor_getStabStageNanos(JNIEnv *env, jclass clazz, jint stage) {
+    return (jlong) stabilizer().times.get(stage);
+}
+}
+
+// ---------- 句柄接口：每路视频流各自持有一个稳像器 ----------
+extern "C" {
+JNIEXPORT jlong JNICALL
+Java_com_example_glasspro_NativeProcessor_createStabilizer(JNIEnv *env, jclass clazz) {
+    return reinterpret_cast<jlong>(new VideoStab());
+}
+
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_releaseStabilizer(JNIEnv *env, jclass clazz, jlong stab_ptr) {
+    delete reinterpret_cast<VideoStab *>(stab_ptr);
+}
+
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_runStabilizer(JNIEnv *env, jclass clazz, jlong stab_ptr,
+                                                        jlong ctx_ptr, jlong prev_addr, jlong mat_addr) {
+    if (stab_ptr == 0) return;
+    stabilizeWithContext(*reinterpret_cast<VideoStab *>(stab_ptr), ctx_ptr, prev_addr, mat_addr);
+}
+
+JNIEXPORT jlong JNICALL
+Java_com_example_glasspro_NativeProcessor_getStabilizerStageNanos(JNIEnv *env, jclass clazz, jlong stab_ptr,
+                                                                  jint stage) {
+    if (stab_ptr == 0) return 0;
+    return (jlong) reinterpret_cast<VideoStab *>(stab_ptr)->times.get(stage);
+}
 }
-}
\ No newline at end of file
@@ -12,28 +12,29 @@
 #include <opencv2/imgproc/imgproc.hpp>
 #include <opencv2/highgui/highgui.hpp>
 #include <opencv2/opencv.hpp>
+#include "frame_context.h"
+#include "stage_timer.h"
 
 using namespace cv;
 using namespace std;
 
+// 子阶段计时，下标与 LatencyProfiler.STAB_STAGES 对应
+enum StabStage { STAB_FEATURES, STAB_ESTIMATE, STAB_WARP, STAB_STAGE_COUNT };
 
+// 稳像器：卡尔曼滤波的状态跨帧累积，每路视频流各持有一个 (Java 层通过 createStabilizer 拿到句柄)
 class VideoStab
 {
 public:
     VideoStab();
     VideoCapture capture;
 
-    Mat frame2;
-    Mat frame1;
-
     int k;
 
     const int HORIZONTAL_BORDER_CROP = 30;
 
     Mat smoothedMat;
     Mat affine;
-
-    Mat smoothedFrame;
+    Mat warpMat;   // 平滑变换与裁边放大合成后的逆映射 (输出 -> 上一帧)
 
     double dx ;
     double dy ;
@@ -87,11 +88,21 @@ public:
     double last_accel_y;         // 上一次y轴加速度
     double last_accel_z;         // 上一次z轴加速度
 
-    Mat stabilize(Mat frame_1 , Mat frame_2 , double accel_x = 0 , double accel_y = 0 , double accel_z = 0);
+    // 最近一次 stabilize 的子阶段耗时
+    StageTimes<STAB_STAGE_COUNT> times;
+
+    // 结果写入 out (可以就是 frame_2，尺寸类型不变时不重新分配)
+    void stabilize(const Mat &frame_1 , const Mat &frame_2 , Mat &out , double accel_x = 0 , double accel_y = 0 , double accel_z = 0);
+    // frame_1 为上一帧 (RGBA)，当前帧及其与上一帧之间的运动从 ctx 中取。
+    // out 可以就是 ctx 绑定的当前帧：写入前运动估计已经完成，上下文里的灰度等产物仍对应稳像前的画面
+    void stabilize(const Mat &frame_1 , FrameContext &ctx , Mat &out);
     void Kalman_Filter(double *scaleX , double *scaleY , double *thetha , double *transX , double *transY);
 private:
     bool shouldStabilize(double accel_x, double accel_y, double accel_z);
     double calculateAccelMagnitude(double x, double y, double z);
+
+    // 两帧接口用的上下文：先后绑定上一帧和当前帧
+    FrameContext pairContext;
 };
 
 
@@ -3,7 +3,11 @@
 #include <opencv2/imgproc.hpp>
 #include <opencv2/dnn.hpp>
 #include <vector>
+#include <atomic>
+#include <algorithm>
 #include <android/log.h>
+#include "stage_timer.h"
+#include "detection_gate.h"
 
 // 修改 TAG 为更正式的名称
 #define LOG_TAG "VisionProcessorNative"
@@ -14,6 +18,33 @@ using namespace cv;
 using namespace std;
 using namespace cv::dnn;
 
+// 子阶段计时，下标与 LatencyProfiler.DETECT_STAGES 对应
+enum DetectStage { DETECT_PREPROCESS, DETECT_FORWARD, DETECT_DECODE, DETECT_GATE, DETECT_STAGE_COUNT };
+
+/**
+ * 检测器句柄：网络本身加上每帧复用的中间 Mat，避免推理路径上的重复分配。
+ * Java 层拿到的 netPtr 就是这个结构体的地址。
+ */
+struct ObjectDetector {
+    Net net;
+    Mat frameBgr;
+    Mat blob;
+    // 网络输入边长，质量档位会在相机线程上修改，推理线程读取
+    std::atomic<int> inputSize{300};
+    // 最近一次检测各子阶段的耗时，只在推理线程上写入和读取
+    StageTimes<DETECT_STAGE_COUNT> times;
+
+    // 变化门控 (见 DetectionGate)。开关在任意线程上设置，gate 本身只在推理线程上使用
+    std::atomic<bool> gating{false};
+    std::atomic<bool> gateResetRequested{false};
+    std::atomic<int> lastDecision{GATE_FULL};
+    DetectionGate gate;
+    std::vector<Rect> rois;
+    // 上一次输出的完整结果：跳过推理时整体沿用，只推理裁剪区域时沿用裁剪区域以外的部分
+    std::vector<DetectionRecord> lastResults;
+    std::vector<DetectionRecord> results;
+};
+
 /**
  * 帮助函数：将 jlong 转换为 Mat&
  */
@@ -21,6 +52,33 @@ static Mat &jlongToMat(jlong addr) {
     return *reinterpret_cast<Mat *>(addr);
 }
 
+/**
+ * 预处理 + 前向传播，检测和预热共用。
+ */
+static Mat runForward(ObjectDetector *detector, const Mat &frame) {
+    int64_t start = stageNowNanos();
+    // 1. 预处理：RGBA 转 BGR (逻辑保留，输出复用检测器里的缓冲)。
+    //    三通道输入视为已经是 BGR (DetectionWorker 投递时顺带转好了)，不再转换
+    const Mat *bgr = &frame;
+    if (frame.channels() == 4) {
+        cvtColor(frame, detector->frameBgr, COLOR_RGBA2BGR);
+        bgr = &detector->frameBgr;
+    }
+
+    // 2. 创建 Blob (默认 300x300，低档位会缩小；mean=127.5, swapRB=false)
+    int size = detector->inputSize.load(std::memory_order_relaxed);
+    blobFromImage(*bgr, detector->blob, 0.007843, Size(size, size),
+                  Scalar(127.5, 127.5, 127.5), false, false);
+
+    // 3. 前向传播
+    int64_t forwardStart = stageNowNanos();
+    detector->times.add(DETECT_PREPROCESS, forwardStart - start);
+    detector->net.setInput(detector->blob);
+    Mat out = detector->net.forward();
+    detector->times.add(DETECT_FORWARD, stageNowNanos() - forwardStart);
+    return out;
+}
+
 JNIEXPORT jlong JNICALL
 Java_com_example_glasspro_NativeProcessor_loadObjectDetector(JNIEnv *env, jclass clazz,
                                                              jstring proto, jstring model) {
@@ -30,103 +88,173 @@ Java_com_example_glasspro_NativeProcessor_loadObjectDetector(JNIEnv *env, jclass
     // 加载模型时保留日志是有益的，因为它只运行一次
     LOGI("Loading model from: %s", model_path);
 
-    Net *net = new Net();
+    ObjectDetector *detector = new ObjectDetector();
     try {
-        *net = readNetFromCaffe(proto_path, model_path);
-        net->setPreferableBackend(DNN_BACKEND_OPENCV);
-        net->setPreferableTarget(DNN_TARGET_CPU);
+        detector->net = readNetFromCaffe(proto_path, model_path);
+        detector->net.setPreferableBackend(DNN_BACKEND_OPENCV);
+        detector->net.setPreferableTarget(DNN_TARGET_CPU);
         LOGI("DNN Model loaded successfully.");
     } catch (const cv::Exception &e) {
         LOGE("Failed to load DNN Model: %s", e.what());
-        delete net;
-        net = nullptr;
+        delete detector;
+        detector = nullptr;
     }
 
     env->ReleaseStringUTFChars(proto, proto_path);
     env->ReleaseStringUTFChars(model, model_path);
 
-    return reinterpret_cast<jlong>(net);
+    return reinterpret_cast<jlong>(detector);
+}
+
+JNIEXPORT jlong JNICALL
+Java_com_example_glasspro_NativeProcessor_loadObjectDetectorFromBuffers(JNIEnv *env, jclass clazz,
+                                                                        jobject proto_buffer,
+                                                                        jobject model_buffer) {
+    // 两个 buffer 都是 Java 层 mmap 出来的 asset，这里直接从内存解析，不经过缓存文件
+    const char *proto_data = static_cast<const char *>(env->GetDirectBufferAddress(proto_buffer));
+    const char *model_data = static_cast<const char *>(env->GetDirectBufferAddress(model_buffer));
+    jlong proto_len = env->GetDirectBufferCapacity(proto_buffer);
+    jlong model_len = env->GetDirectBufferCapacity(model_buffer);
+    if (proto_data == nullptr || model_data == nullptr || proto_len <= 0 || model_len <= 0) {
+        LOGE("loadObjectDetectorFromBuffers: buffers must be direct and non-empty.");
+        return 0;
+    }
+
+    ObjectDetector *detector = new ObjectDetector();
+    try {
+        detector->net = readNetFromCaffe(proto_data, (size_t) proto_len, model_data, (size_t) model_len);
+        detector->net.setPreferableBackend(DNN_BACKEND_OPENCV);
+        detector->net.setPreferableTarget(DNN_TARGET_CPU);
+        LOGI("DNN Model loaded from mapped buffers (%lld bytes).", (long long) model_len);
+    } catch (const cv::Exception &e) {
+        LOGE("Failed to load DNN Model: %s", e.what());
+        delete detector;
+        detector = nullptr;
+    }
+    return reinterpret_cast<jlong>(detector);
 }
 
 JNIEXPORT void JNICALL
 Java_com_example_glasspro_NativeProcessor_releaseObjectDetector(JNIEnv *env, jclass clazz,
                                                                 jlong net_ptr) {
     if (net_ptr != 0) {
-        Net *net = reinterpret_cast<Net *>(net_ptr);
-        delete net;
+        ObjectDetector *detector = reinterpret_cast<ObjectDetector *>(net_ptr);
+        delete detector;
         LOGI("DNN Model released.");
     }
 }
 
-JNIEXPORT void JNICALL
+/**
+ * 解析 SSD 输出，把 roi 内的检测结果换算回原图坐标追加到 out，最多 maxCount 条。
+ */
+static void decodeDetections(const Mat &detections, const Rect &roi, float confThreshold,
+                             std::vector<DetectionRecord> &out, size_t maxCount) {
+    Mat detection_matrix(detections.size[2], detections.size[3], CV_32F, detections.data);
+
+    float frame_height = (float)roi.height;
+    float frame_width = (float)roi.width;
+
+    for (int i = 0; i < detection_matrix.rows && out.size() < maxCount; i++) {
+        float confidence = detection_matrix.at<float>(i, 2);
+
+        if (confidence > confThreshold) {
+            int class_id = static_cast<int>(detection_matrix.at<float>(i, 1));
+
+            int x_left = static_cast<int>(detection_matrix.at<float>(i, 3) * frame_width);
+            int y_top = static_cast<int>(detection_matrix.at<float>(i, 4) * frame_height);
+            int x_right = static_cast<int>(detection_matrix.at<float>(i, 5) * frame_width);
+            int y_bottom = static_cast<int>(detection_matrix.at<float>(i, 6) * frame_height);
+
+            int w = x_right - x_left;
+            int h = y_bottom - y_top;
+
+            // 过滤逻辑 (逻辑保留：宽和高大于0，且面积 > 100，且在边界内)。
+            // 裁剪推理时边界指裁剪区域，被裁剪边缘截断的目标不输出
+            if (w > 0 && h > 0 && (w * h > 100) &&
+                x_left >= 0 && y_top >= 0 &&
+                x_right < frame_width && y_bottom < frame_height)
+            {
+                out.push_back({roi.x + x_left, roi.y + y_top, w, h, class_id, confidence});
+            }
+        }
+    }
+}
+
+static bool intersectsAny(const DetectionRecord &rec, const std::vector<Rect> &rois) {
+    Rect box(rec.x, rec.y, rec.width, rec.height);
+    for (const Rect &r : rois) {
+        if ((box & r).area() > 0) return true;
+    }
+    return false;
+}
+
+JNIEXPORT jint JNICALL
 Java_com_example_glasspro_NativeProcessor_detectObjectsNN(JNIEnv *env, jclass clazz,
                                                           jlong net_ptr, jlong frame_addr,
-                                                          jlong boxes_addr, jlong class_ids_addr,
+                                                          jobject out_buffer, jint max_detections,
                                                           jfloat conf_threshold) {
     if (net_ptr == 0) {
         // 这种属于严重错误，建议保留 LOGE
         LOGE("net_ptr is 0, aborting detection.");
-        return;
+        return -1;
+    }
+
+    // 输出缓冲由 Java 层持有，这里只检查容量
+    DetectionRecord *out = static_cast<DetectionRecord *>(env->GetDirectBufferAddress(out_buffer));
+    jlong out_capacity = env->GetDirectBufferCapacity(out_buffer);
+    if (out == nullptr || out_capacity < (jlong) max_detections * (jlong) sizeof(DetectionRecord)) {
+        LOGE("detectObjectsNN: output buffer is not direct or too small.");
+        return -1;
     }
 
     try {
-        Net *net = reinterpret_cast<Net *>(net_ptr);
-        Mat &frame = jlongToMat(frame_addr); // RGBA
-        Mat &out_boxes_mat = jlongToMat(boxes_addr);
-        Mat &out_ids_mat = jlongToMat(class_ids_addr);
+        ObjectDetector *detector = reinterpret_cast<ObjectDetector *>(net_ptr);
+        Mat &frame = jlongToMat(frame_addr); // RGBA，或已转好的 BGR (三通道)
 
         if (frame.empty()) {
-            return;
+            return 0;
         }
+        detector->times.reset();
 
-        // 1. 预处理：RGBA 转 BGR (逻辑保留)
-        Mat frame_bgr;
-        cvtColor(frame, frame_bgr, COLOR_RGBA2BGR);
-
-        // 2. 创建 Blob (参数保留：300x300, mean=127.5, swapRB=false)
-        Mat blob = blobFromImage(frame_bgr, 0.007843, Size(300, 300), Scalar(127.5, 127.5, 127.5), false, false);
-
-        // 3. 前向传播
-        net->setInput(blob);
-        Mat detections = net->forward();
-
-        // 4. 解析结果
-        Mat detection_matrix(detections.size[2], detections.size[3], CV_32F, detections.data);
-
-        vector<Rect> boxes_vec;
-        vector<int> ids_vec;
-
-        float frame_height = (float)frame.rows;
-        float frame_width = (float)frame.cols;
-
-        for (int i = 0; i < detection_matrix.rows; i++) {
-            float confidence = detection_matrix.at<float>(i, 2);
-
-            if (confidence > conf_threshold) {
-                int class_id = static_cast<int>(detection_matrix.at<float>(i, 1));
-
-                int x_left = static_cast<int>(detection_matrix.at<float>(i, 3) * frame_width);
-                int y_top = static_cast<int>(detection_matrix.at<float>(i, 4) * frame_height);
-                int x_right = static_cast<int>(detection_matrix.at<float>(i, 5) * frame_width);
-                int y_bottom = static_cast<int>(detection_matrix.at<float>(i, 6) * frame_height);
-
-                int w = x_right - x_left;
-                int h = y_bottom - y_top;
+        // 0. 变化门控：决定整帧推理、只推理变化区域，还是直接沿用上次结果
+        GateDecision decision = GATE_FULL;
+        if (detector->gateResetRequested.exchange(false)) detector->gate.reset();
+        if (detector->gating.load(std::memory_order_relaxed)) {
+            ScopedStage<DETECT_STAGE_COUNT> gateTimer(detector->times, DETECT_GATE);
+            decision = detector->gate.evaluate(frame, detector->rois);
+        }
 
-                // 过滤逻辑 (逻辑保留：宽和高大于0，且面积 > 100，且在边界内)
-                if (w > 0 && h > 0 && (w * h > 100) &&
-                    x_left >= 0 && y_top >= 0 &&
-                    x_right < frame_width && y_bottom < frame_height)
-                {
-                    boxes_vec.push_back(Rect(x_left, y_top, w, h));
-                    ids_vec.push_back(class_id);
-                }
+        std::vector<DetectionRecord> &results = detector->results;
+        results.clear();
+        size_t maxCount = (size_t) std::max(0, (int) max_detections);
+        if (decision == GATE_SKIP) {
+            results = detector->lastResults;
+        } else if (decision == GATE_ROI) {
+            // 裁剪区域以外沿用上次结果，裁剪区域内重新推理
+            for (const DetectionRecord &rec : detector->lastResults) {
+                if (!intersectsAny(rec, detector->rois)) results.push_back(rec);
+            }
+            for (const Rect &roi : detector->rois) {
+                Mat detections = runForward(detector, frame(roi));
+                ScopedStage<DETECT_STAGE_COUNT> decodeTimer(detector->times, DETECT_DECODE);
+                decodeDetections(detections, roi, conf_threshold, results, maxCount);
             }
+        } else {
+            // 1~3. 预处理 + 前向传播
+            Mat detections = runForward(detector, frame);
+
+            // 4. 解析结果
+            ScopedStage<DETECT_STAGE_COUNT> decodeTimer(detector->times, DETECT_DECODE);
+            decodeDetections(detections, Rect(0, 0, frame.cols, frame.rows), conf_threshold, results, maxCount);
         }
+        if (detector->gating.load(std::memory_order_relaxed)) detector->gate.commit(decision, detector->rois);
+        detector->lastDecision.store(decision, std::memory_order_relaxed);
 
-        // 5. 输出结果
-        Mat(boxes_vec).copyTo(out_boxes_mat);
-        Mat(ids_vec).copyTo(out_ids_mat);
+        // 5. 直接写入输出缓冲，返回有效条数
+        int count = (int) std::min(results.size(), maxCount);
+        std::copy(results.begin(), results.begin() + count, out);
+        detector->lastResults.assign(results.begin(), results.begin() + count);
+        return count;
 
     } catch (const cv::Exception &e) {
         // 捕获 OpenCV 内部异常时输出 LOGE
@@ -134,4 +262,59 @@ Java_com_example_glasspro_NativeProcessor_detectObjectsNN(JNIEnv *env, jclass cl
     } catch (...) {
         LOGE("Unknown Error in detectObjectsNN");
     }
-}
\ No newline at end of file
+    return -1;
+}
+
+JNIEXPORT jlong JNICALL
+Java_com_example_glasspro_NativeProcessor_warmUpObjectDetector(JNIEnv *env, jclass clazz,
+                                                               jlong net_ptr, jint width,
+                                                               jint height) {
+    if (net_ptr == 0) return -1;
+    try {
+        // 用一帧与预览同尺寸的空白图跑一次完整推理，让各层的惰性初始化和缓冲分配提前完成
+        ObjectDetector *detector = reinterpret_cast<ObjectDetector *>(net_ptr);
+        Mat dummy(height, width, CV_8UC4, Scalar::all(0));
+        int64 start = getTickCount();
+        detector->times.reset();
+        runForward(detector, dummy);
+        return (jlong) ((getTickCount() - start) * 1000.0 / getTickFrequency());
+    } catch (const cv::Exception &e) {
+        LOGE("OpenCV Error in warmUpObjectDetector: %s", e.what());
+    }
+    return -1;
+}
+
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_setDetectorInputSize(JNIEnv *env, jclass clazz,
+                                                               jlong net_ptr, jint size) {
+    if (net_ptr == 0 || size <= 0) return;
+    // SSD 的 PriorBox 按特征图尺寸生成，输入边长可以在运行时调整
+    ObjectDetector *detector = reinterpret_cast<ObjectDetector *>(net_ptr);
+    detector->inputSize.store(size, std::memory_order_relaxed);
+}
+
+JNIEXPORT jlong JNICALL
+Java_com_example_glasspro_NativeProcessor_getDetectorStageNanos(JNIEnv *env, jclass clazz,
+                                                                jlong net_ptr, jint stage) {
+    if (net_ptr == 0) return 0;
+    ObjectDetector *detector = reinterpret_cast<ObjectDetector *>(net_ptr);
+    return (jlong) detector->times.get(stage);
+}
+
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_setDetectorGating(JNIEnv *env, jclass clazz,
+                                                            jlong net_ptr, jboolean enabled) {
+    if (net_ptr == 0) return;
+    ObjectDetector *detector = reinterpret_cast<ObjectDetector *>(net_ptr);
+    // 开关切换后参考缩略图和沿用的结果都不可信，推理线程在下一帧整帧推理
+    detector->gateResetRequested.store(true);
+    detector->gating.store(enabled == JNI_TRUE);
+}
+
+JNIEXPORT jint JNICALL
+Java_com_example_glasspro_NativeProcessor_getDetectorGateDecision(JNIEnv *env, jclass clazz,
+                                                                  jlong net_ptr) {
+    if (net_ptr == 0) return GATE_FULL;
+    ObjectDetector *detector = reinterpret_cast<ObjectDetector *>(net_ptr);
+    return detector->lastDecision.load(std::memory_order_relaxed);
+}
@@ -3,6 +3,20 @@
 #define VISION_PROCESSOR_H
 
 #include <jni.h>
+#include <cstdint>
+
+/**
+ * 检测结果记录，与 Java 层 DetectionBuffer 的 24 字节布局一一对应 (本机字节序)。
+ */
+struct DetectionRecord {
+    int32_t x;
+    int32_t y;
+    int32_t width;
+    int32_t height;
+    int32_t classId;
+    float score;
+};
+static_assert(sizeof(DetectionRecord) == 24, "DetectionRecord must match DetectionBuffer.RECORD_BYTES");
 
 #ifdef __cplusplus
 extern "C" {
@@ -16,6 +30,24 @@ extern "C" {
 JNIEXPORT jlong JNICALL
 Java_com_example_glasspro_NativeProcessor_loadObjectDetector(JNIEnv *, jclass, jstring, jstring);
 
+/*
+ * Class:     com_example_glasspro_NativeProcessor
+ * Method:    loadObjectDetectorFromBuffers
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;)J
+ */
+JNIEXPORT jlong JNICALL
+Java_com_example_glasspro_NativeProcessor_loadObjectDetectorFromBuffers(JNIEnv *, jclass, jobject,
+                                                                        jobject);
+
+/*
+ * Class:     com_example_glasspro_NativeProcessor
+ * Method:    warmUpObjectDetector
+ * Signature: (JII)J
+ */
+JNIEXPORT jlong JNICALL
+Java_com_example_glasspro_NativeProcessor_warmUpObjectDetector(JNIEnv *, jclass, jlong, jint,
+                                                               jint);
+
 /*
  * Class:     com_example_glasspro_NativeProcessor
  * Method:    releaseObjectDetector
@@ -27,11 +59,43 @@ Java_com_example_glasspro_NativeProcessor_releaseObjectDetector(JNIEnv *, jclass
 /*
  * Class:     com_example_glasspro_NativeProcessor
  * Method:    detectObjectsNN
- * Signature: (JJJJf)V
+ * Signature: (JJLjava/nio/ByteBuffer;IF)I
  */
-JNIEXPORT void JNICALL
+JNIEXPORT jint JNICALL
 Java_com_example_glasspro_NativeProcessor_detectObjectsNN(JNIEnv *, jclass, jlong, jlong,
-                                                          jlong, jlong, jfloat);
+                                                          jobject, jint, jfloat);
+
+/*
+ * Class:     com_example_glasspro_NativeProcessor
+ * Method:    setDetectorInputSize
+ * Signature: (JI)V
+ */
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_setDetectorInputSize(JNIEnv *, jclass, jlong, jint);
+
+/*
+ * Class:     com_example_glasspro_NativeProcessor
+ * Method:    getDetectorStageNanos
+ * Signature: (JI)J
+ */
+JNIEXPORT jlong JNICALL
+Java_com_example_glasspro_NativeProcessor_getDetectorStageNanos(JNIEnv *, jclass, jlong, jint);
+
+/*
+ * Class:     com_example_glasspro_NativeProcessor
+ * Method:    setDetectorGating
+ * Signature: (JZ)V
+ */
+JNIEXPORT void JNICALL
+Java_com_example_glasspro_NativeProcessor_setDetectorGating(JNIEnv *, jclass, jlong, jboolean);
+
+/*
+ * Class:     com_example_glasspro_NativeProcessor
+ * Method:    getDetectorGateDecision
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_example_glasspro_NativeProcessor_getDetectorGateDecision(JNIEnv *, jclass, jlong);
 
 #ifdef __cplusplus
 } // extern "C"
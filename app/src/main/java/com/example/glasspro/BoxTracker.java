@@ -0,0 +1,332 @@
+package com.example.glasspro;
+
+import java.util.Arrays;
+
+/**
+ * 检测框跟踪器 (struct-of-arrays 版本，SORT 风格的匀速运动模型)。
+ * <p>
+ * 每个 track 的中心点 x/y 各用一个 [位置, 速度] 两状态的卡尔曼滤波器，宽高用一阶随机游走滤波。
+ * update() 先把所有 track 预测到检测帧再做匹配和修正；没有检测的帧由调用方用
+ * projectedX/projectedY 按速度外推，因此检测可以每隔 N 帧才跑一次而框不会滞后。
+ * <p>
+ * 所有跟踪状态都保存在预分配的 int[] / float[] 数组里，update() 过程中不产生任何对象，
+ * 可以在 100+ 个框的拥挤场景下保持稳定耗时。
+ * <p>
+ * 匹配策略：中心距离小于 maxMatchDist 的同类别 (track, detection) 对按 IoU 从大到小全局贪心分配；
+ * IoU 为 0 的对排在所有 IoU>0 的对之后，按距离从近到远分配，
+ * 这样快速移动、前后两帧不重叠的目标仍然能接上原来的 track。
+ * <p>
+ * 本类不依赖 OpenCV/Android，可在主机 JVM 上直接做单元测试和 JMH 基准。非线程安全。
+ */
+public class BoxTracker {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    // 匹配打分：IoU>0 的对落在 [IOU_BASE, 2*IOU_BASE]，只靠距离匹配的对落在 [0, IOU_BASE)
+    private static final int IOU_BASE = 1 << 20;
+
+    // 置信度下限：测量方差按 1/score 放大，低分检测对状态的影响更小
+    private static final float MIN_SCORE = 0.1f;
+
+    // 新 track 的初始速度方差 (像素/帧)^2：速度未知，给一个较大的值让前几次检测快速收敛
+    private static final float INITIAL_VELOCITY_VAR = 100f;
+
+    private final int capacity;
+    private final float maxMatchDist;
+    private final int maxMissed;
+    private final long maxProjectFrames;
+    private final float processNoise;      // 每帧加速度噪声方差
+    private final float measurementNoise;  // 检测框位置/尺寸的测量方差
+
+    // --- track 状态 (SoA)：中心点、尺寸、速度，以及各自的协方差 ---
+    private final float[] cx, cy, w, h;
+    private final float[] vx, vy;
+    private final float[] pxx, pxv, pvvx;   // x 轴 [位置, 速度] 协方差
+    private final float[] pyy, pyv, pvvy;   // y 轴 [位置, 速度] 协方差
+    private final float[] pw, ph;           // 宽高方差
+    private final int[] classId;
+    private final int[] trackId;
+    private final int[] missed;
+    private final long[] lastFrame;         // 状态对应的帧号
+    private int count;
+    private int nextTrackId = 1;
+
+    // --- 本轮检测结果 (SoA)，update() 入口把输入拷进来 ---
+    private final int[] detX, detY, detW, detH, detClass;
+    private final float[] detScore;
+
+    // --- update() 用到的临时数组，全部预分配 ---
+    private final long[] pairs;
+    private final boolean[] trackMatched;
+    private final boolean[] detMatched;
+
+    public BoxTracker(int capacity, float maxMatchDist, int maxMissed, long maxProjectFrames,
+                      float processNoise, float measurementNoise) {
+        this.capacity = capacity;
+        this.maxMatchDist = maxMatchDist;
+        this.maxMissed = maxMissed;
+        this.maxProjectFrames = maxProjectFrames;
+        this.processNoise = processNoise;
+        this.measurementNoise = measurementNoise;
+
+        cx = new float[capacity];
+        cy = new float[capacity];
+        w = new float[capacity];
+        h = new float[capacity];
+        vx = new float[capacity];
+        vy = new float[capacity];
+        pxx = new float[capacity];
+        pxv = new float[capacity];
+        pvvx = new float[capacity];
+        pyy = new float[capacity];
+        pyv = new float[capacity];
+        pvvy = new float[capacity];
+        pw = new float[capacity];
+        ph = new float[capacity];
+        classId = new int[capacity];
+        trackId = new int[capacity];
+        missed = new int[capacity];
+        lastFrame = new long[capacity];
+
+        detX = new int[capacity];
+        detY = new int[capacity];
+        detW = new int[capacity];
+        detH = new int[capacity];
+        detClass = new int[capacity];
+        detScore = new float[capacity];
+
+        pairs = new long[capacity * capacity];
+        trackMatched = new boolean[capacity];
+        detMatched = new boolean[capacity];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 用 native 层写入的检测缓冲更新跟踪状态，置信度用于加权测量噪声。
+     */
+    public void update(DetectionBuffer detections, long frameIndex) {
+        int n = Math.min(detections.count(), capacity);
+        for (int d = 0; d < n; d++) {
+            detX[d] = detections.x(d);
+            detY[d] = detections.y(d);
+            detW[d] = detections.width(d);
+            detH[d] = detections.height(d);
+            detClass[d] = detections.classId(d);
+            detScore[d] = detections.score(d);
+        }
+        updateInternal(n, frameIndex);
+    }
+
+    public void update(int[] boxes, int[] classes, int n, long frameIndex) {
+        update(boxes, classes, null, n, frameIndex);
+    }
+
+    /**
+     * 用 frameIndex 这一帧的检测结果更新跟踪状态。
+     * 两次调用之间可以间隔任意帧数，track 会先按匀速模型预测到 frameIndex。
+     * @param boxes   检测框，按 x, y, width, height 交错存放，长度至少 4 * n
+     * @param classes 每个检测框的类别
+     * @param scores  每个检测框的置信度，可为 null (视为 1)
+     * @param n       检测框个数，超过 capacity 的部分被忽略
+     */
+    public void update(int[] boxes, int[] classes, float[] scores, int n, long frameIndex) {
+        if (n > capacity) n = capacity;
+        for (int d = 0; d < n; d++) {
+            int o = d * 4;
+            detX[d] = boxes[o];
+            detY[d] = boxes[o + 1];
+            detW[d] = boxes[o + 2];
+            detH[d] = boxes[o + 3];
+            detClass[d] = classes[d];
+            detScore[d] = scores != null ? scores[d] : 1f;
+        }
+        updateInternal(n, frameIndex);
+    }
+
+    private void updateInternal(int n, long frameIndex) {
+        float maxDistSq = maxMatchDist * maxMatchDist;
+
+        // 1. 预测到检测帧，并收集候选匹配对
+        int pairCount = 0;
+        for (int t = 0; t < count; t++) {
+            predict(t, frameIndex);
+            trackMatched[t] = false;
+            float tx = cx[t] - w[t] * 0.5f;
+            float ty = cy[t] - h[t] * 0.5f;
+            for (int d = 0; d < n; d++) {
+                if (detClass[d] != classId[t]) continue;
+                // 先用中心距离做廉价的门限，大部分远处的对在这里就被跳过
+                float dx = detX[d] + detW[d] * 0.5f - cx[t];
+                float dy = detY[d] + detH[d] * 0.5f - cy[t];
+                float distSq = dx * dx + dy * dy;
+                if (distSq >= maxDistSq) continue;
+                float iou = iou(tx, ty, w[t], h[t], detX[d], detY[d], detW[d], detH[d]);
+                int score = iou > 0f
+                        ? IOU_BASE + (int) (iou * IOU_BASE)
+                        : (int) ((1f - distSq / maxDistSq) * (IOU_BASE - 1));
+                pairs[pairCount++] = ((long) score << 32) | ((long) t << 16) | d;
+            }
+        }
+        for (int d = 0; d < n; d++) detMatched[d] = false;
+
+        // 2. 按分数从高到低贪心分配
+        Arrays.sort(pairs, 0, pairCount);
+        for (int p = pairCount - 1; p >= 0; p--) {
+            int t = (int) ((pairs[p] >>> 16) & 0xFFFF);
+            int d = (int) (pairs[p] & 0xFFFF);
+            if (trackMatched[t] || detMatched[d]) continue;
+            trackMatched[t] = true;
+            detMatched[d] = true;
+            correct(t, d);
+        }
+
+        // 3. 未匹配的 track 计数 (以检测轮次计)，超时删除 (用最后一个元素填补空位)
+        for (int t = count - 1; t >= 0; t--) {
+            if (trackMatched[t]) continue;
+            if (++missed[t] > maxMissed) removeAt(t);
+        }
+
+        // 4. 未匹配的检测框新建 track
+        for (int d = 0; d < n && count < capacity; d++) {
+            if (detMatched[d]) continue;
+            int t = count++;
+            w[t] = detW[d];
+            h[t] = detH[d];
+            cx[t] = detX[d] + w[t] * 0.5f;
+            cy[t] = detY[d] + h[t] * 0.5f;
+            vx[t] = 0f;
+            vy[t] = 0f;
+            pxx[t] = pyy[t] = measurementNoise;
+            pxv[t] = pyv[t] = 0f;
+            pvvx[t] = pvvy[t] = INITIAL_VELOCITY_VAR;
+            pw[t] = ph[t] = measurementNoise;
+            classId[t] = detClass[d];
+            trackId[t] = nextTrackId++;
+            missed[t] = 0;
+            lastFrame[t] = frameIndex;
+        }
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int classIdAt(int i) { return classId[i]; }
+    public int trackIdAt(int i) { return trackId[i]; }
+    public int widthAt(int i) { return Math.round(w[i]); }
+    public int heightAt(int i) { return Math.round(h[i]); }
+    public float velocityXAt(int i) { return vx[i]; }
+    public float velocityYAt(int i) { return vy[i]; }
+
+    /** 第 i 个 track 预测到 currentFrameIndex 时的左上角 x (不修改状态) */
+    public int projectedX(int i, long currentFrameIndex) {
+        return Math.round(cx[i] + vx[i] * framesAhead(i, currentFrameIndex) - w[i] * 0.5f);
+    }
+
+    /** 第 i 个 track 预测到 currentFrameIndex 时的左上角 y (不修改状态) */
+    public int projectedY(int i, long currentFrameIndex) {
+        return Math.round(cy[i] + vy[i] * framesAhead(i, currentFrameIndex) - h[i] * 0.5f);
+    }
+
+    private long framesAhead(int i, long currentFrameIndex) {
+        return Math.min(Math.max(0, currentFrameIndex - lastFrame[i]), maxProjectFrames);
+    }
+
+    // 卡尔曼预测：匀速模型把状态推进 dt 帧，协方差按 F P F' + Q 增长
+    private void predict(int t, long frameIndex) {
+        long steps = frameIndex - lastFrame[t];
+        if (steps <= 0) return;
+        float dt = steps;
+        float q = processNoise * dt;
+
+        cx[t] += vx[t] * dt;
+        float xx = pxx[t] + 2 * dt * pxv[t] + dt * dt * pvvx[t] + q;
+        pxv[t] = pxv[t] + dt * pvvx[t];
+        pvvx[t] += q;
+        pxx[t] = xx;
+
+        cy[t] += vy[t] * dt;
+        float yy = pyy[t] + 2 * dt * pyv[t] + dt * dt * pvvy[t] + q;
+        pyv[t] = pyv[t] + dt * pvvy[t];
+        pvvy[t] += q;
+        pyy[t] = yy;
+
+        pw[t] += q;
+        ph[t] += q;
+        lastFrame[t] = frameIndex;
+    }
+
+    // 卡尔曼修正：用第 d 个检测框的中心和尺寸更新状态，置信度越低测量方差越大
+    private void correct(int t, int d) {
+        float r = measurementNoise / Math.max(detScore[d], MIN_SCORE);
+        float zx = detX[d] + detW[d] * 0.5f;
+        float zy = detY[d] + detH[d] * 0.5f;
+
+        float s = pxx[t] + r;
+        float kx = pxx[t] / s, kv = pxv[t] / s;
+        float innov = zx - cx[t];
+        cx[t] += kx * innov;
+        vx[t] += kv * innov;
+        pvvx[t] -= kv * pxv[t];
+        pxv[t] *= (1 - kx);
+        pxx[t] *= (1 - kx);
+
+        s = pyy[t] + r;
+        kx = pyy[t] / s;
+        kv = pyv[t] / s;
+        innov = zy - cy[t];
+        cy[t] += kx * innov;
+        vy[t] += kv * innov;
+        pvvy[t] -= kv * pyv[t];
+        pyv[t] *= (1 - kx);
+        pyy[t] *= (1 - kx);
+
+        float k = pw[t] / (pw[t] + r);
+        w[t] += k * (detW[d] - w[t]);
+        pw[t] *= (1 - k);
+        k = ph[t] / (ph[t] + r);
+        h[t] += k * (detH[d] - h[t]);
+        ph[t] *= (1 - k);
+
+        missed[t] = 0;
+    }
+
+    private void removeAt(int t) {
+        int last = --count;
+        if (t == last) return;
+        cx[t] = cx[last];
+        cy[t] = cy[last];
+        w[t] = w[last];
+        h[t] = h[last];
+        vx[t] = vx[last];
+        vy[t] = vy[last];
+        pxx[t] = pxx[last];
+        pxv[t] = pxv[last];
+        pvvx[t] = pvvx[last];
+        pyy[t] = pyy[last];
+        pyv[t] = pyv[last];
+        pvvy[t] = pvvy[last];
+        pw[t] = pw[last];
+        ph[t] = ph[last];
+        classId[t] = classId[last];
+        trackId[t] = trackId[last];
+        missed[t] = missed[last];
+        lastFrame[t] = lastFrame[last];
+        trackMatched[t] = trackMatched[last];
+    }
+
+    static float iou(float ax, float ay, float aw, float ah, float bx, float by, float bw, float bh) {
+        float ix = Math.min(ax + aw, bx + bw) - Math.max(ax, bx);
+        float iy = Math.min(ay + ah, by + bh) - Math.max(ay, by);
+        if (ix <= 0 || iy <= 0) return 0f;
+        float inter = ix * iy;
+        return inter / (aw * ah + bw * bh - inter);
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.glasspro;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Environment;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import org.opencv.android.Utils;
+import org.opencv.core.Mat;
+
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 拍照保存流水线。
+ * <p>
+ * 固定数量的槽位，每个槽位持有一块帧拷贝 (Mat) 和一张 Bitmap，都跨拍摄复用。
+ * 相机线程 (流水线模式下是叠加阶段的线程) 的 {@link #submit(Mat)} 只取一个空闲槽位、把帧 copyTo 进去 (尺寸不变时是一次 memcpy)，
+ * 然后交给固定线程数的执行器；Mat -> Bitmap、JPEG 编码和 MediaStore 写入都在工作线程上完成，
+ * 完成后槽位归还。没有空闲槽位时 (保存跟不上连拍) 直接丢弃这一张并计数，相机线程从不等待。
+ * <p>
+ * 相机线程上的开销记为 PHOTO，从 submit 到文件写完的延迟记为 PHOTO_SAVE。
+ * <p>
+ * {@link #shutdown()} 不等待：在途的保存在后台继续写完，执行器终止后 (最后一张写完时) 才释放槽位。
+ */
+public class CapturePipeline {
+    private static final String TAG = "CapturePipeline";
+    private static final int JPEG_QUALITY = 95;
+
+    /** 保存结果回调，在工作线程上调用 */
+    public interface Listener {
+        void onSaved(String fileName);
+    }
+
+    private static class Slot {
+        final Mat frame = new Mat();
+        Bitmap bitmap;
+        long submitNanos;
+        long sequence;
+    }
+
+    private final ContentResolver resolver;
+    private final LatencyProfiler profiler;
+    private final Listener listener;
+    private final ArrayBlockingQueue<Slot> freeSlots;
+    private final Slot[] slots;
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong shotSequence = new AtomicLong();
+    private final AtomicLong savedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private boolean isShutdown; // 与 submit 的拷贝和投递互斥，shutdown 之后不再有人写槽位
+
+    /**
+     * @param slotCount   同时在途的最多张数 (决定内存上限)
+     * @param threadCount 编码线程数
+     */
+    public CapturePipeline(ContentResolver resolver, int slotCount, int threadCount,
+                           LatencyProfiler profiler, Listener listener) {
+        this.resolver = resolver;
+        this.profiler = profiler;
+        this.listener = listener;
+        this.slots = new Slot[slotCount];
+        this.freeSlots = new ArrayBlockingQueue<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new Slot();
+            freeSlots.add(slots[i]);
+        }
+        // 在途任务数不会超过槽位数，队列不会满
+        this.executor = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(slotCount), r -> new Thread(r, "CapturePipeline")) {
+            @Override
+            protected void terminated() {
+                releaseSlots();
+            }
+        };
+    }
+
+    /**
+     * 相机线程调用：拷贝一帧交给工作线程保存。没有空闲槽位时返回 false。
+     */
+    public boolean submit(Mat frame) {
+        if (frame.empty()) return false;
+        long start = System.nanoTime();
+        Slot slot = freeSlots.poll();
+        if (slot == null) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        // 只有拍照的帧才进这里，锁只会与 shutdown 竞争
+        synchronized (this) {
+            if (isShutdown) {
+                freeSlots.offer(slot);
+                return false;
+            }
+            frame.copyTo(slot.frame);
+            slot.submitNanos = start;
+            slot.sequence = shotSequence.incrementAndGet();
+            try {
+                executor.execute(() -> save(slot));
+            } catch (RejectedExecutionException e) {
+                freeSlots.offer(slot);
+                droppedCount.incrementAndGet();
+                return false;
+            }
+        }
+        profiler.recordSince(LatencyProfiler.Stage.PHOTO, start);
+        return true;
+    }
+
+    private void save(Slot slot) {
+        try {
+            Mat frame = slot.frame;
+            if (slot.bitmap == null || slot.bitmap.getWidth() != frame.cols() || slot.bitmap.getHeight() != frame.rows()) {
+                if (slot.bitmap != null) slot.bitmap.recycle();
+                slot.bitmap = Bitmap.createBitmap(frame.cols(), frame.rows(), Bitmap.Config.ARGB_8888);
+            }
+            Utils.matToBitmap(frame, slot.bitmap);
+
+            String fileName = "GlassPro_" + System.currentTimeMillis() + "_" + slot.sequence + ".jpg";
+            ContentValues values = new ContentValues();
+            values.put(MediaStore.Images.Media.DISPLAY_NAME, fileName);
+            values.put(MediaStore.Images.Media.MIME_TYPE, "image/jpeg");
+            values.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_PICTURES + "/GlassPro");
+            Uri uri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+            if (uri == null) {
+                failedCount.incrementAndGet();
+                return;
+            }
+            try (OutputStream out = resolver.openOutputStream(uri)) {
+                slot.bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            }
+            profiler.recordSince(LatencyProfiler.Stage.PHOTO_SAVE, slot.submitNanos);
+            savedCount.incrementAndGet();
+            if (listener != null) listener.onSaved(fileName);
+        } catch (Exception e) {
+            failedCount.incrementAndGet();
+            Log.e(TAG, "Save error: " + e.getMessage());
+        } finally {
+            freeSlots.offer(slot);
+        }
+    }
+
+    public long getSavedCount() { return savedCount.get(); }
+    public long getDroppedCount() { return droppedCount.get(); }
+    public long getFailedCount() { return failedCount.get(); }
+
+    /** 正在保存的张数 */
+    public int getInFlight() {
+        return slots.length - freeSlots.size();
+    }
+
+    /** 不再接受新的拍摄并立即返回；在途的保存在工作线程上写完，之后释放槽位 */
+    public void shutdown() {
+        synchronized (this) {
+            isShutdown = true;
+            executor.shutdown();
+        }
+    }
+
+    // 执行器终止时调用 (没有在途任务时就在 shutdown 的线程上)，此时已经没有线程访问槽位
+    private void releaseSlots() {
+        for (Slot slot : slots) {
+            slot.frame.release();
+            if (slot.bitmap != null) slot.bitmap.recycle();
+            slot.bitmap = null;
+        }
+    }
+}
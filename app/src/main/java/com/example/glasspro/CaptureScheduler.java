@@ -0,0 +1,78 @@
+package com.example.glasspro;
+
+/**
+ * 拍照调度：决定相机线程上的哪些帧要保存。
+ * <p>
+ * 单拍请求和连拍由 UI 线程发起，相机线程每帧调用 {@link #shouldCapture(long)}。
+ * 连拍按固定间隔取帧，间隔从连拍开始时刻算起，不随帧率抖动累积误差；
+ * 相机线程卡顿错过了若干个间隔时只补拍一张，不会在恢复后连续补拍。
+ * <p>
+ * 本类只做决策，不依赖 OpenCV/Android。方法都是 synchronized 的，两个线程上的调用都很少竞争。
+ */
+public class CaptureScheduler {
+
+    private int pendingSingles;
+    private boolean bursting;
+    private long burstIntervalNanos;
+    private long nextBurstNanos;
+    private int burstRemaining;
+    private boolean burstStartPending;
+
+    /** 下一帧拍一张 (可以累积多次请求，每帧最多拍一张) */
+    public synchronized void requestSingle() {
+        pendingSingles++;
+    }
+
+    /**
+     * 开始连拍：每秒 framesPerSecond 张，共 count 张，从下一帧开始。
+     */
+    public synchronized void startBurst(int framesPerSecond, int count) {
+        if (framesPerSecond <= 0 || count <= 0) return;
+        bursting = true;
+        burstIntervalNanos = 1_000_000_000L / framesPerSecond;
+        burstRemaining = count;
+        burstStartPending = true;
+    }
+
+    public synchronized void stopBurst() {
+        bursting = false;
+        burstRemaining = 0;
+    }
+
+    public synchronized boolean isBursting() {
+        return bursting;
+    }
+
+    /** 连拍还剩多少张 */
+    public synchronized int getBurstRemaining() {
+        return burstRemaining;
+    }
+
+    /** 相机线程每帧调用一次：这一帧是否要保存 */
+    public synchronized boolean shouldCapture(long nowNanos) {
+        boolean capture = false;
+        if (bursting) {
+            if (burstStartPending) {
+                burstStartPending = false;
+                nextBurstNanos = nowNanos;
+            }
+            if (nowNanos >= nextBurstNanos) {
+                capture = true;
+                nextBurstNanos += burstIntervalNanos;
+                // 落后超过一个间隔：从现在重新对齐
+                if (nextBurstNanos <= nowNanos) nextBurstNanos = nowNanos + burstIntervalNanos;
+                if (--burstRemaining <= 0) bursting = false;
+            }
+        }
+        if (!capture && pendingSingles > 0) {
+            pendingSingles--;
+            capture = true;
+        }
+        return capture;
+    }
+
+    public synchronized void clear() {
+        pendingSingles = 0;
+        stopBurst();
+    }
+}
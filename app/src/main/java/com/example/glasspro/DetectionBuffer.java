@@ -0,0 +1,58 @@
+package com.example.glasspro;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 检测结果缓冲区：一块由调用方持有的 direct ByteBuffer，native 层直接写入。
+ * <p>
+ * 每条记录 24 字节，字段依次为 int32 x, y, width, height, classId 和 float32 score，
+ * 字节序为本机字节序，与 vision_processor.cpp 里的 DetectionRecord 一一对应。
+ * 整个对象可以跨帧复用，每帧不产生 native 分配，也不需要 toArray()。
+ */
+public class DetectionBuffer {
+    public static final int RECORD_BYTES = 24;
+
+    private static final int OFFSET_X = 0;
+    private static final int OFFSET_Y = 4;
+    private static final int OFFSET_W = 8;
+    private static final int OFFSET_H = 12;
+    private static final int OFFSET_CLASS = 16;
+    private static final int OFFSET_SCORE = 20;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private int count;
+
+    public DetectionBuffer(int capacity) {
+        this.capacity = capacity;
+        this.buffer = ByteBuffer.allocateDirect(capacity * RECORD_BYTES).order(ByteOrder.nativeOrder());
+    }
+
+    public ByteBuffer buffer() { return buffer; }
+    public int capacity() { return capacity; }
+    public int count() { return count; }
+
+    /** native 调用返回后设置有效记录数 */
+    public void setCount(int count) {
+        this.count = Math.max(0, Math.min(count, capacity));
+    }
+
+    public int x(int i) { return buffer.getInt(i * RECORD_BYTES + OFFSET_X); }
+    public int y(int i) { return buffer.getInt(i * RECORD_BYTES + OFFSET_Y); }
+    public int width(int i) { return buffer.getInt(i * RECORD_BYTES + OFFSET_W); }
+    public int height(int i) { return buffer.getInt(i * RECORD_BYTES + OFFSET_H); }
+    public int classId(int i) { return buffer.getInt(i * RECORD_BYTES + OFFSET_CLASS); }
+    public float score(int i) { return buffer.getFloat(i * RECORD_BYTES + OFFSET_SCORE); }
+
+    /** 主机端测试/回放用：手动写入一条记录 */
+    public void put(int i, int x, int y, int width, int height, int classId, float score) {
+        int o = i * RECORD_BYTES;
+        buffer.putInt(o + OFFSET_X, x);
+        buffer.putInt(o + OFFSET_Y, y);
+        buffer.putInt(o + OFFSET_W, width);
+        buffer.putInt(o + OFFSET_H, height);
+        buffer.putInt(o + OFFSET_CLASS, classId);
+        buffer.putFloat(o + OFFSET_SCORE, score);
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.glasspro;
+
+import android.util.Log;
+
+import org.opencv.core.Mat;
+
+/**
+ * 目标检测工作线程。
+ * <p>
+ * 相机线程 (流水线模式下是叠加阶段的线程) 通过 {@link #submit(Mat, long)} 把帧交给检测器池 ({@link DetectorPool})：单槽信箱、最新帧优先，
+ * 池里每个检测器实例一个推理线程，相邻几帧可以同时推理，结果按帧序更新 NativeProcessor 里的稳定框；
+ * 相机线程只负责把稳定框外推到当前帧并绘制，推理耗时不再计入预览延迟。
+ * <p>
+ * 通过 {@link #setDetectionInterval(int)} 可以只在每 N 帧投递一次，
+ * 中间的帧完全由跟踪器的匀速模型预测，DNN 的 CPU 开销约降为 1/N。
+ * 检测器打开门控 (NativeProcessor.setDetectorGating) 时，native 层还会在场景没有变化时跳过推理、
+ * 在局部变化时只推理变化区域，返回的仍是完整的一帧结果，跟踪器照常更新；各决策的次数见 get*Inferences。
+ * 门控状态属于单个检测器实例，池里有多个实例时各自与自己上一次推理的帧比较。
+ */
+public class DetectionWorker implements DetectorPool.Listener {
+    private static final String TAG = "DetectionWorker";
+
+    private final RateMeter detectionRate = new RateMeter();
+    private volatile long completedDetections;
+    private volatile long skippedInferences;
+    private volatile long roiInferences;
+
+    private final Object poolLock = new Object();
+    private volatile DetectorPool pool;
+    private volatile int detectionInterval = 1;
+    private volatile boolean running;
+    private volatile LatencyProfiler profiler;
+
+    /**
+     * 换用新的检测器池 (模型异步加载完成时)。正在运行时停掉旧池的线程并启动新池；
+     * 旧池的检测器由调用方释放。
+     */
+    public void setPool(DetectorPool pool) {
+        synchronized (poolLock) {
+            DetectorPool old = this.pool;
+            if (old == pool) return;
+            if (old != null) old.stop();
+            this.pool = pool;
+            if (running && pool != null) pool.start(this);
+        }
+    }
+
+    /** 每 interval 帧做一次推理，其余帧由跟踪器预测 */
+    public void setDetectionInterval(int interval) {
+        this.detectionInterval = Math.max(1, interval);
+    }
+
+    /** 推理与跟踪的耗时写入 profiler，为 null 时不统计 */
+    public void setProfiler(LatencyProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public void start() {
+        synchronized (poolLock) {
+            if (running) return;
+            running = true;
+            if (pool != null) pool.start(this);
+        }
+    }
+
+    public void stop() {
+        synchronized (poolLock) {
+            running = false;
+            if (pool != null) pool.stop();
+        }
+    }
+
+    /**
+     * 相机线程调用：投递一帧，池里未被取走的旧帧会被覆盖。
+     */
+    public void submit(Mat frame, long frameIndex) {
+        DetectorPool p = pool;
+        if (!running || p == null || frame.empty()) return;
+        if (frameIndex % detectionInterval != 0) return;
+        p.submit(frame, frameIndex);
+    }
+
+    /** 清空信箱，并让正在进行的推理结果作废 */
+    public void clear() {
+        DetectorPool p = pool;
+        if (p != null) p.clear();
+        NativeProcessor.resetStabilizer();
+    }
+
+    public float getDetectionRate() {
+        return detectionRate.getRate();
+    }
+
+    /** 已完成并应用到跟踪器的推理次数 */
+    public long getCompletedDetections() {
+        return completedDetections;
+    }
+
+    /** 门控判定场景无变化、没有做前向传播的次数 */
+    public long getSkippedInferences() {
+        return skippedInferences;
+    }
+
+    /** 门控判定局部变化、只推理了裁剪区域的次数 */
+    public long getRoiInferences() {
+        return roiInferences;
+    }
+
+    public long getDroppedFrames() {
+        DetectorPool p = pool;
+        return p != null ? p.getDroppedFrames() : 0;
+    }
+
+    // 推理线程上按帧序调用，池的锁保证同一时刻只有一个线程在这里
+    @Override
+    public void onDetections(DetectionBuffer detections, long frameIndex, long netPtr, long inferenceNanos) {
+        int decision = NativeProcessor.getDetectorGateDecision(netPtr);
+        if (decision == NativeProcessor.GATE_SKIP) skippedInferences++;
+        else if (decision == NativeProcessor.GATE_ROI) roiInferences++;
+        LatencyProfiler p = profiler;
+        if (p != null) {
+            p.record(LatencyProfiler.Stage.INFERENCE, inferenceNanos);
+            for (LatencyProfiler.Stage s : LatencyProfiler.DETECT_STAGES) {
+                p.recordNative(s, NativeProcessor.getDetectorStageNanos(netPtr, s.nativeIndex));
+            }
+        }
+        long t1 = System.nanoTime();
+        NativeProcessor.updateStabilizer(detections, frameIndex);
+        if (p != null) p.recordSince(LatencyProfiler.Stage.TRACKING, t1);
+        detectionRate.tick();
+        completedDetections++;
+    }
+
+    @Override
+    public void onError(Exception e) {
+        Log.e(TAG, "Detection Error: " + e.getMessage());
+    }
+}
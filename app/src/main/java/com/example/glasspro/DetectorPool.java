@@ -0,0 +1,252 @@
+package com.example.glasspro;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * 检测器池：持有多个独立的检测器实例 (各自的 Net、中间缓冲和门控状态)，每个实例一个推理线程，
+ * 相邻几帧的推理可以同时进行。
+ * <p>
+ * 投递仍是单槽信箱、最新帧优先：空闲的推理线程取走信箱里的帧，全部在忙时新帧覆盖旧帧。
+ * 取帧时按顺序发号，推理完成后按号依次回调 {@link Listener}，先投递的帧先交给跟踪器；
+ * 后面的帧先推理完时等前面的帧完成再提交。
+ * <p>
+ * 每个实例的线程数不能单独设置：OpenCV DNN 没有按 Net 的线程数设置 (setPreferableBackend 只选后端，
+ * 默认的 OpenCV 后端用进程级的 parallel_for_ 线程池)，而 Core.setNumThreads 会连带限制去雾条带、
+ * MSRCR、CLAHE 等所有并行代码，所以池不改全局线程数。几个实例同时推理时，
+ * 线程池已被占用的调用在自己的推理线程上串行执行，各实例大致平分 CPU。
+ * 每个实例各加载一份权重 (MobileNet-SSD 约 23 MB)。
+ * <p>
+ * 池不关心检测器从哪里加载：调用方加载好 netPtr 交给构造函数，{@link #release()} 时统一释放。
+ * 池大小按设备选择，见 benchmark 模块的 DetectorPoolBenchmark。
+ */
+public class DetectorPool {
+
+    /** 推理结果回调，在推理线程上按帧序调用，调用期间持有池的锁 ({@link #clear()} 之后不会再收到旧结果) */
+    public interface Listener {
+        /**
+         * @param detections     本帧的检测结果，回调返回后会被复用
+         * @param netPtr         完成推理的检测器，可以读取它的子阶段耗时和门控决策
+         * @param inferenceNanos 推理耗时，不含等待前面帧的时间
+         */
+        void onDetections(DetectionBuffer detections, long frameIndex, long netPtr, long inferenceNanos);
+
+        void onError(Exception e);
+    }
+
+    // 默认池大小上限：MobileNet-SSD 在 3 个以上实例时内存带宽先饱和
+    private static final int MAX_DEFAULT_SIZE = 3;
+
+    private final long[] netPtrs;
+    private final float confThreshold;
+    private final Lane[] lanes;
+
+    private final Object lock = new Object();
+    private Mat mailbox = new Mat();
+    private boolean hasPending;
+    private long pendingFrameIndex;
+    private long droppedFrames;
+    private int epoch;             // clear() 之后丢弃进行中的结果
+    private long nextTicket;       // 下一个取走的帧的序号
+    private long nextDelivery;     // 下一个该提交的序号
+    private long lastDeliveredFrame = -1;
+
+    private volatile boolean running;
+    private volatile Listener listener;
+
+    private static final class Lane {
+        final long netPtr;
+        final DetectionBuffer detections = new DetectionBuffer(BoxTracker.DEFAULT_CAPACITY);
+        Mat working = new Mat();
+        Thread thread;
+
+        Lane(long netPtr) {
+            this.netPtr = netPtr;
+        }
+    }
+
+    public DetectorPool(long[] netPtrs, float confThreshold) {
+        if (netPtrs.length == 0) throw new IllegalArgumentException("Detector pool needs at least one net");
+        this.netPtrs = netPtrs.clone();
+        this.confThreshold = confThreshold;
+        this.lanes = new Lane[netPtrs.length];
+        for (int i = 0; i < netPtrs.length; i++) lanes[i] = new Lane(netPtrs[i]);
+    }
+
+    /** 按核数选择池大小：每 4 个核一个实例，至少 1 个，最多 {@link #MAX_DEFAULT_SIZE} 个 */
+    public static int defaultSize(int cores) {
+        return Math.max(1, Math.min(MAX_DEFAULT_SIZE, cores / 4));
+    }
+
+    public int size() {
+        return netPtrs.length;
+    }
+
+    public long netPtr(int index) {
+        return netPtrs[index];
+    }
+
+    // --- 对所有实例生效的设置 ---
+    public void setInputSize(int size) {
+        for (long ptr : netPtrs) NativeProcessor.setDetectorInputSize(ptr, size);
+    }
+
+    public void setGating(boolean enabled) {
+        for (long ptr : netPtrs) NativeProcessor.setDetectorGating(ptr, enabled);
+    }
+
+    /** 逐个预热，返回最慢一个的耗时 (毫秒) */
+    public long warmUp(int width, int height) {
+        long slowest = 0;
+        for (long ptr : netPtrs) slowest = Math.max(slowest, NativeProcessor.warmUpObjectDetector(ptr, width, height));
+        return slowest;
+    }
+
+    public void start(Listener listener) {
+        if (running) return;
+        this.listener = listener;
+        running = true;
+        for (int i = 0; i < lanes.length; i++) {
+            Lane lane = lanes[i];
+            lane.thread = new Thread(() -> loop(lane), "DetectorPool-" + i);
+            lane.thread.start();
+        }
+    }
+
+    /** 停止所有推理线程 (进行中的结果丢弃)，之后可以再次 start */
+    public void stop() {
+        if (!running) return;
+        running = false;
+        synchronized (lock) {
+            hasPending = false;
+            discardInFlight();
+            lock.notifyAll();
+        }
+        for (Lane lane : lanes) {
+            try {
+                lane.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            lane.thread = null;
+        }
+    }
+
+    /** 停止并释放所有检测器，之后不能再使用 */
+    public void release() {
+        stop();
+        for (Lane lane : lanes) lane.working.release();
+        mailbox.release();
+        for (long ptr : netPtrs) NativeProcessor.releaseObjectDetector(ptr);
+    }
+
+    /**
+     * 把帧转成 BGR 放入信箱，未被取走的旧帧会被覆盖。
+     * 增强模式输出的是三通道 RGB，预览原图是 RGBA，两种都在这里统一成 BGR。
+     */
+    public void submit(Mat frame, long frameIndex) {
+        if (!running || frame.empty()) return;
+        synchronized (lock) {
+            if (hasPending) droppedFrames++;
+            Imgproc.cvtColor(frame, mailbox, frame.channels() == 4 ? Imgproc.COLOR_RGBA2BGR : Imgproc.COLOR_RGB2BGR);
+            pendingFrameIndex = frameIndex;
+            hasPending = true;
+            lock.notifyAll();
+        }
+    }
+
+    /** 清空信箱，并让正在进行的推理结果作废 */
+    public void clear() {
+        synchronized (lock) {
+            hasPending = false;
+            discardInFlight();
+            lock.notifyAll();
+        }
+    }
+
+    public long getDroppedFrames() {
+        synchronized (lock) {
+            return droppedFrames;
+        }
+    }
+
+    /** 等到信箱里的帧被取走 (基准用它按推理能力投递，不丢帧) */
+    public void awaitMailboxEmpty() throws InterruptedException {
+        synchronized (lock) {
+            while (running && hasPending) lock.wait();
+        }
+    }
+
+    /** 等到 frameIndex 及之前投递的帧都已提交 */
+    public void awaitDelivered(long frameIndex) throws InterruptedException {
+        synchronized (lock) {
+            while (running && lastDeliveredFrame < frameIndex) lock.wait();
+        }
+    }
+
+    // 持有 lock 时调用：作废已发出的序号，之后取走的帧从新的序号开始提交
+    private void discardInFlight() {
+        epoch++;
+        nextDelivery = nextTicket;
+        lastDeliveredFrame = -1;
+    }
+
+    private void loop(Lane lane) {
+        while (running) {
+            long frameIndex;
+            long ticket;
+            int startEpoch;
+            synchronized (lock) {
+                while (running && !hasPending) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) return;
+                // 交换引用，相机线程可以立刻写下一帧
+                Mat tmp = lane.working;
+                lane.working = mailbox;
+                mailbox = tmp;
+                hasPending = false;
+                frameIndex = pendingFrameIndex;
+                ticket = nextTicket++;
+                startEpoch = epoch;
+                lock.notifyAll();
+            }
+
+            boolean ok = false;
+            Exception error = null;
+            long t0 = System.nanoTime();
+            try {
+                ok = NativeProcessor.runDetection(lane.working, lane.netPtr, lane.detections, confThreshold);
+            } catch (Exception e) {
+                error = e;
+            }
+            long inferenceNanos = System.nanoTime() - t0;
+
+            synchronized (lock) {
+                // 按序号提交：前面的帧还没推理完就等着
+                while (running && startEpoch == epoch && ticket != nextDelivery) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running || startEpoch != epoch) continue;
+                nextDelivery++;
+                lastDeliveredFrame = frameIndex;
+                lock.notifyAll();
+                Listener l = listener;
+                try {
+                    if (error == null && ok) l.onDetections(lane.detections, frameIndex, lane.netPtr, inferenceNanos);
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+                if (error != null) l.onError(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.glasspro;
+
+/**
+ * 帧时间预算调节器。
+ * <p>
+ * 每帧把处理耗时喂给 {@link #onFrame(int, long)}，调节器用指数滑动平均估计当前耗时，
+ * 连续超出预算一段时间就降一档质量，连续明显低于预算更长一段时间才升一档 (滞回)，
+ * 避免在两个档位之间来回抖动。每种模式组合 (modeKey) 单独记住自己的档位，
+ * 例如 "去雾 + 检测" 和 "仅 CLAHE" 的合适档位往往不同。
+ * <p>
+ * 本类只做决策，不依赖 OpenCV/Android；档位对应的具体参数由调用方下发到 native 层。
+ * 方法都是 synchronized 的：流水线上读取档位和反馈耗时在不同的阶段线程上。
+ */
+public class FrameBudgetGovernor {
+
+    /** 质量档位：从高到低依次降低处理分辨率和算法开销 */
+    public enum QualityTier {
+        //          去雾缩放  小 patch  大 patch  去雾算法档位                          金字塔层数  MSRCR 缩放  SSD 输入  检测间隔
+        HIGH(       1.2,      20,       80,       NativeProcessor.DEHAZE_TIER_FULL,     3,          1.0,        300,      3),
+        MEDIUM(     1.6,      16,       64,       NativeProcessor.DEHAZE_TIER_COARSE,   2,          0.75,       256,      4),
+        LOW(        2.0,      12,       48,       NativeProcessor.DEHAZE_TIER_SINGLE,   2,          0.5,        224,      6);
+
+        public final double dehazeRate;
+        public final int dehazePatchSmall;
+        public final int dehazePatchLarge;
+        public final int dehazeTier;
+        public final int enhanceLevels;
+        public final double msrcrScale;
+        public final int detectorInputSize;
+        public final int detectionInterval;
+
+        QualityTier(double dehazeRate, int dehazePatchSmall, int dehazePatchLarge, int dehazeTier,
+                    int enhanceLevels, double msrcrScale, int detectorInputSize, int detectionInterval) {
+            this.dehazeRate = dehazeRate;
+            this.dehazePatchSmall = dehazePatchSmall;
+            this.dehazePatchLarge = dehazePatchLarge;
+            this.dehazeTier = dehazeTier;
+            this.enhanceLevels = enhanceLevels;
+            this.msrcrScale = msrcrScale;
+            this.detectorInputSize = detectorInputSize;
+            this.detectionInterval = detectionInterval;
+        }
+    }
+
+    private static final QualityTier[] TIERS = QualityTier.values();
+
+    // 滞回参数：超预算 15% 持续 15 帧降档，低于预算 70% 持续 60 帧升档
+    private static final double DOWNGRADE_RATIO = 1.15;
+    private static final double UPGRADE_RATIO = 0.7;
+    private static final int DOWNGRADE_FRAMES = 15;
+    private static final int UPGRADE_FRAMES = 60;
+    private static final double EMA_ALPHA = 0.1;
+
+    private final double targetMs;
+    private final int[] tierByMode;
+
+    private int currentMode = -1;
+    private double emaMs = -1;
+    private int overBudgetFrames;
+    private int underBudgetFrames;
+
+    /**
+     * @param targetMs  每帧处理耗时目标，例如 33 ms
+     * @param modeCount modeKey 的取值范围 [0, modeCount)
+     */
+    public FrameBudgetGovernor(double targetMs, int modeCount) {
+        this.targetMs = targetMs;
+        this.tierByMode = new int[modeCount];
+    }
+
+    /** 该模式组合当前的档位 */
+    public synchronized QualityTier getTier(int modeKey) {
+        return TIERS[tierByMode[modeKey]];
+    }
+
+    /** 最近的耗时估计 (毫秒)，还没有数据时返回 -1 */
+    public synchronized double getSmoothedFrameMs() {
+        return emaMs;
+    }
+
+    /**
+     * 记录一帧的处理耗时，返回下一帧应使用的档位。
+     */
+    public synchronized QualityTier onFrame(int modeKey, long frameNanos) {
+        if (modeKey != currentMode) {
+            // 切换模式后旧的耗时统计已经没有意义
+            currentMode = modeKey;
+            emaMs = -1;
+            overBudgetFrames = 0;
+            underBudgetFrames = 0;
+        }
+
+        double ms = frameNanos / 1e6;
+        emaMs = emaMs < 0 ? ms : emaMs + EMA_ALPHA * (ms - emaMs);
+
+        int tier = tierByMode[modeKey];
+        if (emaMs > targetMs * DOWNGRADE_RATIO) {
+            underBudgetFrames = 0;
+            if (++overBudgetFrames >= DOWNGRADE_FRAMES && tier < TIERS.length - 1) {
+                tierByMode[modeKey] = tier + 1;
+                resetAfterChange();
+            }
+        } else if (emaMs < targetMs * UPGRADE_RATIO) {
+            overBudgetFrames = 0;
+            if (++underBudgetFrames >= UPGRADE_FRAMES && tier > 0) {
+                tierByMode[modeKey] = tier - 1;
+                resetAfterChange();
+            }
+        } else {
+            overBudgetFrames = 0;
+            underBudgetFrames = 0;
+        }
+        return TIERS[tierByMode[modeKey]];
+    }
+
+    // 换档后重新积累统计，给新档位足够的时间体现效果
+    private void resetAfterChange() {
+        emaMs = -1;
+        overBudgetFrames = 0;
+        underBudgetFrames = 0;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.glasspro;
+
+import org.opencv.core.Mat;
+
+/**
+ * 帧缓冲池：为每个需要"上一帧"的处理阶段保留两块可复用的 Mat。
+ * <p>
+ * 每个槽位 (slot) 有一个 scratch 缓冲和一个 history 缓冲：
+ * 处理前把当前帧拷入 scratch，处理结束后 scratch 与 history 交换引用，
+ * 下一帧就能直接拿到上一帧，而不需要再次 new Mat 或重复拷贝。
+ * 尺寸/类型不变时 copyTo 不会重新分配内存，所以稳态下每帧没有 native 分配。
+ * <p>
+ * 只在相机线程上使用，不做同步。
+ */
+public class FrameBufferPool {
+
+    // 多帧增强的上一帧改由 FrameContext 缓存 (增强前的 RGB)，这里只剩稳像需要原始像素
+    public static final int SLOT_STAB = 0;
+    private static final int SLOT_COUNT = 1;
+
+    private final Mat[] scratch = new Mat[SLOT_COUNT];
+    private final Mat[] history = new Mat[SLOT_COUNT];
+    private final boolean[] historyValid = new boolean[SLOT_COUNT];
+
+    // 计数器：本帧与累计的分配次数、拷贝字节数
+    private int frameAllocations;
+    private long frameBytesCopied;
+    private int lastFrameAllocations;
+    private long lastFrameBytesCopied;
+    private long totalAllocations;
+    private long totalBytesCopied;
+    private long frameCount;
+
+    public FrameBufferPool() {
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            scratch[i] = new Mat();
+            history[i] = new Mat();
+        }
+    }
+
+    /** 每帧开始时调用，清零本帧计数 */
+    public void beginFrame() {
+        frameAllocations = 0;
+        frameBytesCopied = 0;
+    }
+
+    /** 每帧结束时调用，保存本帧计数 */
+    public void endFrame() {
+        lastFrameAllocations = frameAllocations;
+        lastFrameBytesCopied = frameBytesCopied;
+        totalAllocations += frameAllocations;
+        totalBytesCopied += frameBytesCopied;
+        frameCount++;
+    }
+
+    /**
+     * 把当前帧拷入槽位的 scratch 缓冲（处理会原地修改 frame，所以这次拷贝省不掉）。
+     * @return scratch 缓冲，调用 {@link #commit(int)} 之后它会成为该槽位的上一帧
+     */
+    public Mat stage(int slot, Mat frame) {
+        Mat dst = scratch[slot];
+        if (needsAllocation(dst, frame)) frameAllocations++;
+        frame.copyTo(dst);
+        frameBytesCopied += frame.total() * frame.elemSize();
+        return dst;
+    }
+
+    /** 槽位的上一帧，没有有效上一帧时返回 null */
+    public Mat previous(int slot) {
+        return historyValid[slot] ? history[slot] : null;
+    }
+
+    /** 交换 scratch 与 history 的引用，不拷贝数据 */
+    public void commit(int slot) {
+        Mat tmp = history[slot];
+        history[slot] = scratch[slot];
+        scratch[slot] = tmp;
+        historyValid[slot] = true;
+    }
+
+    /** 使槽位的上一帧失效（切换模式时使用），缓冲本身保留以便复用 */
+    public void invalidate(int slot) {
+        historyValid[slot] = false;
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < SLOT_COUNT; i++) historyValid[i] = false;
+    }
+
+    public int getLastFrameAllocations() { return lastFrameAllocations; }
+    public long getLastFrameBytesCopied() { return lastFrameBytesCopied; }
+    public long getTotalAllocations() { return totalAllocations; }
+    public long getTotalBytesCopied() { return totalBytesCopied; }
+    public long getFrameCount() { return frameCount; }
+
+    public void release() {
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            scratch[i].release();
+            history[i].release();
+            historyValid[i] = false;
+        }
+    }
+
+    private static boolean needsAllocation(Mat dst, Mat src) {
+        return dst.empty() || dst.rows() != src.rows() || dst.cols() != src.cols() || dst.type() != src.type();
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.glasspro;
+
+import org.opencv.core.Mat;
+
+/**
+ * 每帧共享的 native 分析上下文 (frame_context.h) 的 Java 句柄。
+ * <p>
+ * 每帧先 {@link #begin(Mat)} 绑定当前帧，之后稳像、多帧增强、运动检测通过
+ * NativeProcessor 的 *WithContext 接口向同一个上下文要灰度图、光流金字塔、角点和帧间变换，
+ * 第一次要的时候才计算，同一帧内再要直接复用；当前帧的产物下一帧作为"上一帧"继续复用。
+ * <p>
+ * 产物是从绑定时的帧数据惰性算出来的，帧被原地修改之后 (例如画框) 不要再调用依赖它的接口。
+ * 只在相机线程上使用，不做同步。
+ */
+public class FrameContext {
+
+    private long nativePtr;
+
+    public FrameContext() {
+        nativePtr = NativeProcessor.createFrameContext();
+    }
+
+    /** 绑定新的一帧 (RGBA)，上一帧的产物移入上一帧槽位 */
+    public void begin(Mat frame) {
+        NativeProcessor.beginFrameContext(nativePtr, frame.getNativeObjAddr());
+    }
+
+    /** 丢弃上一帧 (切换模式时)，在 begin 之后调用，对当前帧立即生效 */
+    public void reset() {
+        NativeProcessor.resetFrameContext(nativePtr);
+    }
+
+    /** 本帧内某个产物实际计算的次数，product 取 NativeProcessor.CTX_* */
+    public int computeCount(int product) {
+        return NativeProcessor.getFrameContextComputeCount(nativePtr, product);
+    }
+
+    public long getNativePtr() {
+        return nativePtr;
+    }
+
+    public void release() {
+        if (nativePtr == 0) return;
+        NativeProcessor.releaseFrameContext(nativePtr);
+        nativePtr = 0;
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.glasspro;
+
+import org.opencv.core.Mat;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 帧日志：把相机原始帧连同时间戳顺序写入一个预分配、内存映射的文件，供主机端回放。
+ * <p>
+ * 文件布局 (小端)：64 字节文件头，之后是定长记录，每条记录 16 字节记录头 (int64 时间戳 + 保留)
+ * 加一帧紧凑排列的像素，按 64 字节对齐。
+ * <pre>
+ *   0  int32 magic 'GPJ1'     4  int32 version
+ *   8  int32 width           12  int32 height
+ *  16  int32 OpenCV type     20  int32 frameBytes
+ *  24  int32 capacity        28  int32 count (已写完的帧数)
+ * </pre>
+ * {@link #create} 把整个文件按容量写满 0 (文件块在录制前就分配好) 再映射，应在后台线程调用；
+ * 相机线程的 {@link #append} 只做一次 native memcpy 和两次 putInt/putLong。
+ * 后台刷写线程定期 force()，把脏页写回文件，相机线程不做任何 IO。
+ * 写满后不再追加，只计数。单个映射不超过 2 GB (720p RGBA 约 570 帧)。
+ */
+public class FrameJournal implements Closeable {
+
+    private static final int MAGIC = 0x314A5047; // "GPJ1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int RECORD_HEADER_BYTES = 16;
+    private static final int ALIGN = 64;
+    private static final long FLUSH_INTERVAL_MS = 500;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_WIDTH = 8;
+    private static final int OFFSET_HEIGHT = 12;
+    private static final int OFFSET_TYPE = 16;
+    private static final int OFFSET_FRAME_BYTES = 20;
+    private static final int OFFSET_CAPACITY = 24;
+    private static final int OFFSET_COUNT = 28;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int width, height, type, frameBytes, capacity;
+    private final int recordBytes;
+    private volatile int count;
+    private volatile long droppedFrames;
+    private volatile boolean closed;
+    private final Thread flusher;
+
+    private FrameJournal(RandomAccessFile file, MappedByteBuffer buffer, int width, int height, int type,
+                         int frameBytes, int capacity) {
+        this.file = file;
+        this.buffer = buffer;
+        this.width = width;
+        this.height = height;
+        this.type = type;
+        this.frameBytes = frameBytes;
+        this.capacity = capacity;
+        this.recordBytes = recordBytes(frameBytes);
+        this.flusher = new Thread(this::flushLoop, "FrameJournalFlusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    private static int recordBytes(int frameBytes) {
+        return (RECORD_HEADER_BYTES + frameBytes + ALIGN - 1) / ALIGN * ALIGN;
+    }
+
+    /**
+     * 创建并预分配日志文件 (会覆盖已有文件)。
+     *
+     * @param frameBytes 每帧字节数 (width * height * elemSize)
+     * @param maxFrames  最多记录的帧数，超过 2 GB 时按 2 GB 截断
+     */
+    public static FrameJournal create(File path, int width, int height, int type, int frameBytes, int maxFrames)
+            throws IOException {
+        int record = recordBytes(frameBytes);
+        int capacity = (int) Math.min(maxFrames, (Integer.MAX_VALUE - HEADER_BYTES) / record);
+        if (capacity <= 0) throw new IOException("Frame too large for a journal: " + frameBytes + " bytes");
+        long size = HEADER_BYTES + (long) capacity * record;
+
+        RandomAccessFile raf = new RandomAccessFile(path, "rw");
+        try {
+            raf.setLength(0);
+            // 写满 0 而不是 setLength 出一个稀疏文件：录制时不再因为分配文件块而卡住相机线程
+            byte[] zeros = new byte[1 << 20];
+            for (long written = 0; written < size; written += zeros.length) {
+                raf.write(zeros, 0, (int) Math.min(zeros.length, size - written));
+            }
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(OFFSET_MAGIC, MAGIC);
+            buffer.putInt(OFFSET_VERSION, VERSION);
+            buffer.putInt(OFFSET_WIDTH, width);
+            buffer.putInt(OFFSET_HEIGHT, height);
+            buffer.putInt(OFFSET_TYPE, type);
+            buffer.putInt(OFFSET_FRAME_BYTES, frameBytes);
+            buffer.putInt(OFFSET_CAPACITY, capacity);
+            buffer.putInt(OFFSET_COUNT, 0);
+            return new FrameJournal(raf, buffer, width, height, type, frameBytes, capacity);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 相机线程调用：追加一帧。尺寸/类型与创建时不一致、已写满或已关闭时返回 false。
+     */
+    public boolean append(Mat frame, long timestampNanos) {
+        if (closed || frame.cols() != width || frame.rows() != height || frame.type() != type) return false;
+        int index = count;
+        if (index >= capacity) {
+            droppedFrames++;
+            return false;
+        }
+        long offset = HEADER_BYTES + (long) index * recordBytes;
+        buffer.putLong((int) offset, timestampNanos);
+        if (NativeProcessor.copyMatToBuffer(frame.getNativeObjAddr(), buffer, offset + RECORD_HEADER_BYTES) != frameBytes) {
+            return false;
+        }
+        // 像素写完后才更新帧数，回放端不会读到半帧
+        count = index + 1;
+        buffer.putInt(OFFSET_COUNT, index + 1);
+        return true;
+    }
+
+    public int getFrameCount() { return count; }
+    public int getCapacity() { return capacity; }
+    public long getDroppedFrames() { return droppedFrames; }
+
+    private void flushLoop() {
+        int flushed = 0;
+        while (!closed) {
+            try {
+                Thread.sleep(FLUSH_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            int current = count;
+            if (current != flushed) {
+                buffer.force();
+                flushed = current;
+            }
+        }
+    }
+
+    /** 停止刷写线程，最后 force 一次并关闭文件 (可在任意线程调用，之后的 append 返回 false) */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        flusher.interrupt();
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        buffer.force();
+        file.close();
+    }
+
+    /**
+     * 回放端：只读映射一个日志文件，按下标取帧。
+     */
+    public static class Reader implements Closeable {
+        private final RandomAccessFile file;
+        private final MappedByteBuffer buffer;
+        private final int width, height, type, frameBytes, frameCount;
+        private final int recordBytes;
+
+        public Reader(File path) throws IOException {
+            file = new RandomAccessFile(path, "r");
+            try {
+                buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                if (buffer.getInt(OFFSET_MAGIC) != MAGIC || buffer.getInt(OFFSET_VERSION) != VERSION) {
+                    throw new IOException("Not a frame journal: " + path);
+                }
+                width = buffer.getInt(OFFSET_WIDTH);
+                height = buffer.getInt(OFFSET_HEIGHT);
+                type = buffer.getInt(OFFSET_TYPE);
+                frameBytes = buffer.getInt(OFFSET_FRAME_BYTES);
+                frameCount = buffer.getInt(OFFSET_COUNT);
+                recordBytes = FrameJournal.recordBytes(frameBytes);
+            } catch (IOException e) {
+                file.close();
+                throw e;
+            }
+        }
+
+        public int width() { return width; }
+        public int height() { return height; }
+        public int type() { return type; }
+        public int frameCount() { return frameCount; }
+
+        public long timestampNanos(int index) {
+            return buffer.getLong(recordOffset(index));
+        }
+
+        /** 读出第 index 帧到 dst (尺寸类型不变时复用 dst 的内存) */
+        public void read(int index, Mat dst) {
+            if (!NativeProcessor.copyBufferToMat(buffer, recordOffset(index) + RECORD_HEADER_BYTES,
+                    height, width, type, dst.getNativeObjAddr())) {
+                throw new IllegalStateException("Truncated journal record " + index);
+            }
+        }
+
+        private int recordOffset(int index) {
+            if (index < 0 || index >= frameCount) throw new IndexOutOfBoundsException("frame " + index);
+            return (int) (HEADER_BYTES + (long) index * recordBytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+}
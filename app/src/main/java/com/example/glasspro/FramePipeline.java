@@ -0,0 +1,328 @@
+package com.example.glasspro;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分阶段的帧处理流水线：阶段按声明顺序排成一列，每个阶段一个工作线程和一个有界输入队列，
+ * 阶段 N 处理第 k 帧的同时阶段 N-1 处理第 k+1 帧，吞吐由最慢的阶段决定，而不是各阶段之和。
+ * <p>
+ * 队列满时按该阶段的 {@link DropPolicy} 处理：{@code BLOCK} 让上游线程等待 (反压，一直传到入口)，
+ * {@code DROP_OLDEST} / {@code DROP_NEWEST} 丢掉一帧，被丢的帧通过 {@link Listener#onDropped} 还给调用方回收。
+ * 每个阶段统计队列深度 (当前 / 最大)、丢帧数、上游被反压的时间和处理耗时分布，见 {@link #summaryLines()}。
+ * <p>
+ * 阶段之间只传递帧，阶段自己的跨帧状态 (上一帧、背景模型等) 由阶段独占，所以同一个阶段永远只在一个线程上执行。
+ * {@link #start(boolean)} 传 false 时不启动工作线程，{@link #submit} 在调用线程上依次执行所有阶段
+ * (与原来的串行处理相同，用于对比和调试)。
+ *
+ * @param <T> 在阶段之间流动的帧，记录自己在各阶段的耗时
+ */
+public class FramePipeline<T extends FramePipeline.Packet> {
+
+    /** 队列满时的处理方式 */
+    public enum DropPolicy {
+        BLOCK,
+        DROP_OLDEST,
+        DROP_NEWEST
+    }
+
+    /** 一个处理阶段，只在该阶段的工作线程上调用 */
+    public interface Stage<T> {
+        void process(T item);
+    }
+
+    /** 帧的去向回调：处理完成、被丢弃、阶段出错 (出错的帧继续交给下一阶段) */
+    public interface Listener<T> {
+        /** 最后一个阶段处理完，在最后一个阶段的线程上调用 */
+        void onComplete(T item);
+
+        /** 帧被某个阶段的队列丢弃 (或流水线停止时还在队列里)，调用方负责回收 */
+        void onDropped(T item, String stage);
+
+        void onError(T item, String stage, RuntimeException error);
+    }
+
+    /** 在阶段之间流动的帧的基类：入口时刻和各阶段的处理耗时 */
+    public static class Packet {
+        long submitNanos;
+        final long[] stageNanos;
+
+        public Packet(int stageCount) {
+            stageNanos = new long[stageCount];
+        }
+
+        public long getSubmitNanos() {
+            return submitNanos;
+        }
+
+        public long getStageNanos(int stage) {
+            return stageNanos[stage];
+        }
+
+        /** 各阶段耗时之和：串行处理时一帧的实际开销 */
+        public long getTotalStageNanos() {
+            long total = 0;
+            for (long n : stageNanos) total += n;
+            return total;
+        }
+
+        /** 最慢一个阶段的耗时：流水线满载时每帧的间隔由它决定 */
+        public long getBusiestStageNanos() {
+            long max = 0;
+            for (long n : stageNanos) max = Math.max(max, n);
+            return max;
+        }
+    }
+
+    public static final class Builder<T extends Packet> {
+        private final List<Node<T>> nodes = new ArrayList<>();
+
+        /**
+         * 追加一个阶段
+         * @param capacity 输入队列长度
+         * @param policy   输入队列满时的处理方式
+         */
+        public Builder<T> stage(String name, int capacity, DropPolicy policy, Stage<T> stage) {
+            if (capacity < 1) throw new IllegalArgumentException("Queue capacity must be positive: " + name);
+            nodes.add(new Node<>(nodes.size(), name, capacity, policy, stage));
+            return this;
+        }
+
+        public FramePipeline<T> build(Listener<T> listener) {
+            if (nodes.isEmpty()) throw new IllegalStateException("Pipeline needs at least one stage");
+            return new FramePipeline<>(nodes, listener);
+        }
+    }
+
+    private static final class Node<T> {
+        final int index;
+        final String name;
+        final int capacity;
+        final DropPolicy policy;
+        final Stage<T> stage;
+        final ArrayBlockingQueue<T> queue;
+        final LatencyHistogram processTime = new LatencyHistogram();
+        final AtomicLong processed = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicLong blockedNanos = new AtomicLong();
+        volatile int maxDepth;
+        Thread thread;
+
+        Node(int index, String name, int capacity, DropPolicy policy, Stage<T> stage) {
+            this.index = index;
+            this.name = name;
+            this.capacity = capacity;
+            this.policy = policy;
+            this.stage = stage;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+
+    // BLOCK 策略等待时隔一段时间检查一次是否已停止
+    private static final long BLOCK_POLL_MS = 50;
+
+    private final List<Node<T>> nodes;
+    private final Listener<T> listener;
+    private volatile boolean running;
+    private volatile boolean parallel;
+
+    private FramePipeline(List<Node<T>> nodes, Listener<T> listener) {
+        this.nodes = new ArrayList<>(nodes);
+        this.listener = listener;
+    }
+
+    public int stageCount() {
+        return nodes.size();
+    }
+
+    public String stageName(int stage) {
+        return nodes.get(stage).name;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /** @param parallel true 时每个阶段一个工作线程；false 时在 submit 的线程上串行执行 */
+    public synchronized void start(boolean parallel) {
+        if (running) return;
+        this.parallel = parallel;
+        running = true;
+        if (!parallel) return;
+        for (Node<T> node : nodes) {
+            node.thread = new Thread(() -> loop(node), "FramePipeline-" + node.name);
+            node.thread.start();
+        }
+    }
+
+    /** 停止所有工作线程，等正在处理的帧结束；还在队列里的帧通过 onDropped 交还。之后可以再次 start */
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        for (Node<T> node : nodes) {
+            if (node.thread != null) node.thread.interrupt();
+        }
+        for (Node<T> node : nodes) {
+            if (node.thread == null) continue;
+            try {
+                node.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            node.thread = null;
+        }
+        for (Node<T> node : nodes) {
+            T item;
+            while ((item = node.queue.poll()) != null) listener.onDropped(item, node.name);
+        }
+    }
+
+    /**
+     * 把一帧交给第一个阶段。入口队列满时按第一个阶段的策略处理 (BLOCK 时调用线程等待)。
+     * @return 这一帧是否进入了流水线；被丢弃的帧 (可能是更早的一帧) 已经通过 onDropped 交还
+     */
+    public boolean submit(T item) {
+        if (!running) {
+            listener.onDropped(item, nodes.get(0).name);
+            return false;
+        }
+        item.submitNanos = System.nanoTime();
+        if (!parallel) {
+            for (Node<T> node : nodes) runStage(node, item);
+            listener.onComplete(item);
+            return true;
+        }
+        Node<T> first = nodes.get(0);
+        boolean accepted = enqueue(first, item);
+        // 与 stop() 竞争：检查 running 之后 stop 可能已经停掉线程并排空了队列，这一帧就没人处理了。
+        // stop 先清 running 再排空，所以这里看到 running 为 true 时排空一定还没发生；否则自己把帧取回来交还。
+        // remove 与排空的 poll 只有一个能拿到这一帧，不会重复交还
+        if (accepted && !running && first.queue.remove(item)) {
+            listener.onDropped(item, first.name);
+            return false;
+        }
+        return accepted;
+    }
+
+    private void loop(Node<T> node) {
+        Node<T> next = node.index + 1 < nodes.size() ? nodes.get(node.index + 1) : null;
+        while (running) {
+            T item;
+            try {
+                item = node.queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            runStage(node, item);
+            if (!running) {
+                listener.onDropped(item, node.name);
+                return;
+            }
+            if (next == null) {
+                listener.onComplete(item);
+            } else {
+                enqueue(next, item);
+            }
+        }
+    }
+
+    private void runStage(Node<T> node, T item) {
+        long t0 = System.nanoTime();
+        try {
+            node.stage.process(item);
+        } catch (RuntimeException e) {
+            listener.onError(item, node.name, e);
+        }
+        long nanos = System.nanoTime() - t0;
+        item.stageNanos[node.index] = nanos;
+        node.processTime.record(nanos);
+        node.processed.incrementAndGet();
+    }
+
+    // 按目标阶段的策略放入它的输入队列，返回 item 本身是否进入了队列
+    private boolean enqueue(Node<T> node, T item) {
+        boolean accepted;
+        switch (node.policy) {
+            case DROP_NEWEST:
+                accepted = node.queue.offer(item);
+                if (!accepted) drop(node, item);
+                break;
+            case DROP_OLDEST:
+                while (!(accepted = node.queue.offer(item))) {
+                    T oldest = node.queue.poll();
+                    if (oldest != null) drop(node, oldest);
+                }
+                break;
+            default:
+                accepted = offerBlocking(node, item);
+                if (!accepted) listener.onDropped(item, node.name); // 等待期间流水线停止了
+                break;
+        }
+        int depth = node.queue.size();
+        if (depth > node.maxDepth) node.maxDepth = depth;
+        return accepted;
+    }
+
+    private boolean offerBlocking(Node<T> node, T item) {
+        if (node.queue.offer(item)) return true;
+        long t0 = System.nanoTime();
+        try {
+            while (running) {
+                if (node.queue.offer(item, BLOCK_POLL_MS, TimeUnit.MILLISECONDS)) return true;
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            node.blockedNanos.addAndGet(System.nanoTime() - t0);
+        }
+    }
+
+    private void drop(Node<T> node, T item) {
+        node.dropped.incrementAndGet();
+        listener.onDropped(item, node.name);
+    }
+
+    // --- 各阶段的统计，任意线程都可以读取 ---
+    public int getQueueDepth(int stage) {
+        return nodes.get(stage).queue.size();
+    }
+
+    public int getMaxQueueDepth(int stage) {
+        return nodes.get(stage).maxDepth;
+    }
+
+    public long getDroppedFrames(int stage) {
+        return nodes.get(stage).dropped.get();
+    }
+
+    public long getProcessedFrames(int stage) {
+        return nodes.get(stage).processed.get();
+    }
+
+    /** 上游因为这个阶段的队列满而等待的总时间 (只有 BLOCK 策略会等待) */
+    public long getBlockedNanos(int stage) {
+        return nodes.get(stage).blockedNanos.get();
+    }
+
+    public LatencyHistogram getProcessTime(int stage) {
+        return nodes.get(stage).processTime;
+    }
+
+    /** 每个阶段一行：队列深度 当前/容量 (最大)、丢帧、反压等待、处理耗时 p50/p95 */
+    public List<String> summaryLines() {
+        List<String> lines = new ArrayList<>(nodes.size());
+        for (Node<T> node : nodes) {
+            lines.add(String.format(Locale.US, "%-8s q %d/%d (max %d) drop %d wait %.0f ms  p50 %5.1f  p95 %5.1f ms",
+                    node.name, node.queue.size(), node.capacity, node.maxDepth, node.dropped.get(),
+                    node.blockedNanos.get() / 1e6, node.processTime.getPercentileMillis(50),
+                    node.processTime.getPercentileMillis(95)));
+        }
+        return lines;
+    }
+}
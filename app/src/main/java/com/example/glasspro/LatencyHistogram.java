@@ -0,0 +1,92 @@
+package com.example.glasspro;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁延迟直方图 (HDR 风格的对数-线性分桶)。
+ * <p>
+ * 以微秒为单位分桶：小于 32 µs 每个值一个桶，之后每个 2 的幂区间再均分 16 个桶，
+ * 所以任意值的相对误差不超过 1/16 (约 6%)，上限 {@link #MAX_MICROS} 以内只需几百个桶。
+ * {@link #record(long)} 只做一次 incrementAndGet，可以在相机线程和检测线程上同时调用；
+ * 读取百分位时不加锁，结果是一个近似的快照，用于 HUD 和导出足够了。
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;   // 32
+    private static final int HALF = SUB_COUNT / 2;        // 16
+    /** 超过 10 秒的值记在最后一个桶里 */
+    public static final long MAX_MICROS = 10_000_000L;
+    private static final int BUCKET_COUNT = indexFor(MAX_MICROS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /** 记录一次耗时 (纳秒)，负值忽略 */
+    public void record(long nanos) {
+        if (nanos < 0) return;
+        long micros = Math.min(nanos / 1000, MAX_MICROS);
+        counts.incrementAndGet(indexFor(micros));
+        totalCount.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        long max;
+        while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+            // 其他线程刚写了更大的值，重试
+        }
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public double getMeanMillis() {
+        long n = totalCount.get();
+        return n == 0 ? 0 : totalMicros.get() / 1000.0 / n;
+    }
+
+    public double getMaxMillis() {
+        return maxMicros.get() / 1000.0;
+    }
+
+    /**
+     * 百分位数 (毫秒)，p 取 0~100。没有数据时返回 0。
+     * 返回所在桶的中点，误差在一个桶宽以内。
+     */
+    public double getPercentileMillis(double p) {
+        long n = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) n += counts.get(i);
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return bucketMidMicros(i) / 1000.0;
+        }
+        return bucketMidMicros(BUCKET_COUNT - 1) / 1000.0;
+    }
+
+    /** 清零。与 record 并发时可能漏掉几次记录，不影响统计意义 */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) counts.set(i, 0);
+        totalCount.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    static int indexFor(long micros) {
+        if (micros < SUB_COUNT) return (int) micros;
+        int msb = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = msb - SUB_BITS + 1;
+        return shift * HALF + (int) (micros >> shift);
+    }
+
+    static double bucketMidMicros(int index) {
+        if (index < SUB_COUNT) return index;
+        int shift = index / HALF - 1;
+        long lower = (long) (index - shift * HALF) << shift;
+        return lower + ((1L << shift) - 1) / 2.0;
+    }
+}
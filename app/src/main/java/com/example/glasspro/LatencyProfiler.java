@@ -0,0 +1,118 @@
+package com.example.glasspro;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 分阶段延迟统计：每个阶段一个 {@link LatencyHistogram}。
+ * <p>
+ * Java 层阶段 (稳像、增强、推理、跟踪、绘制、拍照转换) 由调用方用 System.nanoTime() 计时；
+ * native 子阶段由各个 .so 记录最近一次调用的耗时，调用方在同一线程上读出后写入这里。
+ * 结果用于 HUD 叠加显示和 CSV 导出，替代原来每帧往 logcat 打印的方式。
+ */
+public class LatencyProfiler {
+
+    public enum Stage {
+        FRAME("frame", -1),
+        JOURNAL("journal", -1),
+        STAB("stab", -1),
+        STAB_FEATURES("stab.features", 0),
+        STAB_ESTIMATE("stab.estimate", 1),
+        STAB_WARP("stab.warp", 2),
+        ENHANCE("enhance", -1),
+        ENHANCE_ALIGN("enhance.align", 0),
+        ENHANCE_FUSION("enhance.fusion", 1),
+        ENHANCE_DENOISE("enhance.denoise", 2),
+        DEHAZE("dehaze", -1),
+        DEHAZE_AIRLIGHT("dehaze.airlight", 0),
+        DEHAZE_TRANSMISSION("dehaze.transmission", 1),
+        DEHAZE_RECOVER("dehaze.recover", 2),
+        DEHAZE_FUSION("dehaze.fusion", 3),
+        CLAHE("clahe", -1),
+        MSRCR("msrcr", -1),
+        MOTION("motion", -1),
+        SCENE("scene", -1),
+        INFERENCE("inference", -1),
+        DETECT_PREPROCESS("inference.preprocess", 0),
+        DETECT_FORWARD("inference.forward", 1),
+        DETECT_DECODE("inference.decode", 2),
+        DETECT_GATE("inference.gate", 3),
+        TRACKING("tracking", -1),
+        DRAW("draw", -1),
+        PHOTO("photo", -1),
+        PHOTO_SAVE("photo.save", -1);
+
+        public final String label;
+        /** native 子阶段在对应库里的槽位下标，Java 层阶段为 -1 */
+        public final int nativeIndex;
+
+        Stage(String label, int nativeIndex) {
+            this.label = label;
+            this.nativeIndex = nativeIndex;
+        }
+    }
+
+    // 各 native 库的子阶段，下标与 C++ 侧的枚举一一对应
+    public static final Stage[] STAB_STAGES = {Stage.STAB_FEATURES, Stage.STAB_ESTIMATE, Stage.STAB_WARP};
+    public static final Stage[] ENHANCE_STAGES = {Stage.ENHANCE_ALIGN, Stage.ENHANCE_FUSION, Stage.ENHANCE_DENOISE};
+    public static final Stage[] DEHAZE_STAGES = {Stage.DEHAZE_AIRLIGHT, Stage.DEHAZE_TRANSMISSION,
+            Stage.DEHAZE_RECOVER, Stage.DEHAZE_FUSION};
+    public static final Stage[] DETECT_STAGES = {Stage.DETECT_PREPROCESS, Stage.DETECT_FORWARD, Stage.DETECT_DECODE,
+            Stage.DETECT_GATE};
+
+    private static final Stage[] STAGES = Stage.values();
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+
+    public LatencyProfiler() {
+        for (int i = 0; i < histograms.length; i++) histograms[i] = new LatencyHistogram();
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    /** native 子阶段本次没有执行到 (提前返回) 时耗时为 0，不计入统计 */
+    public void recordNative(Stage stage, long nanos) {
+        if (nanos > 0) histograms[stage.ordinal()].record(nanos);
+    }
+
+    /** 记录从 startNanos 到现在的耗时，返回当前时间，方便连续计时 */
+    public long recordSince(Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        histograms[stage.ordinal()].record(now - startNanos);
+        return now;
+    }
+
+    public LatencyHistogram get(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public void reset() {
+        for (LatencyHistogram h : histograms) h.reset();
+    }
+
+    /** HUD 用的文本行，只包含有数据的阶段 */
+    public List<String> summaryLines() {
+        List<String> lines = new ArrayList<>();
+        for (Stage stage : STAGES) {
+            LatencyHistogram h = histograms[stage.ordinal()];
+            if (h.getCount() == 0) continue;
+            lines.add(String.format(Locale.US, "%-20s p50 %6.1f  p95 %6.1f  p99 %6.1f ms",
+                    stage.label, h.getPercentileMillis(50), h.getPercentileMillis(95), h.getPercentileMillis(99)));
+        }
+        return lines;
+    }
+
+    /** 导出所有阶段的统计 (毫秒)，包含没有数据的阶段，方便不同运行之间对比 */
+    public String toCsv() {
+        StringBuilder sb = new StringBuilder("stage,count,mean_ms,p50_ms,p95_ms,p99_ms,max_ms\n");
+        for (Stage stage : STAGES) {
+            LatencyHistogram h = histograms[stage.ordinal()];
+            sb.append(String.format(Locale.US, "%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f\n",
+                    stage.label, h.getCount(), h.getMeanMillis(), h.getPercentileMillis(50),
+                    h.getPercentileMillis(95), h.getPercentileMillis(99), h.getMaxMillis()));
+        }
+        return sb.toString();
+    }
+}
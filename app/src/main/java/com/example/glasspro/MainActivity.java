@@ -6,11 +6,13 @@ import android.Manifest;
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.pm.ActivityInfo;
+import android.content.res.AssetFileDescriptor;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.graphics.PorterDuff;
 import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.SurfaceView;
 import android.view.WindowManager;
@@ -22,58 +24,190 @@ import androidx.core.app.ActivityCompat;
 import org.opencv.android.CameraBridgeViewBase;
 import org.opencv.android.CameraBridgeViewBase.CvCameraViewFrame;
 import org.opencv.android.CameraBridgeViewBase.CvCameraViewListener2;
-import org.opencv.android.OpenCVLoader;
-import org.opencv.android.Utils;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfInt;
-import org.opencv.core.MatOfRect;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.InputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends Activity implements CvCameraViewListener2 {
     private static final String TAG = "MainActivity";
 
-    static {
-        if (!OpenCVLoader.initDebug()) Log.e(TAG, "OpenCV load failed!");
-        try {
-            System.loadLibrary("dehaze");
-            System.loadLibrary("enhance");
-            System.loadLibrary("threshold");
-            System.loadLibrary("stab");
-            System.loadLibrary("motion");
-            System.loadLibrary("native-lib");
-            System.loadLibrary("vision_processor");
-        } catch (UnsatisfiedLinkError e) { Log.e(TAG, "Libs load failed"); }
-    }
+    // native 库按需加载：OpenCV、帧上下文和稳像 (相机预览的基础路径) 在后台线程上加载完才打开相机，
+    // 增强 / 去雾 / 运动 / 自动模式 / 检测的库在第一次用到时加载，就绪之前这些模式的帧原样输出
+    private final NativeModules nativeModules = NativeModules.get();
+    private final NativeModules.Listener moduleListener = new NativeModules.Listener() {
+        @Override
+        public void onLoaded(NativeModules.Module module) {
+            Log.i(TAG, "Native module " + module + " ready");
+        }
+
+        @Override
+        public void onError(NativeModules.Module module, Throwable error) {
+            Log.e(TAG, "Native module " + module + " load failed: " + error.getMessage());
+            runOnUiThread(() -> Toast.makeText(MainActivity.this, module + " unavailable", Toast.LENGTH_SHORT).show());
+        }
+    };
+    private boolean isInForeground = false;
 
     private static final int CAMERA_PERMISSION_REQUEST = 1;
     private static final double NOISE_LEVEL = 10.0;
-
-    // 增强模式
-    public enum ImageEnhanceMode { NONE, ENHANCE, DEHAZE, CLAHE, MSRCR }
+    private static final int DEHAZE_REFRESH_INTERVAL = 10; // 预览时大气光每 10 帧重新估计一次
+
+    // 增强模式，以及各自需要的 native 模块 (自动模式实际运行的算法另外按需加载)
+    public enum ImageEnhanceMode {
+        NONE(null),
+        ENHANCE(NativeModules.Module.ENHANCE),
+        DEHAZE(NativeModules.Module.DEHAZE),
+        CLAHE(NativeModules.Module.ENHANCE),
+        MSRCR(NativeModules.Module.ENHANCE),
+        MOTION(NativeModules.Module.MOTION),
+        AUTO(NativeModules.Module.SCENE);
+
+        final NativeModules.Module module;
+
+        ImageEnhanceMode(NativeModules.Module module) {
+            this.module = module;
+        }
+    }
 
     private ImageEnhanceMode currentEnhanceMode = ImageEnhanceMode.NONE;
     private boolean isDetectionEnabled = false;
-    private boolean isTakePhoto = false;
-    private boolean isFirstFrame = true;
+    private volatile boolean isFirstFrame = true; // UI 线程置位，稳像阶段在下一帧清除
 
     private CameraBridgeViewBase mOpenCvCameraView;
-    private Mat lastFrameForStab, lastFrameForEnhance;
 
-    // 缓存对象 (为了避免GC，依然在Activity持有，或者移入Processor也可，这里保留在Activity比较稳妥)
-    private MatOfRect detectionRectBuffer;
-    private MatOfInt detectionIdBuffer;
+    // 处理流水线：稳像 -> 增强 -> 叠加 各一个工作线程 (见 buildPipeline)，以 --ez pipeline false 启动时
+    // 退回在相机线程上串行处理。帧装在预分配的包里流动，包用完时入口直接跳过新帧 (反压到相机)
+    public static final String EXTRA_PIPELINE = "pipeline";
+    private static final int MAX_MOTION_BOXES = 16;
+    private static final int PIPELINE_PACKETS = 6; // 每个阶段一个在处理、一个在排队
+    private FramePipeline<FramePacket> pipeline;
+    private boolean isPipelineParallel;
+    private final ArrayBlockingQueue<FramePacket> freePackets = new ArrayBlockingQueue<>(PIPELINE_PACKETS);
+    private FramePacket[] packets;
+    private FramePacket inlinePacket; // 串行模式下直接包装相机帧，不拷贝
+    // 最后一个阶段完成的最新一帧，相机线程取走后拷到 displayFrame 显示
+    private final Object displayLock = new Object();
+    private FramePacket latestPacket;
+    private Mat displayFrame;
+    private long sourceDroppedFrames;
+
+    /** 在阶段之间流动的一帧：像素、入口时的处理参数快照，以及前面阶段留给后面阶段的结果 */
+    private static final class FramePacket extends FramePipeline.Packet {
+        final boolean pooled;
+        Mat frame;
+        long frameIndex;
+        ImageEnhanceMode requestedMode;
+        boolean detect;
+        boolean resetHistory;                   // 稳像阶段重置了历史，增强阶段跟着重置 stabContext
+        int modeKey;                            // 增强阶段实际运行的模式，完成时反馈给 governor
+        // 运动模式：框由 native 直接写入这块预分配的缓冲区，每帧不分配
+        final DetectionBuffer motionBoxes = new DetectionBuffer(MAX_MOTION_BOXES);
+
+        FramePacket(int stageCount, Mat frame, boolean pooled) {
+            super(stageCount);
+            this.frame = frame;
+            this.pooled = pooled;
+        }
+    }
 
-    // DNN
-    private long dnnNetPtr = 0;
+    // 上一帧缓存：稳像需要上一帧的原始像素，按引用交换，稳态下不分配内存 (OpenCV 加载后在相机启动时创建)
+    private FrameBufferPool framePool;
+    private static final int POOL_REPORT_INTERVAL = 300; // 每 300 帧输出一次拷贝统计
+
+    // 每帧共享的分析上下文：rawContext 绑定相机原始帧 (稳像和运动检测用它的帧间变换，只在稳像阶段访问)，
+    // stabContext 绑定稳像后的帧 (多帧增强用它缓存的上一帧和单应矩阵，只在增强阶段访问)。
+    // 在相机启动 / 停止时创建和释放，释放前先停掉流水线
+    private FrameContext rawContext;
+    private FrameContext stabContext;
+
+    // 自动模式：约 2 Hz 统计场景，带滞回地选择去雾 / MSRCR / CLAHE / 不处理。只在增强阶段访问
+    private final SceneClassifier sceneClassifier = new SceneClassifier();
+    private final double[] sceneStats = new double[SceneClassifier.STAT_COUNT];
+    private ImageEnhanceMode autoSelectedMode = ImageEnhanceMode.NONE;
+    private boolean wasAuto = false;
+
+    // 检测在独立线程上运行，相机线程 (流水线模式下是叠加阶段) 只负责投递帧和绘制稳定框
+    private static final float DETECTION_CONFIDENCE = 0.3f;
+    private static final int DETECTION_INTERVAL = 3; // 每 3 帧推理一次，中间帧由跟踪器预测 (低档位时由 governor 放宽)
+    private final DetectionWorker detectionWorker = new DetectionWorker();
+    private final RateMeter previewRate = new RateMeter();
+
+    // 拍照：调度器决定哪些帧要保存 (单拍 / 连拍)，流水线在后台线程上用复用的缓冲编码和写入
+    private static final int CAPTURE_SLOTS = 4;   // 同时在途的最多张数
+    private static final int CAPTURE_THREADS = 2;
+    private static final int BURST_FPS = 5;
+    private static final int BURST_COUNT = 20;
+    private final CaptureScheduler captureScheduler = new CaptureScheduler();
+    private CapturePipeline capturePipeline;
+
+    // 帧日志：以 adb shell am start -n com.example.glasspro/.MainActivity --ei journal_frames 300 启动时，
+    // 把相机原始帧录到应用私有外部目录，pull 回主机后用 benchmark 模块的 JournalReplayBenchmark 回放
+    public static final String EXTRA_JOURNAL_FRAMES = "journal_frames";
+    private int journalFrames;
+    private volatile FrameJournal frameJournal;
+    private final ExecutorService journalExecutor = Executors.newSingleThreadExecutor();
+
+    private long frameIndex = 0;
+    private long lastRateReportNanos = 0;
+    private static final long RATE_REPORT_INTERVAL_NS = 2_000_000_000L;
+
+    // DNN：在后台线程上 mmap 模型、构建检测器池并预热，完成后才发布 detectorPool
+    private volatile DetectorPool detectorPool;
+    // 发布 detectorPool 与 onDestroy 的释放用同一把锁：onDestroy 之后才加载完的池由加载线程自己释放
+    private final Object detectorLock = new Object();
+    private boolean isDetectorReleased;
+    // 检测器池的实例数，默认按核数选择；以 --ei detector_pool N 启动可以覆盖 (按 DetectorPoolBenchmark 的结果调)
+    public static final String EXTRA_DETECTOR_POOL = "detector_pool";
+    private int detectorPoolSize;
     private static final String MODEL_PROTO = "mobilenet_ssd.prototxt";
     private static final String MODEL_WEIGHTS = "mobilenet_ssd.caffemodel";
+    private final ExecutorService modelExecutor = Executors.newSingleThreadExecutor();
+    private boolean isModelLoading = false;
+
+    // 帧时间预算：按 "增强模式 x 是否检测" 分别记住质量档位，超预算时降低分辨率与算法开销
+    private static final double FRAME_BUDGET_MS = 33.0;
+    private final FrameBudgetGovernor governor =
+            new FrameBudgetGovernor(FRAME_BUDGET_MS, ImageEnhanceMode.values().length * 2);
+    private FrameBudgetGovernor.QualityTier appliedTier = null; // 以下三项只在增强阶段访问 (相机启动时在流水线启动前重置)
+    private DetectorPool appliedTierPool;
+    private int appliedTierModules;
+
+    // 分阶段延迟统计：长按预览打开/关闭 HUD，关闭时导出 CSV
+    private final LatencyProfiler profiler = new LatencyProfiler();
+    private volatile boolean isHudEnabled = false;
+    private static final int HUD_REFRESH_FRAMES = 15; // HUD 文本每 15 帧刷新一次，避免每帧格式化字符串
+    private List<String> hudLines;
+    private final Point hudPos = new Point();
+    private static final Scalar HUD_COLOR = new Scalar(255, 255, 0);
+
+    // 启动耗时：从进程启动起记录库加载、模型加载、相机打开和首帧，首帧和检测器就绪时输出到 logcat
+    private StartupTrace startupTrace;
+    private boolean isFirstFrameTraced = false;
+    private int previewWidth, previewHeight;
+
+    // 首次检测耗时统计
+    private long launchNanos;
+    private long detectionEnabledNanos;
+    private long detectionsAtEnable = -1;
 
     // UI Buttons
-    private Button btnEnhance, btnDehaze, btnCLAHE, btnMSRCR, btnDetect, btnPhoto;
+    private Button btnEnhance, btnDehaze, btnCLAHE, btnMSRCR, btnAuto, btnMotion, btnDetect, btnPhoto;
 
     // Colors (UI only)
     private final int COLOR_ACTIVE_BG = 0xFF00B0FF;
@@ -85,13 +219,68 @@ public class MainActivity extends Activity implements CvCameraViewListener2 {
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        launchNanos = System.nanoTime();
+        // 起点取进程启动时刻 (换算到 nanoTime 的时钟)，Application 和类加载的开销也算在内
+        long processStartNanos = launchNanos
+                - (SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime()) * 1_000_000L;
+        startupTrace = new StartupTrace(processStartNanos);
+        startupTrace.record("process -> onCreate", processStartNanos, launchNanos);
+        nativeModules.setTrace(startupTrace);
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
         setContentView(R.layout.activity_main);
         setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE);
 
+        detectionWorker.setProfiler(profiler);
+        journalFrames = getIntent().getIntExtra(EXTRA_JOURNAL_FRAMES, 0);
+        isPipelineParallel = getIntent().getBooleanExtra(EXTRA_PIPELINE, true);
+        pipeline = buildPipeline();
+        inlinePacket = new FramePacket(pipeline.stageCount(), null, false);
+        detectorPoolSize = Math.max(1, getIntent().getIntExtra(EXTRA_DETECTOR_POOL,
+                DetectorPool.defaultSize(Runtime.getRuntime().availableProcessors())));
         initializeCamera();
         initializeButtons();
         requestPermissions();
+        loadCoreAsync();
+    }
+
+    // 基础路径的库在加载线程上加载，UI 线程只负责布局；加载完后创建依赖 Mat 的对象并打开相机
+    private void loadCoreAsync() {
+        nativeModules.loadAsync(NativeModules.Module.CORE, new NativeModules.Listener() {
+            @Override
+            public void onLoaded(NativeModules.Module module) {
+                runOnUiThread(() -> {
+                    if (isDestroyed()) return;
+                    if (capturePipeline == null) capturePipeline = createCapturePipeline();
+                    startCameraIfReady();
+                });
+            }
+
+            @Override
+            public void onError(NativeModules.Module module, Throwable error) {
+                Log.e(TAG, "Core libs load failed: " + error.getMessage());
+            }
+        });
+    }
+
+    private CapturePipeline createCapturePipeline() {
+        return new CapturePipeline(getContentResolver(), CAPTURE_SLOTS, CAPTURE_THREADS, profiler,
+                fileName -> {
+                    // 连拍时只在全部保存完后提示一次
+                    if (!captureScheduler.isBursting() && capturePipeline.getInFlight() <= 1) {
+                        runOnUiThread(() -> Toast.makeText(MainActivity.this, "Saved to Gallery", Toast.LENGTH_SHORT).show());
+                    }
+                });
+    }
+
+    private void startCameraIfReady() {
+        if (isInForeground && mOpenCvCameraView != null && nativeModules.isLoaded(NativeModules.Module.CORE)) {
+            mOpenCvCameraView.enableView();
+        }
+    }
+
+    // 模块没加载时放到加载线程上加载；已加载或正在加载时重复请求没有额外开销
+    private void requestModule(NativeModules.Module module) {
+        if (module != null) nativeModules.loadAsync(module, moduleListener);
     }
 
     private void initializeCamera() {
@@ -100,6 +289,11 @@ public class MainActivity extends Activity implements CvCameraViewListener2 {
         mOpenCvCameraView.setCvCameraViewListener(this);
         mOpenCvCameraView.setCameraIndex(0);
         mOpenCvCameraView.setMaxFrameSize(1280, 720);
+        mOpenCvCameraView.setOnLongClickListener(v -> {
+            isHudEnabled = !isHudEnabled;
+            if (!isHudEnabled) exportLatencyCsv();
+            return true;
+        });
     }
 
     private void requestPermissions() {
@@ -119,6 +313,8 @@ public class MainActivity extends Activity implements CvCameraViewListener2 {
         btnDehaze = findViewById(R.id.button2);
         btnCLAHE = findViewById(R.id.button3);
         btnMSRCR = findViewById(R.id.button4);
+        btnAuto = findViewById(R.id.button_auto);
+        btnMotion = findViewById(R.id.button_motion);
         btnDetect = findViewById(R.id.button_detect);
         btnPhoto = findViewById(R.id.button_photo);
 
@@ -126,27 +322,53 @@ public class MainActivity extends Activity implements CvCameraViewListener2 {
         setupEnhanceButton(btnDehaze, ImageEnhanceMode.DEHAZE);
         setupEnhanceButton(btnCLAHE, ImageEnhanceMode.CLAHE);
         setupEnhanceButton(btnMSRCR, ImageEnhanceMode.MSRCR);
+        setupEnhanceButton(btnAuto, ImageEnhanceMode.AUTO);
+        setupEnhanceButton(btnMotion, ImageEnhanceMode.MOTION);
 
         btnDetect.setOnClickListener(v -> {
             isDetectionEnabled = !isDetectionEnabled;
-            if (!isDetectionEnabled) {
-                // 关键：关闭时清理 NativeProcessor 里的状态
-                NativeProcessor.resetStabilizer();
+            if (isDetectionEnabled) {
+                detectionEnabledNanos = System.nanoTime();
+                detectionsAtEnable = detectionWorker.getCompletedDetections();
+                // 检测库和模型在第一次打开检测时才加载；相机还没启动时由 onCameraViewStarted 接着加载
+                if (detectorPool == null && previewWidth > 0) loadDetectorAsync(previewWidth, previewHeight);
+            } else {
+                // 关键：关闭时清理 NativeProcessor 里的状态，并丢弃正在推理的结果
+                detectionWorker.clear();
             }
             updateButtonStyles();
         });
 
         btnPhoto.setOnClickListener(v -> {
-            isTakePhoto = true;
+            if (captureScheduler.isBursting()) {
+                captureScheduler.stopBurst();
+                Toast.makeText(this, "连拍已停止", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            captureScheduler.requestSingle();
             Toast.makeText(this, "正在拍照...", Toast.LENGTH_SHORT).show();
         });
+        // 长按连拍，连拍中单击停止
+        btnPhoto.setOnLongClickListener(v -> {
+            captureScheduler.startBurst(BURST_FPS, BURST_COUNT);
+            Toast.makeText(this, "连拍 " + BURST_COUNT + " 张...", Toast.LENGTH_SHORT).show();
+            return true;
+        });
         updateButtonStyles();
     }
 
     private void setupEnhanceButton(Button button, ImageEnhanceMode mode) {
         button.setOnClickListener(v -> {
             currentEnhanceMode = (currentEnhanceMode == mode) ? ImageEnhanceMode.NONE : mode;
-            isFirstFrame = true; // 切换模式重置稳像参考帧
+            requestModule(currentEnhanceMode.module);
+            // 模块刚加载时本来就没有旧状态，不用重置
+            if (currentEnhanceMode == ImageEnhanceMode.DEHAZE && nativeModules.isLoaded(NativeModules.Module.DEHAZE)) {
+                resetDehazeCache(); // 不沿用上次进入去雾时的大气光
+            }
+            if (currentEnhanceMode == ImageEnhanceMode.MOTION && nativeModules.isLoaded(NativeModules.Module.MOTION)) {
+                resetMotionModel(); // 背景从进入模式的那一帧重新建立
+            }
+            isFirstFrame = true; // 切换模式重置稳像参考帧 (稳像阶段在下一帧使缓存失效)
             updateButtonStyles();
         });
     }
@@ -156,6 +378,8 @@ public class MainActivity extends Activity implements CvCameraViewListener2 {
         updateSingleButtonStyle(btnDehaze, currentEnhanceMode == ImageEnhanceMode.DEHAZE);
         updateSingleButtonStyle(btnCLAHE, currentEnhanceMode == ImageEnhanceMode.CLAHE);
         updateSingleButtonStyle(btnMSRCR, currentEnhanceMode == ImageEnhanceMode.MSRCR);
+        updateSingleButtonStyle(btnAuto, currentEnhanceMode == ImageEnhanceMode.AUTO);
+        updateSingleButtonStyle(btnMotion, currentEnhanceMode == ImageEnhanceMode.MOTION);
         updateSingleButtonStyle(btnDetect, isDetectionEnabled);
         btnPhoto.getBackground().setColorFilter(COLOR_PHOTO_BG, PorterDuff.Mode.MULTIPLY);
         btnPhoto.setTextColor(Color.WHITE);
@@ -169,142 +393,537 @@ public class MainActivity extends Activity implements CvCameraViewListener2 {
     }
 
     // ==================== 核心循环 ====================
+    // 相机线程只记录日志、把帧拷进空闲的包交给流水线，并取回最近处理完的一帧显示；
+    // 稳像、增强和叠加在各自的阶段线程上进行。串行模式下所有阶段直接在相机线程上处理这一帧
     @Override
     public Mat onCameraFrame(CvCameraViewFrame frame) {
         Mat inputFrame = frame.rgba();
+        frameIndex++;
+        FrameJournal journal = frameJournal;
+        if (journal != null) {
+            long t = System.nanoTime();
+            journal.append(inputFrame, t);
+            profiler.recordSince(LatencyProfiler.Stage.JOURNAL, t);
+        }
 
-        // 延迟初始化缓存
-        if (detectionRectBuffer == null) detectionRectBuffer = new MatOfRect();
-        if (detectionIdBuffer == null) detectionIdBuffer = new MatOfInt();
+        if (!pipeline.isParallel()) {
+            inlinePacket.frame = inputFrame;
+            fillPacket(inlinePacket);
+            pipeline.submit(inlinePacket);
+            onFrameShown(inlinePacket.getSubmitNanos());
+            return inputFrame;
+        }
+
+        FramePacket packet = freePackets.poll();
+        if (packet != null) {
+            inputFrame.copyTo(packet.frame);
+            fillPacket(packet);
+            pipeline.submit(packet);
+        } else {
+            sourceDroppedFrames++; // 所有包都在流水线里：入口反压，这一帧不处理
+        }
+
+        FramePacket done;
+        synchronized (displayLock) {
+            done = latestPacket;
+            latestPacket = null;
+        }
+        if (done != null) {
+            done.frame.copyTo(displayFrame);
+            long submitNanos = done.getSubmitNanos();
+            freePackets.offer(done);
+            onFrameShown(submitNanos);
+        }
+        // 流水线还没有产出时先显示原始帧
+        return displayFrame.empty() ? inputFrame : displayFrame;
+    }
 
-        try {
-            // 1. 视频防抖 (NativeProcessor static call)
-            processStab(inputFrame);
+    // 处理参数在入口时刻的快照，之后的阶段不再读 UI 线程改的字段
+    private void fillPacket(FramePacket packet) {
+        packet.frameIndex = frameIndex;
+        packet.requestedMode = currentEnhanceMode;
+        packet.detect = isDetectionEnabled;
+        packet.motionBoxes.setCount(0);
+    }
+
+    private void onFrameShown(long submitNanos) {
+        previewRate.tick();
+        if (!isFirstFrameTraced) {
+            isFirstFrameTraced = true;
+            startupTrace.recordSince("first frame", submitNanos);
+            logStartupTrace("first frame");
+        }
+        reportFirstDetection();
+        reportRates();
+    }
+
+    // 处理图：阶段按执行顺序声明，每个阶段一个工作线程和一个输入队列。
+    // 入口只保留最新的一帧 (稳像跟不上时丢旧帧)，后面的阶段满了让上游等待，已经稳像的帧不再丢
+    private FramePipeline<FramePacket> buildPipeline() {
+        return new FramePipeline.Builder<FramePacket>()
+                .stage("stab", 1, FramePipeline.DropPolicy.DROP_OLDEST, this::stabStage)
+                .stage("enhance", 1, FramePipeline.DropPolicy.BLOCK, this::enhanceStage)
+                .stage("overlay", 1, FramePipeline.DropPolicy.BLOCK, this::overlayStage)
+                .build(new FramePipeline.Listener<FramePacket>() {
+                    @Override
+                    public void onComplete(FramePacket packet) {
+                        // 端到端延迟 = 入口到最后一个阶段完成。档位按决定帧率的耗时调节：
+                        // 并行时是最慢的阶段，串行时各阶段在同一个线程上依次执行，是各阶段之和
+                        profiler.recordSince(LatencyProfiler.Stage.FRAME, packet.getSubmitNanos());
+                        governor.onFrame(packet.modeKey, pipeline.isParallel()
+                                ? packet.getBusiestStageNanos() : packet.getTotalStageNanos());
+                        if (!packet.pooled) return;
+                        synchronized (displayLock) {
+                            // 相机线程还没取走的上一帧直接回收，只显示最新的
+                            if (latestPacket != null) freePackets.offer(latestPacket);
+                            latestPacket = packet;
+                        }
+                    }
+
+                    @Override
+                    public void onDropped(FramePacket packet, String stage) {
+                        if (packet.pooled) freePackets.offer(packet);
+                    }
 
-            // 2. 图像增强
-            processEnhancementModes(inputFrame);
+                    @Override
+                    public void onError(FramePacket packet, String stage, RuntimeException error) {
+                        Log.e(TAG, "Frame Error in " + stage + ": " + error.getMessage());
+                    }
+                });
+    }
+
+    // 阶段 1：稳像。运动检测的背景在稳像前的原始帧上建模，用的是 rawContext，所以也在这个阶段
+    private void stabStage(FramePacket packet) {
+        Mat frame = packet.frame;
+        framePool.beginFrame();
+        long t = System.nanoTime();
+        packet.resetHistory = processStab(frame);
+        profiler.recordSince(LatencyProfiler.Stage.STAB, t);
+        if (packet.requestedMode == ImageEnhanceMode.MOTION && nativeModules.isLoaded(NativeModules.Module.MOTION)) {
+            t = System.nanoTime();
+            // 灰度和帧间变换稳像时已经在 rawContext 里算好
+            packet.motionBoxes.setCount(detectMotionStreaming(rawContext.getNativePtr(),
+                    packet.motionBoxes.buffer(), packet.motionBoxes.capacity()));
+            profiler.recordSince(LatencyProfiler.Stage.MOTION, t);
+        }
+        framePool.endFrame();
+        if (framePool.getFrameCount() % POOL_REPORT_INTERVAL == 0) {
+            Log.d(TAG, "FramePool: allocs/frame=" + framePool.getLastFrameAllocations()
+                    + " bytesCopied/frame=" + framePool.getLastFrameBytesCopied()
+                    + " totalAllocs=" + framePool.getTotalAllocations());
+        }
+    }
+
+    // 阶段 2：增强。stabContext、自动模式的场景分类和档位下发都只在这个阶段的线程上访问
+    private void enhanceStage(FramePacket packet) {
+        Mat frame = packet.frame;
+        // 稳像输出是新的一帧，增强在它上面分析
+        stabContext.begin(frame);
+        if (packet.resetHistory) stabContext.reset();
+
+        ImageEnhanceMode mode = resolveEnhanceMode(packet.requestedMode, frame);
+        // 模块还在加载：这一帧按不处理计 (也不计入该模式的档位统计)
+        if (mode.module != null && !nativeModules.isLoaded(mode.module)) mode = ImageEnhanceMode.NONE;
+        packet.modeKey = currentModeKey(mode, packet.detect);
+        applyQualityTier(governor.getTier(packet.modeKey));
+        processEnhancementModes(packet, mode);
+    }
+
+    // 阶段 3：叠加。投递检测并画出外推到这一帧的稳定框，拍照，最后画 HUD
+    private void overlayStage(FramePacket packet) {
+        Mat frame = packet.frame;
+        if (packet.detect && detectorPool != null) {
+            long t = System.nanoTime();
+            detectionWorker.submit(frame, packet.frameIndex);
+            NativeProcessor.drawBoxes(frame, packet.frameIndex);
+            profiler.recordSince(LatencyProfiler.Stage.DRAW, t);
+        }
+        // 拍照：这里只拷贝一份帧，编码和写入在拍照流水线上完成
+        if (captureScheduler.shouldCapture(System.nanoTime())) {
+            capturePipeline.submit(frame);
+        }
+        if (isHudEnabled) drawHud(frame, packet.frameIndex);
+    }
+
+    // --- 辅助逻辑 ---
+    // 自动模式下按实际运行的算法区分档位
+    private static int currentModeKey(ImageEnhanceMode mode, boolean detect) {
+        return mode.ordinal() * 2 + (detect ? 1 : 0);
+    }
 
-            // 3. 目标检测
-            if (isDetectionEnabled && dnnNetPtr != 0) {
-                // 只有一行代码：检测+防抖+绘制 全包了
-                NativeProcessor.detectAndDraw(inputFrame, dnnNetPtr, detectionRectBuffer, detectionIdBuffer, 0.3f);
+    // 本帧实际运行的增强算法：自动模式下隔一段时间分析一次场景，其余帧沿用上次的选择
+    private ImageEnhanceMode resolveEnhanceMode(ImageEnhanceMode mode, Mat frame) {
+        if (mode != ImageEnhanceMode.AUTO) {
+            wasAuto = false;
+            return mode;
+        }
+        if (!nativeModules.isLoaded(NativeModules.Module.SCENE)) return ImageEnhanceMode.NONE;
+        if (!wasAuto) {
+            sceneClassifier.reset();
+            autoSelectedMode = ImageEnhanceMode.NONE;
+            wasAuto = true;
+        }
+        long now = System.nanoTime();
+        if (!frame.empty() && sceneClassifier.isDue(now)) {
+            analyzeScene(frame.getNativeObjAddr(), sceneStats);
+            ImageEnhanceMode next = toEnhanceMode(sceneClassifier.update(sceneStats, now));
+            profiler.recordSince(LatencyProfiler.Stage.SCENE, now);
+            if (next != autoSelectedMode) {
+                requestModule(next.module); // 选中的算法第一次用到时才加载
+                if (next == ImageEnhanceMode.DEHAZE && nativeModules.isLoaded(NativeModules.Module.DEHAZE)) {
+                    resetDehazeCache();
+                }
+                Log.i(TAG, String.format("Auto mode -> %s (brightness %.0f, contrast %.0f, saturation %.0f, sharpness %.0f)",
+                        next, sceneStats[SceneClassifier.STAT_BRIGHTNESS], sceneStats[SceneClassifier.STAT_CONTRAST],
+                        sceneStats[SceneClassifier.STAT_SATURATION], sceneStats[SceneClassifier.STAT_SHARPNESS]));
+                autoSelectedMode = next;
             }
+        }
+        return autoSelectedMode;
+    }
 
-            // 4. 拍照
-            if (isTakePhoto) {
-                isTakePhoto = false;
-                saveImageToGallery(inputFrame);
+    private static ImageEnhanceMode toEnhanceMode(SceneClassifier.Recommendation recommendation) {
+        switch (recommendation) {
+            case DEHAZE: return ImageEnhanceMode.DEHAZE;
+            case CLAHE: return ImageEnhanceMode.CLAHE;
+            case MSRCR: return ImageEnhanceMode.MSRCR;
+            default: return ImageEnhanceMode.NONE;
+        }
+    }
+
+    // 档位、网络或已加载的模块变化时才下发参数；网络和模块都是异步加载的，就绪后要补发一次。
+    // 只在增强阶段的线程上、两帧之间调用：去雾和增强的默认实例只有这个阶段在用 (稳像和叠加阶段不碰)，
+    // 所以这些参数与处理不会并发。检测的参数会在推理线程运行时修改，输入尺寸在 native 端是 atomic，
+    // 投递间隔是 volatile，都在下一次推理 / 投递时生效
+    private void applyQualityTier(FrameBudgetGovernor.QualityTier tier) {
+        DetectorPool pool = detectorPool;
+        int modules = nativeModules.loadedMask();
+        if (tier == appliedTier && pool == appliedTierPool && modules == appliedTierModules) return;
+        if (tier != appliedTier || modules != appliedTierModules) {
+            // 模块加载后的初始化也在这里，同样在增强阶段的线程上下发
+            if (nativeModules.isLoaded(NativeModules.Module.DEHAZE)) {
+                setDehazeStreaming(true, DEHAZE_REFRESH_INTERVAL);
+                setDehazeParams(tier.dehazeRate, tier.dehazePatchSmall, tier.dehazePatchLarge);
+                setDehazeTier(tier.dehazeTier);
+            }
+            if (nativeModules.isLoaded(NativeModules.Module.ENHANCE)) {
+                setEnhanceParams(tier.enhanceLevels, tier.msrcrScale);
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Frame Error: " + e.getMessage());
         }
-        return inputFrame;
+        if (tier != appliedTier) {
+            detectionWorker.setDetectionInterval(tier.detectionInterval);
+            Log.i(TAG, "Quality tier -> " + tier + " (mode " + currentEnhanceMode
+                    + (isDetectionEnabled ? "+DETECT" : "") + ")");
+        }
+        if (pool != null) pool.setInputSize(tier.detectorInputSize);
+        appliedTier = tier;
+        appliedTierPool = pool;
+        appliedTierModules = modules;
     }
 
-    // --- 辅助逻辑 ---
-    private void processEnhancementModes(Mat frame) {
-        switch (currentEnhanceMode) {
-            case ENHANCE: processEnhanceWithState(frame); break;
-            case DEHAZE: if(!frame.empty()) dehaze(frame.getNativeObjAddr()); break;
-            case CLAHE: if(!frame.empty()) enhanceByCLAHE(frame.getNativeObjAddr()); break;
-            case MSRCR: if(!frame.empty()) enhanceByMSRCR(frame.getNativeObjAddr()); break;
+    // 首个检测结果出来时输出一次：距离启动、距离打开检测各多久
+    private void reportFirstDetection() {
+        if (detectionsAtEnable < 0 || detectionWorker.getCompletedDetections() <= detectionsAtEnable) return;
+        long now = System.nanoTime();
+        startupTrace.mark("first detection", now);
+        Log.i(TAG, "Time to first detection: " + (now - detectionEnabledNanos) / 1_000_000 + " ms after enabling, "
+                + (now - launchNanos) / 1_000_000 + " ms after launch");
+        detectionsAtEnable = -1;
+    }
+
+    private void logStartupTrace(String reason) {
+        Log.i(TAG, "Startup trace at " + reason + ":");
+        for (String line : startupTrace.summaryLines()) Log.i(TAG, "  " + line);
+    }
+
+    // 预览帧率与检测帧率分开统计
+    private void reportRates() {
+        long now = System.nanoTime();
+        if (now - lastRateReportNanos < RATE_REPORT_INTERVAL_NS) return;
+        lastRateReportNanos = now;
+        Log.d(TAG, String.format("Preview %.1f fps, Detection %.1f fps, dropped %d, gated skip %d / roi %d, photos saved %d / dropped %d",
+                previewRate.getRate(), detectionWorker.getDetectionRate(), detectionWorker.getDroppedFrames(),
+                detectionWorker.getSkippedInferences(), detectionWorker.getRoiInferences(),
+                capturePipeline.getSavedCount(), capturePipeline.getDroppedCount()));
+        if (pipeline.isParallel()) {
+            Log.d(TAG, "Pipeline: " + sourceDroppedFrames + " frames skipped at source (no free packet)");
+            for (String line : pipeline.summaryLines()) Log.d(TAG, "  " + line);
+        }
+    }
+
+    private void processEnhancementModes(FramePacket packet, ImageEnhanceMode mode) {
+        Mat frame = packet.frame;
+        long t = System.nanoTime();
+        switch (mode) {
+            case ENHANCE:
+                if (processEnhanceWithState(frame)) {
+                    profiler.recordSince(LatencyProfiler.Stage.ENHANCE, t);
+                    for (LatencyProfiler.Stage s : LatencyProfiler.ENHANCE_STAGES) {
+                        profiler.recordNative(s, getEnhanceStageNanos(s.nativeIndex));
+                    }
+                }
+                break;
+            case DEHAZE:
+                if (frame.empty()) break;
+                dehaze(frame.getNativeObjAddr());
+                profiler.recordSince(LatencyProfiler.Stage.DEHAZE, t);
+                for (LatencyProfiler.Stage s : LatencyProfiler.DEHAZE_STAGES) {
+                    profiler.recordNative(s, getDehazeStageNanos(s.nativeIndex));
+                }
+                break;
+            case CLAHE:
+                if (frame.empty()) break;
+                enhanceByCLAHE(frame.getNativeObjAddr());
+                profiler.recordSince(LatencyProfiler.Stage.CLAHE, t);
+                break;
+            case MSRCR:
+                if (frame.empty()) break;
+                enhanceByMSRCR(frame.getNativeObjAddr());
+                profiler.recordSince(LatencyProfiler.Stage.MSRCR, t);
+                break;
+            case MOTION:
+                // 框在稳像阶段已经算好，随帧传过来
+                NativeProcessor.drawMotionBoxes(frame, packet.motionBoxes);
+                break;
             default: break;
         }
     }
 
-    private void processEnhanceWithState(Mat frame) {
-        Mat old = new Mat(); frame.copyTo(old);
-        if (!isFirstFrame && lastFrameForEnhance != null && !lastFrameForEnhance.empty()) {
-            enhance(lastFrameForEnhance.getNativeObjAddr(), frame.getNativeObjAddr(), NOISE_LEVEL);
+    // 上一帧 (增强前的 RGB) 和帧间单应矩阵都从 stabContext 取；返回本帧是否真正做了增强
+    private boolean processEnhanceWithState(Mat frame) {
+        return enhanceWithContext(stabContext.getNativePtr(), frame.getNativeObjAddr(), NOISE_LEVEL);
+    }
+
+    // 返回这一帧是否重置了稳像历史 (增强阶段据此重置 stabContext)
+    private boolean processStab(Mat frame) {
+        rawContext.begin(frame);
+        boolean resetHistory = isFirstFrame;
+        if (isFirstFrame) {
+            framePool.invalidateAll();
+            rawContext.reset();
+            isFirstFrame = false;
+        }
+        Mat prev = framePool.previous(FrameBufferPool.SLOT_STAB);
+        framePool.stage(FrameBufferPool.SLOT_STAB, frame);
+        boolean hasPrev = prev != null && !prev.empty();
+        // 没有上一帧时也要调用：让上下文为下一帧建好金字塔
+        videoStabWithContext(rawContext.getNativePtr(), hasPrev ? prev.getNativeObjAddr() : 0, frame.getNativeObjAddr());
+        if (hasPrev) {
+            // native 子阶段耗时在同一线程上读出
+            for (LatencyProfiler.Stage s : LatencyProfiler.STAB_STAGES) {
+                profiler.recordNative(s, getStabStageNanos(s.nativeIndex));
+            }
         }
-        if (lastFrameForEnhance == null) lastFrameForEnhance = new Mat();
-        old.copyTo(lastFrameForEnhance);
+        framePool.commit(FrameBufferPool.SLOT_STAB);
+        return resetHistory;
     }
 
-    private void processStab(Mat frame) {
-        Mat old = new Mat(); frame.copyTo(old);
-        if (!isFirstFrame && lastFrameForStab != null && !lastFrameForStab.empty()) {
-            videoStab(lastFrameForStab.getNativeObjAddr(), frame.getNativeObjAddr());
+    // 左上角叠加各阶段 p50/p95/p99 和流水线各队列的深度，文本隔几帧才重新生成
+    private void drawHud(Mat frame, long index) {
+        if (hudLines == null || index % HUD_REFRESH_FRAMES == 0) {
+            hudLines = profiler.summaryLines();
+            if (pipeline.isParallel()) hudLines.addAll(pipeline.summaryLines());
+        }
+        double y = 30;
+        for (String line : hudLines) {
+            hudPos.x = 10;
+            hudPos.y = y;
+            Imgproc.putText(frame, line, hudPos, Imgproc.FONT_HERSHEY_PLAIN, 1.2, HUD_COLOR, 1);
+            y += 20;
         }
-        isFirstFrame = false;
-        if (lastFrameForStab == null) lastFrameForStab = new Mat();
-        old.copyTo(lastFrameForStab);
     }
 
-    private void saveImageToGallery(Mat mat) {
-        final Bitmap bitmap = Bitmap.createBitmap(mat.cols(), mat.rows(), Bitmap.Config.ARGB_8888);
-        Utils.matToBitmap(mat, bitmap);
+    // 统计写到应用私有外部目录，adb pull 即可取出对比
+    private void exportLatencyCsv() {
+        final String csv = profiler.toCsv();
         new Thread(() -> {
-            try {
-                String fileName = "GlassPro_" + System.currentTimeMillis() + ".jpg";
-                android.content.ContentValues values = new android.content.ContentValues();
-                values.put(android.provider.MediaStore.Images.Media.DISPLAY_NAME, fileName);
-                values.put(android.provider.MediaStore.Images.Media.MIME_TYPE, "image/jpeg");
-                values.put(android.provider.MediaStore.Images.Media.RELATIVE_PATH, android.os.Environment.DIRECTORY_PICTURES + "/GlassPro");
-                android.net.Uri uri = getContentResolver().insert(android.provider.MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
-                if (uri != null) {
-                    try (OutputStream out = getContentResolver().openOutputStream(uri)) {
-                        bitmap.compress(Bitmap.CompressFormat.JPEG, 95, out);
-                    }
-                    runOnUiThread(() -> Toast.makeText(MainActivity.this, "Saved to Gallery", Toast.LENGTH_SHORT).show());
-                }
-            } catch (Exception e) { Log.e(TAG, "Save error: " + e.getMessage()); }
+            File file = new File(getExternalFilesDir(null), "latency_" + System.currentTimeMillis() + ".csv");
+            try (OutputStream out = new FileOutputStream(file)) {
+                out.write(csv.getBytes(StandardCharsets.UTF_8));
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, "Exported " + file.getName(), Toast.LENGTH_SHORT).show());
+            } catch (IOException e) {
+                Log.e(TAG, "CSV export error: " + e.getMessage());
+            }
         }).start();
     }
 
     @Override
     public void onCameraViewStarted(int width, int height) {
+        startupTrace.mark("camera started", System.nanoTime());
+        previewWidth = width;
+        previewHeight = height;
         isFirstFrame = true;
-        if (dnnNetPtr == 0) {
-            new Thread(() -> {
-                try {
-                    String proto = getPathFromAsset(MODEL_PROTO);
-                    String model = getPathFromAsset(MODEL_WEIGHTS);
-                    if (proto != null && model != null) dnnNetPtr = loadObjectDetector(proto, model);
-                } catch (Exception e) { Log.e(TAG, "DNN Load Error"); }
-            }).start();
+        if (framePool == null) framePool = new FrameBufferPool();
+        if (rawContext == null) rawContext = new FrameContext();
+        if (stabContext == null) stabContext = new FrameContext();
+        if (packets == null) {
+            // 像素在第一次拷入时按相机尺寸分配，之后复用
+            packets = new FramePacket[PIPELINE_PACKETS];
+            for (int i = 0; i < packets.length; i++) packets[i] = new FramePacket(pipeline.stageCount(), new Mat(), true);
+            displayFrame = new Mat();
         }
+        freePackets.clear();
+        freePackets.addAll(Arrays.asList(packets));
+        appliedTier = null; // 下面重设了检测间隔，首帧重新下发当前档位 (含去雾的流式设置)
+        if (journalFrames > 0) openJournalAsync(width, height);
+        detectionWorker.setDetectionInterval(DETECTION_INTERVAL);
+        detectionWorker.start();
+        if (detectorPool != null) {
+            detectionWorker.setPool(detectorPool);
+        } else if (isDetectionEnabled) {
+            loadDetectorAsync(width, height);
+        }
+        // 上面的状态都准备好之后再启动阶段线程
+        pipeline.start(isPipelineParallel);
+    }
+
+    // 模型加载：先加载检测库，asset 直接 mmap 给 native 解析，池里每个实例各构建一次并预热，全部在后台线程完成
+    private void loadDetectorAsync(int width, int height) {
+        if (isModelLoading) return;
+        isModelLoading = true;
+        modelExecutor.execute(() -> {
+            long[] netPtrs = new long[detectorPoolSize];
+            int loaded = 0;
+            try {
+                nativeModules.load(NativeModules.Module.DETECTION);
+                long t0 = System.nanoTime();
+                MappedByteBuffer proto = mapAsset(MODEL_PROTO);
+                MappedByteBuffer model = mapAsset(MODEL_WEIGHTS);
+                long t1 = System.nanoTime();
+                for (; loaded < netPtrs.length; loaded++) {
+                    netPtrs[loaded] = loadObjectDetectorFromBuffers(proto, model);
+                    if (netPtrs[loaded] == 0) break;
+                }
+                long t2 = System.nanoTime();
+                if (loaded == 0) return;
+                // 内存不够时少建几个实例也能用
+                DetectorPool pool = new DetectorPool(Arrays.copyOf(netPtrs, loaded), DETECTION_CONFIDENCE);
+                long t3 = System.nanoTime();
+                long warmUpMs = pool.warmUp(width, height);
+                pool.setGating(true); // 静止场景跳过推理，局部变化只推理变化区域
+                startupTrace.record(StartupTrace.MODEL + "map", t0, t1);
+                startupTrace.record(StartupTrace.MODEL + "build x" + loaded, t1, t2);
+                startupTrace.recordSince(StartupTrace.MODEL + "warm-up", t3);
+                Log.i(TAG, "DNN ready: " + pool.size() + " instance(s), map " + (t1 - t0) / 1_000_000 + " ms, build "
+                        + (t2 - t1) / 1_000_000 + " ms, warm-up " + warmUpMs + " ms");
+                synchronized (detectorLock) {
+                    if (!isDetectorReleased) {
+                        detectorPool = pool;
+                        detectionWorker.setPool(pool);
+                        pool = null;
+                    }
+                }
+                if (pool != null) {
+                    pool.release(); // Activity 已经销毁
+                    return;
+                }
+                logStartupTrace("detector ready");
+            } catch (Exception | UnsatisfiedLinkError e) {
+                Log.e(TAG, "DNN Load Error: " + e.getMessage());
+            } finally {
+                runOnUiThread(() -> isModelLoading = false);
+            }
+        });
     }
 
     @Override
     public void onCameraViewStopped() {
-        if (lastFrameForStab != null) lastFrameForStab.release();
-        if (lastFrameForEnhance != null) lastFrameForEnhance.release();
-        if (detectionRectBuffer != null) detectionRectBuffer.release();
-        if (detectionIdBuffer != null) detectionIdBuffer.release();
+        // 先停流水线 (等各阶段处理完手上的帧)，之后才能释放各阶段使用的状态
+        pipeline.stop();
+        synchronized (displayLock) {
+            latestPacket = null;
+        }
+        if (packets != null) {
+            for (FramePacket packet : packets) packet.frame.release();
+            displayFrame.release();
+        }
+        if (framePool != null) framePool.release();
+        if (rawContext != null) {
+            rawContext.release();
+            rawContext = null;
+        }
+        if (stabContext != null) {
+            stabContext.release();
+            stabContext = null;
+        }
+        detectionWorker.stop(); // 先停工作线程，再释放网络
+        closeJournalAsync();
+    }
+
+    // 预分配文件要写几百 MB，放在后台线程上；完成后才发布给相机线程
+    private void openJournalAsync(int width, int height) {
+        journalExecutor.execute(() -> {
+            File file = new File(getExternalFilesDir(null), "journal_" + System.currentTimeMillis() + ".gpj");
+            try {
+                long t0 = System.nanoTime();
+                frameJournal = FrameJournal.create(file, width, height, CvType.CV_8UC4, width * height * 4, journalFrames);
+                Log.i(TAG, "Journal " + file.getName() + ": " + frameJournal.getCapacity() + " frames preallocated in "
+                        + (System.nanoTime() - t0) / 1_000_000 + " ms");
+            } catch (IOException e) {
+                Log.e(TAG, "Journal create error: " + e.getMessage());
+            }
+        });
+    }
+
+    private void closeJournalAsync() {
+        journalExecutor.execute(() -> {
+            FrameJournal journal = frameJournal;
+            frameJournal = null;
+            if (journal == null) return;
+            try {
+                journal.close();
+                Log.i(TAG, "Journal closed: " + journal.getFrameCount() + " frames, "
+                        + journal.getDroppedFrames() + " dropped after full");
+            } catch (IOException e) {
+                Log.e(TAG, "Journal close error: " + e.getMessage());
+            }
+        });
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
         if (mOpenCvCameraView != null) mOpenCvCameraView.disableView();
-        if (dnnNetPtr != 0) releaseObjectDetector(dnnNetPtr);
+        modelExecutor.shutdown();
+        journalExecutor.shutdown();
+        if (capturePipeline != null) capturePipeline.shutdown();
+        DetectorPool pool;
+        synchronized (detectorLock) {
+            isDetectorReleased = true;
+            pool = detectorPool;
+            detectorPool = null;
+        }
+        if (pool != null) {
+            detectionWorker.setPool(null);
+            pool.release();
+        }
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        if (mOpenCvCameraView != null) mOpenCvCameraView.enableView();
+        isInForeground = true;
+        startCameraIfReady();
         currentEnhanceMode = ImageEnhanceMode.NONE;
         isDetectionEnabled = false;
-        NativeProcessor.resetStabilizer(); // 切回来时重置状态
+        detectionWorker.clear(); // 切回来时重置状态
+        captureScheduler.clear();
         updateButtonStyles();
     }
 
     @Override
     public void onPause() {
         super.onPause();
+        isInForeground = false;
         if (mOpenCvCameraView != null) mOpenCvCameraView.disableView();
     }
 
-    private String getPathFromAsset(String assetName) {
-        File outFile = new File(getCacheDir(), assetName);
-        if (outFile.exists() && outFile.length() > 0) return outFile.getAbsolutePath();
-        try (InputStream in = getAssets().open(assetName); OutputStream out = new FileOutputStream(outFile)) {
-            byte[] buffer = new byte[4096];
-            int read;
-            while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
-            return outFile.getAbsolutePath();
-        } catch (Exception e) { return null; }
+    // 模型 asset 在 build.gradle 里设置为不压缩，可以直接按 APK 内偏移映射，不再拷贝到缓存目录
+    private MappedByteBuffer mapAsset(String assetName) throws IOException {
+        try (AssetFileDescriptor afd = getAssets().openFd(assetName);
+             FileInputStream in = afd.createInputStream();
+             FileChannel channel = in.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getDeclaredLength());
+        }
     }
-}
\ No newline at end of file
+}
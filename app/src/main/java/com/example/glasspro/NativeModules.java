@@ -0,0 +1,136 @@
+package com.example.glasspro;
+
+import org.opencv.core.Core;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * native 库的按需加载。
+ * <p>
+ * 每个功能模块对应一组 .so (按依赖顺序)：相机预览的基础路径 (OpenCV、帧上下文、稳像) 是 {@link Module#CORE}，
+ * 增强、去雾、运动检测、自动模式的场景统计和 DNN 检测各是一个模块，第一次用到时才加载。
+ * 加载是幂等的，已加载的库不会重复计时；每个库的加载耗时记到 {@link #setTrace} 指定的 {@link StartupTrace}。
+ * <p>
+ * {@link #load} 在调用线程上同步加载 (模型加载线程先用它加载检测库)；{@link #loadAsync} 放到
+ * 进程内唯一的加载线程上，不阻塞 UI 线程和相机线程。相机线程每帧用 {@link #isLoaded} 判断模块是否就绪，
+ * 没就绪的模块这一帧直接跳过。
+ * <p>
+ * 库是进程级的，所以加载状态也是进程级的：Activity 重建后 {@link #get()} 返回同一个实例。
+ */
+public class NativeModules {
+
+    public enum Module {
+        // OpenCV 本身 (libopencv_java4.so) 也在基础路径里，其余模块都建立在它之上
+        CORE(null, Core.NATIVE_LIBRARY_NAME, "framectx", "stab"),
+        ENHANCE(CORE, "enhance"),
+        DEHAZE(ENHANCE, "dehaze"),
+        MOTION(CORE, "motion"),
+        SCENE(CORE, "native-lib"),
+        DETECTION(CORE, "vision_processor");
+
+        /** 先要加载的模块，没有时为 null */
+        public final Module parent;
+        final String[] libraries;
+
+        Module(Module parent, String... libraries) {
+            this.parent = parent;
+            this.libraries = libraries;
+        }
+
+        int bit() {
+            return 1 << ordinal();
+        }
+    }
+
+    /** 实际加载一个库，默认是 System.loadLibrary；单元测试换成记录调用的实现 */
+    public interface LibraryLoader {
+        void loadLibrary(String name);
+    }
+
+    /** 异步加载的结果回调，在加载线程上调用 */
+    public interface Listener {
+        void onLoaded(Module module);
+
+        void onError(Module module, Throwable error);
+    }
+
+    private static NativeModules instance;
+
+    private final LibraryLoader loader;
+    private final Set<String> loadedLibraries = new HashSet<>();
+    private volatile int loadedMask;
+    private volatile StartupTrace trace;
+    // 执行器随实例创建，它的线程在第一次 loadAsync 提交任务时才启动；
+    // 提交不经过 load() 的锁，否则加载期间 UI 线程提交任务也会被阻塞
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "NativeModules");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public NativeModules(LibraryLoader loader) {
+        this.loader = loader;
+    }
+
+    /** 进程内共用的实例，用 System.loadLibrary 加载 */
+    public static synchronized NativeModules get() {
+        if (instance == null) instance = new NativeModules(System::loadLibrary);
+        return instance;
+    }
+
+    /** 之后每个库的加载耗时记到 trace，为 null 时不记录 */
+    public void setTrace(StartupTrace trace) {
+        this.trace = trace;
+    }
+
+    /** 模块 (含它依赖的模块) 是否已全部加载，任意线程都可以调用 */
+    public boolean isLoaded(Module module) {
+        return (loadedMask & module.bit()) != 0;
+    }
+
+    /** 已加载模块的位掩码，变化时调用方可以重新下发依赖这些模块的参数 */
+    public int loadedMask() {
+        return loadedMask;
+    }
+
+    /**
+     * 在调用线程上加载模块及其依赖，已加载时立即返回。
+     * @throws UnsatisfiedLinkError 某个库加载失败，模块保持未加载状态，之后可以重试
+     */
+    public synchronized void load(Module module) {
+        if (isLoaded(module)) return;
+        if (module.parent != null) load(module.parent);
+        StartupTrace t = trace;
+        for (String lib : module.libraries) {
+            if (loadedLibraries.contains(lib)) continue;
+            long start = System.nanoTime();
+            loader.loadLibrary(lib);
+            if (t != null) t.recordSince(StartupTrace.LIBRARY + lib, start);
+            loadedLibraries.add(lib);
+        }
+        loadedMask |= module.bit();
+    }
+
+    /**
+     * 在加载线程上加载模块，完成后回调 listener。已加载时直接在调用线程上回调。
+     * 同一个模块重复请求时排队的任务会直接命中已加载的状态。
+     */
+    public void loadAsync(Module module, Listener listener) {
+        if (isLoaded(module)) {
+            listener.onLoaded(module);
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                load(module);
+            } catch (UnsatisfiedLinkError e) {
+                listener.onError(module, e);
+                return;
+            }
+            listener.onLoaded(module);
+        });
+    }
+}
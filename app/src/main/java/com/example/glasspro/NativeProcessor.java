@@ -1,30 +1,121 @@
 package com.example.glasspro;
 
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfInt;
-import org.opencv.core.MatOfRect;
 import org.opencv.core.Point;
-import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.List;
 
 public class NativeProcessor {
 
+    // 去雾算法档位，与 dehaze_fast.h 的 DehazeTier 对应
+    public static final int DEHAZE_TIER_REFERENCE = 0; // 原始 double 实现，只用于精度对比
+    public static final int DEHAZE_TIER_FULL = 1;      // float32，双尺度 + 全分辨率透射率
+    public static final int DEHAZE_TIER_COARSE = 2;    // float32，双尺度 + 半分辨率透射率导向上采样
+    public static final int DEHAZE_TIER_SINGLE = 3;    // float32，单尺度 + 半分辨率透射率
+
+    // 检测门控的决策 (与 detection_gate.h 里的 GateDecision 对应)
+    public static final int GATE_FULL = 0; // 整帧推理
+    public static final int GATE_ROI = 1;  // 只在变化区域的裁剪上推理，其余沿用上次结果
+    public static final int GATE_SKIP = 2; // 场景没有变化，沿用上次结果
+
+    // 帧上下文的产物，与 frame_context.h 的 FrameProduct 对应 (用于读取每帧计算次数)
+    public static final int CTX_RGB = 0;
+    public static final int CTX_GRAY = 1;
+    public static final int CTX_BLURRED_GRAY = 2;
+    public static final int CTX_PYRAMID = 3;
+    public static final int CTX_FEATURES = 4;
+    public static final int CTX_FLOW = 5;
+    public static final int CTX_AFFINE = 6;
+    public static final int CTX_HOMOGRAPHY = 7;
+    public static final int CTX_PRODUCT_COUNT = 8;
+
     // ==================== 本地方法声明 (保持不变) ====================
     public static native void enhance(long matAddr1, long matAddr2, double noiseLevel);
     public static native void dehaze(long matAddr);
     public static native void enhanceByCLAHE(long matAddr);
     public static native void enhanceByMSRCR(long matAddr);
+    // 自动模式的场景统计 (一次取样遍历)，结果写入 stats，下标见 SceneClassifier.STAT_*
+    public static native void analyzeScene(long matAddr, double[] stats);
     public static native void videoStab(long matAddr1, long matAddr2);
     public static native void detectMotion(long matAddrPrev, long matAddrCurrent, long matAddrOutBoxes);
+    // 每帧共享的分析上下文 (见 FrameContext)：先 beginFrameContext 绑定当前帧，
+    // 下面的 *WithContext 接口从上下文取灰度、金字塔、光流和帧间变换，同一帧内只算一次
+    public static native long createFrameContext();
+    public static native void releaseFrameContext(long ctxPtr);
+    public static native void beginFrameContext(long ctxPtr, long matAddr);
+    public static native void resetFrameContext(long ctxPtr);
+    public static native int getFrameContextComputeCount(long ctxPtr, int product);
+    // prevAddr 为 0 表示没有上一帧，只为下一帧准备数据
+    public static native void videoStabWithContext(long ctxPtr, long prevAddr, long matAddr);
+    // 上一帧取自上下文；上一帧不可用时不处理并返回 false
+    public static native boolean enhanceWithContext(long ctxPtr, long matAddr, double noiseLevel);
+    public static native void detectMotionWithContext(long ctxPtr, long matAddrOutBoxes);
+    // 帧日志 (见 FrameJournal) 的像素拷贝：Mat 与 direct ByteBuffer 之间直接 memcpy
+    public static native long copyMatToBuffer(long matAddr, ByteBuffer buffer, long offset);
+    public static native boolean copyBufferToMat(ByteBuffer buffer, long offset, int rows, int cols, int type, long matAddr);
+    // 流式运动检测 (背景模型跨帧保留，ctx 须已 begin 当前帧)：框写入 direct ByteBuffer (格式见 DetectionBuffer，
+    // classId 为 -1，score 为框内前景比例)，返回写入的条数
+    public static native int detectMotionStreaming(long ctxPtr, ByteBuffer outBoxes, int maxBoxes);
+    // 丢弃背景模型 (任意线程可调用，处理线程在下一帧生效)
+    public static native void resetMotionModel();
     public static native long loadObjectDetector(String proto, String model);
+    // 从内存映射的 asset 直接构建网络 (两个参数都必须是 direct ByteBuffer)
+    public static native long loadObjectDetectorFromBuffers(ByteBuffer proto, ByteBuffer model);
+    // 用一帧空白图跑一次推理完成惰性初始化，返回耗时 (毫秒)，失败返回 -1
+    public static native long warmUpObjectDetector(long netPtr, int width, int height);
     public static native void releaseObjectDetector(long netPtr);
-    public static native void detectObjectsNN(long netPtr, long frameAddr, long boxesAddr, long classIdsAddr, float confThreshold);
+    // 检测结果写入调用方持有的 direct ByteBuffer (格式见 DetectionBuffer)，返回写入的条数
+    public static native int detectObjectsNN(long netPtr, long frameAddr, ByteBuffer outDetections, int maxDetections, float confThreshold);
+    // 质量档位参数 (见 FrameBudgetGovernor.QualityTier)
+    public static native void setDehazeParams(double rate, int patchSmall, int patchLarge);
+    // 去雾算法档位，取值见 DEHAZE_TIER_*
+    public static native void setDehazeTier(int tier);
+    public static native void setEnhanceParams(int pyramidLevels, double msrcrScale);
+    public static native void setDetectorInputSize(long netPtr, int size);
+    // 推理前的变化门控 (默认关闭)，最近一次 detectObjectsNN 的决策见 GATE_*
+    public static native void setDetectorGating(long netPtr, boolean enabled);
+    public static native int getDetectorGateDecision(long netPtr);
+    // 流式去雾：大气光跨帧复用，每 refreshInterval 帧或场景切换时重新估计
+    public static native void setDehazeStreaming(boolean enabled, int refreshInterval);
+    // 丢弃缓存的大气光 (任意线程可调用，处理线程在下一帧生效)
+    public static native void resetDehazeCache();
+    // 最近一次调用各 native 子阶段的耗时 (纳秒)，下标见 LatencyProfiler 里的 *_STAGES
+    public static native long getStabStageNanos(int stage);
+    public static native long getEnhanceStageNanos(int stage);
+    public static native long getDehazeStageNanos(int stage);
+    public static native long getDetectorStageNanos(long netPtr, int stage);
+
+    // 句柄接口：每个句柄独占自己的跨帧状态，不同句柄可以在不同线程上同时使用 (见 StreamProcessor)。
+    // 上面不带句柄的接口共用进程内的一组默认实例
+    public static native long createStabilizer();
+    public static native void releaseStabilizer(long stabPtr);
+    public static native void runStabilizer(long stabPtr, long ctxPtr, long prevAddr, long matAddr);
+    public static native long getStabilizerStageNanos(long stabPtr, int stage);
+    public static native long createEnhancer();
+    public static native void releaseEnhancer(long enhancerPtr);
+    public static native boolean runEnhancer(long enhancerPtr, long ctxPtr, long matAddr, double noiseLevel);
+    public static native void runClahe(long enhancerPtr, long matAddr);
+    public static native void runMsrcr(long enhancerPtr, long matAddr);
+    public static native void setEnhancerParams(long enhancerPtr, int pyramidLevels, double msrcrScale);
+    public static native long getEnhancerStageNanos(long enhancerPtr, int stage);
+    public static native long createDehazer();
+    public static native void releaseDehazer(long dehazerPtr);
+    public static native void runDehazer(long dehazerPtr, long matAddr);
+    public static native void setDehazerParams(long dehazerPtr, double rate, int patchSmall, int patchLarge);
+    public static native void setDehazerTier(long dehazerPtr, int tier);
+    public static native void setDehazerStreaming(long dehazerPtr, boolean enabled, int refreshInterval);
+    public static native void resetDehazerCache(long dehazerPtr);
+    public static native long getDehazerStageNanos(long dehazerPtr, int stage);
+    public static native long createMotionDetector();
+    public static native void releaseMotionDetector(long motionPtr);
+    public static native int runMotionDetector(long motionPtr, long ctxPtr, ByteBuffer outBoxes, int maxBoxes);
+    public static native void resetMotionDetector(long motionPtr);
+    // 两帧帧差检测 (同 detectMotion)，中间缓冲由句柄持有
+    public static native void runMotionDetectorPair(long motionPtr, long matAddrPrev, long matAddrCurrent, long matAddrOutBoxes);
 
     // =========================================================
     //        优化后的 Java 层逻辑
@@ -50,141 +141,141 @@ public class NativeProcessor {
 
     // --- [优化点 1] 调整参数：更严格的过滤，更快的响应 ---
 
-    // 提高平滑灵敏度：原来是 0.6 (比较粘手)，现在改为 0.7 (更跟手)
-    private static final float SMOOTH_FACTOR = 0.7f;
-
-    // 降低容错帧数：原来是 5，改为 2。
+    // 降低容错次数：原来是 5，改为 2 (以检测轮次计，隔帧检测时也是 2 次检测)。
     // 移动时，如果物体真的消失了，保留太久会造成框在空中飘的假象。
     private static final int MAX_MISSED_FRAMES = 2;
 
     // 匹配距离阈值
     private static final double MAX_MATCH_DIST = 200.0;
 
-    // [新增] 瞬间移动阈值：如果新旧框中心距离超过 50 像素，说明运动很快，直接跳过去，不进行平滑
-    private static final double SNAP_DISTANCE_THRESHOLD = 50.0;
+    // [新增] 卡尔曼滤波噪声：替代原来的 SMOOTH_FACTOR / SNAP_DISTANCE_THRESHOLD 指数平滑。
+    // 过程噪声越大越跟手，测量噪声越大越平滑 (单位：像素^2)
+    private static final float PROCESS_NOISE = 1.0f;
+    private static final float MEASUREMENT_NOISE = 16.0f;
 
-    // 3. 内部状态管理
-    private static final List<StableBox> stableBoxes = new ArrayList<>();
+    // [新增] 向前外推的最大帧数，检测线程停顿太久时不再继续外推
+    private static final long MAX_PROJECT_FRAMES = 10;
 
-    private static class StableBox {
-        Rect rect;
-        int classId;
-        int missedCount;
+    // [新增] 跟踪容量：拥挤场景下最多同时跟踪的框数
+    private static final int MAX_TRACKS = BoxTracker.DEFAULT_CAPACITY;
 
-        StableBox(Rect rect, int classId) {
-            this.rect = rect.clone();
-            this.classId = classId;
-            this.missedCount = 0;
-        }
-    }
+    // 3. 内部状态管理 (检测线程写、相机线程读，用 STATE_LOCK 保护)
+    private static final Object STATE_LOCK = new Object();
+    private static final BoxTracker tracker = newTracker();
+
+    private static final Scalar LABEL_COLOR = new Scalar(255, 255, 255);
+    private static final Scalar MOTION_COLOR = new Scalar(0, 255, 0);
+
+    // 相机线程上的绘制 (默认跟踪器和流式运动框)
+    private static final BoxPainter painter = new BoxPainter();
 
     /**
-     * 核心业务方法
+     * 核心业务方法 (同步版本：检测+防抖+绘制 在同一线程完成)
      */
-    public static void detectAndDraw(Mat frame, long netPtr, MatOfRect bufferBoxes, MatOfInt bufferIds, float inputConfidence) {
+    public static void detectAndDraw(Mat frame, long netPtr, DetectionBuffer detections, float inputConfidence) {
         if (netPtr == 0 || frame.empty()) return;
-
-        // --- [优化点 2] 强制提高置信度阈值 ---
-        // 即使 MainActivity 传进来 0.3，我们在这里也强制过滤掉低于 0.55 的垃圾框。
-        // 移动模糊会产生大量 0.3~0.4 的误识别。
-        float effectiveConfidence = Math.max(inputConfidence, 0.55f);
-
-        // A. C++ 推理
-        bufferBoxes.release();
-        bufferIds.release();
-        detectObjectsNN(netPtr, frame.getNativeObjAddr(), bufferBoxes.getNativeObjAddr(), bufferIds.getNativeObjAddr(), effectiveConfidence);
-
-        Rect[] rawBoxes = bufferBoxes.toArray();
-        int[] rawIds = bufferIds.toArray();
+        if (!runDetection(frame, netPtr, detections, inputConfidence)) return;
 
         // B. 防抖逻辑 (已优化)
-        updateStabilizer(rawBoxes, rawIds);
+        updateStabilizer(detections, 0);
 
         // C. 绘制
-        drawStart(frame);
+        drawBoxes(frame, 0);
     }
 
-    // 私有：更新稳定器状态
-    private static void updateStabilizer(Rect[] rawBoxes, int[] rawIds) {
-        if (rawBoxes == null || rawIds == null) return;
-        boolean[] rawUsed = new boolean[rawBoxes.length];
-
-        Iterator<StableBox> it = stableBoxes.iterator();
-        while (it.hasNext()) {
-            StableBox sb = it.next();
-            int bestMatchIndex = -1;
-            double minDistance = Double.MAX_VALUE;
-
-            // 寻找最佳匹配
-            for (int i = 0; i < rawBoxes.length; i++) {
-                if (rawUsed[i]) continue;
-                if (rawIds[i] != sb.classId) continue;
-
-                double dist = getDistance(sb.rect, rawBoxes[i]);
-                if (dist < minDistance) {
-                    minDistance = dist;
-                    bestMatchIndex = i;
-                }
-            }
+    /**
+     * 只做推理，不碰跟踪状态，可在任意线程调用。结果 (框、类别、置信度) 写入 detections。
+     */
+    public static boolean runDetection(Mat frame, long netPtr, DetectionBuffer detections, float inputConfidence) {
+        if (netPtr == 0 || frame.empty()) return false;
 
-            if (bestMatchIndex != -1 && minDistance < MAX_MATCH_DIST) {
-                Rect raw = rawBoxes[bestMatchIndex];
-
-                // --- [优化点 3] 动态平滑逻辑 ---
-                if (minDistance > SNAP_DISTANCE_THRESHOLD) {
-                    // 距离太远（快速移动），直接“瞬移”过去，消除滞后感
-                    sb.rect = raw.clone();
-                } else {
-                    // 距离较近（微小抖动），启用加权平滑
-                    sb.rect.x = (int) (raw.x * SMOOTH_FACTOR + sb.rect.x * (1 - SMOOTH_FACTOR));
-                    sb.rect.y = (int) (raw.y * SMOOTH_FACTOR + sb.rect.y * (1 - SMOOTH_FACTOR));
-                    sb.rect.width = (int) (raw.width * SMOOTH_FACTOR + sb.rect.width * (1 - SMOOTH_FACTOR));
-                    sb.rect.height = (int) (raw.height * SMOOTH_FACTOR + sb.rect.height * (1 - SMOOTH_FACTOR));
-                }
-
-                sb.missedCount = 0;
-                rawUsed[bestMatchIndex] = true;
-            } else {
-                sb.missedCount++;
-            }
+        // --- [优化点 2] 强制提高置信度阈值 ---
+        // 即使 MainActivity 传进来 0.3，我们在这里也强制过滤掉低于 0.55 的垃圾框。
+        // 移动模糊会产生大量 0.3~0.4 的误识别。
+        float effectiveConfidence = Math.max(inputConfidence, 0.55f);
 
-            if (sb.missedCount > MAX_MISSED_FRAMES) {
-                it.remove();
-            }
-        }
+        // A. C++ 推理 (直接写入复用的缓冲，没有临时 Mat)
+        int count = detectObjectsNN(netPtr, frame.getNativeObjAddr(), detections.buffer(), detections.capacity(), effectiveConfidence);
+        detections.setCount(count);
+        return count >= 0;
+    }
 
-        // 添加新框
-        for (int i = 0; i < rawBoxes.length; i++) {
-            if (!rawUsed[i]) {
-                stableBoxes.add(new StableBox(rawBoxes[i], rawIds[i]));
-            }
+    /**
+     * 用 frameIndex 这一帧的检测结果更新稳定框。
+     */
+    public static void updateStabilizer(DetectionBuffer detections, long frameIndex) {
+        synchronized (STATE_LOCK) {
+            tracker.update(detections, frameIndex);
         }
     }
 
-    private static void drawStart(Mat frame) {
-        for (StableBox sb : stableBoxes) {
-            if (sb.classId < 0 || sb.classId >= CLASS_NAMES.size()) continue;
+    /**
+     * 把当前的稳定框外推到 currentFrameIndex 并画到 frame 上。
+     */
+    public static void drawBoxes(Mat frame, long currentFrameIndex) {
+        synchronized (STATE_LOCK) {
+            painter.drawTracks(frame, tracker, currentFrameIndex);
+        }
+    }
 
-            String label = CLASS_NAMES.get(sb.classId);
-            Scalar color = CLASS_COLORS[sb.classId];
+    /**
+     * 画出流式运动检测的框 (只在相机线程调用，不经过跟踪器)。
+     */
+    public static void drawMotionBoxes(Mat frame, DetectionBuffer boxes) {
+        painter.drawMotion(frame, boxes);
+    }
 
-            Imgproc.rectangle(frame, sb.rect, color, 2);
+    /**
+     * 画框用的可复用对象。每个绘制线程一个 (静态接口共用一个，每个 StreamProcessor 各持有一个)。
+     */
+    static final class BoxPainter {
+        private final Point topLeft = new Point();
+        private final Point bottomRight = new Point();
+        private final Point labelPos = new Point();
+
+        void drawTracks(Mat frame, BoxTracker tracker, long currentFrameIndex) {
+            for (int i = 0; i < tracker.size(); i++) {
+                int classId = tracker.classIdAt(i);
+                if (classId < 0 || classId >= CLASS_NAMES.size()) continue;
+
+                String label = CLASS_NAMES.get(classId);
+                Scalar color = CLASS_COLORS[classId];
+
+                // 检测结果来自较早的帧 (或本帧跳过了检测)，按匀速模型预测到当前帧
+                int x = tracker.projectedX(i, currentFrameIndex);
+                int y = tracker.projectedY(i, currentFrameIndex);
+                topLeft.x = x;
+                topLeft.y = y;
+                bottomRight.x = x + tracker.widthAt(i);
+                bottomRight.y = y + tracker.heightAt(i);
+                Imgproc.rectangle(frame, topLeft, bottomRight, color, 2);
+
+                labelPos.x = x;
+                labelPos.y = (y - 5 < 20) ? y + 20 : y - 5;
+                Imgproc.putText(frame, label, labelPos, Imgproc.FONT_HERSHEY_SIMPLEX, 0.6, LABEL_COLOR, 2);
+            }
+        }
 
-            Point labelPos = new Point(sb.rect.x, sb.rect.y - 5);
-            if (labelPos.y < 20) labelPos.y = sb.rect.y + 20;
-            Imgproc.putText(frame, label, labelPos, Imgproc.FONT_HERSHEY_SIMPLEX, 0.6, new Scalar(255, 255, 255), 2);
+        void drawMotion(Mat frame, DetectionBuffer boxes) {
+            for (int i = 0; i < boxes.count(); i++) {
+                topLeft.x = boxes.x(i);
+                topLeft.y = boxes.y(i);
+                bottomRight.x = boxes.x(i) + boxes.width(i);
+                bottomRight.y = boxes.y(i) + boxes.height(i);
+                Imgproc.rectangle(frame, topLeft, bottomRight, MOTION_COLOR, 2);
+            }
         }
     }
 
-    private static double getDistance(Rect r1, Rect r2) {
-        double cx1 = r1.x + r1.width / 2.0;
-        double cy1 = r1.y + r1.height / 2.0;
-        double cx2 = r2.x + r2.width / 2.0;
-        double cy2 = r2.y + r2.height / 2.0;
-        return Math.sqrt(Math.pow(cx1 - cx2, 2) + Math.pow(cy1 - cy2, 2));
+    /** 与默认跟踪器参数相同的新跟踪器 (每路视频流一个) */
+    static BoxTracker newTracker() {
+        return new BoxTracker(MAX_TRACKS, (float) MAX_MATCH_DIST,
+                MAX_MISSED_FRAMES, MAX_PROJECT_FRAMES, PROCESS_NOISE, MEASUREMENT_NOISE);
     }
 
     public static void resetStabilizer() {
-        stableBoxes.clear();
+        synchronized (STATE_LOCK) {
+            tracker.clear();
+        }
     }
 }
\ No newline at end of file
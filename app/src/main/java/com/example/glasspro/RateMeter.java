@@ -0,0 +1,37 @@
+package com.example.glasspro;
+
+/**
+ * 简单的帧率统计：每个时间窗口 (默认 1 秒) 结算一次。
+ * tick() 只能由一个线程调用，getRate() 可在任意线程读取。
+ */
+public class RateMeter {
+    private final long windowNanos;
+    private long windowStart = -1;
+    private int count;
+    private volatile float rate;
+
+    public RateMeter() {
+        this(1_000_000_000L);
+    }
+
+    public RateMeter(long windowNanos) {
+        this.windowNanos = windowNanos;
+    }
+
+    public void tick() {
+        long now = System.nanoTime();
+        if (windowStart < 0) windowStart = now;
+        count++;
+        long elapsed = now - windowStart;
+        if (elapsed >= windowNanos) {
+            rate = count * 1e9f / elapsed;
+            count = 0;
+            windowStart = now;
+        }
+    }
+
+    /** 最近一个完整窗口内的速率 (次/秒) */
+    public float getRate() {
+        return rate;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.glasspro;
+
+/**
+ * 自动增强模式的场景分类器。
+ * <p>
+ * 调用方以较低频率 (默认每 500 ms，见 {@link #isDue(long)}) 在缩略图上统计亮度、对比度、饱和度和清晰度
+ * (NativeProcessor.analyzeScene)，交给 {@link #update(double[], long)}，得到当前应使用的增强算法：
+ * 有雾 -> 去雾，很暗 -> MSRCR，偏暗或过亮 -> CLAHE，其余不处理。开销大的算法只在场景需要时才运行。
+ * <p>
+ * 两层滞回避免在两个算法之间来回切换：已选中的类别用更宽松的阈值判断是否仍然成立；
+ * 新类别要连续 {@link #CONFIRM_COUNT} 次分析都成立才切换。
+ * <p>
+ * 清晰度只输出供日志参考，不参与分类：暗场景和雾天本身梯度就小，无法用固定阈值区分运动模糊。
+ * <p>
+ * 本类只做决策，不依赖 OpenCV/Android。
+ */
+public class SceneClassifier {
+
+    /** 推荐的增强算法 */
+    public enum Recommendation { NONE, DEHAZE, CLAHE, MSRCR }
+
+    // analyzeScene 输出数组的下标
+    public static final int STAT_BRIGHTNESS = 0; // V 通道均值 (0~255)
+    public static final int STAT_CONTRAST = 1;   // V 通道标准差
+    public static final int STAT_SATURATION = 2; // S 通道均值 (0~255)
+    public static final int STAT_SHARPNESS = 3;  // 灰度 Laplacian 方差，越小越模糊
+    public static final int STAT_COUNT = 4;
+
+    public static final long DEFAULT_INTERVAL_NS = 500_000_000L; // 2 Hz
+    public static final int CONFIRM_COUNT = 2;
+
+    // 进入阈值 / 保持阈值 (保持阈值更宽松)
+    private static final double HAZE_CONTRAST_ENTER = 30, HAZE_CONTRAST_STAY = 36;
+    private static final double HAZE_SATURATION_ENTER = 50, HAZE_SATURATION_STAY = 60;
+    // 暗场景同样对比度低、饱和度低，雾还要求画面整体偏亮
+    private static final double HAZE_MIN_BRIGHTNESS = 100;
+    private static final double VERY_DARK_ENTER = 50, VERY_DARK_STAY = 60;
+    private static final double DARK_ENTER = 90, DARK_STAY = 100;
+    private static final double BRIGHT_ENTER = 200, BRIGHT_STAY = 190;
+
+    private final long intervalNanos;
+    private long lastAnalysisNanos;
+    private boolean analyzed;
+    private Recommendation current = Recommendation.NONE;
+    private Recommendation candidate = Recommendation.NONE;
+    private int candidateCount;
+
+    public SceneClassifier() {
+        this(DEFAULT_INTERVAL_NS);
+    }
+
+    public SceneClassifier(long intervalNanos) {
+        this.intervalNanos = intervalNanos;
+    }
+
+    /** 距离上次分析是否已经过了一个周期 */
+    public boolean isDue(long nowNanos) {
+        return !analyzed || nowNanos - lastAnalysisNanos >= intervalNanos;
+    }
+
+    /**
+     * 喂入一次统计结果，返回 (可能已切换的) 当前推荐。
+     *
+     * @param stats 长度至少为 {@link #STAT_COUNT}，下标见 STAT_*
+     */
+    public Recommendation update(double[] stats, long nowNanos) {
+        analyzed = true;
+        lastAnalysisNanos = nowNanos;
+
+        Recommendation next = classify(stats);
+        if (next == current) {
+            candidateCount = 0;
+            return current;
+        }
+        if (next == candidate) {
+            candidateCount++;
+        } else {
+            candidate = next;
+            candidateCount = 1;
+        }
+        if (candidateCount >= CONFIRM_COUNT) {
+            current = next;
+            candidateCount = 0;
+        }
+        return current;
+    }
+
+    public Recommendation getCurrent() {
+        return current;
+    }
+
+    /** 回到初始状态，下一帧立即分析 */
+    public void reset() {
+        analyzed = false;
+        current = Recommendation.NONE;
+        candidate = Recommendation.NONE;
+        candidateCount = 0;
+    }
+
+    // 优先级：雾 > 很暗 > 偏暗或过亮。当前类别用保持阈值，其余用进入阈值
+    private Recommendation classify(double[] stats) {
+        double brightness = stats[STAT_BRIGHTNESS];
+        double contrast = stats[STAT_CONTRAST];
+        double saturation = stats[STAT_SATURATION];
+
+        boolean hazy = brightness > HAZE_MIN_BRIGHTNESS && (current == Recommendation.DEHAZE
+                ? contrast < HAZE_CONTRAST_STAY && saturation < HAZE_SATURATION_STAY
+                : contrast < HAZE_CONTRAST_ENTER && saturation < HAZE_SATURATION_ENTER);
+        if (hazy) return Recommendation.DEHAZE;
+
+        boolean veryDark = brightness < (current == Recommendation.MSRCR ? VERY_DARK_STAY : VERY_DARK_ENTER);
+        if (veryDark) return Recommendation.MSRCR;
+
+        boolean stayClahe = current == Recommendation.CLAHE;
+        boolean dark = brightness < (stayClahe ? DARK_STAY : DARK_ENTER);
+        boolean bright = brightness > (stayClahe ? BRIGHT_STAY : BRIGHT_ENTER);
+        if (dark || bright) return Recommendation.CLAHE;
+
+        return Recommendation.NONE;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.glasspro;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 启动过程的一次性耗时记录：OpenCV 与各 native 库的加载、模型加载、相机打开和首帧。
+ * <p>
+ * 每一项记下相对起点 (进程启动) 的开始时刻和耗时，里程碑 (如首帧) 记为耗时为 0 的一项。
+ * 库和模型在后台线程上加载，所以可以从任意线程记录。每个名字只保留第一次记录，
+ * 重复打开相机或已加载的库不会覆盖启动时的数据。
+ * 与 {@link LatencyProfiler} 的区别：那边是逐帧的分布统计，这里每项只发生一次。
+ */
+public class StartupTrace {
+
+    // 名字前缀，summaryLines() 按前缀汇总
+    public static final String LIBRARY = "lib ";
+    public static final String MODEL = "model ";
+
+    private static final class Span {
+        final String name;
+        final long startNanos;
+        final long durationNanos;
+
+        Span(String name, long startNanos, long durationNanos) {
+            this.name = name;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+        }
+    }
+
+    private final long originNanos;
+    private final List<Span> spans = new ArrayList<>();
+
+    /** @param originNanos 起点，与 System.nanoTime() 同一时钟 */
+    public StartupTrace(long originNanos) {
+        this.originNanos = originNanos;
+    }
+
+    /** 记录一段耗时，同名的项已存在时忽略 */
+    public synchronized void record(String name, long startNanos, long endNanos) {
+        if (indexOf(name) >= 0) return;
+        // 按开始时间插入，输出时就是时间线
+        int i = spans.size();
+        while (i > 0 && spans.get(i - 1).startNanos > startNanos) i--;
+        spans.add(i, new Span(name, startNanos, endNanos - startNanos));
+    }
+
+    public void recordSince(String name, long startNanos) {
+        record(name, startNanos, System.nanoTime());
+    }
+
+    /** 记录一个里程碑 */
+    public void mark(String name, long atNanos) {
+        record(name, atNanos, atNanos);
+    }
+
+    public synchronized boolean has(String name) {
+        return indexOf(name) >= 0;
+    }
+
+    /** 名字以 prefix 开头的各项耗时之和 (纳秒) */
+    public synchronized long totalNanos(String prefix) {
+        long total = 0;
+        for (Span s : spans) {
+            if (s.name.startsWith(prefix)) total += s.durationNanos;
+        }
+        return total;
+    }
+
+    /** 某一项结束时距起点的时间 (纳秒)，没有记录时返回 -1 */
+    public synchronized long endSinceOrigin(String name) {
+        int i = indexOf(name);
+        if (i < 0) return -1;
+        Span s = spans.get(i);
+        return s.startNanos + s.durationNanos - originNanos;
+    }
+
+    /** 时间线：每项一行 "+开始 ms  名字  耗时 ms"，最后是库和模型加载的合计 */
+    public synchronized List<String> summaryLines() {
+        List<String> lines = new ArrayList<>(spans.size() + 1);
+        for (Span s : spans) {
+            lines.add(String.format(Locale.US, "+%6.1f ms  %-24s %7.1f ms",
+                    (s.startNanos - originNanos) / 1e6, s.name, s.durationNanos / 1e6));
+        }
+        lines.add(String.format(Locale.US, "total: libraries %.1f ms, model %.1f ms",
+                totalNanos(LIBRARY) / 1e6, totalNanos(MODEL) / 1e6));
+        return lines;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < spans.size(); i++) {
+            if (spans.get(i).name.equals(name)) return i;
+        }
+        return -1;
+    }
+}
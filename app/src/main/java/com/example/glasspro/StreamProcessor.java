@@ -0,0 +1,165 @@
+package com.example.glasspro;
+
+import org.opencv.core.Mat;
+
+/**
+ * 一路视频流的处理器：稳像器、增强器 (多帧 / CLAHE / MSRCR)、去雾器、运动背景模型、
+ * 两个帧上下文和检测框跟踪器都由这个实例独占。
+ * <p>
+ * NativeProcessor 里不带句柄的静态接口共用进程内的一组默认实例，只能服务一路流 (相机预览)。
+ * 多路流或并行基准各自创建一个 StreamProcessor，不同实例可以在不同线程上同时处理，互不干扰。
+ * <p>
+ * 每帧先 {@link #stabilize(Mat)}，再调用增强 / 去雾 / 运动检测中的一个，顺序与 MainActivity.onCameraFrame 相同。
+ * 同一个实例只在一个处理线程上使用；跟踪器例外，{@link #updateTracks} 与 {@link #drawTracks} 加锁，
+ * 检测线程可以更新。用完调用 {@link #release()}。
+ */
+public class StreamProcessor {
+
+    private static final int MAX_MOTION_BOXES = 16;
+
+    private final FrameContext rawContext = new FrameContext();
+    private final FrameContext stabContext = new FrameContext();
+    private long stabPtr = NativeProcessor.createStabilizer();
+    private long enhancerPtr = NativeProcessor.createEnhancer();
+    private long dehazerPtr = NativeProcessor.createDehazer();
+    private long motionPtr = NativeProcessor.createMotionDetector();
+
+    private final BoxTracker tracker = NativeProcessor.newTracker();
+    private final NativeProcessor.BoxPainter painter = new NativeProcessor.BoxPainter();
+    private final DetectionBuffer motionBoxes = new DetectionBuffer(MAX_MOTION_BOXES);
+
+    // 稳像的上一帧是稳像前的原始帧：稳像前先拷一份，处理完与 previous 交换
+    private Mat previous = new Mat();
+    private Mat staging = new Mat();
+    private boolean hasPrevious;
+    private boolean resetPending = true;
+
+    /**
+     * 绑定新的一帧并原地稳像。之后的增强和运动检测都在这一帧上分析。
+     */
+    public void stabilize(Mat frame) {
+        rawContext.begin(frame);
+        boolean reset = resetPending;
+        if (reset) {
+            rawContext.reset();
+            hasPrevious = false;
+            resetPending = false;
+        }
+        frame.copyTo(staging);
+        // 没有上一帧时也要调用：让上下文为下一帧建好金字塔
+        NativeProcessor.runStabilizer(stabPtr, rawContext.getNativePtr(),
+                hasPrevious ? previous.getNativeObjAddr() : 0, frame.getNativeObjAddr());
+        Mat t = previous;
+        previous = staging;
+        staging = t;
+        hasPrevious = true;
+
+        // 稳像输出是新的一帧，后面的模块都在它上面分析
+        stabContext.begin(frame);
+        if (reset) stabContext.reset();
+    }
+
+    /** 多帧增强，返回本帧是否真正做了增强 (第一帧只准备数据) */
+    public boolean enhance(Mat frame, double noiseLevel) {
+        return NativeProcessor.runEnhancer(enhancerPtr, stabContext.getNativePtr(), frame.getNativeObjAddr(), noiseLevel);
+    }
+
+    public void clahe(Mat frame) {
+        NativeProcessor.runClahe(enhancerPtr, frame.getNativeObjAddr());
+    }
+
+    public void msrcr(Mat frame) {
+        NativeProcessor.runMsrcr(enhancerPtr, frame.getNativeObjAddr());
+    }
+
+    public void dehaze(Mat frame) {
+        NativeProcessor.runDehazer(dehazerPtr, frame.getNativeObjAddr());
+    }
+
+    /** 流式运动检测 (背景在稳像前的原始帧上建模)，返回的缓冲由本实例持有，下一帧覆盖 */
+    public DetectionBuffer detectMotion() {
+        motionBoxes.setCount(NativeProcessor.runMotionDetector(motionPtr, rawContext.getNativePtr(),
+                motionBoxes.buffer(), motionBoxes.capacity()));
+        return motionBoxes;
+    }
+
+    /** 两帧帧差检测，框写入 outBoxes (MatOfRect)；与流式检测共用句柄，但不影响背景模型 */
+    public void detectMotion(Mat prev, Mat curr, Mat outBoxes) {
+        NativeProcessor.runMotionDetectorPair(motionPtr, prev.getNativeObjAddr(), curr.getNativeObjAddr(),
+                outBoxes.getNativeObjAddr());
+    }
+
+    public void drawMotionBoxes(Mat frame) {
+        painter.drawMotion(frame, motionBoxes);
+    }
+
+    /** 用 frameIndex 这一帧的检测结果更新本路的稳定框 (可在检测线程调用) */
+    public void updateTracks(DetectionBuffer detections, long frameIndex) {
+        synchronized (tracker) {
+            tracker.update(detections, frameIndex);
+        }
+    }
+
+    /** 把本路的稳定框外推到 currentFrameIndex 并画到 frame 上 */
+    public void drawTracks(Mat frame, long currentFrameIndex) {
+        synchronized (tracker) {
+            painter.drawTracks(frame, tracker, currentFrameIndex);
+        }
+    }
+
+    // --- 质量参数 (含义同 NativeProcessor 的静态版本) ---
+    public void setEnhanceParams(int pyramidLevels, double msrcrScale) {
+        NativeProcessor.setEnhancerParams(enhancerPtr, pyramidLevels, msrcrScale);
+    }
+
+    public void setDehazeParams(double rate, int patchSmall, int patchLarge) {
+        NativeProcessor.setDehazerParams(dehazerPtr, rate, patchSmall, patchLarge);
+    }
+
+    public void setDehazeTier(int tier) {
+        NativeProcessor.setDehazerTier(dehazerPtr, tier);
+    }
+
+    public void setDehazeStreaming(boolean enabled, int refreshInterval) {
+        NativeProcessor.setDehazerStreaming(dehazerPtr, enabled, refreshInterval);
+    }
+
+    // 最近一次调用各 native 子阶段的耗时 (纳秒)，下标见 LatencyProfiler 里的 *_STAGES
+    public long getStabStageNanos(int stage) {
+        return NativeProcessor.getStabilizerStageNanos(stabPtr, stage);
+    }
+
+    public long getEnhanceStageNanos(int stage) {
+        return NativeProcessor.getEnhancerStageNanos(enhancerPtr, stage);
+    }
+
+    public long getDehazeStageNanos(int stage) {
+        return NativeProcessor.getDehazerStageNanos(dehazerPtr, stage);
+    }
+
+    /**
+     * 丢弃跨帧状态 (切换场景或模式时)：下一帧起重新建立上一帧、背景模型和大气光缓存，清空跟踪器。
+     * 帧上下文和稳像历史在下一次 {@link #stabilize} 时重置，背景模型和大气光缓存可从任意线程请求。
+     */
+    public void reset() {
+        resetPending = true;
+        NativeProcessor.resetMotionDetector(motionPtr);
+        NativeProcessor.resetDehazerCache(dehazerPtr);
+        synchronized (tracker) {
+            tracker.clear();
+        }
+    }
+
+    public void release() {
+        if (stabPtr == 0) return;
+        NativeProcessor.releaseStabilizer(stabPtr);
+        NativeProcessor.releaseEnhancer(enhancerPtr);
+        NativeProcessor.releaseDehazer(dehazerPtr);
+        NativeProcessor.releaseMotionDetector(motionPtr);
+        stabPtr = enhancerPtr = dehazerPtr = motionPtr = 0;
+        rawContext.release();
+        stabContext.release();
+        previous.release();
+        staging.release();
+    }
+}
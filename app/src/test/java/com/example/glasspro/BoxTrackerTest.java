@@ -0,0 +1,139 @@
+package com.example.glasspro;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * BoxTracker 的主机端单元测试 (不依赖 OpenCV)。
+ */
+public class BoxTrackerTest {
+
+    private static BoxTracker newTracker() {
+        return new BoxTracker(BoxTracker.DEFAULT_CAPACITY, 200f, 2, 10, 1f, 16f);
+    }
+
+    @Test
+    public void newDetectionsCreateTracks() {
+        BoxTracker tracker = newTracker();
+        tracker.update(new int[]{10, 10, 50, 50, 200, 200, 40, 40}, new int[]{15, 7}, 2, 1);
+        assertEquals(2, tracker.size());
+        assertNotEquals(tracker.trackIdAt(0), tracker.trackIdAt(1));
+    }
+
+    @Test
+    public void matchedTrackKeepsIdAndIsSmoothed() {
+        BoxTracker tracker = newTracker();
+        tracker.update(new int[]{100, 100, 50, 50}, new int[]{15}, 1, 1);
+        int id = tracker.trackIdAt(0);
+
+        tracker.update(new int[]{110, 100, 50, 50}, new int[]{15}, 1, 2);
+        assertEquals(1, tracker.size());
+        assertEquals(id, tracker.trackIdAt(0));
+        int x = tracker.projectedX(0, 2);
+        assertTrue("x=" + x, x > 100 && x <= 110);
+    }
+
+    @Test
+    public void differentClassIsNotMatched() {
+        BoxTracker tracker = newTracker();
+        tracker.update(new int[]{100, 100, 50, 50}, new int[]{15}, 1, 1);
+        tracker.update(new int[]{100, 100, 50, 50}, new int[]{7}, 1, 2);
+        assertEquals(2, tracker.size());
+    }
+
+    @Test
+    public void greedyAssignmentPrefersHighestIou() {
+        BoxTracker tracker = newTracker();
+        tracker.update(new int[]{0, 0, 100, 100, 60, 0, 100, 100}, new int[]{15, 15}, 2, 1);
+        int idA = tracker.trackIdAt(0);
+        int idB = tracker.trackIdAt(1);
+
+        // 只有一个检测框，和 B 完全重合，应该分给 B 而不是先遍历到的 A
+        tracker.update(new int[]{60, 0, 100, 100}, new int[]{15}, 1, 2);
+        for (int i = 0; i < tracker.size(); i++) {
+            if (tracker.trackIdAt(i) == idB) assertEquals(60, tracker.projectedX(i, 2));
+            if (tracker.trackIdAt(i) == idA) assertEquals(0, tracker.projectedX(i, 2));
+        }
+    }
+
+    @Test
+    public void constantVelocityIsPredictedBetweenDetections() {
+        BoxTracker tracker = newTracker();
+        // 每 3 帧检测一次，目标以 10 像素/帧匀速向右运动
+        for (long frame = 0; frame <= 30; frame += 3) {
+            tracker.update(new int[]{(int) (frame * 10), 0, 40, 40}, new int[]{15}, 1, frame);
+        }
+        assertEquals(1, tracker.size());
+        assertEquals(10f, tracker.velocityXAt(0), 1f);
+        // 跳过检测的两帧里按速度预测，误差应在几个像素以内
+        assertEquals(310, tracker.projectedX(0, 31), 4);
+        assertEquals(320, tracker.projectedX(0, 32), 4);
+    }
+
+    @Test
+    public void projectionIsCappedAtMaxProjectFrames() {
+        BoxTracker tracker = newTracker();
+        for (long frame = 0; frame <= 30; frame += 3) {
+            tracker.update(new int[]{(int) (frame * 10), 0, 40, 40}, new int[]{15}, 1, frame);
+        }
+        assertEquals(tracker.projectedX(0, 40), tracker.projectedX(0, 100));
+    }
+
+    @Test
+    public void missedTracksExpire() {
+        BoxTracker tracker = newTracker();
+        tracker.update(new int[]{0, 0, 40, 40}, new int[]{15}, 1, 1);
+        tracker.update(new int[0], new int[0], 0, 2);
+        tracker.update(new int[0], new int[0], 0, 3);
+        assertEquals(1, tracker.size());
+        tracker.update(new int[0], new int[0], 0, 4);
+        assertEquals(0, tracker.size());
+    }
+
+    @Test
+    public void crowdedSceneIsCappedAtCapacity() {
+        BoxTracker tracker = new BoxTracker(16, 200f, 2, 10, 1f, 16f);
+        int n = 40;
+        int[] boxes = new int[n * 4];
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            boxes[i * 4] = i * 30;
+            boxes[i * 4 + 2] = 20;
+            boxes[i * 4 + 3] = 20;
+            ids[i] = 15;
+        }
+        tracker.update(boxes, ids, n, 1);
+        assertEquals(16, tracker.size());
+        tracker.update(boxes, ids, n, 2);
+        assertEquals(16, tracker.size());
+    }
+
+    @Test
+    public void detectionBufferFeedsTracker() {
+        BoxTracker tracker = newTracker();
+        DetectionBuffer detections = new DetectionBuffer(4);
+        detections.put(0, 10, 20, 30, 40, 15, 0.9f);
+        detections.put(1, 300, 20, 30, 40, 7, 0.6f);
+        detections.setCount(2);
+        tracker.update(detections, 1);
+        assertEquals(2, tracker.size());
+        assertEquals(15, tracker.classIdAt(0));
+        assertEquals(10, tracker.projectedX(0, 1));
+        assertEquals(40, tracker.heightAt(0));
+    }
+
+    @Test
+    public void lowScoreDetectionMovesTrackLess() {
+        BoxTracker confident = newTracker();
+        BoxTracker doubtful = newTracker();
+        int[] first = {100, 100, 50, 50};
+        int[] second = {120, 100, 50, 50};
+        int[] cls = {15};
+        confident.update(first, cls, new float[]{1f}, 1, 1);
+        doubtful.update(first, cls, new float[]{1f}, 1, 1);
+        confident.update(second, cls, new float[]{1f}, 1, 2);
+        doubtful.update(second, cls, new float[]{0.2f}, 1, 2);
+        assertTrue(doubtful.projectedX(0, 2) < confident.projectedX(0, 2));
+    }
+}
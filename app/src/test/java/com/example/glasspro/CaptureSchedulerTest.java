@@ -0,0 +1,66 @@
+package com.example.glasspro;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * CaptureScheduler 的单拍与连拍节奏测试。
+ */
+public class CaptureSchedulerTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void singleRequestCapturesOneFrame() {
+        CaptureScheduler scheduler = new CaptureScheduler();
+        assertFalse(scheduler.shouldCapture(0));
+        scheduler.requestSingle();
+        assertTrue(scheduler.shouldCapture(33 * MS));
+        assertFalse(scheduler.shouldCapture(66 * MS));
+    }
+
+    @Test
+    public void burstFollowsRequestedRate() {
+        CaptureScheduler scheduler = new CaptureScheduler();
+        scheduler.startBurst(5, 3); // 每 200 ms 一张，共 3 张
+        int captured = 0;
+        long firstAt = -1, lastAt = -1;
+        // 30 fps 的相机帧
+        for (long t = 0; t < 2000 * MS; t += 33 * MS) {
+            if (scheduler.shouldCapture(t)) {
+                if (firstAt < 0) firstAt = t;
+                lastAt = t;
+                captured++;
+            }
+        }
+        assertEquals(3, captured);
+        assertEquals(0, firstAt);
+        assertTrue(lastAt >= 400 * MS && lastAt < 450 * MS);
+        assertFalse(scheduler.isBursting());
+    }
+
+    @Test
+    public void stalledFrameThreadDoesNotCatchUp() {
+        CaptureScheduler scheduler = new CaptureScheduler();
+        scheduler.startBurst(10, 100);
+        assertTrue(scheduler.shouldCapture(0));
+        // 相机线程停顿 1 秒后只补拍一张
+        assertTrue(scheduler.shouldCapture(1000 * MS));
+        assertFalse(scheduler.shouldCapture(1033 * MS));
+        assertTrue(scheduler.shouldCapture(1100 * MS));
+    }
+
+    @Test
+    public void stopAndClearCancelPendingShots() {
+        CaptureScheduler scheduler = new CaptureScheduler();
+        scheduler.startBurst(10, 100);
+        scheduler.stopBurst();
+        assertFalse(scheduler.shouldCapture(0));
+
+        scheduler.requestSingle();
+        scheduler.requestSingle();
+        scheduler.clear();
+        assertFalse(scheduler.shouldCapture(0));
+    }
+}
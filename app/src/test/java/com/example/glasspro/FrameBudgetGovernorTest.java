@@ -0,0 +1,68 @@
+package com.example.glasspro;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.example.glasspro.FrameBudgetGovernor.QualityTier;
+
+/**
+ * FrameBudgetGovernor 的滞回行为测试。
+ */
+public class FrameBudgetGovernorTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void startsAtHighQuality() {
+        FrameBudgetGovernor governor = new FrameBudgetGovernor(33, 4);
+        assertEquals(QualityTier.HIGH, governor.getTier(0));
+    }
+
+    @Test
+    public void downgradesAfterSustainedOverBudget() {
+        FrameBudgetGovernor governor = new FrameBudgetGovernor(33, 4);
+        QualityTier tier = QualityTier.HIGH;
+        for (int i = 0; i < 14; i++) tier = governor.onFrame(0, 60 * MS);
+        assertEquals(QualityTier.HIGH, tier);
+        tier = governor.onFrame(0, 60 * MS);
+        assertEquals(QualityTier.MEDIUM, tier);
+    }
+
+    @Test
+    public void singleSlowFrameDoesNotDowngrade() {
+        FrameBudgetGovernor governor = new FrameBudgetGovernor(33, 4);
+        for (int i = 0; i < 100; i++) {
+            governor.onFrame(0, (i % 20 == 0 ? 80 : 25) * MS);
+        }
+        assertEquals(QualityTier.HIGH, governor.getTier(0));
+    }
+
+    @Test
+    public void upgradesOnlyAfterLongFastStretch() {
+        FrameBudgetGovernor governor = new FrameBudgetGovernor(33, 4);
+        for (int i = 0; i < 15; i++) governor.onFrame(0, 60 * MS);
+        assertEquals(QualityTier.MEDIUM, governor.getTier(0));
+
+        // 介于 70% 与 115% 之间的耗时不触发任何换档
+        for (int i = 0; i < 200; i++) governor.onFrame(0, 30 * MS);
+        assertEquals(QualityTier.MEDIUM, governor.getTier(0));
+
+        // 升档需要的连续帧数远多于降档
+        for (int i = 0; i < 50; i++) governor.onFrame(0, 10 * MS);
+        assertEquals(QualityTier.MEDIUM, governor.getTier(0));
+        for (int i = 0; i < 30; i++) governor.onFrame(0, 10 * MS);
+        assertEquals(QualityTier.HIGH, governor.getTier(0));
+    }
+
+    @Test
+    public void tiersAreRememberedPerMode() {
+        FrameBudgetGovernor governor = new FrameBudgetGovernor(33, 4);
+        for (int i = 0; i < 15; i++) governor.onFrame(2, 60 * MS);
+        assertEquals(QualityTier.MEDIUM, governor.getTier(2));
+        assertEquals(QualityTier.HIGH, governor.getTier(1));
+
+        governor.onFrame(1, 10 * MS);
+        assertEquals(QualityTier.MEDIUM, governor.getTier(2));
+    }
+}
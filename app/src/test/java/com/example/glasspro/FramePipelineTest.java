@@ -0,0 +1,207 @@
+package com.example.glasspro;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * FramePipeline 的阶段重叠、帧序、丢帧策略和反压测试。
+ */
+public class FramePipelineTest {
+
+    private static final long TIMEOUT_S = 5;
+
+    private static final class Item extends FramePipeline.Packet {
+        final int id;
+
+        Item(int id) {
+            super(2);
+            this.id = id;
+        }
+    }
+
+    private final List<Integer> completed = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> dropped = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch allDone = new CountDownLatch(1);
+    private volatile int expectedCompletions;
+
+    private final FramePipeline.Listener<Item> listener = new FramePipeline.Listener<Item>() {
+        @Override
+        public void onComplete(Item item) {
+            completed.add(item.id);
+            if (completed.size() == expectedCompletions) allDone.countDown();
+        }
+
+        @Override
+        public void onDropped(Item item, String stage) {
+            dropped.add(item.id);
+        }
+
+        @Override
+        public void onError(Item item, String stage, RuntimeException error) {
+            fail(stage + ": " + error);
+        }
+    };
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(TIMEOUT_S, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    public void serialModeRunsAllStagesOnCallerThread() {
+        List<String> trace = new ArrayList<>();
+        Thread caller = Thread.currentThread();
+        FramePipeline<Item> pipeline = new FramePipeline.Builder<Item>()
+                .stage("a", 1, FramePipeline.DropPolicy.BLOCK, item -> {
+                    assertEquals(caller, Thread.currentThread());
+                    trace.add("a" + item.id);
+                })
+                .stage("b", 1, FramePipeline.DropPolicy.BLOCK, item -> trace.add("b" + item.id))
+                .build(listener);
+        pipeline.start(false);
+        Item first = new Item(1);
+        pipeline.submit(first);
+        pipeline.submit(new Item(2));
+        assertEquals(List.of("a1", "b1", "a2", "b2"), trace);
+        assertEquals(List.of(1, 2), completed);
+        assertEquals(2, pipeline.getProcessedFrames(1));
+        // 串行时一帧的开销是各阶段之和
+        assertEquals(first.getStageNanos(0) + first.getStageNanos(1), first.getTotalStageNanos());
+        assertTrue(first.getTotalStageNanos() >= first.getBusiestStageNanos());
+        pipeline.stop();
+    }
+
+    @Test
+    public void stagesOverlapAndKeepFrameOrder() {
+        // 阶段 b 处理第 0 帧时要等阶段 a 开始处理第 1 帧：串行执行的话这里会超时
+        CountDownLatch secondFrameInA = new CountDownLatch(1);
+        FramePipeline<Item> pipeline = new FramePipeline.Builder<Item>()
+                .stage("a", 1, FramePipeline.DropPolicy.BLOCK, item -> {
+                    if (item.id == 1) secondFrameInA.countDown();
+                })
+                .stage("b", 1, FramePipeline.DropPolicy.BLOCK, item -> {
+                    if (item.id == 0) await(secondFrameInA);
+                })
+                .build(listener);
+        expectedCompletions = 20;
+        pipeline.start(true);
+        for (int i = 0; i < 20; i++) pipeline.submit(new Item(i));
+        await(allDone);
+        pipeline.stop();
+        for (int i = 0; i < 20; i++) assertEquals(i, (int) completed.get(i));
+        assertTrue(dropped.isEmpty());
+    }
+
+    @Test
+    public void dropOldestKeepsNewestFrame() {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FramePipeline<Item> pipeline = new FramePipeline.Builder<Item>()
+                .stage("a", 1, FramePipeline.DropPolicy.DROP_OLDEST, item -> {
+                    if (item.id == 0) {
+                        started.countDown();
+                        await(release);
+                    }
+                })
+                .build(listener);
+        expectedCompletions = 2;
+        pipeline.start(true);
+        pipeline.submit(new Item(0));
+        await(started);
+        assertTrue(pipeline.submit(new Item(1)));
+        assertTrue(pipeline.submit(new Item(2)));
+        assertTrue(pipeline.submit(new Item(3)));
+        assertEquals(1, pipeline.getQueueDepth(0));
+        release.countDown();
+        await(allDone);
+        pipeline.stop();
+        assertEquals(List.of(0, 3), completed);
+        assertEquals(List.of(1, 2), dropped);
+        assertEquals(2, pipeline.getDroppedFrames(0));
+    }
+
+    @Test
+    public void dropNewestRejectsIncomingFrame() {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FramePipeline<Item> pipeline = new FramePipeline.Builder<Item>()
+                .stage("a", 1, FramePipeline.DropPolicy.DROP_NEWEST, item -> {
+                    if (item.id == 0) {
+                        started.countDown();
+                        await(release);
+                    }
+                })
+                .build(listener);
+        expectedCompletions = 2;
+        pipeline.start(true);
+        pipeline.submit(new Item(0));
+        await(started);
+        assertTrue(pipeline.submit(new Item(1)));
+        assertFalse(pipeline.submit(new Item(2)));
+        release.countDown();
+        await(allDone);
+        pipeline.stop();
+        assertEquals(List.of(0, 1), completed);
+        assertEquals(List.of(2), dropped);
+    }
+
+    @Test
+    public void blockPolicyBackPressuresUpstreamWithoutDropping() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        FramePipeline<Item> pipeline = new FramePipeline.Builder<Item>()
+                .stage("a", 4, FramePipeline.DropPolicy.BLOCK, item -> { })
+                .stage("b", 1, FramePipeline.DropPolicy.BLOCK, item -> await(release))
+                .build(listener);
+        expectedCompletions = 4;
+        pipeline.start(true);
+        for (int i = 0; i < 4; i++) pipeline.submit(new Item(i));
+        // b 卡在第 0 帧，队列里一帧，a 拿着第 2 帧等 b 的队列
+        Thread.sleep(100);
+        assertEquals(1, pipeline.getQueueDepth(1));
+        assertEquals(1, pipeline.getMaxQueueDepth(1));
+        release.countDown();
+        await(allDone);
+        pipeline.stop();
+        assertTrue(pipeline.getBlockedNanos(1) > 0);
+        assertEquals(0, pipeline.getDroppedFrames(1));
+        assertEquals(List.of(0, 1, 2, 3), completed);
+    }
+
+    @Test
+    public void stopReturnsQueuedFrames() {
+        CountDownLatch started = new CountDownLatch(1);
+        FramePipeline<Item> pipeline = new FramePipeline.Builder<Item>()
+                .stage("a", 2, FramePipeline.DropPolicy.BLOCK, item -> {
+                    if (item.id == 0) {
+                        started.countDown();
+                        try {
+                            Thread.sleep(50);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                })
+                .build(listener);
+        pipeline.start(true);
+        pipeline.submit(new Item(0));
+        await(started);
+        pipeline.submit(new Item(1));
+        pipeline.submit(new Item(2));
+        pipeline.stop();
+        // 正在处理的第 0 帧和队列里的两帧都交还，没有帧丢失
+        assertTrue(completed.isEmpty());
+        List<Integer> returned = new ArrayList<>(dropped);
+        Collections.sort(returned);
+        assertEquals(List.of(0, 1, 2), returned);
+    }
+}
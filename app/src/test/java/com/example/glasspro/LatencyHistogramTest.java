@@ -0,0 +1,65 @@
+package com.example.glasspro;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * LatencyHistogram 的分桶与百分位测试。
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsAreContiguousAndMonotonic() {
+        int prev = -1;
+        for (long us = 0; us < 100_000; us++) {
+            int idx = LatencyHistogram.indexFor(us);
+            assertTrue(idx == prev || idx == prev + 1);
+            prev = idx;
+        }
+    }
+
+    @Test
+    public void bucketMidIsWithinRelativeError() {
+        for (long us = 1; us < 5_000_000; us = us * 3 / 2 + 1) {
+            double mid = LatencyHistogram.bucketMidMicros(LatencyHistogram.indexFor(us));
+            assertTrue("value " + us + " mid " + mid, Math.abs(mid - us) <= us / 16.0 + 0.5);
+        }
+    }
+
+    @Test
+    public void percentilesOfUniformSamples() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) h.record(ms * 1_000_000L);
+        assertEquals(100, h.getCount());
+        assertEquals(50, h.getPercentileMillis(50), 50 / 16.0);
+        assertEquals(95, h.getPercentileMillis(95), 95 / 16.0);
+        assertEquals(99, h.getPercentileMillis(99), 99 / 16.0);
+        assertEquals(100, h.getMaxMillis(), 1e-9);
+        assertEquals(50.5, h.getMeanMillis(), 1e-9);
+    }
+
+    @Test
+    public void emptyAndResetReturnZero() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getPercentileMillis(99), 0);
+        h.record(5_000_000L);
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getPercentileMillis(50), 0);
+    }
+
+    @Test
+    public void concurrentRecordsAreNotLost() throws InterruptedException {
+        LatencyHistogram h = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) h.record(i * 1000L);
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+        assertEquals(40_000, h.getCount());
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.glasspro;
+
+import org.junit.Test;
+import org.opencv.core.Core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * NativeModules 的加载顺序、幂等性和失败重试测试 (用记录调用的加载器代替 System.loadLibrary)。
+ */
+public class NativeModulesTest {
+
+    private final List<String> loaded = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void loadsDependenciesFirstAndOnlyOnce() {
+        NativeModules modules = new NativeModules(loaded::add);
+        modules.load(NativeModules.Module.DEHAZE);
+        assertEquals(Arrays.asList(Core.NATIVE_LIBRARY_NAME, "framectx", "stab", "enhance", "dehaze"), loaded);
+        assertTrue(modules.isLoaded(NativeModules.Module.CORE));
+        assertTrue(modules.isLoaded(NativeModules.Module.ENHANCE));
+        assertFalse(modules.isLoaded(NativeModules.Module.MOTION));
+
+        modules.load(NativeModules.Module.ENHANCE);
+        modules.load(NativeModules.Module.MOTION);
+        assertEquals(6, loaded.size());
+        assertEquals("motion", loaded.get(5));
+    }
+
+    @Test
+    public void failedLoadCanBeRetried() {
+        boolean[] fail = {true};
+        NativeModules modules = new NativeModules(name -> {
+            if (fail[0] && name.equals("vision_processor")) throw new UnsatisfiedLinkError(name);
+            loaded.add(name);
+        });
+        try {
+            modules.load(NativeModules.Module.DETECTION);
+            fail("expected UnsatisfiedLinkError");
+        } catch (UnsatisfiedLinkError expected) {
+            // 基础路径已加载，检测模块没有
+        }
+        assertTrue(modules.isLoaded(NativeModules.Module.CORE));
+        assertFalse(modules.isLoaded(NativeModules.Module.DETECTION));
+
+        fail[0] = false;
+        modules.load(NativeModules.Module.DETECTION);
+        assertTrue(modules.isLoaded(NativeModules.Module.DETECTION));
+        assertEquals(Arrays.asList(Core.NATIVE_LIBRARY_NAME, "framectx", "stab", "vision_processor"), loaded);
+    }
+
+    @Test
+    public void maskChangesWhenModuleLoads() {
+        NativeModules modules = new NativeModules(loaded::add);
+        int before = modules.loadedMask();
+        modules.load(NativeModules.Module.SCENE);
+        assertNotEquals(before, modules.loadedMask());
+        int after = modules.loadedMask();
+        modules.load(NativeModules.Module.SCENE);
+        assertEquals(after, modules.loadedMask());
+    }
+
+    @Test
+    public void recordsEachLibraryInTrace() {
+        StartupTrace trace = new StartupTrace(System.nanoTime());
+        NativeModules modules = new NativeModules(loaded::add);
+        modules.setTrace(trace);
+        modules.load(NativeModules.Module.MOTION);
+        modules.load(NativeModules.Module.MOTION);
+        assertTrue(trace.has(StartupTrace.LIBRARY + "framectx"));
+        assertTrue(trace.has(StartupTrace.LIBRARY + "motion"));
+        assertFalse(trace.has(StartupTrace.LIBRARY + "enhance"));
+        // 4 个库各一行，加一行合计
+        assertEquals(5, trace.summaryLines().size());
+    }
+
+    @Test
+    public void loadAsyncCallsBackAfterLoading() throws InterruptedException {
+        NativeModules modules = new NativeModules(loaded::add);
+        CountDownLatch done = new CountDownLatch(1);
+        NativeModules.Module[] result = new NativeModules.Module[1];
+        modules.loadAsync(NativeModules.Module.ENHANCE, new NativeModules.Listener() {
+            @Override
+            public void onLoaded(NativeModules.Module module) {
+                result[0] = module;
+                done.countDown();
+            }
+
+            @Override
+            public void onError(NativeModules.Module module, Throwable error) {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(NativeModules.Module.ENHANCE, result[0]);
+        assertTrue(modules.isLoaded(NativeModules.Module.ENHANCE));
+    }
+}
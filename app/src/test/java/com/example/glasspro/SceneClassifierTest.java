@@ -0,0 +1,76 @@
+package com.example.glasspro;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.example.glasspro.SceneClassifier.Recommendation;
+
+/**
+ * SceneClassifier 的分类与滞回行为测试。
+ */
+public class SceneClassifierTest {
+
+    private static final long MS = 1_000_000L;
+
+    private static double[] stats(double brightness, double contrast, double saturation) {
+        double[] s = new double[SceneClassifier.STAT_COUNT];
+        s[SceneClassifier.STAT_BRIGHTNESS] = brightness;
+        s[SceneClassifier.STAT_CONTRAST] = contrast;
+        s[SceneClassifier.STAT_SATURATION] = saturation;
+        s[SceneClassifier.STAT_SHARPNESS] = 500;
+        return s;
+    }
+
+    /** 连续喂入同一组统计 n 次，返回最后的推荐 */
+    private static Recommendation feed(SceneClassifier classifier, double[] s, int n) {
+        Recommendation r = classifier.getCurrent();
+        for (int i = 0; i < n; i++) r = classifier.update(s, i * 500 * MS);
+        return r;
+    }
+
+    @Test
+    public void classifiesTypicalScenes() {
+        assertEquals(Recommendation.NONE, feed(new SceneClassifier(), stats(128, 60, 90), 3));
+        assertEquals(Recommendation.DEHAZE, feed(new SceneClassifier(), stats(170, 20, 30), 3));
+        assertEquals(Recommendation.MSRCR, feed(new SceneClassifier(), stats(30, 15, 20), 3));
+        assertEquals(Recommendation.CLAHE, feed(new SceneClassifier(), stats(75, 40, 60), 3));
+        assertEquals(Recommendation.CLAHE, feed(new SceneClassifier(), stats(220, 40, 60), 3));
+    }
+
+    @Test
+    public void darkLowContrastSceneIsNotHaze() {
+        assertEquals(Recommendation.MSRCR, feed(new SceneClassifier(), stats(40, 10, 10), 3));
+    }
+
+    @Test
+    public void switchNeedsConsecutiveConfirmations() {
+        SceneClassifier classifier = new SceneClassifier();
+        assertEquals(Recommendation.NONE, classifier.update(stats(30, 15, 20), 0));
+        // 中间插入一次正常场景，计数重新开始
+        assertEquals(Recommendation.NONE, classifier.update(stats(128, 60, 90), 500 * MS));
+        assertEquals(Recommendation.NONE, classifier.update(stats(30, 15, 20), 1000 * MS));
+        assertEquals(Recommendation.MSRCR, classifier.update(stats(30, 15, 20), 1500 * MS));
+    }
+
+    @Test
+    public void staysInModeWithinHysteresisBand() {
+        SceneClassifier classifier = new SceneClassifier();
+        assertEquals(Recommendation.MSRCR, feed(classifier, stats(45, 15, 20), 2));
+        // 55 高于进入阈值但低于保持阈值，不切换
+        assertEquals(Recommendation.MSRCR, feed(classifier, stats(55, 15, 20), 10));
+        // 明显变亮后才切换到 CLAHE
+        assertEquals(Recommendation.CLAHE, feed(classifier, stats(70, 30, 40), 2));
+    }
+
+    @Test
+    public void analysisIsRateLimited() {
+        SceneClassifier classifier = new SceneClassifier(500 * MS);
+        assertTrue(classifier.isDue(0));
+        classifier.update(stats(128, 60, 90), 0);
+        assertFalse(classifier.isDue(100 * MS));
+        assertTrue(classifier.isDue(500 * MS));
+        classifier.reset();
+        assertTrue(classifier.isDue(100 * MS));
+    }
+}
@@ -0,0 +1,192 @@
+// 去雾各档位的对比工具：延迟、峰值内存、与参考实现 (CV_64F) 的 PSNR，
+// 以及 float32 档位条带并行的输出与单线程整帧串行输出的最大差值。
+//
+// 用法：dehaze_tiers [--json out.json] [--frames N] image...
+// 每张图先跑参考实现得到基准输出，再逐个档位预热后计时 N 帧；
+// 峰值内存用计数分配器统计稳态下一帧里同时存活的 cv::Mat 字节数 (包括跨帧复用的缓冲)。
+// 任一档位的 PSNR 低于该档位的下限、或条带并行与串行的差值超过 MAX_STRIPE_DIFF 时返回 1，
+// gradle 的 dehazeTierReport 据此让构建失败。
+#include "dehaze_fast.h"
+
+#include <algorithm>
+#include <atomic>
+#include <cmath>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <string>
+#include <vector>
+#include <opencv2/core/core.hpp>
+#include <opencv2/imgcodecs.hpp>
+#include <opencv2/imgproc/imgproc.hpp>
+
+using namespace cv;
+
+// 把分配转交给 OpenCV 默认分配器，同时统计存活字节数和峰值
+class CountingAllocator : public MatAllocator {
+public:
+    explicit CountingAllocator(MatAllocator *base) : base(base) {}
+
+    UMatData *allocate(int dims, const int *sizes, int type, void *data, size_t *step,
+                       AccessFlag flags, UMatUsageFlags usageFlags) const override {
+        UMatData *u = base->allocate(dims, sizes, type, data, step, flags, usageFlags);
+        if (u != nullptr) {
+            u->currAllocator = this;
+            if (!(u->flags & UMatData::USER_ALLOCATED)) add((long long) u->size);
+        }
+        return u;
+    }
+
+    bool allocate(UMatData *u, AccessFlag flags, UMatUsageFlags usageFlags) const override {
+        return base->allocate(u, flags, usageFlags);
+    }
+
+    void deallocate(UMatData *u) const override {
+        if (u == nullptr) return;
+        if (!(u->flags & UMatData::USER_ALLOCATED)) add(-(long long) u->size);
+        base->deallocate(u);
+    }
+
+    // 从当前存活量开始重新统计峰值
+    void resetPeak() const { peak.store(live.load()); }
+
+    long long peakBytes() const { return peak.load(); }
+
+private:
+    void add(long long bytes) const {
+        long long now = live.fetch_add(bytes) + bytes;
+        long long p = peak.load();
+        while (now > p && !peak.compare_exchange_weak(p, now)) {}
+    }
+
+    MatAllocator *base;
+    mutable std::atomic<long long> live{0};
+    mutable std::atomic<long long> peak{0};
+};
+
+struct TierSpec {
+    int tier;
+    const char *name;
+    double minPsnr;  // 与参考输出 (8 位) 相比的 PSNR 下限 (dB)
+};
+
+static const TierSpec TIERS[] = {
+        {DEHAZE_TIER_REFERENCE, "reference", 0},
+        {DEHAZE_TIER_FULL,      "full",      35},
+        {DEHAZE_TIER_COARSE,    "coarse",    28},
+        {DEHAZE_TIER_SINGLE,    "single",    22},
+};
+
+static const int WARMUP_FRAMES = 3;
+// 条带与整帧的透射率只在均值滤波的浮点累加顺序上不同，8 位输出最多差 1
+static const int MAX_STRIPE_DIFF = 1;
+
+static double nowMillis() {
+    return (double) getTickCount() * 1000.0 / getTickFrequency();
+}
+
+int main(int argc, char **argv) {
+    const char *jsonPath = nullptr;
+    int frames = 10;
+    std::vector<std::string> images;
+    for (int i = 1; i < argc; i++) {
+        if (std::strcmp(argv[i], "--json") == 0 && i + 1 < argc) {
+            jsonPath = argv[++i];
+        } else if (std::strcmp(argv[i], "--frames") == 0 && i + 1 < argc) {
+            frames = std::max(1, std::atoi(argv[++i]));
+        } else {
+            images.emplace_back(argv[i]);
+        }
+    }
+    if (images.empty()) {
+        std::fprintf(stderr, "usage: %s [--json out.json] [--frames N] image...\n", argv[0]);
+        return 2;
+    }
+
+    // 不释放：库里的静态 Mat 在 main 返回后才析构，仍会回调这个分配器
+    CountingAllocator &counting = *new CountingAllocator(Mat::getStdAllocator());
+    Mat::setDefaultAllocator(&counting);
+
+    std::string json = "[\n";
+    bool failed = false;
+    std::printf("%-24s %-10s %10s %12s %12s %10s %8s %10s\n", "image", "tier", "mean_ms", "peak_MB", "buffers_MB",
+                "psnr_dB", "stripes", "max_diff");
+
+    for (const std::string &path : images) {
+        Mat bgr = imread(path, IMREAD_COLOR);
+        if (bgr.empty()) {
+            std::fprintf(stderr, "cannot read %s\n", path.c_str());
+            return 2;
+        }
+        Mat source;
+        cvtColor(bgr, source, COLOR_BGR2RGB);
+        std::string name = path.substr(path.find_last_of("/\\") + 1);
+
+        Mat reference;
+        for (const TierSpec &spec : TIERS) {
+            Mat input, output;
+            for (int i = 0; i < WARMUP_FRAMES; i++) {
+                source.copyTo(input);
+                dehazeRgbFrame(input, output, spec.tier);
+            }
+
+            double totalMs = 0;
+            long long peak = 0;
+            for (int i = 0; i < frames; i++) {
+                source.copyTo(input);
+                counting.resetPeak();
+                double start = nowMillis();
+                dehazeRgbFrame(input, output, spec.tier);
+                totalMs += nowMillis() - start;
+                peak = std::max(peak, counting.peakBytes());
+            }
+            if (spec.tier == DEHAZE_TIER_REFERENCE) reference = output.clone();
+            int stripes = spec.tier == DEHAZE_TIER_REFERENCE ? 1 : defaultDehazer().stripeCount();
+            double meanMs = totalMs / frames;
+            size_t bufferBytes = dehazeWorkingBytes();
+
+            // 单线程时不分条带：与串行输出逐像素比较
+            int maxDiff = 0;
+            if (stripes > 1) {
+                int threads = getNumThreads();
+                setNumThreads(1);
+                Mat serial;
+                source.copyTo(input);
+                dehazeRgbFrame(input, serial, spec.tier);
+                setNumThreads(threads);
+                maxDiff = (int) norm(serial, output, NORM_INF);
+            }
+
+            double psnr = spec.tier == DEHAZE_TIER_REFERENCE ? INFINITY : PSNR(reference, output);
+            double buffersMb = bufferBytes / 1048576.0;
+            bool psnrOk = psnr >= spec.minPsnr;
+            bool stripeOk = maxDiff <= MAX_STRIPE_DIFF;
+            failed |= !psnrOk || !stripeOk;
+
+            std::printf("%-24s %-10s %10.2f %12.1f %12.1f %10.2f %8d %10d%s%s\n", name.c_str(), spec.name, meanMs,
+                        peak / 1048576.0, buffersMb, psnr, stripes, maxDiff, psnrOk ? "" : "  < min",
+                        stripeOk ? "" : "  stripes != serial");
+            char line[512];
+            std::snprintf(line, sizeof(line),
+                          "  {\"image\": \"%s\", \"tier\": \"%s\", \"width\": %d, \"height\": %d, \"meanMs\": %.3f, "
+                          "\"peakBytes\": %lld, \"bufferBytes\": %zu, \"psnr\": %.2f, \"minPsnr\": %.1f, "
+                          "\"stripes\": %d, \"stripeMaxDiff\": %d},\n",
+                          name.c_str(), spec.name, source.cols, source.rows, meanMs, peak, bufferBytes,
+                          std::isinf(psnr) ? 99.0 : psnr, spec.minPsnr, stripes, maxDiff);
+            json += line;
+        }
+    }
+
+    if (jsonPath != nullptr) {
+        json.erase(json.size() - 2, 1);  // 去掉最后一个逗号
+        json += "]\n";
+        FILE *f = std::fopen(jsonPath, "w");
+        if (f == nullptr) {
+            std::fprintf(stderr, "cannot write %s\n", jsonPath);
+            return 2;
+        }
+        std::fputs(json.c_str(), f);
+        std::fclose(f);
+    }
+    return failed ? 1 : 0;
+}
@@ -0,0 +1,140 @@
+// MSRCR 快速引擎与参考实现的对比工具：延迟、缓冲占用、与参考输出的 PSNR 和像素差。
+//
+// 用法：msrcr_compare [--json out.json] [--frames N] image...
+// 每张图用与预览相同的尺度和 dynamic 先跑参考实现 MSRCR() 得到基准输出，再预热后各计时 N 帧。
+// 快速引擎的 PSNR 低于 MIN_PSNR、或与参考差超过 LARGE_DIFF 的像素占比超过 MAX_LARGE_DIFF_FRACTION 时返回 1，
+// gradle 的 msrcrAccuracyReport 据此让构建失败。
+// 两边对纯黑像素的下限处理不同 (见 msrcr_fast.h)，所以用大差值像素的占比而不是单个像素的最大差值作门限，
+// 最大差值只输出供参考。
+#include "enhance.h"
+
+#include <algorithm>
+#include <cmath>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <string>
+#include <vector>
+#include <opencv2/core/core.hpp>
+#include <opencv2/imgcodecs.hpp>
+#include <opencv2/imgproc/imgproc.hpp>
+
+using namespace cv;
+
+// 与 enhance.cpp 里预览用的参数一致 (参考实现内部固定使用 {10, 20} 两个尺度)
+static const std::vector<double> SCALES = {10, 20};
+static const double DYNAMIC = 1.2;
+
+static const int WARMUP_FRAMES = 3;
+static const double MIN_PSNR = 30.0;               // 与参考输出相比的 PSNR 下限 (dB)
+static const int LARGE_DIFF = 16;                  // 任一通道差超过这个值的像素算作明显偏差
+static const double MAX_LARGE_DIFF_FRACTION = 0.01;
+
+static double nowMillis() {
+    return (double) getTickCount() * 1000.0 / getTickFrequency();
+}
+
+// 任一通道差值超过 LARGE_DIFF 的像素占比
+static double largeDiffFraction(const Mat &a, const Mat &b) {
+    Mat diff, maxDiff;
+    absdiff(a, b, diff);
+    std::vector<Mat> channels;
+    split(diff, channels);
+    maxDiff = channels[0];
+    for (size_t c = 1; c < channels.size(); c++) cv::max(maxDiff, channels[c], maxDiff);
+    return (double) countNonZero(maxDiff > LARGE_DIFF) / (double) maxDiff.total();
+}
+
+int main(int argc, char **argv) {
+    const char *jsonPath = nullptr;
+    int frames = 10;
+    std::vector<std::string> images;
+    for (int i = 1; i < argc; i++) {
+        if (std::strcmp(argv[i], "--json") == 0 && i + 1 < argc) {
+            jsonPath = argv[++i];
+        } else if (std::strcmp(argv[i], "--frames") == 0 && i + 1 < argc) {
+            frames = std::max(1, std::atoi(argv[++i]));
+        } else {
+            images.emplace_back(argv[i]);
+        }
+    }
+    if (images.empty()) {
+        std::fprintf(stderr, "usage: %s [--json out.json] [--frames N] image...\n", argv[0]);
+        return 2;
+    }
+
+    std::string json = "[\n";
+    bool failed = false;
+    std::printf("%-24s %12s %10s %12s %10s %10s %12s\n", "image", "reference_ms", "fast_ms", "buffers_MB",
+                "psnr_dB", "max_diff", "large_diff_%");
+
+    FastMsrcr engine;
+    for (const std::string &path : images) {
+        Mat bgr = imread(path, IMREAD_COLOR);
+        if (bgr.empty()) {
+            std::fprintf(stderr, "cannot read %s\n", path.c_str());
+            return 2;
+        }
+        Mat source;
+        cvtColor(bgr, source, COLOR_BGR2RGB);
+        std::string name = path.substr(path.find_last_of("/\\") + 1);
+
+        // 参考实现：逐通道处理，输出通道顺序与输入相同 (alpha / beta 参考实现里未使用)
+        Mat reference;
+        double referenceMs = 0;
+        for (int i = 0; i < frames; i++) {
+            source.copyTo(reference);
+            double start = nowMillis();
+            MSRCR(reference, DYNAMIC, 20.0, 12.0);
+            referenceMs += nowMillis() - start;
+        }
+        referenceMs /= frames;
+
+        Mat fast;
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            source.copyTo(fast);
+            engine.process(fast, SCALES, DYNAMIC);
+        }
+        double fastMs = 0;
+        for (int i = 0; i < frames; i++) {
+            source.copyTo(fast);
+            double start = nowMillis();
+            engine.process(fast, SCALES, DYNAMIC);
+            fastMs += nowMillis() - start;
+        }
+        fastMs /= frames;
+
+        double psnr = PSNR(reference, fast);
+        int maxDiff = (int) norm(reference, fast, NORM_INF);
+        double largeFraction = largeDiffFraction(reference, fast);
+        double buffersMb = engine.bufferBytes() / 1048576.0;
+        bool psnrOk = psnr >= MIN_PSNR;
+        bool diffOk = largeFraction <= MAX_LARGE_DIFF_FRACTION;
+        failed |= !psnrOk || !diffOk;
+
+        std::printf("%-24s %12.2f %10.2f %12.1f %10.2f %10d %12.3f%s%s\n", name.c_str(), referenceMs, fastMs,
+                    buffersMb, psnr, maxDiff, largeFraction * 100, psnrOk ? "" : "  < min psnr",
+                    diffOk ? "" : "  too many large diffs");
+        char line[512];
+        std::snprintf(line, sizeof(line),
+                      "  {\"image\": \"%s\", \"width\": %d, \"height\": %d, \"referenceMs\": %.3f, \"fastMs\": %.3f, "
+                      "\"bufferBytes\": %zu, \"psnr\": %.2f, \"minPsnr\": %.1f, \"maxDiff\": %d, "
+                      "\"largeDiffFraction\": %.5f, \"maxLargeDiffFraction\": %.3f},\n",
+                      name.c_str(), source.cols, source.rows, referenceMs, fastMs, engine.bufferBytes(),
+                      std::isinf(psnr) ? 99.0 : psnr, MIN_PSNR, maxDiff, largeFraction, MAX_LARGE_DIFF_FRACTION);
+        json += line;
+    }
+
+    if (jsonPath != nullptr) {
+        json.erase(json.size() - 2, 1);  // 去掉最后一个逗号
+        json += "]\n";
+        FILE *f = std::fopen(jsonPath, "w");
+        if (f == nullptr) {
+            std::fprintf(stderr, "cannot write %s\n", jsonPath);
+            return 2;
+        }
+        std::fputs(json.c_str(), f);
+        std::fclose(f);
+    }
+    return failed ? 1 : 0;
+}
@@ -0,0 +1,33 @@
+#ifndef GLASSPRO_HOST_ANDROID_LOG_H
+#define GLASSPRO_HOST_ANDROID_LOG_H
+
+// 桌面构建用的 <android/log.h> 替代：
+// INFO 及以下直接丢弃 (不计入基准耗时)，WARN/ERROR 打印到 stderr。
+
+#include <cstdarg>
+#include <cstdio>
+
+enum android_LogPriority {
+    ANDROID_LOG_UNKNOWN = 0,
+    ANDROID_LOG_DEFAULT,
+    ANDROID_LOG_VERBOSE,
+    ANDROID_LOG_DEBUG,
+    ANDROID_LOG_INFO,
+    ANDROID_LOG_WARN,
+    ANDROID_LOG_ERROR,
+    ANDROID_LOG_FATAL,
+    ANDROID_LOG_SILENT,
+};
+
+static inline int __android_log_print(int prio, const char *tag, const char *fmt, ...) {
+    if (prio < ANDROID_LOG_WARN) return 0;
+    va_list args;
+    va_start(args, fmt);
+    std::fprintf(stderr, "[%s] ", tag);
+    int n = std::vfprintf(stderr, fmt, args);
+    std::fputc('\n', stderr);
+    va_end(args);
+    return n;
+}
+
+#endif // GLASSPRO_HOST_ANDROID_LOG_H
@@ -0,0 +1,268 @@
+// 稳像新旧路径的延迟对比：
+//   legacy  每帧在原图灰度上对上一帧 goodFeaturesToTrack + LK，warpAffine -> 裁边 -> resize (改动前的做法)
+//   current FrameContext (缩小到跟踪宽度估计运动、角点跨帧延续) + VideoStab (一次逆映射直接写回当前帧)
+//
+// 用法：stab_compare [--json out.json] [--frames N] image...
+// 每张图缩放到 720p / 1080p 后按随机游走的平移 + 旋转生成抖动序列，已知每帧的真实帧间变换。
+// 输出每帧平均 / p95 耗时、角点检测的帧占比、估计变换在四个角上的平均误差 (像素)。
+// current 的误差比 legacy 大出 MAX_EXTRA_ERROR_PX 以上时返回 1，gradle 的 stabLatencyReport 据此让构建失败。
+#include "videoStab.h"
+
+#include <algorithm>
+#include <cmath>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <string>
+#include <vector>
+#include <opencv2/core/core.hpp>
+#include <opencv2/imgcodecs.hpp>
+#include <opencv2/imgproc/imgproc.hpp>
+#include <opencv2/video/tracking.hpp>
+
+using namespace cv;
+
+static const Size RESOLUTIONS[] = {Size(1280, 720), Size(1920, 1080)};
+static const int WARMUP_FRAMES = 5;
+static const double MAX_EXTRA_ERROR_PX = 1.0;
+
+// 改动前的参数 (与 frame_context.cpp / videoStab.cpp 原来的取值一致)
+static const int MAX_FEATURES = 200;
+static const Size LK_WINDOW(21, 21);
+static const int LK_MAX_LEVEL = 3;
+static const int BORDER_CROP = 30;
+
+static double nowMillis() {
+    return (double) getTickCount() * 1000.0 / getTickFrequency();
+}
+
+// 以画面中心为原点的旋转 + 平移 (2x3)
+static Mat shakeTransform(Size size, double dx, double dy, double angleDeg) {
+    Mat m = getRotationMatrix2D(Point2f(size.width / 2.0f, size.height / 2.0f), angleDeg, 1.0);
+    m.at<double>(0, 2) += dx;
+    m.at<double>(1, 2) += dy;
+    return m;
+}
+
+static Mat toHomogeneous(const Mat &affine) {
+    Mat h = Mat::eye(3, 3, CV_64F);
+    affine.copyTo(h.rowRange(0, 2));
+    return h;
+}
+
+// 抖动序列：每帧相对基准图的变换做随机游走，truth[i] 是第 i-1 帧到第 i 帧的真实变换
+static void makeSequence(const Mat &base, int count, std::vector<Mat> &frames, std::vector<Mat> &truth) {
+    RNG rng(7);
+    double dx = 0, dy = 0, angle = 0;
+    Mat prevT;
+    for (int i = 0; i < count; i++) {
+        dx = 0.8 * dx + rng.uniform(-6.0, 6.0);
+        dy = 0.8 * dy + rng.uniform(-6.0, 6.0);
+        angle = 0.8 * angle + rng.uniform(-0.6, 0.6);
+        Mat t = shakeTransform(base.size(), dx, dy, angle);
+        Mat frame;
+        warpAffine(base, frame, t, base.size(), INTER_LINEAR, BORDER_REFLECT);
+        frames.push_back(frame);
+        Mat h = toHomogeneous(t);
+        if (prevT.empty()) {
+            truth.emplace_back();
+        } else {
+            Mat relative = h * prevT.inv();
+            truth.push_back(relative.rowRange(0, 2).clone());
+        }
+        prevT = h;
+    }
+}
+
+// 估计变换与真实变换把画面四个角映射到的位置的平均距离
+static double cornerError(const Mat &estimated, const Mat &truth, Size size) {
+    if (estimated.empty() || truth.empty()) return NAN;
+    const Point2d corners[] = {{0, 0}, {(double) size.width, 0}, {0, (double) size.height},
+                               {(double) size.width, (double) size.height}};
+    double sum = 0;
+    for (const Point2d &c : corners) {
+        double ex = estimated.at<double>(0, 0) * c.x + estimated.at<double>(0, 1) * c.y + estimated.at<double>(0, 2);
+        double ey = estimated.at<double>(1, 0) * c.x + estimated.at<double>(1, 1) * c.y + estimated.at<double>(1, 2);
+        double tx = truth.at<double>(0, 0) * c.x + truth.at<double>(0, 1) * c.y + truth.at<double>(0, 2);
+        double ty = truth.at<double>(1, 0) * c.x + truth.at<double>(1, 1) * c.y + truth.at<double>(1, 2);
+        sum += std::hypot(ex - tx, ey - ty);
+    }
+    return sum / 4;
+}
+
+// 改动前的稳像路径 (不含卡尔曼滤波，两条路径里它的开销一样且可以忽略)
+class LegacyStab {
+public:
+    Mat affine;
+
+    void process(const Mat &prevFrame, Mat &frame) {
+        cvtColor(frame, gray, COLOR_RGBA2GRAY);
+        buildOpticalFlowPyramid(gray, currPyramid, LK_WINDOW, LK_MAX_LEVEL, true);
+        affine.release();
+        if (!prevPyramid.empty()) {
+            goodFeaturesToTrack(prevGray, features, MAX_FEATURES, 0.01, 30);
+            if (!features.empty()) {
+                calcOpticalFlowPyrLK(prevPyramid, currPyramid, features, tracked, status, err, LK_WINDOW, LK_MAX_LEVEL);
+                prevPoints.clear();
+                currPoints.clear();
+                for (size_t i = 0; i < status.size(); i++) {
+                    if (status[i]) {
+                        prevPoints.push_back(features[i]);
+                        currPoints.push_back(tracked[i]);
+                    }
+                }
+                if (currPoints.size() >= 10) affine = estimateAffinePartial2D(prevPoints, currPoints);
+            }
+            if (!affine.empty()) {
+                int vertBorder = BORDER_CROP * frame.rows / frame.cols;
+                warpAffine(prevFrame, smoothed, affine, frame.size());
+                smoothed = smoothed(Range(vertBorder, smoothed.rows - vertBorder),
+                                    Range(BORDER_CROP, smoothed.cols - BORDER_CROP));
+                resize(smoothed, frame, frame.size());
+            }
+        }
+        std::swap(gray, prevGray);
+        std::swap(currPyramid, prevPyramid);
+    }
+
+private:
+    Mat gray, prevGray, smoothed;
+    std::vector<Mat> currPyramid, prevPyramid;
+    std::vector<Point2f> features, tracked, prevPoints, currPoints;
+    std::vector<uchar> status;
+    std::vector<float> err;
+};
+
+struct Result {
+    std::vector<double> ms;
+    double errorSum = 0;
+    int errorCount = 0;
+    int detections = 0;
+
+    void add(double elapsed, const Mat &estimated, const Mat &truth, Size size) {
+        ms.push_back(elapsed);
+        double e = cornerError(estimated, truth, size);
+        if (!std::isnan(e)) {
+            errorSum += e;
+            errorCount++;
+        }
+    }
+
+    double meanMs() const {
+        double sum = 0;
+        for (double v : ms) sum += v;
+        return sum / ms.size();
+    }
+
+    double p95Ms() const {
+        std::vector<double> sorted(ms);
+        std::sort(sorted.begin(), sorted.end());
+        return sorted[std::min(sorted.size() - 1, (size_t) (sorted.size() * 0.95))];
+    }
+
+    double meanError() const { return errorCount > 0 ? errorSum / errorCount : INFINITY; }
+};
+
+int main(int argc, char **argv) {
+    const char *jsonPath = nullptr;
+    int frames = 120;
+    std::vector<std::string> images;
+    for (int i = 1; i < argc; i++) {
+        if (std::strcmp(argv[i], "--json") == 0 && i + 1 < argc) {
+            jsonPath = argv[++i];
+        } else if (std::strcmp(argv[i], "--frames") == 0 && i + 1 < argc) {
+            frames = std::max(WARMUP_FRAMES + 2, std::atoi(argv[++i]));
+        } else {
+            images.emplace_back(argv[i]);
+        }
+    }
+    if (images.empty()) {
+        std::fprintf(stderr, "usage: %s [--json out.json] [--frames N] image...\n", argv[0]);
+        return 2;
+    }
+
+    std::string json = "[\n";
+    bool failed = false;
+    std::printf("%-24s %-10s %-8s %10s %10s %10s %10s\n", "image", "size", "path", "mean_ms", "p95_ms",
+                "detect_%", "err_px");
+
+    for (const std::string &path : images) {
+        Mat bgr = imread(path, IMREAD_COLOR);
+        if (bgr.empty()) {
+            std::fprintf(stderr, "cannot read %s\n", path.c_str());
+            return 2;
+        }
+        std::string name = path.substr(path.find_last_of("/\\") + 1);
+
+        for (Size size : RESOLUTIONS) {
+            Mat scaled, base;
+            resize(bgr, scaled, size, 0, 0, INTER_AREA);
+            cvtColor(scaled, base, COLOR_BGR2RGBA);
+            std::vector<Mat> sequence, truth;
+            makeSequence(base, frames, sequence, truth);
+
+            Result legacy, current;
+            LegacyStab legacyStab;
+            FrameContext ctx;
+            VideoStab stab;
+            Mat frame;
+            for (int i = 0; i < frames; i++) {
+                // legacy：每帧都检测一次角点
+                sequence[i].copyTo(frame);
+                double start = nowMillis();
+                legacyStab.process(i > 0 ? sequence[i - 1] : Mat(), frame);
+                double legacyMs = nowMillis() - start;
+
+                // current：与 NativeProcessor.runStabilizer 相同的调用方式
+                sequence[i].copyTo(frame);
+                start = nowMillis();
+                ctx.begin(frame);
+                if (i == 0) {
+                    ctx.pyramid();
+                } else {
+                    stab.stabilize(sequence[i - 1], ctx, frame);
+                }
+                double currentMs = nowMillis() - start;
+
+                if (i < WARMUP_FRAMES) continue;
+                legacy.add(legacyMs, legacyStab.affine, truth[i], size);
+                legacy.detections++;
+                current.add(currentMs, ctx.affine(), truth[i], size);
+                current.detections += ctx.computeCount(CTX_FEATURES) > 0 ? 1 : 0;
+            }
+
+            bool ok = current.meanError() <= legacy.meanError() + MAX_EXTRA_ERROR_PX;
+            failed |= !ok;
+            char sizeName[32];
+            std::snprintf(sizeName, sizeof(sizeName), "%dx%d", size.width, size.height);
+            const std::pair<const char *, const Result *> rows[] = {{"legacy", &legacy}, {"current", &current}};
+            for (const auto &row : rows) {
+                const Result &r = *row.second;
+                double detectPct = 100.0 * r.detections / r.ms.size();
+                std::printf("%-24s %-10s %-8s %10.2f %10.2f %10.1f %10.2f%s\n", name.c_str(), sizeName, row.first,
+                            r.meanMs(), r.p95Ms(), detectPct, r.meanError(),
+                            ok || &r == &legacy ? "" : "  > legacy");
+                char line[512];
+                std::snprintf(line, sizeof(line),
+                              "  {\"image\": \"%s\", \"width\": %d, \"height\": %d, \"path\": \"%s\", "
+                              "\"meanMs\": %.3f, \"p95Ms\": %.3f, \"detectRatio\": %.3f, \"cornerErrorPx\": %.3f},\n",
+                              name.c_str(), size.width, size.height, row.first, r.meanMs(), r.p95Ms(),
+                              detectPct / 100.0, std::isinf(r.meanError()) ? -1.0 : r.meanError());
+                json += line;
+            }
+        }
+    }
+
+    if (jsonPath != nullptr) {
+        json.erase(json.size() - 2, 1);  // 去掉最后一个逗号
+        json += "]\n";
+        FILE *f = std::fopen(jsonPath, "w");
+        if (f == nullptr) {
+            std::fprintf(stderr, "cannot write %s\n", jsonPath);
+            return 2;
+        }
+        std::fputs(json.c_str(), f);
+        std::fclose(f);
+    }
+    return failed ? 1 : 0;
+}
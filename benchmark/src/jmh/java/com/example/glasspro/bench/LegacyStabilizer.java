@@ -0,0 +1,107 @@
+package com.example.glasspro.bench;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 旧版 NativeProcessor.updateStabilizer 的等价实现，仅用于基准对比。
+ * 保留了原来的 ArrayList&lt;StableBox&gt;、Rect.clone() 和 Math.pow/Math.sqrt，
+ * Rect 用一个与 org.opencv.core.Rect 行为相同的小类代替，以便在主机 JVM 上运行。
+ */
+public class LegacyStabilizer {
+    private static final float SMOOTH_FACTOR = 0.7f;
+    private static final int MAX_MISSED_FRAMES = 2;
+    private static final double MAX_MATCH_DIST = 200.0;
+    private static final double SNAP_DISTANCE_THRESHOLD = 50.0;
+
+    public static class Rect {
+        public int x, y, width, height;
+
+        public Rect(int x, int y, int width, int height) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public Rect clone() {
+            return new Rect(x, y, width, height);
+        }
+    }
+
+    private static class StableBox {
+        Rect rect;
+        int classId;
+        int missedCount;
+
+        StableBox(Rect rect, int classId) {
+            this.rect = rect.clone();
+            this.classId = classId;
+            this.missedCount = 0;
+        }
+    }
+
+    private final List<StableBox> stableBoxes = new ArrayList<>();
+
+    public int size() {
+        return stableBoxes.size();
+    }
+
+    public void update(Rect[] rawBoxes, int[] rawIds) {
+        boolean[] rawUsed = new boolean[rawBoxes.length];
+
+        Iterator<StableBox> it = stableBoxes.iterator();
+        while (it.hasNext()) {
+            StableBox sb = it.next();
+            int bestMatchIndex = -1;
+            double minDistance = Double.MAX_VALUE;
+
+            for (int i = 0; i < rawBoxes.length; i++) {
+                if (rawUsed[i]) continue;
+                if (rawIds[i] != sb.classId) continue;
+
+                double dist = getDistance(sb.rect, rawBoxes[i]);
+                if (dist < minDistance) {
+                    minDistance = dist;
+                    bestMatchIndex = i;
+                }
+            }
+
+            if (bestMatchIndex != -1 && minDistance < MAX_MATCH_DIST) {
+                Rect raw = rawBoxes[bestMatchIndex];
+                if (minDistance > SNAP_DISTANCE_THRESHOLD) {
+                    sb.rect = raw.clone();
+                } else {
+                    sb.rect.x = (int) (raw.x * SMOOTH_FACTOR + sb.rect.x * (1 - SMOOTH_FACTOR));
+                    sb.rect.y = (int) (raw.y * SMOOTH_FACTOR + sb.rect.y * (1 - SMOOTH_FACTOR));
+                    sb.rect.width = (int) (raw.width * SMOOTH_FACTOR + sb.rect.width * (1 - SMOOTH_FACTOR));
+                    sb.rect.height = (int) (raw.height * SMOOTH_FACTOR + sb.rect.height * (1 - SMOOTH_FACTOR));
+                }
+                sb.missedCount = 0;
+                rawUsed[bestMatchIndex] = true;
+            } else {
+                sb.missedCount++;
+            }
+
+            if (sb.missedCount > MAX_MISSED_FRAMES) {
+                it.remove();
+            }
+        }
+
+        for (int i = 0; i < rawBoxes.length; i++) {
+            if (!rawUsed[i]) {
+                stableBoxes.add(new StableBox(rawBoxes[i], rawIds[i]));
+            }
+        }
+    }
+
+    private static double getDistance(Rect r1, Rect r2) {
+        double cx1 = r1.x + r1.width / 2.0;
+        double cy1 = r1.y + r1.height / 2.0;
+        double cx2 = r2.x + r2.width / 2.0;
+        double cy2 = r2.y + r2.height / 2.0;
+        return Math.sqrt(Math.pow(cx1 - cx2, 2) + Math.pow(cy1 - cy2, 2));
+    }
+}
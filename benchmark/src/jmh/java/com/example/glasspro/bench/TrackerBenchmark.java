@@ -0,0 +1,122 @@
+package com.example.glasspro.bench;
+
+import com.example.glasspro.BoxTracker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 跟踪器每帧 update 的耗时对比：旧版 List&lt;StableBox&gt; vs. BoxTracker。
+ * <p>
+ * 输入是预先生成的一段合成序列：boxCount 个框匀速运动并带随机抖动，
+ * 每帧约 5% 的框漏检。旧版路径额外包含每帧 toArray() 产生的 Rect[] 分配，和线上行为一致。
+ * 框分布在 resolution 对应的画面范围内，分辨率越高同样数量的框越稀疏。
+ * <p>
+ * 运行：./gradlew :benchmark:jmh  (加 -prof gc 可查看每次调用的分配字节数)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrackerBenchmark {
+
+    private static final int SEQUENCE_LENGTH = 256;
+
+    @Param({"10", "50", "150"})
+    public int boxCount;
+
+    @Param({"480p", "720p", "1080p"})
+    public String resolution;
+
+    private int[][] boxes;
+    private int[][] ids;
+    private int[] counts;
+    private int frame;
+
+    private LegacyStabilizer legacy;
+    private BoxTracker tracker;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        int width, height;
+        switch (resolution) {
+            case "480p": width = 640; height = 480; break;
+            case "1080p": width = 1920; height = 1080; break;
+            default: width = 1280; height = 720; break;
+        }
+        Random random = new Random(42);
+        boxes = new int[SEQUENCE_LENGTH][];
+        ids = new int[SEQUENCE_LENGTH][];
+        counts = new int[SEQUENCE_LENGTH];
+
+        float[] px = new float[boxCount], py = new float[boxCount];
+        float[] vx = new float[boxCount], vy = new float[boxCount];
+        int[] cls = new int[boxCount];
+        for (int i = 0; i < boxCount; i++) {
+            px[i] = random.nextInt(width - 80);
+            py[i] = random.nextInt(height - 40);
+            vx[i] = random.nextFloat() * 8 - 4;
+            vy[i] = random.nextFloat() * 8 - 4;
+            cls[i] = 1 + random.nextInt(20);
+        }
+
+        for (int f = 0; f < SEQUENCE_LENGTH; f++) {
+            int[] b = new int[boxCount * 4];
+            int[] c = new int[boxCount];
+            int n = 0;
+            for (int i = 0; i < boxCount; i++) {
+                px[i] += vx[i];
+                py[i] += vy[i];
+                if (random.nextInt(100) < 5) continue;
+                b[n * 4] = (int) (px[i] + random.nextGaussian() * 2);
+                b[n * 4 + 1] = (int) (py[i] + random.nextGaussian() * 2);
+                b[n * 4 + 2] = 40;
+                b[n * 4 + 3] = 60;
+                c[n] = cls[i];
+                n++;
+            }
+            boxes[f] = b;
+            ids[f] = c;
+            counts[f] = n;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        frame = 0;
+        legacy = new LegacyStabilizer();
+        tracker = new BoxTracker(BoxTracker.DEFAULT_CAPACITY, 200f, 2, 10, 1f, 16f);
+    }
+
+    @Benchmark
+    public int legacyStabilizer() {
+        int f = frame++ % SEQUENCE_LENGTH;
+        int n = counts[f];
+        int[] b = boxes[f];
+        // 旧路径：MatOfRect.toArray() / MatOfInt.toArray() 每帧都会分配新数组
+        LegacyStabilizer.Rect[] rects = new LegacyStabilizer.Rect[n];
+        for (int i = 0; i < n; i++) {
+            rects[i] = new LegacyStabilizer.Rect(b[i * 4], b[i * 4 + 1], b[i * 4 + 2], b[i * 4 + 3]);
+        }
+        int[] classIds = new int[n];
+        System.arraycopy(ids[f], 0, classIds, 0, n);
+        legacy.update(rects, classIds);
+        return legacy.size();
+    }
+
+    @Benchmark
+    public int boxTracker() {
+        int f = frame++ % SEQUENCE_LENGTH;
+        tracker.update(boxes[f], ids[f], counts[f], frame);
+        return tracker.size();
+    }
+}
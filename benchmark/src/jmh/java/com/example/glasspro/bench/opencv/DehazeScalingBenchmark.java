@@ -0,0 +1,78 @@
+package com.example.glasspro.bench.opencv;
+
+import com.example.glasspro.NativeProcessor;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 条带并行去雾随线程数的扩展性：OpenCV 线程数设为 threads，float32 引擎按条带并行估计透射率和恢复。
+ * threads=1 时整帧串行，即并行前的实现。
+ * <p>
+ * 与预览一样打开流式大气光 (每 10 帧重新估计)，耗时主要落在并行的几个阶段。
+ * 条带上下各多算 halo 行，线程多、处理高度小时多算的比例变大，加速比低于线程数。
+ * 条带结果与串行结果的一致性由 :benchmark:dehazeTierReport 检查。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DehazeScalingBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"720p", "1080p"})
+    public String resolution;
+
+    @Param({"full", "coarse"})
+    public String tier;
+
+    private int savedThreads;
+    private long dehazer;
+    private Mat source;
+    private Mat frame = new Mat();
+
+    @Setup(Level.Trial)
+    public void init() {
+        HostFrames.loadLibraries();
+        savedThreads = Core.getNumThreads();
+        Core.setNumThreads(threads);
+        source = HostFrames.synthetic(HostFrames.sizeOf(resolution), 42);
+        dehazer = NativeProcessor.createDehazer();
+        NativeProcessor.setDehazerStreaming(dehazer, true, 10);
+        NativeProcessor.setDehazerTier(dehazer, "full".equals(tier)
+                ? NativeProcessor.DEHAZE_TIER_FULL : NativeProcessor.DEHAZE_TIER_COARSE);
+    }
+
+    @Setup(Level.Invocation)
+    public void resetFrame() {
+        source.copyTo(frame);
+    }
+
+    @TearDown(Level.Trial)
+    public void release() {
+        NativeProcessor.releaseDehazer(dehazer);
+        dehazer = 0;
+        Core.setNumThreads(savedThreads);
+        source.release();
+        frame.release();
+    }
+
+    @Benchmark
+    public Mat dehaze() {
+        NativeProcessor.runDehazer(dehazer, frame.getNativeObjAddr());
+        return frame;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.glasspro.bench.opencv;
+
+import com.example.glasspro.NativeProcessor;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 去雾各算法档位的单帧耗时 (非流式，每帧都重新估计大气光)。
+ * <p>
+ * reference 是原始的 double 实现，其余三档是 float32 引擎。
+ * 精度和峰值内存的对比见 :benchmark:dehazeTierReport。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DehazeTierBenchmark {
+
+    @Param({"480p", "720p", "1080p"})
+    public String resolution;
+
+    @Param({"reference", "full", "coarse", "single"})
+    public String tier;
+
+    private Mat source;
+    private Mat frame = new Mat();
+
+    @Setup(Level.Trial)
+    public void init() {
+        HostFrames.loadLibraries();
+        source = HostFrames.synthetic(HostFrames.sizeOf(resolution), 42);
+        NativeProcessor.setDehazeStreaming(false, 1);
+        NativeProcessor.setDehazeTier(tierOf(tier));
+    }
+
+    @Setup(Level.Invocation)
+    public void resetFrame() {
+        source.copyTo(frame);
+    }
+
+    @TearDown(Level.Trial)
+    public void release() {
+        source.release();
+        frame.release();
+    }
+
+    @Benchmark
+    public Mat dehaze() {
+        NativeProcessor.dehaze(frame.getNativeObjAddr());
+        return frame;
+    }
+
+    private static int tierOf(String name) {
+        switch (name) {
+            case "reference": return NativeProcessor.DEHAZE_TIER_REFERENCE;
+            case "full": return NativeProcessor.DEHAZE_TIER_FULL;
+            case "coarse": return NativeProcessor.DEHAZE_TIER_COARSE;
+            case "single": return NativeProcessor.DEHAZE_TIER_SINGLE;
+            default: throw new IllegalArgumentException("Unknown tier: " + name);
+        }
+    }
+}
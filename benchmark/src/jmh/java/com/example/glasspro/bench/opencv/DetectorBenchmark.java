@@ -0,0 +1,70 @@
+package com.example.glasspro.bench.opencv;
+
+import com.example.glasspro.BoxTracker;
+import com.example.glasspro.DetectionBuffer;
+import com.example.glasspro.NativeProcessor;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * detectObjectsNN (MobileNet-SSD) 的单帧耗时，覆盖三种预览分辨率和质量档位的三种网络输入尺寸。
+ * <p>
+ * 模型文件从 -Dglasspro.model.dir 指定的目录读取 (默认 app/src/main/assets)，
+ * 缺少 caffemodel 时 gradle 会自动排除这个基准。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DetectorBenchmark {
+
+    private static final float CONFIDENCE = 0.55f; // 与 NativeProcessor.runDetection 的下限一致
+
+    @Param({"480p", "720p", "1080p"})
+    public String resolution;
+
+    @Param({"300", "256", "224"})
+    public int inputSize;
+
+    private long netPtr;
+    private Mat frame;
+    private DetectionBuffer detections;
+
+    @Setup(Level.Trial)
+    public void init() {
+        HostFrames.loadLibraries();
+        File dir = new File(System.getProperty("glasspro.model.dir", "../app/src/main/assets"));
+        netPtr = NativeProcessor.loadObjectDetector(
+                new File(dir, "mobilenet_ssd.prototxt").getAbsolutePath(),
+                new File(dir, "mobilenet_ssd.caffemodel").getAbsolutePath());
+        if (netPtr == 0) throw new IllegalStateException("Failed to load MobileNet-SSD from " + dir);
+        NativeProcessor.setDetectorInputSize(netPtr, inputSize);
+        frame = HostFrames.synthetic(HostFrames.sizeOf(resolution), 7);
+        detections = new DetectionBuffer(BoxTracker.DEFAULT_CAPACITY);
+    }
+
+    @TearDown(Level.Trial)
+    public void release() {
+        NativeProcessor.releaseObjectDetector(netPtr);
+        netPtr = 0;
+        frame.release();
+    }
+
+    @Benchmark
+    public int detectObjectsNN() {
+        return NativeProcessor.detectObjectsNN(netPtr, frame.getNativeObjAddr(), detections.buffer(),
+                detections.capacity(), CONFIDENCE);
+    }
+}
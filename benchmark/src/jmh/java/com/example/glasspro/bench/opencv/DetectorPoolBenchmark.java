@@ -0,0 +1,117 @@
+package com.example.glasspro.bench.opencv;
+
+import com.example.glasspro.DetectionBuffer;
+import com.example.glasspro.DetectorPool;
+import com.example.glasspro.NativeProcessor;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 检测器池大小的选择依据：poolSize 个 MobileNet-SSD 实例 (每个分到 核数 / poolSize 个 OpenCV 线程)
+ * <ul>
+ *   <li>throughput：按推理能力连续投递 (信箱空了才投下一帧，不丢帧)，每秒按帧序提交的帧数；</li>
+ *   <li>latency：池空闲时投递一帧到它提交给跟踪器的耗时。</li>
+ * </ul>
+ * 满载时的单帧延迟约为 poolSize / throughput；在目标设备上选吞吐够用、延迟最低的池大小
+ * (MainActivity 以 --ei detector_pool N 启动可覆盖默认值)。
+ * 结果回调里检查帧序，乱序时 TearDown 抛异常让这次运行失败。缺少 caffemodel 时 gradle 会自动排除这个基准。
+ */
+@State(Scope.Thread)
+public class DetectorPoolBenchmark {
+
+    private static final float CONFIDENCE = 0.55f; // 与 NativeProcessor.runDetection 的下限一致
+    private static final int BATCH = 16;
+
+    @Param({"1", "2", "3", "4"})
+    public int poolSize;
+
+    @Param({"720p"})
+    public String resolution;
+
+    private DetectorPool pool;
+    private Mat[] frames;
+    private long nextFrame;
+    private volatile long lastDelivered = -1;
+    private volatile String orderError;
+
+    @Setup(Level.Trial)
+    public void init() {
+        HostFrames.loadLibraries();
+        File dir = new File(System.getProperty("glasspro.model.dir", "../app/src/main/assets"));
+        long[] nets = new long[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            nets[i] = NativeProcessor.loadObjectDetector(
+                    new File(dir, "mobilenet_ssd.prototxt").getAbsolutePath(),
+                    new File(dir, "mobilenet_ssd.caffemodel").getAbsolutePath());
+            if (nets[i] == 0) throw new IllegalStateException("Failed to load MobileNet-SSD from " + dir);
+        }
+        Mat base = HostFrames.synthetic(HostFrames.sizeOf(resolution), 7);
+        frames = new Mat[]{base, HostFrames.shaken(base, 6, -4, 0.5)};
+        pool = new DetectorPool(nets, CONFIDENCE);
+        pool.warmUp(base.cols(), base.rows());
+        pool.start(new DetectorPool.Listener() {
+            @Override
+            public void onDetections(DetectionBuffer detections, long frameIndex, long netPtr, long inferenceNanos) {
+                if (frameIndex <= lastDelivered && orderError == null) {
+                    orderError = "frame " + frameIndex + " delivered after " + lastDelivered;
+                }
+                lastDelivered = frameIndex;
+            }
+
+            @Override
+            public void onError(Exception e) {
+                orderError = "detection failed: " + e;
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void release() {
+        pool.release();
+        for (Mat m : frames) m.release();
+        if (orderError != null) throw new IllegalStateException(orderError);
+    }
+
+    private long submitNext() {
+        long index = nextFrame++;
+        pool.submit(frames[(int) (index & 1)], index);
+        return index;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH)
+    public long throughput() throws InterruptedException {
+        long last = 0;
+        for (int i = 0; i < BATCH; i++) {
+            pool.awaitMailboxEmpty();
+            last = submitNext();
+        }
+        pool.awaitDelivered(last);
+        return last;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long latency() throws InterruptedException {
+        long index = submitNext();
+        pool.awaitDelivered(index);
+        return index;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.glasspro.bench.opencv;
+
+import com.example.glasspro.DetectionBuffer;
+import com.example.glasspro.NativeProcessor;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 稳像 + 多帧增强 + 运动检测在同一帧上的总耗时：各自独立分析 (两帧接口) 与共用一个帧上下文的对比。
+ * <p>
+ * 共用上下文时上一帧的产物在稳态下是上一帧自己算好的，所以 Invocation 级 setup 里先把上一帧
+ * begin 并跑一遍各模块 (不计入测量)，测量部分只包含当前帧的 begin 和三个模块。
+ * streamingMotion 单独测量流式运动检测 (背景模型) 在共用上下文上的开销，与 sharedContext 里的帧差法对比。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FrameContextBenchmark {
+
+    private static final double NOISE_LEVEL = 10.0; // 与 MainActivity 一致
+
+    @Param({"480p", "720p", "1080p"})
+    public String resolution;
+
+    private Mat prevSource;
+    private Mat currSource;
+    private final Mat prev = new Mat();
+    private final Mat stabFrame = new Mat();
+    private final Mat enhanceFrame = new Mat();
+    private final Mat motionFrame = new Mat();
+    private final Mat boxes = new Mat();
+    private final DetectionBuffer motionBoxes = new DetectionBuffer(16);
+    private long ctx;
+
+    @Setup(Level.Trial)
+    public void init() {
+        HostFrames.loadLibraries();
+        Size size = HostFrames.sizeOf(resolution);
+        prevSource = HostFrames.synthetic(size, 42);
+        currSource = HostFrames.shaken(prevSource, 6, -4, 0.5);
+        ctx = NativeProcessor.createFrameContext();
+    }
+
+    @Setup(Level.Invocation)
+    public void resetFrames() {
+        prevSource.copyTo(prev);
+        currSource.copyTo(stabFrame);
+        currSource.copyTo(enhanceFrame);
+        currSource.copyTo(motionFrame);
+
+        NativeProcessor.beginFrameContext(ctx, prevSource.getNativeObjAddr());
+        NativeProcessor.resetFrameContext(ctx);
+        NativeProcessor.videoStabWithContext(ctx, 0, prev.getNativeObjAddr());
+        NativeProcessor.enhanceWithContext(ctx, prev.getNativeObjAddr(), NOISE_LEVEL);
+        NativeProcessor.detectMotionWithContext(ctx, boxes.getNativeObjAddr());
+        NativeProcessor.detectMotionStreaming(ctx, motionBoxes.buffer(), motionBoxes.capacity());
+    }
+
+    @TearDown(Level.Trial)
+    public void release() {
+        NativeProcessor.releaseFrameContext(ctx);
+        prevSource.release();
+        currSource.release();
+        prev.release();
+        stabFrame.release();
+        enhanceFrame.release();
+        motionFrame.release();
+        boxes.release();
+    }
+
+    @Benchmark
+    public Mat separateAnalysis() {
+        NativeProcessor.videoStab(prev.getNativeObjAddr(), stabFrame.getNativeObjAddr());
+        NativeProcessor.enhance(prev.getNativeObjAddr(), enhanceFrame.getNativeObjAddr(), NOISE_LEVEL);
+        NativeProcessor.detectMotion(prev.getNativeObjAddr(), motionFrame.getNativeObjAddr(), boxes.getNativeObjAddr());
+        return boxes;
+    }
+
+    @Benchmark
+    public Mat sharedContext() {
+        NativeProcessor.beginFrameContext(ctx, currSource.getNativeObjAddr());
+        NativeProcessor.videoStabWithContext(ctx, prev.getNativeObjAddr(), stabFrame.getNativeObjAddr());
+        NativeProcessor.enhanceWithContext(ctx, enhanceFrame.getNativeObjAddr(), NOISE_LEVEL);
+        NativeProcessor.detectMotionWithContext(ctx, boxes.getNativeObjAddr());
+        return boxes;
+    }
+
+    @Benchmark
+    public int streamingMotion() {
+        NativeProcessor.beginFrameContext(ctx, currSource.getNativeObjAddr());
+        NativeProcessor.videoStabWithContext(ctx, prev.getNativeObjAddr(), stabFrame.getNativeObjAddr());
+        return NativeProcessor.detectMotionStreaming(ctx, motionBoxes.buffer(), motionBoxes.capacity());
+    }
+}
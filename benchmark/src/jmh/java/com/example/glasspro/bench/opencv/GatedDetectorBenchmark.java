@@ -0,0 +1,99 @@
+package com.example.glasspro.bench.opencv;
+
+import com.example.glasspro.BoxTracker;
+import com.example.glasspro.DetectionBuffer;
+import com.example.glasspro.NativeProcessor;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 检测门控的平均单帧耗时：两帧交替送入 detectObjectsNN，对比门控关闭和打开。
+ * <ul>
+ *   <li>static：两帧相同 (静止场景)，门控打开时大部分调用跳过推理；</li>
+ *   <li>local：第二帧只有一小块区域变化 (画面里有东西在动)，门控打开时只推理变化区域；</li>
+ *   <li>global：第二帧整体平移旋转 (转头)，门控打开时仍然整帧推理，测的是门控本身的额外开销。</li>
+ * </ul>
+ * 与 DetectorBenchmark 一样，缺少 caffemodel 时 gradle 会自动排除。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GatedDetectorBenchmark {
+
+    private static final float CONFIDENCE = 0.55f; // 与 NativeProcessor.runDetection 的下限一致
+
+    @Param({"720p", "1080p"})
+    public String resolution;
+
+    @Param({"static", "local", "global"})
+    public String scene;
+
+    @Param({"false", "true"})
+    public boolean gating;
+
+    private long netPtr;
+    private Mat frameA;
+    private Mat frameB;
+    private DetectionBuffer detections;
+    private long calls;
+
+    @Setup(Level.Trial)
+    public void init() {
+        HostFrames.loadLibraries();
+        File dir = new File(System.getProperty("glasspro.model.dir", "../app/src/main/assets"));
+        netPtr = NativeProcessor.loadObjectDetector(
+                new File(dir, "mobilenet_ssd.prototxt").getAbsolutePath(),
+                new File(dir, "mobilenet_ssd.caffemodel").getAbsolutePath());
+        if (netPtr == 0) throw new IllegalStateException("Failed to load MobileNet-SSD from " + dir);
+        NativeProcessor.setDetectorGating(netPtr, gating);
+
+        frameA = HostFrames.synthetic(HostFrames.sizeOf(resolution), 7);
+        switch (scene) {
+            case "static":
+                frameB = frameA.clone();
+                break;
+            case "local":
+                // 约 1/8 宽的实心块，模拟画面里走过的人
+                frameB = frameA.clone();
+                int w = frameA.cols() / 8, h = frameA.rows() / 4;
+                Imgproc.rectangle(frameB, new Point(frameA.cols() / 2.0, frameA.rows() / 3.0),
+                        new Point(frameA.cols() / 2.0 + w, frameA.rows() / 3.0 + h), new Scalar(20, 20, 20, 255), -1);
+                break;
+            default:
+                frameB = HostFrames.shaken(frameA, 6, -4, 0.5);
+                break;
+        }
+        detections = new DetectionBuffer(BoxTracker.DEFAULT_CAPACITY);
+    }
+
+    @TearDown(Level.Trial)
+    public void release() {
+        NativeProcessor.releaseObjectDetector(netPtr);
+        netPtr = 0;
+        frameA.release();
+        frameB.release();
+    }
+
+    @Benchmark
+    public int detectObjectsNN() {
+        Mat frame = (calls++ & 1) == 0 ? frameA : frameB;
+        return NativeProcessor.detectObjectsNN(netPtr, frame.getNativeObjAddr(), detections.buffer(),
+                detections.capacity(), CONFIDENCE);
+    }
+}
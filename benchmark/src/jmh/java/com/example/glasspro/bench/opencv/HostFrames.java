@@ -0,0 +1,99 @@
+package com.example.glasspro.bench.opencv;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Random;
+
+/**
+ * 主机端基准的公共部分：加载桌面版 native 库，生成可复现的合成测试帧。
+ * <p>
+ * 帧内容是渐变背景 + 随机纹理 + 若干矩形和圆，保证角点检测、光流和 SSD 都有东西可处理；
+ * 再叠加一层灰色"雾"，让去雾的大气光估计走正常路径。同一个种子总是生成同样的帧。
+ */
+final class HostFrames {
+
+    // 与 app 的 CMakeLists.txt 对应；dehaze 依赖 enhance，motion 依赖 stab，enhance / stab / motion 依赖 framectx，
+    // 加载顺序与 MainActivity 一致
+    private static final String[] LIBS = {"framectx", "dehaze", "enhance", "stab", "motion", "vision_processor"};
+    private static boolean loaded;
+
+    private HostFrames() {
+    }
+
+    /** 库搜索路径由 gradle 通过 -Djava.library.path 传入 */
+    static synchronized void loadLibraries() {
+        if (loaded) return;
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        for (String lib : LIBS) System.loadLibrary(lib);
+        loaded = true;
+    }
+
+    static Size sizeOf(String resolution) {
+        switch (resolution) {
+            case "480p": return new Size(640, 480);
+            case "720p": return new Size(1280, 720);
+            case "1080p": return new Size(1920, 1080);
+            default: throw new IllegalArgumentException("Unknown resolution: " + resolution);
+        }
+    }
+
+    /** 合成一帧 RGBA 图像 (与相机回调的格式一致) */
+    static Mat synthetic(Size size, long seed) {
+        int w = (int) size.width, h = (int) size.height;
+        Mat bgr = new Mat(h, w, CvType.CV_8UC3);
+
+        // 纵向渐变背景
+        for (int y = 0; y < h; y++) {
+            double v = 60 + 140.0 * y / h;
+            bgr.row(y).setTo(new Scalar(v, v * 0.9, v * 0.8));
+        }
+
+        // 随机纹理
+        Mat noise = new Mat(h, w, CvType.CV_8UC3);
+        Core.setRNGSeed((int) seed);
+        Core.randu(noise, 0, 40);
+        Core.add(bgr, noise, bgr);
+        noise.release();
+
+        // 几何图形：给角点和目标检测提供结构
+        Random random = new Random(seed);
+        for (int i = 0; i < 40; i++) {
+            Point p1 = new Point(random.nextInt(w), random.nextInt(h));
+            Point p2 = new Point(p1.x + 20 + random.nextInt(w / 8), p1.y + 20 + random.nextInt(h / 8));
+            Scalar color = new Scalar(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+            if (i % 2 == 0) {
+                Imgproc.rectangle(bgr, p1, p2, color, -1);
+            } else {
+                Imgproc.circle(bgr, p1, 10 + random.nextInt(h / 10), color, -1);
+            }
+        }
+
+        // 均匀的灰色雾层 (约 35%)
+        Mat haze = new Mat(h, w, CvType.CV_8UC3, new Scalar(200, 200, 200));
+        Core.addWeighted(bgr, 0.65, haze, 0.35, 0, bgr);
+        haze.release();
+
+        Mat rgba = new Mat();
+        Imgproc.cvtColor(bgr, rgba, Imgproc.COLOR_BGR2RGBA);
+        bgr.release();
+        return rgba;
+    }
+
+    /** 平移 + 小角度旋转后的下一帧，模拟手持抖动 */
+    static Mat shaken(Mat src, double dx, double dy, double angleDeg) {
+        Point center = new Point(src.cols() / 2.0, src.rows() / 2.0);
+        Mat m = Imgproc.getRotationMatrix2D(center, angleDeg, 1.0);
+        m.put(0, 2, m.get(0, 2)[0] + dx);
+        m.put(1, 2, m.get(1, 2)[0] + dy);
+        Mat dst = new Mat();
+        Imgproc.warpAffine(src, dst, m, src.size(), Imgproc.INTER_LINEAR, Core.BORDER_REFLECT);
+        m.release();
+        return dst;
+    }
+}
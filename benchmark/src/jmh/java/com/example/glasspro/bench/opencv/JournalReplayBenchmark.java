@@ -0,0 +1,147 @@
+package com.example.glasspro.bench.opencv;
+
+import com.example.glasspro.BoxTracker;
+import com.example.glasspro.DetectionBuffer;
+import com.example.glasspro.FrameJournal;
+import com.example.glasspro.NativeProcessor;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 回放真机录制的帧日志 (FrameJournal)，按 MainActivity.onCameraFrame 的顺序跑稳像 -> 增强 -> 检测，
+ * 测量每帧耗时。帧按录制顺序全速送入，到末尾后从头循环，循环时重置两个帧上下文 (与切换模式后的首帧一致)。
+ * <p>
+ * 日志由 -Pjournal=xxx.gpj 传入 (gradle 转成 -Dglasspro.journal)，没有时这个基准被排除。
+ * 检测需要模型文件，缺少时 detect=true 与 detect=false 的结果相同。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JournalReplayBenchmark {
+
+    private static final double NOISE_LEVEL = 10.0;  // 与 MainActivity 一致
+    private static final float CONFIDENCE = 0.55f;   // 与 NativeProcessor.runDetection 的下限一致
+
+    @Param({"none", "enhance", "dehaze", "clahe", "msrcr", "motion"})
+    public String mode;
+
+    @Param({"false", "true"})
+    public boolean detect;
+
+    private FrameJournal.Reader journal;
+    private final Mat frame = new Mat();
+    private Mat prev = new Mat();
+    private Mat staging = new Mat();
+    private boolean hasPrev;
+    private boolean wrapped;
+    private int index = -1;
+    private long rawCtx;
+    private long stabCtx;
+    private long netPtr;
+    private DetectionBuffer detections;
+    private DetectionBuffer motionBoxes;
+
+    @Setup(Level.Trial)
+    public void init() throws IOException {
+        HostFrames.loadLibraries();
+        String path = System.getProperty("glasspro.journal");
+        if (path == null) throw new IllegalStateException("No journal: pass -Pjournal=<file.gpj>");
+        journal = new FrameJournal.Reader(new File(path));
+        if (journal.frameCount() < 2) throw new IllegalStateException("Journal has too few frames: " + path);
+
+        rawCtx = NativeProcessor.createFrameContext();
+        stabCtx = NativeProcessor.createFrameContext();
+        detections = new DetectionBuffer(BoxTracker.DEFAULT_CAPACITY);
+        motionBoxes = new DetectionBuffer(16);
+        if (detect) {
+            File dir = new File(System.getProperty("glasspro.model.dir", "../app/src/main/assets"));
+            File proto = new File(dir, "mobilenet_ssd.prototxt");
+            File model = new File(dir, "mobilenet_ssd.caffemodel");
+            if (proto.exists() && model.exists()) {
+                netPtr = NativeProcessor.loadObjectDetector(proto.getAbsolutePath(), model.getAbsolutePath());
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void nextFrame() {
+        index++;
+        if (index >= journal.frameCount()) index = 0;
+        wrapped = index == 0;
+        journal.read(index, frame);
+    }
+
+    @TearDown(Level.Trial)
+    public void release() throws IOException {
+        NativeProcessor.releaseFrameContext(rawCtx);
+        NativeProcessor.releaseFrameContext(stabCtx);
+        if (netPtr != 0) NativeProcessor.releaseObjectDetector(netPtr);
+        netPtr = 0;
+        journal.close();
+        frame.release();
+        prev.release();
+        staging.release();
+    }
+
+    @Benchmark
+    public Mat replayFrame() {
+        // 1. 稳像 (MainActivity.processStab)：上一帧是稳像前的原始帧
+        NativeProcessor.beginFrameContext(rawCtx, frame.getNativeObjAddr());
+        if (wrapped) {
+            NativeProcessor.resetFrameContext(rawCtx);
+            hasPrev = false;
+        }
+        frame.copyTo(staging);
+        NativeProcessor.videoStabWithContext(rawCtx, hasPrev ? prev.getNativeObjAddr() : 0, frame.getNativeObjAddr());
+        Mat t = prev;
+        prev = staging;
+        staging = t;
+        hasPrev = true;
+        NativeProcessor.beginFrameContext(stabCtx, frame.getNativeObjAddr());
+        if (wrapped) NativeProcessor.resetFrameContext(stabCtx);
+
+        // 2. 增强 (MainActivity.processEnhancementModes)
+        switch (mode) {
+            case "enhance":
+                NativeProcessor.enhanceWithContext(stabCtx, frame.getNativeObjAddr(), NOISE_LEVEL);
+                break;
+            case "dehaze":
+                NativeProcessor.dehaze(frame.getNativeObjAddr());
+                break;
+            case "clahe":
+                NativeProcessor.enhanceByCLAHE(frame.getNativeObjAddr());
+                break;
+            case "msrcr":
+                NativeProcessor.enhanceByMSRCR(frame.getNativeObjAddr());
+                break;
+            case "motion":
+                motionBoxes.setCount(NativeProcessor.detectMotionStreaming(rawCtx,
+                        motionBoxes.buffer(), motionBoxes.capacity()));
+                NativeProcessor.drawMotionBoxes(frame, motionBoxes);
+                break;
+            default:
+                break;
+        }
+
+        // 3. 检测：回放时同步执行 (app 里在 DetectionWorker 上)，更新跟踪器后画框
+        if (netPtr != 0 && NativeProcessor.runDetection(frame, netPtr, detections, CONFIDENCE)) {
+            NativeProcessor.updateStabilizer(detections, index);
+            NativeProcessor.drawBoxes(frame, index);
+        }
+        return frame;
+    }
+}
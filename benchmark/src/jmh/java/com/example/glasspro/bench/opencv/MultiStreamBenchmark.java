@@ -0,0 +1,119 @@
+package com.example.glasspro.bench.opencv;
+
+import com.example.glasspro.StreamProcessor;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多路视频流并行处理的扩展性：streams 路各持有一个 StreamProcessor，在各自的线程上同时跑
+ * 稳像 + 一种增强模式，测量所有流都处理完一帧的耗时。
+ * <p>
+ * 各路状态互相独立，核数足够时耗时应与 streams=1 接近；聚合吞吐 (帧/秒) = streams / 耗时。
+ * 每路交替处理两帧 (一帧与它的抖动版本)，让稳像和多帧增强走正常路径。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MultiStreamBenchmark {
+
+    private static final double NOISE_LEVEL = 10.0; // 与 MainActivity 一致
+
+    @Param({"1", "2", "4", "8"})
+    public int streams;
+
+    @Param({"enhance", "dehaze", "motion"})
+    public String mode;
+
+    @Param({"720p"})
+    public String resolution;
+
+    private Mat[] sources;
+    private StreamProcessor[] processors;
+    private Mat[] frames;
+    private long[] frameIndex;
+    private ExecutorService executor;
+    private final List<Callable<Void>> tasks = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void init() {
+        HostFrames.loadLibraries();
+        Size size = HostFrames.sizeOf(resolution);
+        Mat base = HostFrames.synthetic(size, 42);
+        sources = new Mat[]{base, HostFrames.shaken(base, 6, -4, 0.5)};
+        processors = new StreamProcessor[streams];
+        frames = new Mat[streams];
+        frameIndex = new long[streams];
+        executor = Executors.newFixedThreadPool(streams);
+        for (int i = 0; i < streams; i++) {
+            processors[i] = new StreamProcessor();
+            processors[i].setDehazeStreaming(true, 10);
+            frames[i] = new Mat();
+            final int stream = i;
+            tasks.add(() -> {
+                processFrame(stream);
+                return null;
+            });
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void release() {
+        executor.shutdown();
+        for (int i = 0; i < streams; i++) {
+            processors[i].release();
+            frames[i].release();
+        }
+        for (Mat m : sources) m.release();
+    }
+
+    private void processFrame(int stream) {
+        Mat frame = frames[stream];
+        StreamProcessor processor = processors[stream];
+        sources[(int) (frameIndex[stream]++ & 1)].copyTo(frame);
+        processor.stabilize(frame);
+        switch (mode) {
+            case "enhance":
+                processor.enhance(frame, NOISE_LEVEL);
+                break;
+            case "dehaze":
+                processor.dehaze(frame);
+                break;
+            case "motion":
+                processor.detectMotion();
+                processor.drawMotionBoxes(frame);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+
+    @Benchmark
+    public int allStreamsOneFrame() throws InterruptedException, ExecutionException {
+        int done = 0;
+        for (Future<Void> f : executor.invokeAll(tasks)) {
+            f.get();
+            done++;
+        }
+        return done;
+    }
+}
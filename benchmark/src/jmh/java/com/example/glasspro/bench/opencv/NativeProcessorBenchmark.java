@@ -0,0 +1,123 @@
+package com.example.glasspro.bench.opencv;
+
+import com.example.glasspro.NativeProcessor;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NativeProcessor 的逐帧处理入口在桌面 JVM 上的耗时。
+ * <p>
+ * 这些函数都会原地修改帧 (多数还会改变通道数)，所以每次调用前用
+ * Level.Invocation 的 setup 把只读的原始帧拷回工作缓冲，拷贝不计入测量。
+ * 单次调用在毫秒级，Invocation 级 setup 的计时开销可以忽略。
+ * <p>
+ * 运行：./gradlew :benchmark:jmh -Popencv.dir=... -Popencv.jar=... -Popencv.libdir=...
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class NativeProcessorBenchmark {
+
+    private static final double NOISE_LEVEL = 10.0; // 与 MainActivity 一致
+
+    @Param({"480p", "720p", "1080p"})
+    public String resolution;
+
+    private Mat prevSource;
+    private Mat currSource;
+    private Mat prev = new Mat();
+    private Mat curr = new Mat();
+    private Mat boxes = new Mat();
+    private long motionPtr;
+
+    @Setup(Level.Trial)
+    public void init() {
+        HostFrames.loadLibraries();
+        Size size = HostFrames.sizeOf(resolution);
+        prevSource = HostFrames.synthetic(size, 42);
+        currSource = HostFrames.shaken(prevSource, 6, -4, 0.5);
+        motionPtr = NativeProcessor.createMotionDetector();
+    }
+
+    @Setup(Level.Invocation)
+    public void resetFrames() {
+        prevSource.copyTo(prev);
+        currSource.copyTo(curr);
+    }
+
+    @TearDown(Level.Trial)
+    public void release() {
+        prevSource.release();
+        currSource.release();
+        prev.release();
+        curr.release();
+        boxes.release();
+        NativeProcessor.releaseMotionDetector(motionPtr);
+    }
+
+    @Benchmark
+    public Mat enhance() {
+        NativeProcessor.enhance(prev.getNativeObjAddr(), curr.getNativeObjAddr(), NOISE_LEVEL);
+        return curr;
+    }
+
+    @Benchmark
+    public Mat dehaze() {
+        NativeProcessor.setDehazeStreaming(false, 1);
+        NativeProcessor.dehaze(curr.getNativeObjAddr());
+        return curr;
+    }
+
+    /** 预览使用的流式模式：大气光每 10 帧刷新一次，其余帧复用 */
+    @Benchmark
+    public Mat dehazeStreaming() {
+        NativeProcessor.setDehazeStreaming(true, 10);
+        NativeProcessor.dehaze(curr.getNativeObjAddr());
+        return curr;
+    }
+
+    @Benchmark
+    public Mat enhanceByCLAHE() {
+        NativeProcessor.enhanceByCLAHE(curr.getNativeObjAddr());
+        return curr;
+    }
+
+    @Benchmark
+    public Mat enhanceByMSRCR() {
+        NativeProcessor.enhanceByMSRCR(curr.getNativeObjAddr());
+        return curr;
+    }
+
+    @Benchmark
+    public Mat videoStab() {
+        NativeProcessor.videoStab(prev.getNativeObjAddr(), curr.getNativeObjAddr());
+        return curr;
+    }
+
+    @Benchmark
+    public Mat detectMotion() {
+        NativeProcessor.detectMotion(prev.getNativeObjAddr(), curr.getNativeObjAddr(), boxes.getNativeObjAddr());
+        return boxes;
+    }
+
+    // 同上，中间缓冲由句柄持有、跨调用复用
+    @Benchmark
+    public Mat detectMotionWithHandle() {
+        NativeProcessor.runMotionDetectorPair(motionPtr, prev.getNativeObjAddr(), curr.getNativeObjAddr(),
+                boxes.getNativeObjAddr());
+        return boxes;
+    }
+}